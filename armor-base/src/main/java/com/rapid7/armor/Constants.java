@@ -35,7 +35,10 @@ public final class Constants {
 
   public static enum ColumnFileFormatVersion {
     VERSION_1(0x0001),
-    VERSION_2(0x0002);
+    VERSION_2(0x0002),
+    // Same sections as version 2 plus the null bitmaps. The row group only holds the values of active entities back to back
+    // in entity index order, the null bitmaps of those entities follow each other in the same order in their own section.
+    VERSION_3(0x0003);
 
     private final int val;
 
@@ -48,7 +51,7 @@ public final class Constants {
     }
   };
 
-  // Default version that is written, for backward compatible APIs.
+  // Default version that is written, for backward compatible APIs. Version 3 is opt in until every reader can read it.
   public final static ColumnFileFormatVersion DEFAULT_VERSION = ColumnFileFormatVersion.VERSION_2;
   
   // Version that is supported. If there is a change to the format, then update this value.
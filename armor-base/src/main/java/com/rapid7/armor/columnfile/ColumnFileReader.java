@@ -15,11 +15,19 @@ import com.rapid7.armor.meta.ColumnMetadata;
 
 public class ColumnFileReader {
   private ColumnMetadata metadata;
+  private Constants.ColumnFileFormatVersion version;
   private static ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
   public ColumnMetadata getColumnMetadata() {
     return metadata;
   }
+
+  /**
+   * @return The format version of the file being read, known before the first section is passed to the listener.
+   */
+  public Constants.ColumnFileFormatVersion getFormatVersion() {
+    return version;
+  }
   
   private int shouldHaveRead(int compressed, int uncompressed) {
     if (compressed > 0)
@@ -34,13 +42,15 @@ public class ColumnFileReader {
     // Header first
     readForMagicHeader(dataInputStream);
 
-    Constants.ColumnFileFormatVersion version = readForFormatVersion(dataInputStream);
+    version = readForFormatVersion(dataInputStream);
 
     switch (version) {
       case VERSION_1:
         readV1(dataInputStream, listener);
         break;
       case VERSION_2:
+      case VERSION_3:
+        // Version 3 only changes what is in the sections, the table of contents is the same.
         readV2(dataInputStream, listener);
         break;
       default:
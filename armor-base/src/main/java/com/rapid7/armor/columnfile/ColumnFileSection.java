@@ -9,7 +9,11 @@ public enum ColumnFileSection {
   ENTITY_DICTIONARY(2),
   VALUE_DICTIONARY(3),
   ENTITY_INDEX(4),
-  ROWGROUP(5);
+  ROWGROUP(5),
+  NULL_BITMAP(6), // only in V3
+  CHUNK_INDEX(7), // only in V3 with a chunked row group
+  ZONE_MAP(8), // only in V3
+  BLOOM_FILTER(9); // only in V3 with a bloom filter
 
   private final int sectionID;
 
@@ -0,0 +1,76 @@
+package com.rapid7.armor.columnfile;
+
+/**
+ * An independently compressed chunk of a chunked row group. Chunks start and end on entity boundaries, offsets are relative
+ * to the start of the row group's compressed and uncompressed bytes.
+ */
+public class RowGroupChunk {
+  public final static int BYTE_LENGTH = 8 * 4;
+  private final int compressedOffset;
+  private final int compressedLength;
+  private final int uncompressedOffset;
+  private final int uncompressedLength;
+  private final int startEntity;
+  private final int endEntity;
+  private final int startRow;
+  private final int endRow;
+
+  public RowGroupChunk(
+      int compressedOffset, int compressedLength, int uncompressedOffset, int uncompressedLength, int startEntity, int endEntity, int startRow, int endRow) {
+    this.compressedOffset = compressedOffset;
+    this.compressedLength = compressedLength;
+    this.uncompressedOffset = uncompressedOffset;
+    this.uncompressedLength = uncompressedLength;
+    this.startEntity = startEntity;
+    this.endEntity = endEntity;
+    this.startRow = startRow;
+    this.endRow = endRow;
+  }
+
+  public int getCompressedOffset() {
+    return compressedOffset;
+  }
+
+  public int getCompressedLength() {
+    return compressedLength;
+  }
+
+  public int getUncompressedOffset() {
+    return uncompressedOffset;
+  }
+
+  public int getUncompressedLength() {
+    return uncompressedLength;
+  }
+
+  /**
+   * @return The first entity of the chunk, as its position in the entity index.
+   */
+  public int getStartEntity() {
+    return startEntity;
+  }
+
+  /**
+   * @return The entity after the last entity of the chunk.
+   */
+  public int getEndEntity() {
+    return endEntity;
+  }
+
+  public int getStartRow() {
+    return startRow;
+  }
+
+  /**
+   * @return The row after the last row of the chunk.
+   */
+  public int getEndRow() {
+    return endRow;
+  }
+
+  @Override
+  public String toString() {
+    return "RowGroupChunk{compressed=" + compressedOffset + "+" + compressedLength + ", uncompressed=" + uncompressedOffset + "+"
+        + uncompressedLength + ", entities=" + startEntity + "-" + endEntity + ", rows=" + startRow + "-" + endRow + "}";
+  }
+}
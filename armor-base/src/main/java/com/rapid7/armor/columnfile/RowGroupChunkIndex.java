@@ -0,0 +1,80 @@
+package com.rapid7.armor.columnfile;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The chunks of a chunked row group, stored in the {@link ColumnFileSection#CHUNK_INDEX} section. Each chunk of the row group
+ * is a complete zstd frame, so the whole row group still decompresses as one, while a reader that only needs some rows can
+ * fetch and decompress just the chunks holding them.
+ */
+public class RowGroupChunkIndex {
+  private final List<RowGroupChunk> chunks;
+
+  public RowGroupChunkIndex(List<RowGroupChunk> chunks) {
+    this.chunks = Collections.unmodifiableList(new ArrayList<>(chunks));
+  }
+
+  public static RowGroupChunkIndex fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    List<RowGroupChunk> chunks = new ArrayList<>();
+    while (buffer.remaining() >= RowGroupChunk.BYTE_LENGTH) {
+      chunks.add(new RowGroupChunk(
+          buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt()));
+    }
+    return new RowGroupChunkIndex(chunks);
+  }
+
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(chunks.size() * RowGroupChunk.BYTE_LENGTH);
+    for (RowGroupChunk chunk : chunks) {
+      buffer.putInt(chunk.getCompressedOffset());
+      buffer.putInt(chunk.getCompressedLength());
+      buffer.putInt(chunk.getUncompressedOffset());
+      buffer.putInt(chunk.getUncompressedLength());
+      buffer.putInt(chunk.getStartEntity());
+      buffer.putInt(chunk.getEndEntity());
+      buffer.putInt(chunk.getStartRow());
+      buffer.putInt(chunk.getEndRow());
+    }
+    return buffer.array();
+  }
+
+  public List<RowGroupChunk> getChunks() {
+    return chunks;
+  }
+
+  /**
+   * @param startRow The first row.
+   * @param endRow The row after the last row.
+   *
+   * @return The chunks holding any of the rows, in row order.
+   */
+  public List<RowGroupChunk> chunksForRows(int startRow, int endRow) {
+    List<RowGroupChunk> result = new ArrayList<>();
+    if (startRow >= endRow)
+      return result;
+    int index = firstChunkEndingAfter(startRow);
+    for (int i = index; i < chunks.size() && chunks.get(i).getStartRow() < endRow; i++) {
+      if (chunks.get(i).getEndRow() > chunks.get(i).getStartRow())
+        result.add(chunks.get(i));
+    }
+    return result;
+  }
+
+  // Chunks are ordered by row, so binary search for the first one that holds rows at or past the given row.
+  private int firstChunkEndingAfter(int row) {
+    int low = 0;
+    int high = chunks.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (chunks.get(mid).getEndRow() <= row)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return low;
+  }
+}
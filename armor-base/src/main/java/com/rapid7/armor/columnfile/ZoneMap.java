@@ -0,0 +1,81 @@
+package com.rapid7.armor.columnfile;
+
+/**
+ * The stats of a range of rows of a row group, used to skip the range when a predicate can't match any of its values. Zones
+ * start and end on entity boundaries and line up with the row group's chunks if it was written in chunks.
+ */
+public class ZoneMap {
+  public final static int BYTE_LENGTH = 5 * 4 + 2 * 8;
+  private final int startEntity;
+  private final int endEntity;
+  private final int startRow;
+  private final int endRow;
+  private final int nullCount;
+  private final double minValue;
+  private final double maxValue;
+
+  /**
+   * @param minValue The smallest value, {@link Double#NaN} if the zone has no values with stats such as strings or only nulls.
+   * @param maxValue The largest value, {@link Double#NaN} if the zone has no values with stats.
+   */
+  public ZoneMap(int startEntity, int endEntity, int startRow, int endRow, int nullCount, double minValue, double maxValue) {
+    this.startEntity = startEntity;
+    this.endEntity = endEntity;
+    this.startRow = startRow;
+    this.endRow = endRow;
+    this.nullCount = nullCount;
+    this.minValue = minValue;
+    this.maxValue = maxValue;
+  }
+
+  public int getStartEntity() {
+    return startEntity;
+  }
+
+  /**
+   * @return The entity after the last entity of the zone.
+   */
+  public int getEndEntity() {
+    return endEntity;
+  }
+
+  public int getStartRow() {
+    return startRow;
+  }
+
+  /**
+   * @return The row after the last row of the zone.
+   */
+  public int getEndRow() {
+    return endRow;
+  }
+
+  public int getNumRows() {
+    return endRow - startRow;
+  }
+
+  public int getNullCount() {
+    return nullCount;
+  }
+
+  public double getMinValue() {
+    return minValue;
+  }
+
+  public double getMaxValue() {
+    return maxValue;
+  }
+
+  /**
+   * @return {@code true} if the min and max values are known.
+   */
+  public boolean hasMinMax() {
+    return !Double.isNaN(minValue) && !Double.isNaN(maxValue);
+  }
+
+  @Override
+  public String toString() {
+    return "ZoneMap{entities=" + startEntity + "-" + endEntity + ", rows=" + startRow + "-" + endRow + ", nulls=" + nullCount
+        + ", min=" + minValue + ", max=" + maxValue + "}";
+  }
+}
@@ -0,0 +1,45 @@
+package com.rapid7.armor.columnfile;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The zone maps of a row group in row order, stored in the {@link ColumnFileSection#ZONE_MAP} section.
+ */
+public class ZoneMapIndex {
+  private final List<ZoneMap> zones;
+
+  public ZoneMapIndex(List<ZoneMap> zones) {
+    this.zones = Collections.unmodifiableList(new ArrayList<>(zones));
+  }
+
+  public static ZoneMapIndex fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    List<ZoneMap> zones = new ArrayList<>();
+    while (buffer.remaining() >= ZoneMap.BYTE_LENGTH) {
+      zones.add(new ZoneMap(
+          buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getInt(), buffer.getDouble(), buffer.getDouble()));
+    }
+    return new ZoneMapIndex(zones);
+  }
+
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(zones.size() * ZoneMap.BYTE_LENGTH);
+    for (ZoneMap zone : zones) {
+      buffer.putInt(zone.getStartEntity());
+      buffer.putInt(zone.getEndEntity());
+      buffer.putInt(zone.getStartRow());
+      buffer.putInt(zone.getEndRow());
+      buffer.putInt(zone.getNullCount());
+      buffer.putDouble(zone.getMinValue());
+      buffer.putDouble(zone.getMaxValue());
+    }
+    return buffer.array();
+  }
+
+  public List<ZoneMap> getZones() {
+    return zones;
+  }
+}
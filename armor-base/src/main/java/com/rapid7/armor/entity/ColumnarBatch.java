@@ -0,0 +1,220 @@
+package com.rapid7.armor.entity;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import com.rapid7.armor.schema.ColumnId;
+import com.rapid7.armor.schema.DataType;
+
+/**
+ * A batch of entities laid out by column instead of by {@link Entity} and {@link Row}. The rows of all entities are held in
+ * one primitive array per column, the rows of an entity follow the rows of the entity before it. Values are never boxed on
+ * their way to the column files.
+ * <p>
+ * Column values are an {@code int[]} for integers, a {@code long[]} for longs and datetimes, a {@code float[]} for floats,
+ * a {@code double[]} for doubles and a {@code String[]} for strings. Nulls are the set bits of a {@link BitSet} indexed by
+ * the row in the batch, a null string can also be a null in the array.
+ */
+public class ColumnarBatch {
+  private final String entityIdColumn;
+  private final Object[] entityIds;
+  private final long[] versions;
+  private final String[] instanceIds;
+  private final int[] rowCounts;
+  private final int[] startRows;
+  private final int numRows;
+  private final List<BatchColumn> columns = new ArrayList<>();
+
+  /**
+   * A column of a batch.
+   */
+  public static class BatchColumn {
+    private final ColumnId columnId;
+    private final Object values;
+    private final BitSet nulls;
+
+    private BatchColumn(ColumnId columnId, Object values, BitSet nulls) {
+      this.columnId = columnId;
+      this.values = values;
+      this.nulls = nulls;
+    }
+
+    public ColumnId getColumnId() {
+      return columnId;
+    }
+
+    public DataType getDataType() {
+      return columnId.dataType();
+    }
+
+    /**
+     * @return The primitive array of values, see {@link ColumnarBatch} for the type of array of each data type.
+     */
+    public Object getValues() {
+      return values;
+    }
+
+    public boolean isNull(int row) {
+      if (nulls != null && nulls.get(row))
+        return true;
+      return values instanceof String[] && ((String[]) values)[row] == null;
+    }
+
+    /**
+     * @return The boxed value of a row, only meant for the occasional row since it boxes the value.
+     */
+    public Object getValue(int row) {
+      if (isNull(row))
+        return null;
+      switch (getDataType()) {
+        case INTEGER:
+          return ((int[]) values)[row];
+        case LONG:
+        case DATETIME:
+          return ((long[]) values)[row];
+        case FLOAT:
+          return ((float[]) values)[row];
+        case DOUBLE:
+          return ((double[]) values)[row];
+        case STRING:
+          return ((String[]) values)[row];
+        default:
+          throw new IllegalStateException("Unsupported data type " + getDataType());
+      }
+    }
+  }
+
+  /**
+   * @param entityIdColumn The name of the entity id column.
+   * @param entityIds The id of each entity, either all strings or all numeric ids.
+   * @param versions The version of each entity.
+   * @param instanceIds The instance id of each entity, may be {@code null} if no entity has one.
+   * @param rowCounts The number of rows of each entity.
+   */
+  public ColumnarBatch(String entityIdColumn, Object[] entityIds, long[] versions, String[] instanceIds, int[] rowCounts) {
+    if (entityIds.length != versions.length || entityIds.length != rowCounts.length || (instanceIds != null && instanceIds.length != entityIds.length))
+      throw new IllegalArgumentException("The entity ids, versions, instance ids and row counts must be of the same length");
+    for (Object entityId : entityIds) {
+      if (!(entityId instanceof String || entityId instanceof Integer || entityId instanceof Long))
+        throw new IllegalArgumentException("Entity ids must be string, long or int not " + (entityId == null ? null : entityId.getClass().getCanonicalName()));
+      if ((entityId instanceof String) != (entityIds[0] instanceof String))
+        throw new IllegalArgumentException("The entity ids of a batch must be either all strings or all numeric");
+    }
+    this.entityIdColumn = entityIdColumn;
+    this.entityIds = entityIds;
+    this.versions = versions;
+    this.instanceIds = instanceIds;
+    this.rowCounts = rowCounts;
+    this.startRows = new int[rowCounts.length];
+    int rows = 0;
+    for (int i = 0; i < rowCounts.length; i++) {
+      if (rowCounts[i] < 0)
+        throw new IllegalArgumentException("The row count of an entity cannot be negative");
+      startRows[i] = rows;
+      rows += rowCounts[i];
+    }
+    this.numRows = rows;
+  }
+
+  /**
+   * Adds a column to the batch.
+   *
+   * @param columnId The column.
+   * @param values The values of every row of the batch, see {@link ColumnarBatch} for the type of array.
+   * @param nulls The null rows, may be {@code null} if no row is null.
+   */
+  public void addColumn(ColumnId columnId, Object values, BitSet nulls) {
+    if (columnId.getName().equalsIgnoreCase(entityIdColumn))
+      throw new IllegalArgumentException("You defined a column with the same name as entityIdColumn, remove the that column definition it is not needed");
+    if (columns.stream().anyMatch(c -> c.getColumnId().getName().equals(columnId.getName())))
+      throw new IllegalArgumentException("The column " + columnId.getName() + " was already added to the batch");
+    int length;
+    switch (columnId.dataType()) {
+      case INTEGER:
+        length = ((int[]) checkArray(columnId, values, int[].class)).length;
+        break;
+      case LONG:
+      case DATETIME:
+        length = ((long[]) checkArray(columnId, values, long[].class)).length;
+        break;
+      case FLOAT:
+        length = ((float[]) checkArray(columnId, values, float[].class)).length;
+        break;
+      case DOUBLE:
+        length = ((double[]) checkArray(columnId, values, double[].class)).length;
+        break;
+      case STRING:
+        length = ((String[]) checkArray(columnId, values, String[].class)).length;
+        break;
+      default:
+        throw new IllegalArgumentException("The data type " + columnId.dataType() + " is not supported in columnar batches");
+    }
+    if (length != numRows)
+      throw new IllegalArgumentException("The column " + columnId.getName() + " has " + length + " values but the batch has " + numRows + " rows");
+    columns.add(new BatchColumn(columnId, values, nulls));
+  }
+
+  private static Object checkArray(ColumnId columnId, Object values, Class<?> arrayClass) {
+    if (!arrayClass.isInstance(values))
+      throw new IllegalArgumentException("The values of " + columnId + " must be a " + arrayClass.getSimpleName());
+    return values;
+  }
+
+  public String getEntityIdColumn() {
+    return entityIdColumn;
+  }
+
+  public ColumnId entityColumnId() {
+    return new ColumnId(entityIdColumn, DataType.inferDataType(entityIds.length == 0 ? 0 : entityIds[0]));
+  }
+
+  public int getNumEntities() {
+    return entityIds.length;
+  }
+
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public Object getEntityId(int entity) {
+    return entityIds[entity];
+  }
+
+  public long getVersion(int entity) {
+    return versions[entity];
+  }
+
+  public String getInstanceId(int entity) {
+    return instanceIds == null ? null : instanceIds[entity];
+  }
+
+  public int getStartRow(int entity) {
+    return startRows[entity];
+  }
+
+  public int getRowCount(int entity) {
+    return rowCounts[entity];
+  }
+
+  public List<BatchColumn> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Builds an {@link Entity} of one entity of the batch, this boxes every value so it isn't meant for the write path.
+   */
+  public Entity toEntity(int entity) {
+    List<ColumnId> columnIds = new ArrayList<>();
+    for (BatchColumn column : columns)
+      columnIds.add(column.getColumnId());
+    List<Row> rows = new ArrayList<>();
+    for (int row = startRows[entity]; row < startRows[entity] + rowCounts[entity]; row++) {
+      Object[] values = new Object[columns.size()];
+      for (int i = 0; i < values.length; i++)
+        values[i] = columns.get(i).getValue(row);
+      rows.add(new Row(values));
+    }
+    return Entity.buildEntity(entityIdColumn, entityIds[entity], versions[entity], getInstanceId(entity), columnIds, rows);
+  }
+}
@@ -0,0 +1,247 @@
+package com.rapid7.armor.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded pool of byte buffers in power of two size classes, from {@link #MIN_BUFFER_SIZE} bytes up to the max buffer
+ * size. Buffers are direct by default so channel reads and writes don't copy them through a temporary direct buffer.
+ * <p>
+ * Each thread keeps a few buffers of the smaller classes to itself so most acquires never touch shared state, the rest
+ * are shared between threads up to a cap on the idle bytes. Past the cap released buffers are dropped and left to the
+ * garbage collector, as are buffers larger than the max buffer size which are never pooled and always on the heap.
+ * <p>
+ * With leak detection on every acquired buffer is tracked until it is released, see {@link #getLeaks()}. It is meant for
+ * tests, a release of a buffer that isn't tracked is then an error.
+ */
+public class ByteBufferPool {
+  public final static int MIN_BUFFER_SIZE = 64;
+  public final static int DEFAULT_MAX_BUFFER_SIZE = 1 << 20;
+  public final static long DEFAULT_MAX_POOLED_BYTES = 64L << 20;
+  // Buffers each thread keeps of each size class up to the thread cache size.
+  private final static int THREAD_CACHE_BUFFERS = 2;
+  private final static int THREAD_CACHE_MAX_SIZE = 64 * 1024;
+  private final static ByteBufferPool SHARED = new ByteBufferPool(DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_BYTES, true);
+  private final int maxBufferSize;
+  private final long maxPooledBytes;
+  private final boolean direct;
+  private final ConcurrentLinkedQueue<ByteBuffer>[] pooled;
+  private final ThreadLocal<ArrayDeque<ByteBuffer>[]> threadCaches;
+  private final AtomicLong pooledBytes = new AtomicLong();
+  private final AtomicInteger pooledBuffers = new AtomicInteger();
+  private final LongAdder acquired = new LongAdder();
+  private final LongAdder released = new LongAdder();
+  private final LongAdder allocated = new LongAdder();
+  private final LongAdder unpooled = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private volatile Map<ByteBuffer, Throwable> outstanding;
+
+  /**
+   * @return The pool shared by the readers and writers.
+   */
+  public static ByteBufferPool shared() {
+    return SHARED;
+  }
+
+  /**
+   * @param maxBufferSize The largest buffer to pool, rounded up to a power of two.
+   * @param maxPooledBytes The cap on the bytes of the idle buffers shared between threads.
+   * @param direct Whether to pool direct buffers rather than heap buffers.
+   */
+  @SuppressWarnings("unchecked")
+  public ByteBufferPool(int maxBufferSize, long maxPooledBytes, boolean direct) {
+    if (maxBufferSize < MIN_BUFFER_SIZE || maxBufferSize > (1 << 30))
+      throw new IllegalArgumentException("The max buffer size must be between " + MIN_BUFFER_SIZE + " and " + (1 << 30) + " but was " + maxBufferSize);
+    if (maxPooledBytes < 0)
+      throw new IllegalArgumentException("The max pooled bytes cannot be negative but was " + maxPooledBytes);
+    this.maxBufferSize = Integer.highestOneBit(maxBufferSize - 1) << 1;
+    this.maxPooledBytes = maxPooledBytes;
+    this.direct = direct;
+    int numClasses = sizeClass(this.maxBufferSize) + 1;
+    this.pooled = new ConcurrentLinkedQueue[numClasses];
+    for (int i = 0; i < numClasses; i++)
+      pooled[i] = new ConcurrentLinkedQueue<>();
+    int numThreadClasses = Math.min(numClasses, sizeClass(THREAD_CACHE_MAX_SIZE) + 1);
+    this.threadCaches = ThreadLocal.withInitial(() -> {
+      ArrayDeque<ByteBuffer>[] caches = new ArrayDeque[numThreadClasses];
+      for (int i = 0; i < numThreadClasses; i++)
+        caches[i] = new ArrayDeque<>(THREAD_CACHE_BUFFERS);
+      return caches;
+    });
+  }
+
+  /**
+   * Acquires a buffer, it must be given back with {@link #release(ByteBuffer)} once it is no longer used.
+   *
+   * @param size The number of bytes needed.
+   *
+   * @return A cleared buffer with its limit at the size, its capacity may be larger.
+   */
+  public ByteBuffer acquire(int size) {
+    if (size < 0)
+      throw new IllegalArgumentException("The size of a buffer cannot be negative but was " + size);
+    acquired.increment();
+    ByteBuffer buffer;
+    if (size > maxBufferSize) {
+      unpooled.increment();
+      buffer = ByteBuffer.allocate(size);
+    } else {
+      int sizeClass = sizeClass(size);
+      ArrayDeque<ByteBuffer>[] caches = threadCaches.get();
+      buffer = sizeClass < caches.length ? caches[sizeClass].pollFirst() : null;
+      if (buffer == null) {
+        buffer = pooled[sizeClass].poll();
+        if (buffer != null) {
+          pooledBytes.addAndGet(-buffer.capacity());
+          pooledBuffers.decrementAndGet();
+        }
+      }
+      if (buffer == null) {
+        allocated.increment();
+        int capacity = MIN_BUFFER_SIZE << sizeClass;
+        buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+      }
+    }
+    buffer.clear();
+    buffer.limit(size);
+    Map<ByteBuffer, Throwable> tracked = outstanding;
+    if (tracked != null)
+      tracked.put(buffer, new Throwable("Buffer of " + size + " bytes acquired"));
+    return buffer;
+  }
+
+  /**
+   * Gives back a buffer taken from {@link #acquire(int)}, it must not be used afterwards.
+   *
+   * @param buffer The buffer, {@code null} is ignored.
+   */
+  public void release(ByteBuffer buffer) {
+    if (buffer == null)
+      return;
+    Map<ByteBuffer, Throwable> tracked = outstanding;
+    if (tracked != null && tracked.remove(buffer) == null)
+      throw new IllegalStateException("Released a buffer that wasn't acquired from the pool or was already released");
+    released.increment();
+    int capacity = buffer.capacity();
+    if (capacity > maxBufferSize || capacity < MIN_BUFFER_SIZE || Integer.bitCount(capacity) != 1 || buffer.isDirect() != direct || buffer.isReadOnly())
+      return; // Not one of ours, the ones too large to pool are among them.
+    int sizeClass = sizeClass(capacity);
+    buffer.clear();
+    ArrayDeque<ByteBuffer>[] caches = threadCaches.get();
+    if (sizeClass < caches.length && caches[sizeClass].size() < THREAD_CACHE_BUFFERS) {
+      caches[sizeClass].addFirst(buffer);
+      return;
+    }
+    if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+      pooledBytes.addAndGet(-capacity);
+      dropped.increment();
+      return;
+    }
+    pooledBuffers.incrementAndGet();
+    pooled[sizeClass].offer(buffer);
+  }
+
+  // The class of the smallest power of two at least the size, class zero is the min buffer size.
+  private static int sizeClass(int size) {
+    if (size <= MIN_BUFFER_SIZE)
+      return 0;
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - Integer.numberOfTrailingZeros(MIN_BUFFER_SIZE);
+  }
+
+  public int getMaxBufferSize() {
+    return maxBufferSize;
+  }
+
+  public long getMaxPooledBytes() {
+    return maxPooledBytes;
+  }
+
+  public boolean isDirect() {
+    return direct;
+  }
+
+  /**
+   * @return The number of idle buffers shared between threads, the ones kept by threads aren't counted.
+   */
+  public int getPooledBuffers() {
+    return pooledBuffers.get();
+  }
+
+  /**
+   * @return The bytes of the idle buffers shared between threads, at most the max pooled bytes.
+   */
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  public long getAcquired() {
+    return acquired.sum();
+  }
+
+  public long getReleased() {
+    return released.sum();
+  }
+
+  /**
+   * @return The number of buffers acquired but not released yet.
+   */
+  public long getOutstanding() {
+    return acquired.sum() - released.sum();
+  }
+
+  /**
+   * @return The number of buffers that were allocated for the pool because none were idle.
+   */
+  public long getAllocated() {
+    return allocated.sum();
+  }
+
+  /**
+   * @return The number of buffers that were too large to pool.
+   */
+  public long getUnpooled() {
+    return unpooled.sum();
+  }
+
+  /**
+   * @return The number of released buffers dropped because the pool was at its cap.
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   * Turns tracking of acquired buffers on or off. Buffers acquired while it is off must not be released while it is on.
+   */
+  public void setLeakDetection(boolean leakDetection) {
+    outstanding = leakDetection ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+  }
+
+  /**
+   * @return Where each buffer that is still acquired was acquired, empty unless leak detection is on.
+   */
+  public List<Throwable> getLeaks() {
+    Map<ByteBuffer, Throwable> tracked = outstanding;
+    if (tracked == null)
+      return Collections.emptyList();
+    synchronized (tracked) {
+      return new ArrayList<>(tracked.values());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ByteBufferPool{direct=" + direct + ", maxBufferSize=" + maxBufferSize + ", maxPooledBytes=" + maxPooledBytes +
+        ", pooledBuffers=" + getPooledBuffers() + ", pooledBytes=" + getPooledBytes() + ", acquired=" + getAcquired() +
+        ", outstanding=" + getOutstanding() + ", allocated=" + getAllocated() + ", unpooled=" + getUnpooled() + ", dropped=" + getDropped() + "}";
+  }
+}
@@ -22,6 +22,10 @@ public class ColumnMetadata {
   private String compressionAlgo = "zstd";
   private Double minValue;
   private Double maxValue;
+  private boolean statsExact = true;
+  private int nullCount = 0;
+  private byte[] distinctSketch;
+  private byte[] quantileSketch;
   private int numRows = 0;
   private int numEntities = 0;
   private int cardinality = 0;
@@ -92,6 +96,56 @@ public class ColumnMetadata {
     this.maxValue = maxValue;
   }
 
+  /**
+   * @return {@code false} if values were overwritten or deleted since the stats were last computed. The min and max then
+   * still cover every value but may be wider than the values left, the null count and sketches may still count the
+   * values that are gone.
+   */
+  public boolean getStatsExact() {
+    return statsExact;
+  }
+
+  public void setStatsExact(boolean statsExact) {
+    this.statsExact = statsExact;
+  }
+
+  /**
+   * @return The number of null rows, for strings the rows of the null surrogate.
+   */
+  public int getNullCount() {
+    return nullCount;
+  }
+
+  public void setNullCount(int nullCount) {
+    this.nullCount = nullCount;
+  }
+
+  /**
+   * @return The registers of a {@link com.rapid7.armor.sketch.HyperLogLog} of the non-null values, strings are added by
+   * value. Sketches of different shards can be merged for an approximate distinct count. {@code null} if the column was
+   * written before sketches were kept.
+   */
+  public byte[] getDistinctSketch() {
+    return distinctSketch;
+  }
+
+  public void setDistinctSketch(byte[] distinctSketch) {
+    this.distinctSketch = distinctSketch;
+  }
+
+  /**
+   * @return The bytes of a {@link com.rapid7.armor.sketch.QuantileSketch} of the non-null values of a numeric column,
+   * sketches of different shards can be merged for approximate percentiles. {@code null} for other columns or if the
+   * column was written before sketches were kept.
+   */
+  public byte[] getQuantileSketch() {
+    return quantileSketch;
+  }
+
+  public void setQuantileSketch(byte[] quantileSketch) {
+    this.quantileSketch = quantileSketch;
+  }
+
   public DataType getColumnType() {
     return dataType;
   }
@@ -67,6 +67,22 @@ public enum DataType {
     return usedBytes / byteLength;
   }
 
+  /**
+   * @return {@code true} for the types whose values are numbers rather than strings or booleans.
+   */
+  public boolean isNumeric() {
+    switch (this) {
+      case INTEGER:
+      case LONG:
+      case DATETIME:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
   public int getByteLength() {
     return this.byteLength;
   }
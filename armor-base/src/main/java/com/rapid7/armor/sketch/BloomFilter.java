@@ -0,0 +1,127 @@
+package com.rapid7.armor.sketch;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A bloom filter for testing if a value may be in a set of values, it never returns a false negative. Values are hashed the
+ * same way as {@link HyperLogLog} so a filter built on the write side can be tested on the read side.
+ * <p>
+ * Numbers are hashed by value, so a whole number added as an int matches the same number tested as a long or a double.
+ */
+public class BloomFilter {
+  private final static int MAX_HASHES = 16;
+  private final int numHashes;
+  private final long[] bits;
+  private final long numBits;
+
+  /**
+   * @param expectedValues The number of distinct values expected to be added.
+   * @param falsePositiveRate The rate of false positives to size the filter for, between zero and one.
+   */
+  public BloomFilter(int expectedValues, double falsePositiveRate) {
+    if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+      throw new IllegalArgumentException("The false positive rate must be between zero and one but was " + falsePositiveRate);
+    int values = Math.max(1, expectedValues);
+    long optimalBits = (long) Math.ceil(-values * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+    this.bits = new long[(int) Math.max(1, (optimalBits + 63) / 64)];
+    this.numBits = (long) bits.length * 64;
+    this.numHashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round((double) numBits / values * Math.log(2))));
+  }
+
+  private BloomFilter(int numHashes, long[] bits) {
+    this.numHashes = numHashes;
+    this.bits = bits;
+    this.numBits = (long) bits.length * 64;
+  }
+
+  /**
+   * Rebuilds a filter from its bytes, see {@link #toBytes()}.
+   */
+  public static BloomFilter fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    int numHashes = buffer.getInt();
+    if (numHashes < 1 || numHashes > MAX_HASHES || buffer.remaining() % 8 != 0 || buffer.remaining() == 0)
+      throw new IllegalArgumentException("The bytes are not a valid bloom filter");
+    long[] bits = new long[buffer.remaining() / 8];
+    buffer.asLongBuffer().get(bits);
+    return new BloomFilter(numHashes, bits);
+  }
+
+  public byte[] toBytes() {
+    ByteBuffer buffer = ByteBuffer.allocate(4 + bits.length * 8);
+    buffer.putInt(numHashes);
+    buffer.asLongBuffer().put(bits);
+    return buffer.array();
+  }
+
+  public int getNumHashes() {
+    return numHashes;
+  }
+
+  public long getNumBits() {
+    return numBits;
+  }
+
+  public void addNumber(Number value) {
+    addHash(hashNumber(value));
+  }
+
+  public void addBytes(byte[] value) {
+    addHash(HyperLogLog.hash64(value));
+  }
+
+  public boolean mightContainNumber(Number value) {
+    return mightContainHash(hashNumber(value));
+  }
+
+  public boolean mightContainBytes(byte[] value) {
+    return mightContainHash(HyperLogLog.hash64(value));
+  }
+
+  public void addHash(long hash) {
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 1; i <= numHashes; i++) {
+      long bit = bitIndex(h1 + i * h2);
+      bits[(int) (bit >>> 6)] |= 1L << bit;
+    }
+  }
+
+  public boolean mightContainHash(long hash) {
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 1; i <= numHashes; i++) {
+      long bit = bitIndex(h1 + i * h2);
+      if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0)
+        return false;
+    }
+    return true;
+  }
+
+  private long bitIndex(int combined) {
+    return (combined & 0x7fffffffL) % numBits;
+  }
+
+  // Whole numbers hash as longs whatever their type, others by their double bits.
+  private static long hashNumber(Number value) {
+    if (value instanceof Double || value instanceof Float)
+      return hashDouble(value.doubleValue());
+    return hashLong(value.longValue());
+  }
+
+  /**
+   * @return The hash {@link #addHash(long)} takes for a whole number, the same as adding it with {@link #addNumber(Number)}.
+   */
+  public static long hashLong(long value) {
+    return HyperLogLog.mix64(value);
+  }
+
+  /**
+   * @return The hash {@link #addHash(long)} takes for a double, the same as adding it with {@link #addNumber(Number)}.
+   */
+  public static long hashDouble(double value) {
+    if (value == Math.rint(value) && value >= Long.MIN_VALUE && value <= Long.MAX_VALUE)
+      return HyperLogLog.mix64((long) value);
+    return HyperLogLog.mix64(Double.doubleToLongBits(value));
+  }
+}
@@ -0,0 +1,173 @@
+package com.rapid7.armor.sketch;
+
+import java.util.Arrays;
+
+/**
+ * A small HyperLogLog sketch for approximating the number of distinct values. Sketches with the same precision
+ * can be merged, so partial results from different shards can be combined into one estimate.
+ * <p>
+ * Values are hashed with a 64 bit mix so the same value always lands in the same register regardless of which
+ * shard or jvm added it.
+ */
+public class HyperLogLog {
+  public final static int DEFAULT_PRECISION = 12;
+  private final static int MIN_PRECISION = 4;
+  private final static int MAX_PRECISION = 16;
+  private final static long FNV_OFFSET = 0xcbf29ce484222325L;
+  private final static long FNV_PRIME = 0x100000001b3L;
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog() {
+    this(DEFAULT_PRECISION);
+  }
+
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION)
+      throw new IllegalArgumentException("The precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + " but was " + precision);
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  /**
+   * Rebuilds a sketch from its registers, see {@link #getRegisters()}.
+   *
+   * @param registers The registers of a previous sketch.
+   */
+  public HyperLogLog(byte[] registers) {
+    int precision = Integer.numberOfTrailingZeros(registers.length);
+    if (registers.length != 1 << precision || precision < MIN_PRECISION || precision > MAX_PRECISION)
+      throw new IllegalArgumentException("The number of registers " + registers.length + " is not a valid sketch size");
+    this.precision = precision;
+    this.registers = Arrays.copyOf(registers, registers.length);
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  public byte[] getRegisters() {
+    return registers;
+  }
+
+  public void addLong(long value) {
+    addHash(mix64(value));
+  }
+
+  public void addDouble(double value) {
+    addHash(mix64(Double.doubleToLongBits(value)));
+  }
+
+  public void addBytes(byte[] value) {
+    addHash(hash64(value));
+  }
+
+  public void addHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // Guard bit keeps the rank bounded when the remaining bits are all zero.
+    long remaining = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+    if (rank > registers[index])
+      registers[index] = rank;
+  }
+
+  public void merge(HyperLogLog other) {
+    if (other == null)
+      return;
+    if (other.precision != precision)
+      throw new IllegalArgumentException("Unable to merge sketches of precision " + precision + " and " + other.precision);
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i])
+        registers[i] = other.registers[i];
+    }
+  }
+
+  public boolean isEmpty() {
+    for (byte register : registers) {
+      if (register != 0)
+        return false;
+    }
+    return true;
+  }
+
+  public long cardinality() {
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0d / (1L << register);
+      if (register == 0)
+        zeros++;
+    }
+    double estimate = alpha(m) * m * m / sum;
+    if (estimate <= 2.5d * m && zeros > 0) {
+      // Small range correction, linear counting is far more accurate here.
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16:
+        return 0.673d;
+      case 32:
+        return 0.697d;
+      case 64:
+        return 0.709d;
+      default:
+        return 0.7213d / (1 + 1.079d / m);
+    }
+  }
+
+  public static long mix64(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  public static long hash64(byte[] value) {
+    long hash = FNV_OFFSET;
+    for (byte b : value)
+      hash = fnv(hash, b);
+    return mix64(hash);
+  }
+
+  /**
+   * Hashes a string the same as {@link #hash64(byte[])} hashes its UTF-8 bytes, without encoding it. Unpaired surrogates
+   * hash as the {@code '?'} the encoder replaces them with.
+   */
+  public static long hashUtf8(CharSequence value) {
+    long hash = FNV_OFFSET;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        hash = fnv(hash, c);
+      } else if (c < 0x800) {
+        hash = fnv(hash, 0xc0 | (c >> 6));
+        hash = fnv(hash, 0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        hash = fnv(hash, 0xf0 | (codePoint >> 18));
+        hash = fnv(hash, 0x80 | ((codePoint >> 12) & 0x3f));
+        hash = fnv(hash, 0x80 | ((codePoint >> 6) & 0x3f));
+        hash = fnv(hash, 0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        hash = fnv(hash, '?');
+      } else {
+        hash = fnv(hash, 0xe0 | (c >> 12));
+        hash = fnv(hash, 0x80 | ((c >> 6) & 0x3f));
+        hash = fnv(hash, 0x80 | (c & 0x3f));
+      }
+    }
+    return mix64(hash);
+  }
+
+  private static long fnv(long hash, int b) {
+    hash ^= (byte) b;
+    return hash * FNV_PRIME;
+  }
+}
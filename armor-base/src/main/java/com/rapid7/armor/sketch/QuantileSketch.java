@@ -0,0 +1,282 @@
+package com.rapid7.armor.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A sketch for approximating quantiles of numbers, every quantile it returns is within a relative error of the true value.
+ * Values are counted in logarithmically sized buckets so the sketch stays small whatever the number of values, and sketches
+ * with the same relative accuracy can be merged, so partial results from different shards can be combined into one.
+ * <p>
+ * Past {@link #MAX_BUCKETS} buckets of a sign the buckets of the values closest to zero are collapsed together, only the
+ * quantiles that fall in them lose their accuracy.
+ */
+public class QuantileSketch {
+  public final static double DEFAULT_RELATIVE_ACCURACY = 0.01;
+  public final static int MAX_BUCKETS = 2048;
+  // Magnitudes below this are counted as zero, which keeps the bucket indexes in range.
+  private final static double MIN_MAGNITUDE = 1e-100;
+  private final double relativeAccuracy;
+  private final double gamma;
+  private final double logGamma;
+  private final Buckets positive = new Buckets();
+  private final Buckets negative = new Buckets();
+  private long zeroCount;
+  private long count;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+
+  // Counts of a contiguous range of bucket indexes.
+  private static class Buckets {
+    private long[] counts = new long[0];
+    private int offset; // The bucket index of counts[0]
+    private int minIndex;
+    private int maxIndex;
+    private long total;
+
+    void add(int index, long count) {
+      if (total == 0) {
+        minIndex = index;
+        maxIndex = index;
+      } else {
+        minIndex = Math.min(minIndex, index);
+        maxIndex = Math.max(maxIndex, index);
+      }
+      int low = Math.max(minIndex, maxIndex - MAX_BUCKETS + 1);
+      if (counts.length == 0 || low < offset || maxIndex >= offset + counts.length || low > minIndex)
+        resize(low);
+      counts[Math.max(index, minIndex) - offset] += count;
+      total += count;
+    }
+
+    // Makes the counts hold minIndex to maxIndex, the buckets under the low index are collapsed into it.
+    private void resize(int low) {
+      int length = Math.min(MAX_BUCKETS, Math.max(maxIndex - low + 1, counts.length * 2));
+      int newOffset = low < offset || counts.length == 0 ? maxIndex - length + 1 : low;
+      newOffset = Math.min(newOffset, low);
+      long[] resized = new long[Math.max(length, maxIndex - newOffset + 1)];
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0)
+          resized[Math.max(offset + i, low) - newOffset] += counts[i];
+      }
+      counts = resized;
+      offset = newOffset;
+      minIndex = low;
+    }
+
+    long count(int index) {
+      int i = index - offset;
+      return i < 0 || i >= counts.length ? 0 : counts[i];
+    }
+  }
+
+  public QuantileSketch() {
+    this(DEFAULT_RELATIVE_ACCURACY);
+  }
+
+  /**
+   * @param relativeAccuracy The relative error allowed on the quantiles, between zero and one.
+   */
+  public QuantileSketch(double relativeAccuracy) {
+    if (relativeAccuracy <= 0 || relativeAccuracy >= 1)
+      throw new IllegalArgumentException("The relative accuracy must be between zero and one but was " + relativeAccuracy);
+    this.relativeAccuracy = relativeAccuracy;
+    this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+    this.logGamma = Math.log(gamma);
+  }
+
+  public double getRelativeAccuracy() {
+    return relativeAccuracy;
+  }
+
+  /**
+   * @return The number of values added.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  public boolean isEmpty() {
+    return count == 0;
+  }
+
+  public void add(double value) {
+    add(value, 1);
+  }
+
+  private void add(double value, long times) {
+    if (Double.isNaN(value))
+      return;
+    if (value > MIN_MAGNITUDE)
+      positive.add(index(value), times);
+    else if (value < -MIN_MAGNITUDE)
+      negative.add(index(-value), times);
+    else
+      zeroCount += times;
+    count += times;
+    if (value < min)
+      min = value;
+    if (value > max)
+      max = value;
+  }
+
+  private int index(double magnitude) {
+    return (int) Math.ceil(Math.log(magnitude) / logGamma);
+  }
+
+  // The value every magnitude in the bucket is within the relative accuracy of.
+  private double value(int index) {
+    return 2 * Math.pow(gamma, index) / (gamma + 1);
+  }
+
+  public void merge(QuantileSketch other) {
+    if (other == null || other.count == 0)
+      return;
+    if (other.relativeAccuracy != relativeAccuracy)
+      throw new IllegalArgumentException("Unable to merge sketches of relative accuracy " + relativeAccuracy + " and " + other.relativeAccuracy);
+    mergeBuckets(positive, other.positive);
+    mergeBuckets(negative, other.negative);
+    zeroCount += other.zeroCount;
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  private static void mergeBuckets(Buckets into, Buckets from) {
+    if (from.total == 0)
+      return;
+    for (int index = from.minIndex; index <= from.maxIndex; index++) {
+      long bucketCount = from.count(index);
+      if (bucketCount > 0)
+        into.add(index, bucketCount);
+    }
+  }
+
+  /**
+   * @param quantile The quantile between zero and one, 0.5 for the median.
+   *
+   * @return The approximate value at the quantile or {@code null} if no values were added.
+   */
+  public Double getQuantile(double quantile) {
+    if (quantile < 0 || quantile > 1)
+      throw new IllegalArgumentException("The quantile must be between zero and one but was " + quantile);
+    if (count == 0)
+      return null;
+    long rank = (long) Math.floor(quantile * (count - 1));
+    // The smallest and largest values are known exactly.
+    if (rank == 0)
+      return min;
+    if (rank == count - 1)
+      return max;
+    long seen = 0;
+    // From the most negative values up to the most positive ones.
+    if (negative.total > 0) {
+      for (int index = negative.maxIndex; index >= negative.minIndex; index--) {
+        seen += negative.count(index);
+        if (seen > rank)
+          return clamp(-value(index));
+      }
+    }
+    seen += zeroCount;
+    if (seen > rank)
+      return clamp(0);
+    for (int index = positive.minIndex; index <= positive.maxIndex; index++) {
+      seen += positive.count(index);
+      if (seen > rank)
+        return clamp(value(index));
+    }
+    return max;
+  }
+
+  private double clamp(double value) {
+    return Math.max(min, Math.min(max, value));
+  }
+
+  /**
+   * @return The sketch as bytes, see {@link #fromBytes(byte[])}.
+   */
+  public byte[] toBytes() {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteBuffer header = ByteBuffer.allocate(8 * 3);
+    header.putDouble(relativeAccuracy);
+    header.putDouble(min);
+    header.putDouble(max);
+    out.write(header.array(), 0, header.capacity());
+    writeVarLong(out, zeroCount);
+    writeBuckets(out, positive);
+    writeBuckets(out, negative);
+    return out.toByteArray();
+  }
+
+  /**
+   * Rebuilds a sketch from its bytes, see {@link #toBytes()}.
+   */
+  public static QuantileSketch fromBytes(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    try {
+      QuantileSketch sketch = new QuantileSketch(buffer.getDouble());
+      double min = buffer.getDouble();
+      double max = buffer.getDouble();
+      sketch.zeroCount = readVarLong(buffer);
+      sketch.count = sketch.zeroCount + readBuckets(buffer, sketch.positive) + readBuckets(buffer, sketch.negative);
+      sketch.min = min;
+      sketch.max = max;
+      return sketch;
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("The bytes are not a valid quantile sketch", e);
+    }
+  }
+
+  private static void writeBuckets(ByteArrayOutputStream out, Buckets buckets) {
+    if (buckets.total == 0) {
+      writeVarLong(out, 0);
+      return;
+    }
+    writeVarLong(out, buckets.maxIndex - buckets.minIndex + 1);
+    writeVarLong(out, zigZag(buckets.minIndex));
+    for (int index = buckets.minIndex; index <= buckets.maxIndex; index++)
+      writeVarLong(out, buckets.count(index));
+  }
+
+  private static long readBuckets(ByteBuffer buffer, Buckets buckets) {
+    long numBuckets = readVarLong(buffer);
+    if (numBuckets < 0 || numBuckets > MAX_BUCKETS)
+      throw new IllegalArgumentException("Invalid number of buckets " + numBuckets);
+    if (numBuckets == 0)
+      return 0;
+    long minIndex = readVarLong(buffer);
+    int index = (int) ((minIndex >>> 1) ^ -(minIndex & 1));
+    long total = 0;
+    for (int i = 0; i < numBuckets; i++, index++) {
+      long bucketCount = readVarLong(buffer);
+      if (bucketCount > 0) {
+        buckets.add(index, bucketCount);
+        total += bucketCount;
+      }
+    }
+    return total;
+  }
+
+  private static long zigZag(int value) {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  private static void writeVarLong(ByteArrayOutputStream out, long value) {
+    while ((value & ~0x7fL) != 0) {
+      out.write((int) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static long readVarLong(ByteBuffer buffer) {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = buffer.get();
+      value |= (long) (b & 0x7f) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IllegalArgumentException("Malformed variable length number");
+  }
+}
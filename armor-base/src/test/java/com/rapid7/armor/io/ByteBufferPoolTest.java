@@ -0,0 +1,103 @@
+package com.rapid7.armor.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+public class ByteBufferPoolTest {
+
+  @Test
+  public void sizeClasses() {
+    ByteBufferPool pool = new ByteBufferPool(1000, 1 << 20, true);
+    assertEquals(1024, pool.getMaxBufferSize());
+    ByteBuffer small = pool.acquire(1);
+    assertTrue(small.isDirect());
+    assertEquals(ByteBufferPool.MIN_BUFFER_SIZE, small.capacity());
+    assertEquals(1, small.limit());
+    ByteBuffer medium = pool.acquire(65);
+    assertEquals(128, medium.capacity());
+    assertEquals(65, medium.remaining());
+    ByteBuffer large = pool.acquire(5000);
+    assertFalse(large.isDirect());
+    assertEquals(5000, large.capacity());
+    assertEquals(1, pool.getUnpooled());
+    assertEquals(3, pool.getOutstanding());
+
+    pool.release(small);
+    pool.release(medium);
+    pool.release(large);
+    assertEquals(0, pool.getOutstanding());
+    // Released buffers are reused by their size class, cleared to the size asked for.
+    ByteBuffer reused = pool.acquire(100);
+    assertSame(medium, reused);
+    assertEquals(0, reused.position());
+    assertEquals(100, reused.limit());
+    assertNotSame(large, pool.acquire(5000));
+    assertThrows(IllegalArgumentException.class, () -> pool.acquire(-1));
+  }
+
+  @Test
+  public void pooledBytesAreCapped() {
+    ByteBufferPool pool = new ByteBufferPool(1024, 2048, false);
+    List<ByteBuffer> buffers = new ArrayList<>();
+    for (int i = 0; i < 10; i++)
+      buffers.add(pool.acquire(1024));
+    assertEquals(10, pool.getAllocated());
+    buffers.forEach(pool::release);
+    // Two are kept by the thread, two more fit under the cap and the rest are dropped.
+    assertEquals(2, pool.getPooledBuffers());
+    assertEquals(2048, pool.getPooledBytes());
+    assertEquals(6, pool.getDropped());
+  }
+
+  @Test
+  public void sharedBetweenThreads() throws Exception {
+    ByteBufferPool pool = new ByteBufferPool(1 << 16, 1 << 20, true);
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < 1000; i++) {
+            ByteBuffer buffer = pool.acquire(1 + i * 50 % 70000);
+            buffer.put(0, (byte) 1);
+            pool.release(buffer);
+          }
+        }));
+      }
+      for (Future<?> future : futures)
+        future.get();
+    } finally {
+      executor.shutdown();
+    }
+    assertEquals(4000, pool.getAcquired());
+    assertEquals(0, pool.getOutstanding());
+    assertTrue(pool.getPooledBytes() <= pool.getMaxPooledBytes());
+  }
+
+  @Test
+  public void leakDetection() {
+    ByteBufferPool pool = new ByteBufferPool(1024, 1 << 20, true);
+    pool.setLeakDetection(true);
+    ByteBuffer leaked = pool.acquire(10);
+    ByteBuffer returned = pool.acquire(10);
+    pool.release(returned);
+    assertEquals(1, pool.getLeaks().size());
+    assertThrows(IllegalStateException.class, () -> pool.release(returned));
+    assertThrows(IllegalStateException.class, () -> pool.release(ByteBuffer.allocateDirect(64)));
+    pool.release(leaked);
+    assertTrue(pool.getLeaks().isEmpty());
+  }
+}
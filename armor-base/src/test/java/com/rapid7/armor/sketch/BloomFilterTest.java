@@ -0,0 +1,48 @@
+package com.rapid7.armor.sketch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class BloomFilterTest {
+
+  @Test
+  public void noFalseNegatives() {
+    BloomFilter filter = new BloomFilter(10000, 0.01);
+    for (int i = 0; i < 5000; i++) {
+      filter.addNumber(i * 7);
+      filter.addBytes(("host" + i).getBytes());
+    }
+    for (int i = 0; i < 5000; i++) {
+      assertTrue(filter.mightContainNumber(i * 7));
+      assertTrue(filter.mightContainNumber((long) i * 7)); // Numbers match by value, not type
+      assertTrue(filter.mightContainNumber((double) i * 7));
+      assertTrue(filter.mightContainBytes(("host" + i).getBytes()));
+    }
+    assertTrue(filter.mightContainNumber(7.0f));
+
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (filter.mightContainBytes(("other" + i).getBytes()))
+        falsePositives++;
+    }
+    assertTrue(falsePositives < 10000 * 0.02, "False positives " + falsePositives);
+  }
+
+  @Test
+  public void serialize() {
+    BloomFilter filter = new BloomFilter(100, 0.001);
+    filter.addNumber(1.5d);
+    filter.addNumber(42L);
+    BloomFilter copy = BloomFilter.fromBytes(filter.toBytes());
+    assertEquals(filter.getNumHashes(), copy.getNumHashes());
+    assertEquals(filter.getNumBits(), copy.getNumBits());
+    assertTrue(copy.mightContainNumber(1.5d));
+    assertTrue(copy.mightContainNumber(42));
+    assertFalse(copy.mightContainNumber(43));
+    assertThrows(IllegalArgumentException.class, () -> new BloomFilter(100, 1));
+  }
+}
@@ -0,0 +1,55 @@
+package com.rapid7.armor.sketch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class HyperLogLogTest {
+
+  @Test
+  public void estimates() {
+    HyperLogLog hll = new HyperLogLog();
+    assertTrue(hll.isEmpty());
+    assertEquals(0, hll.cardinality());
+    for (long i = 0; i < 100000; i++) {
+      hll.addLong(i);
+      hll.addLong(i); // Duplicates should never change the estimate.
+    }
+    assertWithinError(100000, hll.cardinality(), 0.05);
+
+    HyperLogLog small = new HyperLogLog();
+    for (int i = 0; i < 10; i++)
+      small.addBytes(("value" + i).getBytes());
+    assertEquals(10, small.cardinality());
+  }
+
+  @Test
+  public void merge() {
+    HyperLogLog a = new HyperLogLog();
+    HyperLogLog b = new HyperLogLog();
+    for (long i = 0; i < 50000; i++)
+      a.addLong(i);
+    for (long i = 25000; i < 75000; i++)
+      b.addLong(i);
+    a.merge(b);
+    assertWithinError(75000, a.cardinality(), 0.05);
+
+    HyperLogLog copy = new HyperLogLog(a.getRegisters());
+    assertEquals(a.cardinality(), copy.cardinality());
+    assertThrows(IllegalArgumentException.class, () -> a.merge(new HyperLogLog(10)));
+  }
+
+  @Test
+  public void hashUtf8() {
+    for (String value : new String[] {"", "texas", "caf\u00e9", "\u20ac100", "\ud83d\ude00 smile", "lone \ud83d"})
+      assertEquals(HyperLogLog.hash64(value.getBytes(StandardCharsets.UTF_8)), HyperLogLog.hashUtf8(value), value);
+  }
+
+  private void assertWithinError(long expected, long actual, double error) {
+    assertTrue(Math.abs(expected - actual) <= expected * error, "Expected " + expected + " but estimated " + actual);
+  }
+}
@@ -0,0 +1,72 @@
+package com.rapid7.armor.sketch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class QuantileSketchTest {
+
+  @Test
+  public void quantiles() {
+    QuantileSketch sketch = new QuantileSketch();
+    assertTrue(sketch.isEmpty());
+    assertNull(sketch.getQuantile(0.5));
+    for (int i = 1; i <= 100000; i++)
+      sketch.add(i);
+    assertEquals(100000, sketch.getCount());
+    assertEquals(1d, sketch.getQuantile(0));
+    assertEquals(100000d, sketch.getQuantile(1));
+    for (double q : new double[] {0.01, 0.25, 0.5, 0.9, 0.99})
+      assertWithinAccuracy(sketch, Math.floor(q * 99999) + 1, sketch.getQuantile(q));
+    assertThrows(IllegalArgumentException.class, () -> sketch.getQuantile(1.5));
+  }
+
+  @Test
+  public void negativesAndZeros() {
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = -50; i <= 50; i++)
+      sketch.add(i);
+    assertEquals(-50d, sketch.getQuantile(0));
+    assertEquals(0d, sketch.getQuantile(0.5));
+    assertWithinAccuracy(sketch, -25, sketch.getQuantile(0.25));
+    assertWithinAccuracy(sketch, 25, sketch.getQuantile(0.75));
+  }
+
+  @Test
+  public void merge() {
+    QuantileSketch a = new QuantileSketch();
+    QuantileSketch b = new QuantileSketch();
+    for (int i = 1; i <= 1000; i++) {
+      if (i % 2 == 0)
+        a.add(i);
+      else
+        b.add(i);
+    }
+    a.merge(b);
+    assertEquals(1000, a.getCount());
+    assertWithinAccuracy(a, 500, a.getQuantile(0.5));
+    QuantileSketch lessAccurate = new QuantileSketch(0.05);
+    lessAccurate.add(1);
+    assertThrows(IllegalArgumentException.class, () -> a.merge(lessAccurate));
+  }
+
+  @Test
+  public void toBytes() {
+    QuantileSketch sketch = new QuantileSketch();
+    for (int i = -1000; i <= 100000; i += 7)
+      sketch.add(i * 1.5);
+    sketch.add(0);
+    QuantileSketch copy = QuantileSketch.fromBytes(sketch.toBytes());
+    assertEquals(sketch.getCount(), copy.getCount());
+    for (double q = 0; q <= 1; q += 0.1)
+      assertEquals(sketch.getQuantile(q), copy.getQuantile(q));
+    assertTrue(QuantileSketch.fromBytes(new QuantileSketch().toBytes()).isEmpty());
+  }
+
+  private void assertWithinAccuracy(QuantileSketch sketch, double expected, double actual) {
+    assertTrue(Math.abs(expected - actual) <= Math.abs(expected) * sketch.getRelativeAccuracy(), "Expected " + expected + " but got " + actual);
+  }
+}
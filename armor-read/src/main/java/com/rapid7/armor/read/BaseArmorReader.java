@@ -1,17 +1,97 @@
 package com.rapid7.armor.read;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.rapid7.armor.interval.Interval;
 import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.read.slow.SlowArmorShardColumn;
 import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.shard.ShardStrategy;
 import com.rapid7.armor.store.ReadStore;
 
-public class BaseArmorReader {
+/**
+ * Readers fan out over shards on a thread pool. A reader given no pool creates its own, which is shut down when the reader
+ * is closed, a pool given to the reader is left to the caller.
+ */
+public class BaseArmorReader implements Closeable {
+  /**
+   * Threads of the pool a reader creates for itself. Reads block on the store, so there are more than there are processors.
+   */
+  public static final int DEFAULT_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+  private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
   protected ReadStore store;
+  protected final ExecutorService threadPool;
+  protected final ShardStrategy shardStrategy;
+  private final boolean selfPool;
 
   public BaseArmorReader(ReadStore store) {
+    this(store, null, null);
+  }
+
+  /**
+   * Constructs a reader.
+   *
+   * @param store The store to read from.
+   * @param threadPool A thread pool used by apis that fan out over multiple shards, {@code null} for one of the reader's own.
+   */
+  public BaseArmorReader(ReadStore store, ExecutorService threadPool) {
+    this(store, null, threadPool);
+  }
+
+  /**
+   * Constructs a reader.
+   *
+   * @param store The store to read from.
+   * @param shardStrategy The shard strategy the tables were written with, required by apis that route entities to shards.
+   * @param threadPool A thread pool used by apis that fan out over multiple shards, {@code null} for one of the reader's own.
+   */
+  public BaseArmorReader(ReadStore store, ShardStrategy shardStrategy, ExecutorService threadPool) {
     this.store = store;
+    this.shardStrategy = shardStrategy;
+    this.selfPool = threadPool == null;
+    this.threadPool = threadPool == null ? newThreadPool() : threadPool;
+  }
+
+  /**
+   * Creates the reader's own pool. Its threads are started as tasks come in and stop once idle, and they are daemons, so a
+   * reader that is never closed holds no threads when it isn't reading and doesn't keep the JVM alive.
+   */
+  private static ExecutorService newThreadPool() {
+    int pool = POOL_COUNTER.incrementAndGet();
+    AtomicInteger threadCounter = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        DEFAULT_THREADS, DEFAULT_THREADS, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+          Thread thread = new Thread(r, "armor-reader-" + pool + "-" + threadCounter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  /**
+   * Shuts down the reader's own thread pool, a pool given to the reader is left running. Scans and cursors still open can't
+   * be read once the reader's own pool is shut down.
+   */
+  @Override
+  public void close() {
+    if (selfPool)
+      threadPool.shutdown();
   }
 
   public ColumnMetadata getColumnMetadata(ShardId shardId, String columnName) throws IOException {
@@ -22,4 +102,66 @@ public class BaseArmorReader {
       return null;
     return armorShard.getMetadata();
   }
+
+  /**
+   * Groups entities by the shard they live in, shards that don't exist are left out.
+   *
+   * @param tenant The tenant.
+   * @param table The table.
+   * @param interval The interval.
+   * @param timestamp The timestamp within the interval.
+   * @param entityIds The entity ids to group.
+   *
+   * @return The entities of each existing shard.
+   */
+  protected Map<ShardId, List<Object>> groupByShard(String tenant, String table, Interval interval, Instant timestamp, Collection<?> entityIds) {
+    if (shardStrategy == null)
+      throw new IllegalStateException("A shard strategy must be given to the reader to route entities to shards");
+    Map<ShardId, List<Object>> shardToEntities = new HashMap<>();
+    for (Object entityId : entityIds) {
+      ShardId shardId = ShardId.buildShardId(tenant, table, interval, timestamp, shardStrategy.shardNum(entityId));
+      shardToEntities.computeIfAbsent(shardId, k -> new ArrayList<>()).add(entityId);
+    }
+    shardToEntities.keySet().removeIf(shardId -> !store.shardIdExists(shardId));
+    return shardToEntities;
+  }
+
+  /**
+   * Runs the tasks on the reader's thread pool and waits for all of them.
+   *
+   * @param tasks The tasks to run.
+   *
+   * @return The results in the same order as the tasks.
+   */
+  protected <T> List<T> runAll(List<Callable<T>> tasks) {
+    try {
+      List<T> results = new ArrayList<>(tasks.size());
+      for (Future<T> future : threadPool.invokeAll(tasks))
+        results.add(await(future));
+      return results;
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    }
+  }
+
+  /**
+   * Waits for a task submitted to the reader's thread pool, failures of the task are rethrown.
+   *
+   * @param future The task to wait for.
+   *
+   * @return The result of the task.
+   */
+  protected static <T> T await(Future<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    } catch (ExecutionException ee) {
+      if (ee.getCause() instanceof RuntimeException)
+        throw (RuntimeException) ee.getCause();
+      throw new RuntimeException(ee.getCause());
+    }
+  }
 }
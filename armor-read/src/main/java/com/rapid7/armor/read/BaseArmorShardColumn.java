@@ -5,77 +5,210 @@ import static com.rapid7.armor.Constants.RECORD_SIZE_BYTES;
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
 import com.github.luben.zstd.Zstd;
 import com.rapid7.armor.Constants;
+import com.rapid7.armor.columnfile.RowGroupChunkIndex;
+import com.rapid7.armor.columnfile.ZoneMap;
+import com.rapid7.armor.columnfile.ZoneMapIndex;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.io.IOTools;
 import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.read.predicate.ColumnMetadataPredicateUtils;
+import com.rapid7.armor.read.predicate.Predicate;
+import com.rapid7.armor.sketch.BloomFilter;
 
 public abstract class BaseArmorShardColumn {
   protected ColumnMetadata metadata;
   protected DictionaryReader strValueDictionary;
   protected DictionaryReader entityDictionaryReader;
   protected List<EntityRecord> entityRecords;
+  protected byte[] nullBitmaps; // The null bitmap section, only version 3 files have one
+  protected RowGroupChunkIndex rowGroupChunks; // Only set if the row group was written in chunks
+  protected ZoneMapIndex zoneMaps; // Only version 3 files have zone maps
+  protected BloomFilter bloomFilter; // Only set if the file was written with a bloom filter
 
   protected abstract int readRowGroup(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException;
 
   public ColumnMetadata columnMetadata() {
     return metadata;
   }
+
+  /**
+   * @return The chunks the row group was compressed in, {@code null} if it was compressed as a whole.
+   */
+  public RowGroupChunkIndex getRowGroupChunks() {
+    return rowGroupChunks;
+  }
+
+  /**
+   * @return The zone maps of the row group, {@code null} if the file doesn't have any.
+   */
+  public ZoneMapIndex getZoneMaps() {
+    return zoneMaps;
+  }
+
+  /**
+   * @return The bloom filter of the column's values, {@code null} if the file doesn't have one.
+   */
+  public BloomFilter getBloomFilter() {
+    return bloomFilter;
+  }
+
+  /**
+   * Determines if the column may have values matching all of the predicates on this column using its bloom filter,
+   * predicates on other columns are ignored.
+   *
+   * @param predicates The predicates to test.
+   *
+   * @return {@code false} only if no value of the column can match.
+   */
+  public boolean mayMatch(List<Predicate<?>> predicates) {
+    if (bloomFilter == null)
+      return true;
+    for (Predicate<?> predicate : predicates) {
+      if (predicate.getField().equals(metadata.getColumnName())
+          && !ColumnMetadataPredicateUtils.bloomMayMatch(predicate, metadata.getColumnType(), bloomFilter))
+        return false;
+    }
+    return true;
+  }
+
+  /**
+   * Finds the zones of the row group that may have rows matching all of the predicates on this column, predicates on other
+   * columns are ignored. No zone matches if the bloom filter rules out the column, see {@link #mayMatch(List)}.
+   *
+   * @param predicates The predicates to test.
+   *
+   * @return The zones that can't be skipped in row order, {@code null} if the file doesn't have zone maps.
+   */
+  public List<ZoneMap> zonesMayMatch(List<Predicate<?>> predicates) {
+    if (zoneMaps == null)
+      return null;
+    List<ZoneMap> zones = new ArrayList<>();
+    if (!mayMatch(predicates))
+      return zones;
+    for (ZoneMap zone : zoneMaps.getZones()) {
+      if (zoneMayMatch(zone, predicates))
+        zones.add(zone);
+    }
+    return zones;
+  }
+
+  private boolean zoneMayMatch(ZoneMap zone, List<Predicate<?>> predicates) {
+    for (Predicate<?> predicate : predicates) {
+      if (predicate.getField().equals(metadata.getColumnName())
+          && !ColumnMetadataPredicateUtils.zoneMayMatch(predicate, metadata.getColumnType(), zone))
+        return false;
+    }
+    return true;
+  }
   
-  protected int readValueDictionary(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException {
-    // Read string value dictionary (if required)
-    int read = 0;
+  /**
+   * Reads a whole section into an array of exactly its uncompressed length. A compressed section is read as is and
+   * decompressed with a single call, the lengths from the section header size both arrays up front.
+   *
+   * @param inputStream The stream positioned at the start of the section's bytes.
+   * @param compressed The compressed length of the section, zero if it isn't compressed.
+   * @param uncompressed The uncompressed length of the section.
+   *
+   * @return The uncompressed section.
+   */
+  protected static byte[] readSection(InputStream inputStream, int compressed, int uncompressed) throws IOException {
     if (compressed > 0) {
-      byte[] compressedIndex = new byte[compressed];
-      read = IOTools.readFully(inputStream, compressedIndex, 0, compressed);
-      byte[] decomporessedIndex = Zstd.decompress(compressedIndex, uncompressed);
-      strValueDictionary = new DictionaryReader(decomporessedIndex, metadata.getCardinality(), true);
-    } else if (uncompressed > 0) {
-      byte[] decompressed = new byte[uncompressed];
-      read = IOTools.readFully(inputStream, decompressed, 0, uncompressed);
-      strValueDictionary = new DictionaryReader(decompressed, metadata.getCardinality(), true);
+      byte[] compressedBytes = new byte[compressed];
+      IOTools.readFully(inputStream, compressedBytes, 0, compressed);
+      return decompress(compressedBytes, uncompressed);
     }
-    return read;
+    byte[] uncompressedBytes = new byte[uncompressed];
+    IOTools.readFully(inputStream, uncompressedBytes, 0, uncompressed);
+    return uncompressedBytes;
+  }
+
+  /**
+   * Decompresses a whole section into an array of exactly its uncompressed length.
+   */
+  protected static byte[] decompress(byte[] compressed, int uncompressed) {
+    byte[] decompressed = new byte[uncompressed];
+    long size = Zstd.decompressByteArray(decompressed, 0, uncompressed, compressed, 0, compressed.length);
+    if (Zstd.isError(size))
+      throw new RuntimeException("Unable to decompress section: " + Zstd.getErrorName(size));
+    if (size != uncompressed)
+      throw new IllegalStateException("Decompressed " + size + " bytes but the section header expects " + uncompressed);
+    return decompressed;
+  }
+
+  protected static int sectionLength(int compressed, int uncompressed) {
+    return compressed > 0 ? compressed : uncompressed;
+  }
+
+  protected int readValueDictionary(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException {
+    // Read string value dictionary (if required)
+    if (compressed <= 0 && uncompressed <= 0)
+      return 0;
+    strValueDictionary = new DictionaryReader(readSection(inputStream, compressed, uncompressed), metadata.getCardinality(), true);
+    return sectionLength(compressed, uncompressed);
   }
   
   protected int readEntityIndex(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
-    int read = 0;
-    if (compressed > 0) {
-      byte[] compressedIndex = new byte[compressed];
-      read = IOTools.readFully(inputStream, compressedIndex, 0, compressed);
-      byte[] decompressedIndex = Zstd.decompress(compressedIndex, uncompressed);
-      try (DataInputStream uncompressedInputStream = new DataInputStream(new ByteArrayInputStream(decompressedIndex))) {
-        entityRecords = readAllIndexRecords(uncompressedInputStream, uncompressed);
-      }
-    } else {
-      byte[] entityIndexBytes = new byte[uncompressed];
-      read = IOTools.readFully(inputStream, entityIndexBytes, 0, uncompressed);
-      try (DataInputStream uncompressedInputStream = new DataInputStream(new ByteArrayInputStream(entityIndexBytes))) {
-        entityRecords = readAllIndexRecords(uncompressedInputStream, uncompressed);
-      }
+    byte[] entityIndexBytes = readSection(inputStream, compressed, uncompressed);
+    try (DataInputStream uncompressedInputStream = new DataInputStream(new ByteArrayInputStream(entityIndexBytes))) {
+      entityRecords = readAllIndexRecords(uncompressedInputStream, uncompressed);
     }
     entityRecords = EntityRecord.sortActiveRecordsByOffset(entityRecords);
-    return read;
+    return sectionLength(compressed, uncompressed);
   }
 
   protected int readEntityDictionary(
     DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException { 
-    int read = 0;
-    if (compressed > 0) {
-      byte[] compressedIndex = new byte[compressed];
-      read = inputStream.read(compressedIndex);
-      byte[] decomporessedIndex = Zstd.decompress(compressedIndex, uncompressed);
-      entityDictionaryReader = new DictionaryReader(decomporessedIndex, metadata.getNumEntities(), true);
-    } else if (uncompressed > 0) {
-      byte[] unCompressedIndex = new byte[uncompressed];
-      read = inputStream.read(unCompressedIndex);
-      entityDictionaryReader = new DictionaryReader(unCompressedIndex, metadata.getNumEntities(), true);
-    }
-    return read;
+    if (compressed <= 0 && uncompressed <= 0)
+      return 0;
+    entityDictionaryReader = new DictionaryReader(readSection(inputStream, compressed, uncompressed), metadata.getNumEntities(), true);
+    return sectionLength(compressed, uncompressed);
+  }
+
+  protected int readNullBitmaps(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
+    nullBitmaps = readSection(inputStream, compressed, uncompressed);
+    return sectionLength(compressed, uncompressed);
+  }
+
+  protected int readBloomFilter(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
+    bloomFilter = BloomFilter.fromBytes(readSection(inputStream, compressed, uncompressed));
+    return sectionLength(compressed, uncompressed);
+  }
+
+  protected int readZoneMaps(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
+    zoneMaps = ZoneMapIndex.fromBytes(readSection(inputStream, compressed, uncompressed));
+    return sectionLength(compressed, uncompressed);
+  }
+
+  protected int readChunkIndex(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
+    rowGroupChunks = RowGroupChunkIndex.fromBytes(readSection(inputStream, compressed, uncompressed));
+    return sectionLength(compressed, uncompressed);
+  }
+
+  /**
+   * @return The buffer holding the null bitmap of an entity, positioned at the bitmap. Version 3 files keep the bitmaps in their
+   * own section in entity order, older files right after the values of the entity in the row group.
+   */
+  protected ByteBuffer nullBitmap(EntityRecord record, byte[] rowGroup, int nullBitmapOffset) {
+    if (nullBitmaps != null)
+      return ByteBuffer.wrap(nullBitmaps, nullBitmapOffset, record.getNullLength()).slice();
+    return ByteBuffer.wrap(rowGroup, record.getRowGroupOffset() + record.getValueLength(), record.getNullLength()).slice();
+  }
+
+  /**
+   * Same as {@link #nullBitmap(EntityRecord, byte[], int)} for a row group that is streamed, an older file's bitmap is
+   * read from the row group right after the values of the entity.
+   */
+  protected ByteBuffer readNullBitmap(EntityRecord record, RowGroupReader rowGroup, int nullBitmapOffset) throws IOException {
+    if (nullBitmaps != null)
+      return ByteBuffer.wrap(nullBitmaps, nullBitmapOffset, record.getNullLength()).slice();
+    return rowGroup.readNullBitmap(record.getNullLength());
   }
 
   protected List<EntityRecord> readAllIndexRecords(DataInputStream inputStream, int originalLength) throws IOException {
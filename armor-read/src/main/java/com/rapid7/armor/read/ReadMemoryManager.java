@@ -0,0 +1,316 @@
+package com.rapid7.armor.read;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.fast.FastArmorShardColumn;
+import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.store.ReadStore;
+
+/**
+ * A memory budget shared by everything on the read side that holds decoded column data, such as {@link com.rapid7.armor.store.CachingReadStore}
+ * and a {@link com.rapid7.armor.read.fast.FastArmorReader} given one. Bytes are reserved before they are loaded and
+ * released once they are no longer held, {@link #load(ReadStore, ShardId, String)} does both for a shard column.
+ * <p>
+ * A reservation that doesn't fit first asks the registered {@link Evictor}s to free memory, caches give up their least
+ * recently used entries this way. If nothing can be evicted the caller waits until enough bytes are released, so a burst of
+ * loads queues instead of running out of heap. A reservation larger than the whole budget is admitted once nothing else is
+ * reserved, so it can't wait forever.
+ */
+public class ReadMemoryManager {
+  private final long maxBytes;
+  private final List<Evictor> evictors = new CopyOnWriteArrayList<>();
+  private long reservedBytes;
+  private long peakReservedBytes;
+  private long evictedBytes;
+  private long waits;
+  private int waiting;
+
+  /**
+   * Frees memory held under a {@link ReadMemoryManager}.
+   */
+  @FunctionalInterface
+  public interface Evictor {
+    /**
+     * Frees up to about the requested bytes, the evictor must {@link ReadMemoryManager#release(long)} what it frees.
+     * This is never called while the manager's lock is held.
+     *
+     * @param bytes The bytes needed.
+     *
+     * @return The bytes freed, zero if nothing could be freed.
+     */
+    long evict(long bytes);
+  }
+
+  /**
+   * @param maxBytes The limit of bytes that can be reserved at once.
+   */
+  public ReadMemoryManager(long maxBytes) {
+    if (maxBytes <= 0)
+      throw new IllegalArgumentException("The memory budget must be greater than zero");
+    this.maxBytes = maxBytes;
+  }
+
+  public void addEvictor(Evictor evictor) {
+    evictors.add(evictor);
+  }
+
+  public void removeEvictor(Evictor evictor) {
+    evictors.remove(evictor);
+  }
+
+  /**
+   * Estimates the decoded size of a column from the shard metadata, the size of its values and entity arrays.
+   *
+   * @param metadata The metadata of the shard, can be {@code null}.
+   * @param columnName The column.
+   *
+   * @return The estimated bytes, zero if the column isn't in the metadata.
+   */
+  public static long estimateBytes(ShardMetadata metadata, String columnName) {
+    if (metadata == null || metadata.getColumnMetadata() == null)
+      return 0;
+    for (ColumnMetadata cm : metadata.getColumnMetadata()) {
+      if (cm != null && columnName.equals(cm.getColumnName()))
+        return (long) cm.getNumRows() * cm.getColumnType().getByteLength() + (long) cm.getNumEntities() * 12;
+    }
+    return 0;
+  }
+
+  /**
+   * Loads a shard column against the budget. The size estimated from the shard metadata is reserved up front, evicting or
+   * waiting until it fits, and settled to the decoded size once loaded. The caller must {@link #release(long)} the
+   * column's {@link FastArmorShardColumn#memoryUsage()} once it no longer holds on to the column.
+   *
+   * @param store The store to load from.
+   * @param shardId The shard.
+   * @param columnName The column.
+   *
+   * @return The column or {@code null} if it isn't in the shard, in which case nothing stays reserved.
+   */
+  public FastArmorShardColumn load(ReadStore store, ShardId shardId, String columnName) {
+    return load(store, shardId, columnName, true);
+  }
+
+  /**
+   * Loads a shard column against the budget, see {@link #load(ReadStore, ShardId, String)}.
+   *
+   * @param withEntityDictionary If {@code false} the column may be loaded without its entity dictionary.
+   */
+  public FastArmorShardColumn load(ReadStore store, ShardId shardId, String columnName, boolean withEntityDictionary) {
+    return load(store, shardId, columnName, withEntityDictionary, estimateBytes(store.getShardMetadata(shardId), columnName));
+  }
+
+  /**
+   * Loads a shard column against the budget with a size estimated by the caller, see {@link #load(ReadStore, ShardId, String)}.
+   * Callers that already hold the shard metadata pass {@link #estimateBytes(ShardMetadata, String)} of it rather than have
+   * the metadata fetched again for every column.
+   *
+   * @param withEntityDictionary If {@code false} the column may be loaded without its entity dictionary.
+   * @param estimate The bytes to reserve up front.
+   */
+  public FastArmorShardColumn load(ReadStore store, ShardId shardId, String columnName, boolean withEntityDictionary, long estimate) {
+    reserve(estimate);
+    FastArmorShardColumn column;
+    try {
+      column = store.getFastArmorShard(shardId, columnName, withEntityDictionary);
+    } catch (Throwable t) {
+      release(estimate);
+      throw t;
+    }
+    long bytes = column == null ? 0 : column.memoryUsage();
+    if (bytes > estimate)
+      grow(bytes - estimate);
+    else
+      release(estimate - bytes);
+    return column;
+  }
+
+  /**
+   * Releases the bytes of a column loaded with {@link #load(ReadStore, ShardId, String)}.
+   *
+   * @param column The column, can be {@code null}.
+   */
+  public void release(FastArmorShardColumn column) {
+    if (column != null)
+      release(column.memoryUsage());
+  }
+
+  /**
+   * Reserves bytes, evicting or waiting until they fit in the budget.
+   *
+   * @param bytes The bytes to reserve.
+   */
+  public void reserve(long bytes) {
+    try {
+      tryReserve(bytes, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(ie);
+    }
+  }
+
+  /**
+   * Reserves bytes, evicting or waiting up to the timeout until they fit in the budget.
+   *
+   * @param bytes The bytes to reserve.
+   * @param timeout The maximum time to wait.
+   * @param unit The unit of the timeout.
+   *
+   * @return {@code true} if the bytes were reserved, {@code false} if the timeout elapsed first.
+   *
+   * @throws InterruptedException If interrupted while waiting.
+   */
+  public boolean tryReserve(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+    if (bytes < 0)
+      throw new IllegalArgumentException("Can't reserve a negative number of bytes");
+    long deadline = System.nanoTime() + Math.min(unit.toNanos(timeout), Long.MAX_VALUE / 2);
+    boolean waited = false;
+    try {
+      while (true) {
+        long needed;
+        synchronized (this) {
+          if (fits(bytes)) {
+            add(bytes);
+            return true;
+          }
+          needed = reservedBytes + bytes - maxBytes;
+        }
+        // Evictors release what they free, which takes this lock, so they are called without holding it.
+        long freed = evict(needed);
+        synchronized (this) {
+          if (fits(bytes)) {
+            add(bytes);
+            return true;
+          }
+          if (freed > 0)
+            continue;
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0)
+            return false;
+          if (!waited) {
+            waited = true;
+            waits++;
+            waiting++;
+          }
+          TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+      }
+    } finally {
+      if (waited) {
+        synchronized (this) {
+          waiting--;
+        }
+      }
+    }
+  }
+
+  /**
+   * Reserves bytes that are already allocated without waiting, for instance when a load turned out larger than estimated.
+   * This can put the manager over budget until other reservations are released.
+   *
+   * @param bytes The bytes to reserve.
+   */
+  public synchronized void grow(long bytes) {
+    if (bytes < 0)
+      throw new IllegalArgumentException("Can't reserve a negative number of bytes");
+    add(bytes);
+  }
+
+  /**
+   * Releases previously reserved bytes, waking up any waiting reservations.
+   *
+   * @param bytes The bytes to release.
+   */
+  public synchronized void release(long bytes) {
+    if (bytes < 0)
+      throw new IllegalArgumentException("Can't release a negative number of bytes");
+    if (bytes > reservedBytes)
+      throw new IllegalStateException("Releasing " + bytes + " bytes but only " + reservedBytes + " are reserved");
+    if (bytes == 0)
+      return;
+    reservedBytes -= bytes;
+    notifyAll();
+  }
+
+  private boolean fits(long bytes) {
+    return reservedBytes == 0 || reservedBytes + bytes <= maxBytes;
+  }
+
+  private void add(long bytes) {
+    reservedBytes += bytes;
+    if (reservedBytes > peakReservedBytes)
+      peakReservedBytes = reservedBytes;
+  }
+
+  private long evict(long bytes) {
+    long freed = 0;
+    for (Evictor evictor : evictors) {
+      if (freed >= bytes)
+        break;
+      freed += evictor.evict(bytes - freed);
+    }
+    if (freed > 0) {
+      synchronized (this) {
+        evictedBytes += freed;
+      }
+    }
+    return freed;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  public synchronized long getReservedBytes() {
+    return reservedBytes;
+  }
+
+  public synchronized long getAvailableBytes() {
+    return Math.max(0, maxBytes - reservedBytes);
+  }
+
+  /**
+   * @return The fraction of the budget reserved, above one while over budget.
+   */
+  public synchronized double getUtilization() {
+    return (double) reservedBytes / maxBytes;
+  }
+
+  /**
+   * @return The most bytes that were ever reserved at once.
+   */
+  public synchronized long getPeakReservedBytes() {
+    return peakReservedBytes;
+  }
+
+  /**
+   * @return The total bytes freed by evictors to make room for reservations.
+   */
+  public synchronized long getEvictedBytes() {
+    return evictedBytes;
+  }
+
+  /**
+   * @return The number of reservations that had to wait.
+   */
+  public synchronized long getWaits() {
+    return waits;
+  }
+
+  /**
+   * @return The number of reservations currently waiting.
+   */
+  public synchronized int getWaiting() {
+    return waiting;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ReadMemoryManager{reserved=" + reservedBytes + ", max=" + maxBytes + ", peak=" + peakReservedBytes
+        + ", evicted=" + evictedBytes + ", waits=" + waits + ", waiting=" + waiting + "}";
+  }
+}
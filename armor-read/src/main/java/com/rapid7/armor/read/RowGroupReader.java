@@ -0,0 +1,153 @@
+package com.rapid7.armor.read;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.rapid7.armor.io.IOTools;
+
+/**
+ * Reads a row group section front to back, entity by entity. A compressed row group is decompressed as it is read, so
+ * only the compressed bytes and whatever the caller copies out are held, never the whole decompressed row group.
+ * <p>
+ * Entities must be read in offset order, the bytes of deleted entities in between are skipped with {@link #skipTo(int)}.
+ * Once done {@link #finish()} checks the row group holds exactly the bytes its section header says.
+ */
+public class RowGroupReader implements AutoCloseable {
+  private final InputStream source;
+  private final boolean decompressing;
+  private final DataInputStream dataInputStream;
+  private final int compressed;
+  private final int uncompressed;
+  private byte[] nullBuffer = new byte[0];
+  private int position;
+
+  /**
+   * @param inputStream The stream positioned at the start of the row group's bytes.
+   * @param compressed The compressed length of the row group, zero if it isn't compressed.
+   * @param uncompressed The uncompressed length of the row group.
+   */
+  public RowGroupReader(InputStream inputStream, int compressed, int uncompressed) throws IOException {
+    this.compressed = compressed;
+    this.uncompressed = uncompressed;
+    this.decompressing = compressed > 0;
+    if (decompressing) {
+      // Bounded to the section so the decompressor can't read ahead into the next one.
+      byte[] compressedBytes = new byte[compressed];
+      IOTools.readFully(inputStream, compressedBytes, 0, compressed);
+      source = new ZstdInputStream(new ByteArrayInputStream(compressedBytes));
+    } else {
+      source = inputStream;
+    }
+    dataInputStream = new DataInputStream(new CountingInputStream(source));
+  }
+
+  /**
+   * @return The uncompressed offset of the next byte to read.
+   */
+  public int position() {
+    return position;
+  }
+
+  /**
+   * @return The bytes of the section taken from the stream given to this reader, what is left of the section can be
+   * skipped by the caller when it stops reading part way.
+   */
+  public int sectionBytesRead() {
+    return decompressing ? compressed : position;
+  }
+
+  /**
+   * Skips forward to an offset, the offsets in between belong to deleted entities.
+   */
+  public void skipTo(int offset) throws IOException {
+    if (offset < position)
+      throw new IllegalStateException("Can't go back to offset " + offset + " of the row group from " + position);
+    // Read rather than skipped, skip doesn't tell the end of the stream apart from nothing skipped.
+    byte[] skipBuffer = null;
+    while (position < offset) {
+      if (skipBuffer == null)
+        skipBuffer = new byte[Math.min(offset - position, 8192)];
+      readFully(skipBuffer, 0, Math.min(offset - position, skipBuffer.length));
+    }
+  }
+
+  public void readFully(byte[] buffer, int offset, int length) throws IOException {
+    IOTools.readFully(dataInputStream, buffer, offset, length);
+  }
+
+  /**
+   * @return A stream over the rest of the row group, reads through it move this reader along.
+   */
+  public DataInputStream dataInputStream() {
+    return dataInputStream;
+  }
+
+  /**
+   * Reads the null bitmap of an entity into a buffer that is reused by the next call.
+   *
+   * @param length The length of the bitmap.
+   *
+   * @return The bitmap, only valid until the next read.
+   */
+  public ByteBuffer readNullBitmap(int length) throws IOException {
+    if (nullBuffer.length < length)
+      nullBuffer = new byte[Math.max(length, nullBuffer.length * 2)];
+    readFully(nullBuffer, 0, length);
+    return ByteBuffer.wrap(nullBuffer, 0, length);
+  }
+
+  /**
+   * Skips the bytes after the last entity and checks the row group ends where its section header says.
+   *
+   * @throws IOException If the row group is shorter than its header says.
+   * @throws IllegalStateException If the row group is longer than its header says.
+   */
+  public void finish() throws IOException {
+    skipTo(uncompressed);
+    // An uncompressed row group is followed by the next section, so only a decompressed one can be checked for extra bytes.
+    if (decompressing && dataInputStream.read() != -1)
+      throw new IllegalStateException("The row group is longer than the " + uncompressed + " bytes the section header expects");
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The stream of an uncompressed row group belongs to the caller.
+    if (decompressing)
+      source.close();
+  }
+
+  private final class CountingInputStream extends FilterInputStream {
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = in.read();
+      if (b != -1)
+        position++;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int read = in.read(b, off, len);
+      if (read > 0)
+        position += read;
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = in.skip(n);
+      if (skipped > 0)
+        position += (int) skipped;
+      return skipped;
+    }
+  }
+}
@@ -0,0 +1,222 @@
+package com.rapid7.armor.read.aggregate;
+
+import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.sketch.HyperLogLog;
+import com.rapid7.armor.sketch.QuantileSketch;
+
+/**
+ * A partial aggregate of a single column. Partials are computed per shard and then merged together, only the
+ * functions that were requested are guaranteed to be populated.
+ */
+public class Aggregate {
+  private DataType dataType;
+  private long count;
+  private long countNonNull;
+  private long longSum;
+  private double doubleSum;
+  private double min = Double.POSITIVE_INFINITY;
+  private double max = Double.NEGATIVE_INFINITY;
+  private HyperLogLog distinct;
+  private QuantileSketch quantiles;
+  private boolean fromMetadata = false;
+
+  public Aggregate(DataType dataType, boolean trackDistinct) {
+    this(dataType, trackDistinct, false);
+  }
+
+  /**
+   * @param dataType The type of column.
+   * @param trackDistinct Whether to track the approximate number of distinct values.
+   * @param trackQuantiles Whether to track the approximate quantiles, only numeric columns have them.
+   */
+  public Aggregate(DataType dataType, boolean trackDistinct, boolean trackQuantiles) {
+    this.dataType = dataType;
+    if (trackDistinct)
+      this.distinct = new HyperLogLog();
+    if (trackQuantiles && isNumeric(dataType))
+      this.quantiles = new QuantileSketch();
+  }
+
+  /**
+   * Builds an aggregate purely from the stats and sketches of the column, this can answer everything but the sum. See
+   * {@link AggregateFunction#answerableFromMetadata(java.util.Set, ColumnMetadata)} for when the metadata is enough.
+   *
+   * @param metadata The metadata of the column shard.
+   *
+   * @return The aggregate.
+   */
+  public static Aggregate fromMetadata(ColumnMetadata metadata) {
+    Aggregate aggregate = new Aggregate(metadata.getColumnType(), false);
+    aggregate.count = metadata.getNumRows();
+    aggregate.countNonNull = metadata.getNumRows() - metadata.getNullCount();
+    if (metadata.getDistinctSketch() != null)
+      aggregate.distinct = new HyperLogLog(metadata.getDistinctSketch());
+    if (metadata.getQuantileSketch() != null)
+      aggregate.quantiles = QuantileSketch.fromBytes(metadata.getQuantileSketch());
+    // String min/max are tracked on surrogates which have no meaning outside of the shard.
+    if (isNumeric(metadata.getColumnType())) {
+      if (metadata.getMinValue() != null)
+        aggregate.min = metadata.getMinValue();
+      if (metadata.getMaxValue() != null)
+        aggregate.max = metadata.getMaxValue();
+    }
+    aggregate.fromMetadata = true;
+    return aggregate;
+  }
+
+  /**
+   * Builds an aggregate where every row is null, this is used when a shard doesn't have the column.
+   *
+   * @param dataType The type of column.
+   * @param numRows The number of rows in the shard.
+   *
+   * @return The aggregate.
+   */
+  public static Aggregate allNull(DataType dataType, int numRows) {
+    Aggregate aggregate = new Aggregate(dataType, false);
+    aggregate.count = numRows;
+    aggregate.fromMetadata = true;
+    return aggregate;
+  }
+
+  public static boolean isNumeric(DataType dataType) {
+    return dataType != null && dataType.isNumeric();
+  }
+
+  public void acceptNull() {
+    count++;
+  }
+
+  public void acceptNonNull() {
+    count++;
+    countNonNull++;
+  }
+
+  public void acceptLong(long value) {
+    count++;
+    countNonNull++;
+    longSum += value;
+    if (value < min)
+      min = value;
+    if (value > max)
+      max = value;
+    if (distinct != null)
+      distinct.addLong(value);
+    if (quantiles != null)
+      quantiles.add(value);
+  }
+
+  public void acceptDouble(double value) {
+    count++;
+    countNonNull++;
+    doubleSum += value;
+    if (value < min)
+      min = value;
+    if (value > max)
+      max = value;
+    if (distinct != null)
+      distinct.addDouble(value);
+    if (quantiles != null)
+      quantiles.add(value);
+  }
+
+  public HyperLogLog distinct() {
+    return distinct;
+  }
+
+  public QuantileSketch quantiles() {
+    return quantiles;
+  }
+
+  public void merge(Aggregate other) {
+    if (other == null)
+      return;
+    if (dataType == null)
+      dataType = other.dataType;
+    count += other.count;
+    countNonNull += other.countNonNull;
+    longSum += other.longSum;
+    doubleSum += other.doubleSum;
+    if (other.min < min)
+      min = other.min;
+    if (other.max > max)
+      max = other.max;
+    if (other.distinct != null) {
+      if (distinct == null)
+        distinct = new HyperLogLog(other.distinct.getPrecision());
+      distinct.merge(other.distinct);
+    }
+    if (other.quantiles != null) {
+      if (quantiles == null)
+        quantiles = new QuantileSketch(other.quantiles.getRelativeAccuracy());
+      quantiles.merge(other.quantiles);
+    }
+    fromMetadata = fromMetadata && other.fromMetadata;
+  }
+
+  public DataType getDataType() {
+    return dataType;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  public long getCountNonNull() {
+    return countNonNull;
+  }
+
+  /**
+   * @return The sum as a {@link Long} for integral columns or a {@link Double} for floating columns, {@code null} if the column
+   * isn't numeric.
+   */
+  public Number getSum() {
+    if (!isNumeric(dataType))
+      return null;
+    if (dataType == DataType.FLOAT || dataType == DataType.DOUBLE)
+      return doubleSum;
+    return longSum;
+  }
+
+  public Double getMin() {
+    return min == Double.POSITIVE_INFINITY ? null : min;
+  }
+
+  public Double getMax() {
+    return max == Double.NEGATIVE_INFINITY ? null : max;
+  }
+
+  /**
+   * @return The approximate number of distinct non-null values or {@code null} if it wasn't tracked.
+   */
+  public Long getApproxDistinct() {
+    if (distinct == null)
+      return null;
+    return distinct.cardinality();
+  }
+
+  /**
+   * @param quantile The quantile between zero and one, 0.5 for the median.
+   *
+   * @return The approximate value at the quantile or {@code null} if quantiles weren't tracked or there are no values.
+   */
+  public Double getApproxQuantile(double quantile) {
+    if (quantiles == null)
+      return null;
+    return quantiles.getQuantile(quantile);
+  }
+
+  /**
+   * @return {@code true} if every partial of this aggregate was answered without reading a row group.
+   */
+  public boolean isFromMetadata() {
+    return fromMetadata;
+  }
+
+  @Override
+  public String toString() {
+    return "Aggregate{count=" + count + ", countNonNull=" + countNonNull + ", sum=" + getSum() + ", min=" + getMin() + ", max=" + getMax() +
+        ", approxDistinct=" + getApproxDistinct() + ", fromMetadata=" + fromMetadata + "}";
+  }
+}
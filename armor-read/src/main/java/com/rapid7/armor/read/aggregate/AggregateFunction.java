@@ -0,0 +1,55 @@
+package com.rapid7.armor.read.aggregate;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import com.rapid7.armor.meta.ColumnMetadata;
+
+public enum AggregateFunction {
+  COUNT,
+  COUNT_NON_NULL,
+  SUM,
+  MIN,
+  MAX,
+  APPROX_DISTINCT,
+  APPROX_QUANTILE;
+
+  private static final Set<AggregateFunction> METADATA_FUNCTIONS = EnumSet.of(COUNT, COUNT_NON_NULL, MIN, MAX, APPROX_DISTINCT, APPROX_QUANTILE);
+
+  /**
+   * Determines whether the functions can be answered from column metadata alone, without reading the row group. Whether the
+   * metadata of a given column holds what they need is up to {@link #answerableFromMetadata(Set, ColumnMetadata)}.
+   *
+   * @param functions The functions that are requested.
+   *
+   * @return {@code true} if the metadata is enough to answer.
+   */
+  public static boolean answerableFromMetadata(Set<AggregateFunction> functions) {
+    return METADATA_FUNCTIONS.containsAll(functions);
+  }
+
+  /**
+   * Determines whether the functions can be answered from the metadata of a column. Everything but the count can only be
+   * taken from metadata that holds its stats exactly, the sketches must also have been written.
+   *
+   * @param functions The functions that are requested.
+   * @param metadata The metadata of the column.
+   *
+   * @return {@code true} if the metadata is enough to answer.
+   */
+  public static boolean answerableFromMetadata(Set<AggregateFunction> functions, ColumnMetadata metadata) {
+    if (!answerableFromMetadata(functions))
+      return false;
+    for (AggregateFunction function : functions) {
+      if (function == COUNT)
+        continue;
+      if (!metadata.getStatsExact())
+        return false;
+      if (function == APPROX_DISTINCT && metadata.getDistinctSketch() == null)
+        return false;
+      if (function == APPROX_QUANTILE && metadata.getQuantileSketch() == null)
+        return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,244 @@
+package com.rapid7.armor.read.fast;
+
+import static com.rapid7.armor.Constants.MAGIC_HEADER;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.roaringbitmap.RoaringBitmap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rapid7.armor.Constants;
+import com.rapid7.armor.columnfile.ColumnFileSection;
+import com.rapid7.armor.columnfile.RowGroupChunk;
+import com.rapid7.armor.entity.EntityRecord;
+import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.read.BaseArmorShardColumn;
+
+/**
+ * Reads rows of a version 3 column file without fetching the whole file. Everything in front of the row group is read with
+ * one range read when the reader is opened, afterwards only the row group chunks holding the requested rows are read and
+ * decompressed, see {@link com.rapid7.armor.columnfile.RowGroupChunkIndex}. A file whose row group wasn't written in chunks
+ * is read whole on the first row read.
+ * <p>
+ * Rows are returned as the raw values of the dense row group, string columns as their value dictionary surrogates. Null rows
+ * hold an unspecified value, see {@link #isNull(int)}.
+ */
+public class ColumnFileChunkReader extends BaseArmorShardColumn {
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  private static final int HEADER_BYTES = 2 + 4 + 8; // Magic header, version and the lengths of the table of contents
+  private final RangeSource source;
+  private final int byteLength;
+  private long rowGroupOffset; // Position of the row group's bytes in the file
+  private int rowGroupCompressed;
+  private int rowGroupUncompressed;
+  private byte[] rowGroup; // The whole row group once read, only for files that aren't chunked
+  private final RoaringBitmap nullRows = new RoaringBitmap(); // Zero-indexed rows that are null
+  private long bytesRead;
+
+  /**
+   * Reads a range of bytes of a column file.
+   */
+  @FunctionalInterface
+  public interface RangeSource {
+    /**
+     * @param offset The position in the file to read from.
+     * @param length The number of bytes to read.
+     *
+     * @return Exactly the bytes of the range.
+     */
+    byte[] read(long offset, int length) throws IOException;
+  }
+
+  public ColumnFileChunkReader(RangeSource source) throws IOException {
+    this.source = source;
+    open();
+    this.byteLength = metadata.getColumnType().getByteLength();
+    readNullRows();
+  }
+
+  private byte[] read(long offset, int length) throws IOException {
+    byte[] bytes = source.read(offset, length);
+    if (bytes.length != length)
+      throw new IOException("Expected " + length + " bytes at offset " + offset + " but read " + bytes.length);
+    bytesRead += length;
+    return bytes;
+  }
+
+  private void open() throws IOException {
+    ByteBuffer header = ByteBuffer.wrap(read(0, HEADER_BYTES));
+    if (header.getShort() != MAGIC_HEADER)
+      throw new IllegalArgumentException("The magic header doesn't exist");
+    int version = header.getInt();
+    if (version != Constants.ColumnFileFormatVersion.VERSION_3.getVal())
+      throw new IllegalArgumentException("Only version 3 column files can be read by row range, this file is version " + version);
+    header.getInt(); // The table of contents is never compressed
+    int tocLength = header.getInt();
+    ByteBuffer toc = ByteBuffer.wrap(read(HEADER_BYTES, tocLength));
+    long sectionsStart = HEADER_BYTES + tocLength;
+    int prefixLength = -1;
+    while (toc.hasRemaining()) {
+      ColumnFileSection section = ColumnFileSection.fromID(toc.getInt());
+      int offset = toc.getInt();
+      if (section == ColumnFileSection.ROWGROUP)
+        prefixLength = offset + 8; // Include the lengths of the row group
+    }
+    if (prefixLength < 0)
+      throw new IllegalArgumentException("The column file doesn't have a row group");
+
+    byte[] prefix = read(sectionsStart, prefixLength);
+    try (DataInputStream inputStream = new DataInputStream(new ByteArrayInputStream(prefix))) {
+      toc.rewind();
+      while (toc.hasRemaining()) {
+        ColumnFileSection section = ColumnFileSection.fromID(toc.getInt());
+        toc.getInt();
+        int compressed = inputStream.readInt();
+        int uncompressed = inputStream.readInt();
+        if (section == ColumnFileSection.ROWGROUP) {
+          rowGroupOffset = sectionsStart + prefixLength;
+          rowGroupCompressed = compressed;
+          rowGroupUncompressed = uncompressed;
+          break;
+        }
+        int read;
+        if (section == ColumnFileSection.METADATA) {
+          byte[] metadataBytes = new byte[uncompressed];
+          inputStream.readFully(metadataBytes);
+          metadata = OBJECT_MAPPER.readValue(metadataBytes, ColumnMetadata.class);
+          read = uncompressed;
+        } else if (section == ColumnFileSection.ENTITY_DICTIONARY) {
+          read = readEntityDictionary(inputStream, compressed, uncompressed, metadata);
+        } else if (section == ColumnFileSection.ENTITY_INDEX) {
+          read = readEntityIndex(inputStream, compressed, uncompressed);
+        } else if (section == ColumnFileSection.NULL_BITMAP) {
+          read = readNullBitmaps(inputStream, compressed, uncompressed);
+        } else if (section == ColumnFileSection.CHUNK_INDEX) {
+          read = readChunkIndex(inputStream, compressed, uncompressed);
+        } else if (section == ColumnFileSection.ZONE_MAP) {
+          read = readZoneMaps(inputStream, compressed, uncompressed);
+        } else if (section == ColumnFileSection.BLOOM_FILTER) {
+          read = readBloomFilter(inputStream, compressed, uncompressed);
+        } else {
+          read = 0;
+        }
+        inputStream.skipBytes(sectionLength(compressed, uncompressed) - read);
+      }
+    }
+  }
+
+  private void readNullRows() throws IOException {
+    int nullBitmapOffset = 0;
+    for (EntityRecord record : entityRecords) {
+      if (record.getNullLength() > 0) {
+        RoaringBitmap entityNulls = new RoaringBitmap();
+        entityNulls.deserialize(nullBitmap(record, null, nullBitmapOffset));
+        int startRow = record.getRowGroupOffset() / byteLength;
+        // Rows of the entity's bitmap start at one.
+        for (int relativeRow : entityNulls.toArray())
+          nullRows.add(startRow + relativeRow - 1);
+      }
+      nullBitmapOffset += record.getNullLength();
+    }
+    nullBitmaps = null;
+  }
+
+  @Override
+  protected int readRowGroup(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException {
+    rowGroup = readSection(inputStream, compressed, uncompressed);
+    return sectionLength(compressed, uncompressed);
+  }
+
+  /**
+   * Reads the values of a range of rows, only the chunks holding the rows are read.
+   *
+   * @param startRow The first row.
+   * @param endRow The row after the last row.
+   *
+   * @return A buffer holding exactly the values of the rows.
+   */
+  public ByteBuffer readRows(int startRow, int endRow) throws IOException {
+    if (startRow < 0 || endRow > metadata.getNumRows() || startRow > endRow)
+      throw new IllegalArgumentException("The rows " + startRow + "-" + endRow + " are out of range of " + metadata.getNumRows() + " rows");
+    ByteBuffer values = ByteBuffer.allocate((endRow - startRow) * byteLength);
+    if (rowGroupChunks == null) {
+      if (rowGroup == null) {
+        byte[] section = read(rowGroupOffset, sectionLength(rowGroupCompressed, rowGroupUncompressed));
+        readRowGroup(new DataInputStream(new ByteArrayInputStream(section)), rowGroupCompressed, rowGroupUncompressed, metadata);
+      }
+      values.put(rowGroup, startRow * byteLength, values.capacity());
+    } else {
+      for (RowGroupChunk chunk : rowGroupChunks.chunksForRows(startRow, endRow)) {
+        byte[] chunkValues = decompress(
+            read(rowGroupOffset + chunk.getCompressedOffset(), chunk.getCompressedLength()), chunk.getUncompressedLength());
+        int from = Math.max(startRow, chunk.getStartRow());
+        int to = Math.min(endRow, chunk.getEndRow());
+        values.put(chunkValues, (from - chunk.getStartRow()) * byteLength, (to - from) * byteLength);
+      }
+    }
+    values.flip();
+    return values;
+  }
+
+  /**
+   * @param row The zero-indexed row.
+   *
+   * @return {@code true} if the row is null, strings use the zero surrogate for null instead.
+   */
+  public boolean isNull(int row) {
+    return nullRows.contains(row);
+  }
+
+  /**
+   * @param entityId The entity id, either the string id or the numeric id.
+   *
+   * @return The rows of the entity or {@code null} if the entity isn't in this shard.
+   */
+  public FastArmorRowRange getEntityRows(Object entityId) {
+    int surrogate;
+    if (entityId instanceof String) {
+      if (entityDictionaryReader == null)
+        return null;
+      Integer value = entityDictionaryReader.getSurrogate((String) entityId);
+      if (value == null)
+        return null;
+      surrogate = value;
+    } else if (entityId instanceof Integer) {
+      surrogate = (Integer) entityId;
+    } else if (entityId instanceof Long) {
+      surrogate = ((Long) entityId).intValue();
+    } else {
+      throw new IllegalArgumentException("Entity ids must be string, long or int not " + entityId.getClass().getCanonicalName());
+    }
+    List<EntityRecord> records = entityRecords;
+    for (int ordinal = 0; ordinal < records.size(); ordinal++) {
+      EntityRecord record = records.get(ordinal);
+      if (record.getEntityId() == surrogate) {
+        int startRow = record.getRowGroupOffset() / byteLength;
+        return new FastArmorRowRange(ordinal, ordinal + 1, startRow, startRow + record.getValueLength() / byteLength);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return The values of the entity or {@code null} if the entity isn't in this shard, see {@link #readRows(int, int)}.
+   */
+  public ByteBuffer readEntity(Object entityId) throws IOException {
+    FastArmorRowRange rows = getEntityRows(entityId);
+    return rows == null ? null : readRows(rows.getStartRow(), rows.getEndRow());
+  }
+
+  public List<EntityRecord> getEntityRecords() {
+    return entityRecords;
+  }
+
+  /**
+   * @return The bytes read from the source so far.
+   */
+  public long getBytesRead() {
+    return bytesRead;
+  }
+}
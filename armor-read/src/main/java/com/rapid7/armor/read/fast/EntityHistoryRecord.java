@@ -0,0 +1,58 @@
+package com.rapid7.armor.read.fast;
+
+import java.time.Instant;
+import java.util.List;
+
+import com.rapid7.armor.entity.Row;
+import com.rapid7.armor.shard.ShardId;
+
+/**
+ * The state of an entity within a single interval start, see {@link FastArmorReader#getEntityHistory}.
+ */
+public class EntityHistoryRecord {
+  private final Object entityId;
+  private final ShardId shardId;
+  private final Instant intervalStart;
+  private final long version;
+  private final String instanceId;
+  private final List<Row> rows;
+
+  public EntityHistoryRecord(Object entityId, ShardId shardId, long version, String instanceId, List<Row> rows) {
+    this.entityId = entityId;
+    this.shardId = shardId;
+    this.intervalStart = Instant.parse(shardId.getIntervalStart());
+    this.version = version;
+    this.instanceId = instanceId;
+    this.rows = rows;
+  }
+
+  public Object getEntityId() {
+    return entityId;
+  }
+
+  public ShardId getShardId() {
+    return shardId;
+  }
+
+  public Instant getIntervalStart() {
+    return intervalStart;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public String getInstanceId() {
+    return instanceId;
+  }
+
+  public List<Row> getRows() {
+    return rows;
+  }
+
+  @Override
+  public String toString() {
+    return "EntityHistoryRecord{entityId=" + entityId + ", intervalStart=" + intervalStart + ", version=" + version +
+        ", instanceId=" + instanceId + ", rows=" + rows.size() + "}";
+  }
+}
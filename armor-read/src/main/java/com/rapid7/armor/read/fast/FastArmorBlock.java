@@ -1,39 +1,112 @@
 package com.rapid7.armor.read.fast;
 
 
+import java.util.Arrays;
+
 import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
 
+/**
+ * A block of column values. Blocks can be reused across reads by passing them to the reusing overloads of
+ * {@link FastArmorBlockReader}, the arrays and slice of a reused block are kept as long as they are large enough so a steady
+ * scan loop doesn't allocate. This means the arrays can be longer than {@link #getNumRows()}, only the first rows are valid.
+ */
 public class FastArmorBlock {
   private Slice slice;
   private long[] longValueArray;
   private int[] intValueArray;
   private int[] offsets;
-  private final boolean[] valueIsNull;
-  private final int rows;
+  private boolean[] valueIsNull;
+  private boolean[] nullBuffer; // Kept when a block without nulls is read so it can be reused again
+  private int rows;
   private int batchNum = -1;
 
+  /**
+   * Constructs an empty block to fill with the reusing overloads of {@link FastArmorBlockReader}.
+   */
+  public FastArmorBlock() {
+  }
+
   public FastArmorBlock(long[] longValueArray, boolean[] valueIsNull, int rows, int batchNum) {
-    this.longValueArray = longValueArray;
-    this.valueIsNull = valueIsNull;
-    this.rows = rows;
-    this.batchNum = batchNum;
+    fill(longValueArray, valueIsNull, rows, batchNum);
   }
 
   public FastArmorBlock(int[] intValueArray, boolean[] valueIsNull, int rows, int batchNum) {
-    this.intValueArray = intValueArray;
-    this.valueIsNull = valueIsNull;
-    this.rows = rows;
-    this.batchNum = batchNum;
+    fill(intValueArray, valueIsNull, rows, batchNum);
   }
 
   public FastArmorBlock(Slice slice, int[] offsets, boolean[] valueIsNull, int rows, int batchNum) {
+    fill(slice, offsets, valueIsNull, rows, batchNum);
+  }
+
+  /**
+   * Empties the block, the arrays are kept for the next time the block is filled.
+   */
+  public void reset() {
+    rows = 0;
+    batchNum = -1;
+    valueIsNull = null;
+  }
+
+  void fill(long[] longValueArray, boolean[] valueIsNull, int rows, int batchNum) {
+    this.longValueArray = longValueArray;
+    fill(valueIsNull, rows, batchNum);
+  }
+
+  void fill(int[] intValueArray, boolean[] valueIsNull, int rows, int batchNum) {
+    this.intValueArray = intValueArray;
+    fill(valueIsNull, rows, batchNum);
+  }
+
+  void fill(Slice slice, int[] offsets, boolean[] valueIsNull, int rows, int batchNum) {
     this.slice = slice;
     this.offsets = offsets;
+    fill(valueIsNull, rows, batchNum);
+  }
+
+  private void fill(boolean[] valueIsNull, int rows, int batchNum) {
     this.valueIsNull = valueIsNull;
+    if (valueIsNull != null)
+      this.nullBuffer = valueIsNull;
     this.rows = rows;
     this.batchNum = batchNum;
   }
 
+  long[] longValues(int capacity) {
+    if (longValueArray == null || longValueArray.length < capacity)
+      longValueArray = new long[capacity];
+    return longValueArray;
+  }
+
+  int[] intValues(int capacity) {
+    if (intValueArray == null || intValueArray.length < capacity)
+      intValueArray = new int[capacity];
+    return intValueArray;
+  }
+
+  int[] offsets(int capacity) {
+    if (offsets == null || offsets.length < capacity)
+      offsets = new int[capacity];
+    return offsets;
+  }
+
+  Slice slice(int capacity) {
+    if (slice == null || slice.length() < capacity)
+      slice = Slices.allocate(capacity);
+    return slice;
+  }
+
+  /**
+   * @return A null array with at least the given rows all set to not null.
+   */
+  boolean[] nullValues(int capacity) {
+    if (nullBuffer == null || nullBuffer.length < capacity)
+      nullBuffer = new boolean[capacity];
+    else
+      Arrays.fill(nullBuffer, 0, capacity, false);
+    return nullBuffer;
+  }
+
   public int getBatchNum() {
     return this.batchNum;
   }
@@ -1,25 +1,27 @@
 package com.rapid7.armor.read.fast;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.read.DictionaryReader;
 import com.rapid7.armor.schema.DataType;
 
 import io.airlift.slice.Slice;
-import io.airlift.slice.Slices;
-import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 /**
- * Specialized reader that tracks what is currently read to the entity structure.
+ * Specialized reader that tracks what is currently read to the entity structure. Values are decoded by absolute index so
+ * any number of readers can share the decoded values of a column, each reader is its own cursor.
  */
 public class FastArmorBlockReader {
   private final ByteBuffer columnValues;
   protected boolean hasNext = true;
-  protected final int numRows;
+  protected final int numRows; // The row the reader stops at
+  private final int startRow;
   private final int[] entityDecodedLength;
   private final int[] entityNumRows;
+  private final int[] entityRowOffsets;
   private int entityCounter;
   private final DictionaryReader strValueDictionary;
   private final int numEntities;
@@ -39,15 +41,59 @@ public class FastArmorBlockReader {
     int[] entityDecodedLength,
     int[] entityNumRows,
     DataType dataType) {
+    this(metadata, columnValues, rowIsNull, strValueDictionary, numRows, numEntities, entityDecodedLength, entityNumRows,
+        buildEntityRowOffsets(entityNumRows), dataType);
+  }
+
+  public FastArmorBlockReader(
+    ColumnMetadata metadata,
+    ByteBuffer columnValues,
+    IntArrayList rowIsNull,
+    DictionaryReader strValueDictionary,
+    int numRows,
+    int numEntities,
+    int[] entityDecodedLength,
+    int[] entityNumRows,
+    int[] entityRowOffsets,
+    DataType dataType) {
+    this(metadata, columnValues, rowIsNull, strValueDictionary, numRows, numEntities, entityDecodedLength, entityNumRows, entityRowOffsets,
+        dataType, null);
+  }
+
+  /**
+   * Constructs a reader over a range of the column, the reader starts at the first row of the range and stops at the last.
+   *
+   * @param range The entity aligned range to read or {@code null} to read every row.
+   */
+  public FastArmorBlockReader(
+    ColumnMetadata metadata,
+    ByteBuffer columnValues,
+    IntArrayList rowIsNull,
+    DictionaryReader strValueDictionary,
+    int numRows,
+    int numEntities,
+    int[] entityDecodedLength,
+    int[] entityNumRows,
+    int[] entityRowOffsets,
+    DataType dataType,
+    FastArmorRowRange range) {
+    if (range != null && entityRowOffsets != null &&
+        (entityRowOffsets[range.getStartEntity()] != range.getStartRow() || entityRowOffsets[range.getEndEntity()] != range.getEndRow()))
+      throw new IllegalArgumentException("The range " + range + " isn't aligned to the entities of the column");
     this.metadata = metadata;
-    this.columnValues = columnValues;
+    this.columnValues = columnValues == null ? null : columnValues.duplicate();
     this.strValueDictionary = strValueDictionary;
-    this.numRows = numRows;
-    this.numEntities = numEntities;
+    this.startRow = range == null ? 0 : range.getStartRow();
+    this.numRows = range == null ? numRows : range.getEndRow();
+    this.numEntities = range == null ? numEntities : range.getEndEntity();
     this.entityDecodedLength = entityDecodedLength;
     this.entityNumRows = entityNumRows;
-    this.entityCounter = 0;
-    this.rowCounterIndex = 0;
+    this.entityRowOffsets = entityRowOffsets;
+    this.entityCounter = range == null ? 0 : range.getStartEntity();
+    this.rowCounterIndex = startRow;
+    // Splits can leave ranges without rows, there is nothing to read from them.
+    if (range != null)
+      this.hasNext = startRow < this.numRows;
     this.rowIsNull = rowIsNull; // Note zero-indexed row number
     this.dataType = dataType;
   }
@@ -68,7 +114,7 @@ public class FastArmorBlockReader {
   }
 
   public int numRows() {
-    return numRows;
+    return numRows - startRow;
   }
 
   public int batchNum() {
@@ -92,113 +138,155 @@ public class FastArmorBlockReader {
   }
 
   public FastArmorBlock getLongBlock(int batchRows) {
+    return getLongBlock(batchRows, new FastArmorBlock());
+  }
+
+  /**
+   * Reads the next block of longs into the given block, its arrays are reused when they are large enough.
+   *
+   * @param batchRows The maximum number of rows to read.
+   * @param block The block to fill, its previous contents are overwritten.
+   *
+   * @return The given block.
+   */
+  public FastArmorBlock getLongBlock(int batchRows, FastArmorBlock block) {
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(new long[0], null, 0, batchNum);
+      block.fill(block.longValues(0), null, 0, batchNum);
+      return block;
     }
     // Long blocks we dont need to do any slicing by entities, rather we can
     // pass a page of longs at at time.
 
-    long[] values = new long[batchRows];
+    long[] values = block.longValues(batchRows);
     // Loop unroll for faster processing in increments of 10
     int rowsRead = 0;
     int rowReadStartIndex = rowCounterIndex;
     for (; rowCounterIndex < this.numRows; rowCounterIndex += 10) {
-      if (rowsRead + 10 > this.numRows || rowsRead + 10 > batchRows)
+      if (rowCounterIndex + 10 > this.numRows || rowsRead + 10 > batchRows)
         break;
-      values[rowsRead] = columnValues.getLong();
-      values[rowsRead + 1] = columnValues.getLong();
-      values[rowsRead + 2] = columnValues.getLong();
-      values[rowsRead + 3] = columnValues.getLong();
-      values[rowsRead + 4] = columnValues.getLong();
-      values[rowsRead + 5] = columnValues.getLong();
-      values[rowsRead + 6] = columnValues.getLong();
-      values[rowsRead + 7] = columnValues.getLong();
-      values[rowsRead + 8] = columnValues.getLong();
-      values[rowsRead + 9] = columnValues.getLong();
+      values[rowsRead] = columnValues.getLong(rowCounterIndex * 8);
+      values[rowsRead + 1] = columnValues.getLong((rowCounterIndex + 1) * 8);
+      values[rowsRead + 2] = columnValues.getLong((rowCounterIndex + 2) * 8);
+      values[rowsRead + 3] = columnValues.getLong((rowCounterIndex + 3) * 8);
+      values[rowsRead + 4] = columnValues.getLong((rowCounterIndex + 4) * 8);
+      values[rowsRead + 5] = columnValues.getLong((rowCounterIndex + 5) * 8);
+      values[rowsRead + 6] = columnValues.getLong((rowCounterIndex + 6) * 8);
+      values[rowsRead + 7] = columnValues.getLong((rowCounterIndex + 7) * 8);
+      values[rowsRead + 8] = columnValues.getLong((rowCounterIndex + 8) * 8);
+      values[rowsRead + 9] = columnValues.getLong((rowCounterIndex + 9) * 8);
       rowsRead += 10;
     }
 
     for (; rowCounterIndex < this.numRows; rowCounterIndex++) {
       if (rowsRead >= batchRows)
         break;
-      values[rowsRead] = columnValues.getLong();
+      values[rowsRead] = columnValues.getLong(rowCounterIndex * 8);
       rowsRead++;
     }
 
     if (rowCounterIndex >= this.numRows)
       hasNext = false;
-    if (!rowIsNull.isEmpty()) {
-      boolean[] valueIsNull = new boolean[rowCounterIndex - rowReadStartIndex];
-      for (int nullRow : rowIsNull) {
-        int nullRowIndex = nullRow - 1;
-        if (nullRowIndex >= rowReadStartIndex && nullRowIndex < rowCounterIndex)
-          valueIsNull[nullRowIndex - rowReadStartIndex] = true;
-      }
-
-      return new FastArmorBlock(values, valueIsNull, rowsRead, batchNum);
-    } else {
-      return new FastArmorBlock(values, null, rowsRead, batchNum);
-    }
+    block.fill(values, readNulls(block, rowReadStartIndex, rowCounterIndex), rowsRead, batchNum);
+    return block;
   }
 
   public FastArmorBlock getIntegerBlock(int batchRows) {
+    return getIntegerBlock(batchRows, new FastArmorBlock());
+  }
+
+  /**
+   * Reads the next block of integers into the given block, its arrays are reused when they are large enough.
+   *
+   * @param batchRows The maximum number of rows to read.
+   * @param block The block to fill, its previous contents are overwritten.
+   *
+   * @return The given block.
+   */
+  public FastArmorBlock getIntegerBlock(int batchRows, FastArmorBlock block) {
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(new int[0], null, 0, batchNum);
+      block.fill(block.intValues(0), null, 0, batchNum);
+      return block;
     }
     // Integer blocks we dont need to do any slicing by entities, rather we can
     // pass a page of ints at at time.
 
-    int[] values = new int[batchRows];
+    int[] values = block.intValues(batchRows);
     // Loop unroll for faster processing in increments of 10
     int rowsRead = 0;
     int rowReadStartIndex = rowCounterIndex;
     for (; rowCounterIndex < this.numRows; rowCounterIndex += 10) {
-      if (rowsRead + 10 > this.numRows || rowsRead + 10 > batchRows)
+      if (rowCounterIndex + 10 > this.numRows || rowsRead + 10 > batchRows)
         break;
-      values[rowsRead] = columnValues.getInt();
-      values[rowsRead + 1] = columnValues.getInt();
-      values[rowsRead + 2] = columnValues.getInt();
-      values[rowsRead + 3] = columnValues.getInt();
-      values[rowsRead + 4] = columnValues.getInt();
-      values[rowsRead + 5] = columnValues.getInt();
-      values[rowsRead + 6] = columnValues.getInt();
-      values[rowsRead + 7] = columnValues.getInt();
-      values[rowsRead + 8] = columnValues.getInt();
-      values[rowsRead + 9] = columnValues.getInt();
+      values[rowsRead] = columnValues.getInt(rowCounterIndex * 4);
+      values[rowsRead + 1] = columnValues.getInt((rowCounterIndex + 1) * 4);
+      values[rowsRead + 2] = columnValues.getInt((rowCounterIndex + 2) * 4);
+      values[rowsRead + 3] = columnValues.getInt((rowCounterIndex + 3) * 4);
+      values[rowsRead + 4] = columnValues.getInt((rowCounterIndex + 4) * 4);
+      values[rowsRead + 5] = columnValues.getInt((rowCounterIndex + 5) * 4);
+      values[rowsRead + 6] = columnValues.getInt((rowCounterIndex + 6) * 4);
+      values[rowsRead + 7] = columnValues.getInt((rowCounterIndex + 7) * 4);
+      values[rowsRead + 8] = columnValues.getInt((rowCounterIndex + 8) * 4);
+      values[rowsRead + 9] = columnValues.getInt((rowCounterIndex + 9) * 4);
       rowsRead += 10;
     }
 
     for (; rowCounterIndex < this.numRows; rowCounterIndex++) {
       if (rowsRead >= batchRows)
         break;
-      values[rowsRead] = columnValues.getInt();
+      values[rowsRead] = columnValues.getInt(rowCounterIndex * 4);
       rowsRead++;
     }
 
     if (rowCounterIndex >= this.numRows)
       hasNext = false;
-    if (!rowIsNull.isEmpty()) {
-      boolean[] valueIsNull = new boolean[rowCounterIndex - rowReadStartIndex];
-      for (int nullRow : rowIsNull) {
-        int nullRowIndex = nullRow - 1;
-        if (nullRowIndex >= rowReadStartIndex && nullRowIndex < rowCounterIndex)
-          valueIsNull[nullRowIndex - rowReadStartIndex] = true;
-      }
+    block.fill(values, readNulls(block, rowReadStartIndex, rowCounterIndex), rowsRead, batchNum);
+    return block;
+  }
 
-      return new FastArmorBlock(values, valueIsNull, rowsRead, batchNum);
-    } else {
-      return new FastArmorBlock(values, null, rowsRead, batchNum);
-    }
+  /**
+   * Marks the null rows between the two rows, {@code null} if the column has no nulls at all.
+   */
+  private boolean[] readNulls(FastArmorBlock block, int startRow, int endRow) {
+    if (rowIsNull.isEmpty())
+      return null;
+    boolean[] valueIsNull = block.nullValues(endRow - startRow);
+    // Null rows are one-indexed and sorted, so jump to the first one that can be in range.
+    int[] nullRows = rowIsNull.elements();
+    int index = Arrays.binarySearch(nullRows, 0, rowIsNull.size(), startRow + 1);
+    if (index < 0)
+      index = -index - 1;
+    for (; index < rowIsNull.size() && nullRows[index] <= endRow; index++)
+      valueIsNull[nullRows[index] - 1 - startRow] = true;
+    return valueIsNull;
   }
 
   public FastArmorBlock getStringBlock(int batchRows) {
+    return getStringBlock(batchRows, new FastArmorBlock());
+  }
+
+  /**
+   * Reads the next block of strings into the given block, its slice and arrays are reused when they are large enough.
+   *
+   * @param batchRows The maximum number of rows to read.
+   * @param block The block to fill, its previous contents are overwritten.
+   *
+   * @return The given block.
+   */
+  public FastArmorBlock getStringBlock(int batchRows, FastArmorBlock block) {
     if (strValueDictionary == null)
       throw new IllegalStateException("No dictionary was setup for reading string blocks");
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(Slices.allocate(0), new int[0], null, 0, batchNum);
+      block.fill(block.slice(0), block.offsets(0), null, 0, batchNum);
+      return block;
+    }
+    if (entityCounter >= numEntities) {
+      // Past the last entity of the column or range, an empty range starts there.
+      hasNext = false;
+      block.fill(block.slice(0), block.offsets(1), null, 0, batchNum);
+      return block;
     }
     // Calculate how much memory to allocate
     int allocRowCount = 0;
@@ -223,84 +311,55 @@ public class FastArmorBlockReader {
     // Determine where we will stop given the batch rows etc.
 
     int sliceIndex = 0;
-    IntArrayList sliceOffsets = new IntArrayList();
-    sliceOffsets.add(sliceIndex);
-    Slice slice = Slices.allocate(allocSize);
-    BooleanArrayList valueIsNull = new BooleanArrayList(); // Row index based
+    int rowCapacity = Math.min(batchRows, allocRowCount);
+    int[] sliceOffsets = block.offsets(rowCapacity + 1);
+    sliceOffsets[0] = sliceIndex;
+    Slice slice = block.slice(allocSize);
+    boolean[] valueIsNull = block.nullValues(rowCapacity); // Row index based
     int sessionReadRows = 0;
 
     // Important, we need precalculate the entity row offset, which will be a looking at the
     // rowcounter and the the entity counter to find the.
     for (; entityCounter < stopAtEntity; entityCounter++) {
       int rowsToRead = entityNumRows[entityCounter];
-      //System.out.println(entityRowOffset +  " " + entityCounter + " " + rowsToRead + " " + sessionReadRows);
       for (; entityRowOffset < rowsToRead; entityRowOffset++) {
         if (sessionReadRows >= batchRows) {
           hasNext = rowCounterIndex < numRows;
-          sliceOffsets.trim();
-          valueIsNull.trim();
-          return new FastArmorBlock(slice, sliceOffsets.elements(), valueIsNull.elements(), sessionReadRows, batchNum);
+          block.fill(slice, sliceOffsets, valueIsNull, sessionReadRows, batchNum);
+          return block;
         }
-        byte[] bytes = strValueDictionary.getValue(columnValues.getInt());
+        byte[] bytes = strValueDictionary.getValue(columnValues.getInt(rowCounterIndex * 4));
         slice.setBytes(sliceIndex, bytes, 0, bytes.length);
         sliceIndex += bytes.length;
-        sliceOffsets.add(sliceIndex);
-        valueIsNull.add(bytes.length == 0);
+        valueIsNull[sessionReadRows] = bytes.length == 0;
         rowCounterIndex++;
         sessionReadRows++;
+        sliceOffsets[sessionReadRows] = sliceIndex;
       }
       if (sessionReadRows >= batchRows) {
         hasNext = rowCounterIndex < numRows;
-        sliceOffsets.trim();
-        valueIsNull.trim();
         entityCounter++;
-        return new FastArmorBlock(slice, sliceOffsets.elements(), valueIsNull.elements(), sessionReadRows, batchNum);
+        block.fill(slice, sliceOffsets, valueIsNull, sessionReadRows, batchNum);
+        return block;
       }
       entityRowOffset = 0; // Any further offsets will be reset to zero.
     }
-
-    if (sessionReadRows < batchRows && entityCounter < this.numEntities) {
-      entityCounter++;
-      entityRowOffset = 0;
-      int rowsToRead = entityNumRows[entityCounter];
-      for (; entityRowOffset < rowsToRead; entityRowOffset++) {
-        if (sessionReadRows >= batchRows) {
-          hasNext = rowCounterIndex < numRows;
-          sliceOffsets.trim();
-          valueIsNull.trim();
-          return new FastArmorBlock(slice, sliceOffsets.elements(), valueIsNull.elements(), sessionReadRows, batchNum);
-        }
-        byte[] bytes = strValueDictionary.getValue(columnValues.getInt());
-        slice.setBytes(sliceIndex, bytes, 0, bytes.length);
-        sliceIndex += bytes.length;
-        sliceOffsets.add(sliceIndex);
-        valueIsNull.add(bytes.length == 0);
-        rowCounterIndex++;
-        sessionReadRows++;
-      }
-      //System.out.println(sessionReadRows);
-      if (sessionReadRows >= batchRows) {
-        hasNext = rowCounterIndex < numRows;
-        sliceOffsets.trim();
-        valueIsNull.trim();
-        return new FastArmorBlock(slice, sliceOffsets.elements(), valueIsNull.elements(), sessionReadRows, batchNum);
-      }
-    }
     hasNext = rowCounterIndex < numRows;
-    sliceOffsets.trim();
-    valueIsNull.trim();
-    return new FastArmorBlock(slice, sliceOffsets.elements(), valueIsNull.elements(), sessionReadRows, batchNum);
+    block.fill(slice, sliceOffsets, valueIsNull, sessionReadRows, batchNum);
+    return block;
   }
 
   private int calculateEntityRowOffset(int entityCounter, int rowCounterIndex) {
-    // Read up to the entity counter - 1
-    int rowsRead = 0;
-    int stopAt = entityCounter - 1;
-    for (int i = 0; i <= stopAt; i++) {
-      rowsRead += entityNumRows[i];
-    }
+    // We are at the current entity, so offset should be rowCounter - rows before the entity
+    return rowCounterIndex - entityRowOffsets[entityCounter];
+  }
 
-    // We are now at the current entity, so offset should now be rowCounter - rowsRead
-    return rowCounterIndex - rowsRead;
+  private static int[] buildEntityRowOffsets(int[] entityNumRows) {
+    if (entityNumRows == null)
+      return null;
+    int[] offsets = new int[entityNumRows.length + 1];
+    for (int i = 0; i < entityNumRows.length; i++)
+      offsets[i + 1] = offsets[i] + entityNumRows[i];
+    return offsets;
   }
 }
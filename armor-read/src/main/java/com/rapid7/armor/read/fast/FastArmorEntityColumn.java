@@ -0,0 +1,146 @@
+package com.rapid7.armor.read.fast;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.rapid7.armor.columnfile.ColumnFileReader;
+import com.rapid7.armor.columnfile.ColumnFileSection;
+import com.rapid7.armor.entity.EntityRecord;
+import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.read.BaseArmorShardColumn;
+import com.rapid7.armor.read.RowGroupReader;
+import com.rapid7.armor.schema.DataType;
+
+/**
+ * The values of a single entity in a shard's column. The entity index locates the entity in the row group, only the
+ * row group up to and including the entity is decompressed and only the entity's values are decoded. The entity
+ * dictionary is only read for string entity ids.
+ */
+public class FastArmorEntityColumn extends BaseArmorShardColumn {
+  private static final Logger LOGGER = LoggerFactory.getLogger(FastArmorEntityColumn.class);
+  private final Object entityId;
+  private EntityRecord record;
+  private List<Object> values;
+
+  /**
+   * @param inputStream The column file, it is closed once read.
+   * @param entityId The entity id, either the string id or the numeric id.
+   */
+  public FastArmorEntityColumn(InputStream inputStream, Object entityId) throws IOException {
+    if (!(entityId instanceof String || entityId instanceof Integer || entityId instanceof Long))
+      throw new IllegalArgumentException("Entity ids must be string, long or int not " + entityId.getClass().getCanonicalName());
+    this.entityId = entityId;
+    try {
+      load(new DataInputStream(inputStream));
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  private void load(DataInputStream inputStream) throws IOException {
+    ColumnFileReader cfr = new ColumnFileReader();
+    cfr.read(inputStream, (section, metadata, is, compressed, uncompressed) -> {
+      try {
+        if (section == ColumnFileSection.ENTITY_DICTIONARY && entityId instanceof String) {
+          return readEntityDictionary(is, compressed, uncompressed, metadata);
+        } else if (section == ColumnFileSection.VALUE_DICTIONARY) {
+          return readValueDictionary(is, compressed, uncompressed, metadata);
+        } else if (section == ColumnFileSection.ENTITY_INDEX) {
+          return readEntityIndex(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.NULL_BITMAP) {
+          return readNullBitmaps(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.ROWGROUP) {
+          return readRowGroup(is, compressed, uncompressed, metadata);
+        } else
+          return 0;
+      } catch (IOException ioe) {
+        LOGGER.error("Detected an error in reading section {}", section, ioe);
+        throw new RuntimeException(ioe);
+      }
+    });
+    metadata = cfr.getColumnMetadata();
+    nullBitmaps = null;
+  }
+
+  public String columnName() {
+    return metadata == null ? null : metadata.getColumnName();
+  }
+
+  /**
+   * @return The values of the entity with nulls as {@code null} and strings resolved, {@code null} if the entity isn't in the shard.
+   */
+  public List<Object> getValues() {
+    return values;
+  }
+
+  /**
+   * @return The index record of the entity, which carries its version and instance id, or {@code null} if the entity isn't in the shard.
+   */
+  public EntityRecord getEntityRecord() {
+    return record;
+  }
+
+  private int surrogate() {
+    if (entityId instanceof String) {
+      if (entityDictionaryReader == null)
+        return -1;
+      Integer surrogate = entityDictionaryReader.getSurrogate((String) entityId);
+      return surrogate == null ? -1 : surrogate;
+    } else if (entityId instanceof Integer) {
+      return (Integer) entityId;
+    }
+    return ((Long) entityId).intValue();
+  }
+
+  @Override
+  protected int readRowGroup(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException {
+    int surrogate = surrogate();
+    if (surrogate < 0 || entityRecords == null)
+      return 0;
+    // Version 3 null bitmaps are in entity order in their own section, so the entity's bitmap follows those before it.
+    int nullBitmapOffset = 0;
+    for (EntityRecord eir : entityRecords) {
+      if (eir.getEntityId() == surrogate) {
+        record = eir;
+        break;
+      }
+      nullBitmapOffset += eir.getNullLength();
+    }
+    if (record == null)
+      return 0;
+
+    DataType dataType = metadata.getColumnType();
+    try (RowGroupReader rowGroup = new RowGroupReader(inputStream, compressed, uncompressed)) {
+      // Everything after the entity is left for the column file reader to skip.
+      rowGroup.skipTo(record.getRowGroupOffset());
+      int valueLength = record.getValueLength();
+      ByteBuffer valueBuffer = ByteBuffer.allocate(valueLength);
+      rowGroup.readFully(valueBuffer.array(), 0, valueLength);
+      // The value list traversal flips the buffer, so position it at the end of the entity's values.
+      valueBuffer.position(valueLength);
+      values = dataType.traverseByteBufferToList(valueBuffer, valueLength);
+      if (record.getNullLength() > 0) {
+        RoaringBitmap nulls = new RoaringBitmap();
+        nulls.deserialize(readNullBitmap(record, rowGroup, nullBitmapOffset));
+        // Rows of the entity's bitmap start at one.
+        for (int relativeRow : nulls.toArray())
+          values.set(relativeRow - 1, null);
+      }
+      if (dataType == DataType.STRING) {
+        // Strings also use the zero surrogate for null.
+        for (int i = 0; i < values.size(); i++) {
+          Integer valueSurrogate = (Integer) values.get(i);
+          values.set(i, valueSurrogate == null || valueSurrogate == 0 ? null : strValueDictionary.getValueAsString(valueSurrogate));
+        }
+      }
+      return rowGroup.sectionBytesRead();
+    }
+  }
+}
@@ -1,30 +1,124 @@
 package com.rapid7.armor.read.fast;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.rapid7.armor.entity.EntityRecord;
+import com.rapid7.armor.entity.Row;
+import com.rapid7.armor.interval.Interval;
+import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.meta.ShardMetadata;
 import com.rapid7.armor.read.BaseArmorReader;
+import com.rapid7.armor.read.ReadMemoryManager;
+import com.rapid7.armor.read.aggregate.Aggregate;
+import com.rapid7.armor.read.aggregate.AggregateFunction;
+import com.rapid7.armor.read.predicate.InstantPredicate;
+import com.rapid7.armor.read.predicate.Predicate;
+import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.shard.ShardStrategy;
+import com.rapid7.armor.store.CachingReadStore;
+import com.rapid7.armor.store.Operator;
 import com.rapid7.armor.store.ReadStore;
 
 /**
  * The fast armor reader is primarily focused on highly optimized reads. This is use for production systems such as
  * presto to use.
+ * <p>
+ * With a {@link ReadMemoryManager} every shard column the reader loads is held against its budget while the reader uses it,
+ * so concurrent queries wait for memory instead of running out of heap. Block readers handed to the caller by
+ * {@link #getColumn(ShardId, String)} are only admitted, they are released once loaded as the caller decides how long to
+ * keep them.
  */
 public class FastArmorReader extends BaseArmorReader {
   private static final Logger LOGGER = LoggerFactory.getLogger(FastArmorReader.class);
+  public static final int DEFAULT_ENTITY_HISTORY_CONCURRENCY = 16;
+  private final ReadMemoryManager memoryManager;
 
   public FastArmorReader(ReadStore store) {
     super(store);
+    this.memoryManager = null;
+  }
+
+  public FastArmorReader(ReadStore store, ExecutorService threadPool) {
+    super(store, threadPool);
+    this.memoryManager = null;
+  }
+
+  public FastArmorReader(ReadStore store, ShardStrategy shardStrategy, ExecutorService threadPool) {
+    super(store, shardStrategy, threadPool);
+    this.memoryManager = null;
+  }
+
+  /**
+   * @param store The store to read from.
+   * @param shardStrategy The shard strategy the tables were written with, can be {@code null}.
+   * @param threadPool A thread pool used by apis that fan out over multiple shards, {@code null} for one of the reader's own.
+   * @param memoryManager The budget loaded columns are held against, can be {@code null}.
+   */
+  public FastArmorReader(ReadStore store, ShardStrategy shardStrategy, ExecutorService threadPool, ReadMemoryManager memoryManager) {
+    super(store, shardStrategy, threadPool);
+    if (memoryManager != null && store instanceof CachingReadStore && ((CachingReadStore) store).getMemoryManager() != null)
+      throw new IllegalArgumentException("The caching store already holds its columns against a memory manager");
+    this.memoryManager = memoryManager;
+  }
+
+  public ReadMemoryManager getMemoryManager() {
+    return memoryManager;
+  }
+
+  private FastArmorShardColumn loadColumn(ShardId shardId, String columnName, boolean withEntityDictionary) {
+    if (memoryManager == null)
+      return store.getFastArmorShard(shardId, columnName, withEntityDictionary);
+    return memoryManager.load(store, shardId, columnName, withEntityDictionary);
+  }
+
+  /**
+   * Loads a column with its size estimated from shard metadata the caller already fetched.
+   */
+  private FastArmorShardColumn loadColumn(ShardId shardId, String columnName, ShardMetadata metadata) {
+    if (memoryManager == null)
+      return store.getFastArmorShard(shardId, columnName, false);
+    return memoryManager.load(store, shardId, columnName, false, ReadMemoryManager.estimateBytes(metadata, columnName));
+  }
+
+  private void release(FastArmorShardColumn column) {
+    if (memoryManager != null)
+      memoryManager.release(column);
   }
 
   public FastArmorBlockReader getColumn(ShardId shardId, String columnName) throws IOException {
     if (!store.shardIdExists(shardId))
       return new NullArmorBlockReader(0);
-    FastArmorShardColumn armorShard = store.getFastArmorShard(shardId, columnName);
+    FastArmorShardColumn armorShard = loadColumn(shardId, columnName, false);
+    // The caller holds on to the block reader for as long as it likes, so the column was only admitted.
+    release(armorShard);
     if (armorShard == null) {
       ShardMetadata metadata = store.getShardMetadata(shardId);
       if (metadata == null)
@@ -54,4 +148,372 @@ public class FastArmorReader extends BaseArmorReader {
 
     return new FixedValueArmorBlockReader(fixedValue, numRows);
   }
+
+  /**
+   * Aggregates a column of a single shard. If there is no predicate and no sum is requested then it is answered from the
+   * stats and sketches of the shard metadata without reading the column, as long as the metadata holds them exactly.
+   *
+   * @param shardId The shard to aggregate.
+   * @param columnName The column to aggregate.
+   * @param functions The functions to compute.
+   * @param predicate An optional predicate on the column values, can be {@code null}.
+   *
+   * @return The partial aggregate of the shard or {@code null} if the shard doesn't exist.
+   */
+  public Aggregate aggregate(ShardId shardId, String columnName, Set<AggregateFunction> functions, Predicate<?> predicate) {
+    if (!store.shardIdExists(shardId))
+      return null;
+    ShardMetadata metadata = null;
+    boolean fromMetadata = predicate == null && AggregateFunction.answerableFromMetadata(functions);
+    // The memory budget estimates the column from the metadata too, so it is fetched once for both.
+    if (fromMetadata || memoryManager != null)
+      metadata = store.getShardMetadata(shardId);
+    if (fromMetadata && metadata != null && metadata.getColumnMetadata() != null) {
+      for (ColumnMetadata cm : metadata.getColumnMetadata()) {
+        if (cm != null && columnName.equals(cm.getColumnName()) && AggregateFunction.answerableFromMetadata(functions, cm))
+          return Aggregate.fromMetadata(cm);
+      }
+    }
+    FastArmorShardColumn armorShard = loadColumn(shardId, columnName, metadata);
+    if (armorShard != null) {
+      try {
+        return armorShard.aggregate(functions, predicate);
+      } finally {
+        release(armorShard);
+      }
+    }
+
+    // Same as getColumn, a missing column in a shard is treated as a column of all null values.
+    if (metadata == null)
+      metadata = store.getShardMetadata(shardId);
+    if (metadata == null || metadata.getColumnMetadata() == null || metadata.getColumnMetadata().isEmpty())
+      return null;
+    boolean nullsPass = predicate == null || predicate.getOperator() == Operator.IS_NULL;
+    return Aggregate.allNull(null, nullsPass ? metadata.getColumnMetadata().get(0).getNumRows() : 0);
+  }
+
+  /**
+   * Aggregates a column across every shard of a table's interval, the shard partials are computed in parallel and merged.
+   *
+   * @param tenant The tenant.
+   * @param table The table.
+   * @param interval The interval.
+   * @param timestamp The timestamp within the interval.
+   * @param columnName The column to aggregate.
+   * @param functions The functions to compute.
+   * @param predicate An optional predicate on the column values, can be {@code null}.
+   *
+   * @return The merged aggregate or {@code null} if there are no shards.
+   */
+  public Aggregate aggregate(
+      String tenant, String table, Interval interval, Instant timestamp, String columnName, Set<AggregateFunction> functions, Predicate<?> predicate) {
+    List<ShardId> shardIds = store.findShardIds(tenant, table, interval, timestamp);
+    ExecutorCompletionService<Aggregate> ecs = new ExecutorCompletionService<>(threadPool);
+    for (ShardId shardId : shardIds) {
+      ecs.submit(() -> aggregate(shardId, columnName, functions, predicate));
+    }
+    Aggregate total = null;
+    for (int i = 0; i < shardIds.size(); i++) {
+      try {
+        Aggregate partial = ecs.take().get();
+        if (total == null)
+          total = partial;
+        else
+          total.merge(partial);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(ie);
+      } catch (Exception e) {
+        LOGGER.error("Unable to aggregate column {} on table {} for tenant {}", columnName, table, tenant, e);
+        throw new RuntimeException(e);
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Reads the rows of multiple entities. Entities are routed to their shard with the shard strategy so only the shards
+   * and columns involved are opened, each in parallel. Entities that can't be found are left out of the result.
+   *
+   * @param tenant The tenant.
+   * @param table The table.
+   * @param interval The interval.
+   * @param timestamp The timestamp within the interval.
+   * @param entityIds The ids of the entities to read.
+   * @param columnNames The columns to read, the values of each row are in this order.
+   *
+   * @return The rows of each entity that was found.
+   */
+  public Map<Object, List<Row>> getEntities(
+      String tenant, String table, Interval interval, Instant timestamp, Collection<?> entityIds, List<String> columnNames) {
+    Map<ShardId, List<Object>> shardToEntities = groupByShard(tenant, table, interval, timestamp, entityIds);
+    List<ShardId> shardIds = new ArrayList<>(shardToEntities.keySet());
+    List<Callable<Map<Object, List<Object>>>> tasks = new ArrayList<>();
+    for (ShardId shardId : shardIds) {
+      List<Object> shardEntities = shardToEntities.get(shardId);
+      for (String columnName : columnNames)
+        tasks.add(() -> readEntityValues(shardId, columnName, shardEntities));
+    }
+    List<Map<Object, List<Object>>> columnValues = runAll(tasks);
+
+    Map<Object, List<Row>> results = new LinkedHashMap<>();
+    int numColumns = columnNames.size();
+    for (int s = 0; s < shardIds.size(); s++) {
+      List<Map<Object, List<Object>>> shardColumns = columnValues.subList(s * numColumns, (s + 1) * numColumns);
+      for (Object entityId : shardToEntities.get(shardIds.get(s))) {
+        results.computeIfAbsent(entityId, k -> buildRows(entityId, shardColumns));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Reads the values of the given entities from a shard's column.
+   *
+   * @param shardId The shard to read from.
+   * @param columnName The column to read.
+   * @param entityIds The entities to find.
+   *
+   * @return The values of each entity that was found, if the column doesn't exist in the shard then {@code null}.
+   */
+  protected Map<Object, List<Object>> readEntityValues(ShardId shardId, String columnName, Collection<Object> entityIds) {
+    // The entity dictionary is only needed to look up string ids.
+    boolean withEntityDictionary = entityIds.stream().anyMatch(entityId -> entityId instanceof String);
+    FastArmorShardColumn column = loadColumn(shardId, columnName, withEntityDictionary);
+    if (column == null)
+      return null;
+    try {
+      Map<Object, List<Object>> values = new HashMap<>();
+      for (Object entityId : entityIds) {
+        List<Object> entityValues = column.getValuesForEntity(entityId);
+        if (entityValues != null)
+          values.put(entityId, entityValues);
+      }
+      return values;
+    } finally {
+      release(column);
+    }
+  }
+
+  /**
+   * Reads an entity from every interval start that matches, i.e. the daily slices of an entity over the last 90 days.
+   * Each interval start is routed to the shard of the entity and read on the reader's thread pool, at most
+   * {@link #DEFAULT_ENTITY_HISTORY_CONCURRENCY} at a time. Records are returned in interval start order as soon as they
+   * and every earlier interval have been read.
+   *
+   * @param tenant The tenant.
+   * @param table The table.
+   * @param interval The interval.
+   * @param intervalStartPredicate The interval starts to read, can be {@code null} to read all of them.
+   * @param entityId The id of the entity.
+   * @param columnNames The columns to read.
+   *
+   * @return The entity at each interval start it was found in, ordered by interval start.
+   */
+  public Stream<EntityHistoryRecord> getEntityHistory(
+      String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate, Object entityId, List<String> columnNames) {
+    return getEntityHistory(tenant, table, interval, intervalStartPredicate, entityId, columnNames, DEFAULT_ENTITY_HISTORY_CONCURRENCY);
+  }
+
+  /**
+   * Reads an entity from every interval start that matches, see
+   * {@link #getEntityHistory(String, String, Interval, InstantPredicate, Object, List)}. Interval starts are read ahead of
+   * the stream's consumer, only up to {@code maxConcurrency} of them at a time.
+   *
+   * @param maxConcurrency The most interval starts read at once.
+   *
+   * @return The entity at each interval start it was found in, ordered by interval start. Closing the stream cancels
+   * the reads that are still outstanding.
+   */
+  public Stream<EntityHistoryRecord> getEntityHistory(
+      String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate, Object entityId, List<String> columnNames,
+      int maxConcurrency) {
+    if (maxConcurrency < 1)
+      throw new IllegalArgumentException("The entity history concurrency must be at least 1 not " + maxConcurrency);
+    if (shardStrategy == null)
+      throw new IllegalStateException("A shard strategy must be given to the reader to route entities to shards");
+    List<String> intervalStarts = intervalStartPredicate == null ?
+        store.getIntervalStarts(tenant, table, interval) : store.getIntervalStarts(tenant, table, interval, intervalStartPredicate);
+    int shardNum = shardStrategy.shardNum(entityId);
+    List<ShardId> shardIds = intervalStarts.stream()
+        .sorted(Comparator.comparing(Instant::parse))
+        .map(intervalStart -> new ShardId(tenant, table, interval.getInterval(), intervalStart, shardNum))
+        .collect(Collectors.toList());
+    EntityHistoryWindow window = new EntityHistoryWindow(shardIds, entityId, columnNames, maxConcurrency);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(window, Spliterator.ORDERED), false)
+        .onClose(window::cancel)
+        .filter(Objects::nonNull);
+  }
+
+  /**
+   * Keeps up to a fixed number of interval start reads submitted ahead of the consumer, another is submitted as each
+   * one is taken so the thread pool stays busy without every interval start being read at once.
+   */
+  private final class EntityHistoryWindow implements Iterator<EntityHistoryRecord> {
+    private final Iterator<ShardId> shardIds;
+    private final Object entityId;
+    private final List<String> columnNames;
+    private final int maxConcurrency;
+    private final Deque<Future<EntityHistoryRecord>> submitted = new ArrayDeque<>();
+
+    EntityHistoryWindow(List<ShardId> shardIds, Object entityId, List<String> columnNames, int maxConcurrency) {
+      this.shardIds = shardIds.iterator();
+      this.entityId = entityId;
+      this.columnNames = columnNames;
+      this.maxConcurrency = maxConcurrency;
+    }
+
+    private void fill() {
+      while (submitted.size() < maxConcurrency && shardIds.hasNext()) {
+        ShardId shardId = shardIds.next();
+        submitted.add(threadPool.submit(() -> readEntityHistory(shardId, entityId, columnNames)));
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      fill();
+      return !submitted.isEmpty();
+    }
+
+    @Override
+    public EntityHistoryRecord next() {
+      if (!hasNext())
+        throw new NoSuchElementException();
+      // The window is only refilled by the next call, once this read is done, so it never runs more than its size.
+      return await(submitted.poll());
+    }
+
+    void cancel() {
+      for (Future<EntityHistoryRecord> future : submitted)
+        future.cancel(false);
+      submitted.clear();
+      while (shardIds.hasNext())
+        shardIds.next();
+    }
+  }
+
+  /**
+   * Reads an entity from a single shard, only the entity's values are read from each column by way of the column's
+   * entity index.
+   *
+   * @param shardId The shard the entity routes to.
+   * @param entityId The id of the entity.
+   * @param columnNames The columns to read.
+   *
+   * @return The entity or {@code null} if the shard doesn't have it.
+   */
+  protected EntityHistoryRecord readEntityHistory(ShardId shardId, Object entityId, List<String> columnNames) {
+    if (!store.shardIdExists(shardId))
+      return null;
+    EntityRecord record = null;
+    List<Map<Object, List<Object>>> columns = new ArrayList<>(columnNames.size());
+    for (String columnName : columnNames) {
+      FastArmorEntityColumn column = store.getFastArmorEntity(shardId, columnName, entityId);
+      List<Object> values = column == null ? null : column.getValues();
+      if (values == null) {
+        columns.add(null);
+        continue;
+      }
+      if (record == null)
+        record = column.getEntityRecord();
+      columns.add(Collections.singletonMap(entityId, values));
+    }
+    if (record == null)
+      return null;
+    return new EntityHistoryRecord(entityId, shardId, record.getVersion(), record.instanceId(), buildRows(entityId, columns));
+  }
+
+  /**
+   * Scans the columns of every shard of a table's interval in parallel on the reader's thread pool, see {@link FastArmorScan}.
+   *
+   * @param tenant The tenant.
+   * @param table The table.
+   * @param interval The interval.
+   * @param intervalStartPredicate The interval starts to scan, can be {@code null} to scan all of them.
+   * @param columnNames The columns to read.
+   * @param predicates Predicates used to prune shards by their column stats, can be {@code null}.
+   * @param ordered If {@code true} blocks are returned in interval start, shard and row order.
+   *
+   * @return The scan, which must be closed if it isn't fully consumed.
+   */
+  public FastArmorScan scan(
+      String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate, List<String> columnNames,
+      List<Predicate<?>> predicates, boolean ordered) {
+    return scan(tenant, table, interval, intervalStartPredicate, columnNames, predicates, ordered,
+        FastArmorScan.DEFAULT_BLOCK_ROWS, FastArmorScan.DEFAULT_MAX_IN_FLIGHT_BYTES);
+  }
+
+  public FastArmorScan scan(
+      String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate, List<String> columnNames,
+      List<Predicate<?>> predicates, boolean ordered, int blockRows, long maxInFlightBytes) {
+    List<ColumnId> tableColumns = store.getColumnIds(tenant, table);
+    List<ColumnId> columns = new ArrayList<>();
+    for (String columnName : columnNames) {
+      ColumnId column = tableColumns.stream().filter(c -> c.getName().equals(columnName)).findFirst().orElse(null);
+      if (column == null)
+        throw new IllegalArgumentException("The column " + columnName + " doesn't exist in table " + table);
+      columns.add(column);
+    }
+    List<ShardId> shardIds = sortedShardIds(tenant, table, interval, intervalStartPredicate);
+    return new FastArmorScan(store, threadPool, shardIds, columns, predicates, ordered, blockRows, maxInFlightBytes, memoryManager);
+  }
+
+  /**
+   * Opens a cursor over every shard of a table's interval that loads the upcoming shards on the reader's thread pool while
+   * the current one is consumed, see {@link FastArmorShardCursor}.
+   *
+   * @param tenant The tenant.
+   * @param table The table.
+   * @param interval The interval.
+   * @param intervalStartPredicate The interval starts to read, can be {@code null} to read all of them.
+   * @param columnNames The columns to load.
+   * @param prefetchShards The maximum number of shards to load ahead.
+   * @param maxBufferedBytes The limit of bytes loaded ahead.
+   *
+   * @return The cursor, which must be closed if it isn't fully consumed.
+   */
+  public FastArmorShardCursor openCursor(
+      String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate, List<String> columnNames,
+      int prefetchShards, long maxBufferedBytes) {
+    return new FastArmorShardCursor(
+        store, threadPool, sortedShardIds(tenant, table, interval, intervalStartPredicate), columnNames, prefetchShards, maxBufferedBytes,
+        memoryManager);
+  }
+
+  public FastArmorShardCursor openCursor(
+      String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate, List<String> columnNames) {
+    return openCursor(tenant, table, interval, intervalStartPredicate, columnNames,
+        FastArmorShardCursor.DEFAULT_PREFETCH_SHARDS, FastArmorShardCursor.DEFAULT_MAX_BUFFERED_BYTES);
+  }
+
+  private List<ShardId> sortedShardIds(String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate) {
+    List<ShardId> shardIds = new ArrayList<>(store.findShardIds(tenant, table, interval, intervalStartPredicate));
+    shardIds.sort(Comparator.comparing((ShardId shardId) -> Instant.parse(shardId.getIntervalStart())).thenComparing(ShardId::getShardNum));
+    return shardIds;
+  }
+
+  protected static List<Row> buildRows(Object entityId, List<Map<Object, List<Object>>> columns) {
+    int numRows = -1;
+    for (Map<Object, List<Object>> column : columns) {
+      if (column != null && column.containsKey(entityId)) {
+        numRows = column.get(entityId).size();
+        break;
+      }
+    }
+    if (numRows < 0)
+      return null;
+    List<Row> rows = new ArrayList<>(numRows);
+    for (int r = 0; r < numRows; r++) {
+      Object[] values = new Object[columns.size()];
+      for (int c = 0; c < columns.size(); c++) {
+        // A column missing from the shard is read as all null, same as getColumn.
+        Map<Object, List<Object>> column = columns.get(c);
+        List<Object> entityValues = column == null ? null : column.get(entityId);
+        values[c] = entityValues == null ? null : entityValues.get(r);
+      }
+      rows.add(new Row(values));
+    }
+    return rows;
+  }
 }
@@ -0,0 +1,97 @@
+package com.rapid7.armor.read.fast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A range of rows of a shard that starts and ends on entity boundaries. Every column of a shard holds the same entities
+ * in the same order, so a range computed from one column addresses the exact same rows in all other columns of the shard.
+ */
+public class FastArmorRowRange {
+  private final int startEntity;
+  private final int endEntity;
+  private final int startRow;
+  private final int endRow;
+
+  public FastArmorRowRange(int startEntity, int endEntity, int startRow, int endRow) {
+    this.startEntity = startEntity;
+    this.endEntity = endEntity;
+    this.startRow = startRow;
+    this.endRow = endRow;
+  }
+
+  /**
+   * Splits the rows into ranges of about the same number of rows without splitting any entity. An entity with more rows
+   * than a range can hold makes its range larger and the following ranges smaller, ranges can be empty.
+   *
+   * @param entityRowOffsets The row each entity starts at followed by the total number of rows.
+   * @param numSplits The number of ranges to return.
+   *
+   * @return Exactly {@code numSplits} contiguous ranges covering every row.
+   */
+  static List<FastArmorRowRange> split(int[] entityRowOffsets, int numSplits) {
+    if (numSplits <= 0)
+      throw new IllegalArgumentException("The number of splits must be greater than zero");
+    int numEntities = entityRowOffsets.length - 1;
+    int totalRows = entityRowOffsets[numEntities];
+    List<FastArmorRowRange> ranges = new ArrayList<>(numSplits);
+    int startEntity = 0;
+    for (int i = 1; i <= numSplits; i++) {
+      int endEntity = numEntities;
+      if (i < numSplits) {
+        long target = (long) totalRows * i / numSplits;
+        // First entity starting at or past the target row, that is where the next range begins.
+        int index = Arrays.binarySearch(entityRowOffsets, startEntity, numEntities + 1, (int) target);
+        if (index < 0) {
+          index = -index - 1;
+        } else {
+          // Entities without rows share an offset with the next entity, start at the first of them.
+          while (index > startEntity && entityRowOffsets[index - 1] == target)
+            index--;
+        }
+        endEntity = Math.max(startEntity, Math.min(index, numEntities));
+      }
+      ranges.add(new FastArmorRowRange(startEntity, endEntity, entityRowOffsets[startEntity], entityRowOffsets[endEntity]));
+      startEntity = endEntity;
+    }
+    return ranges;
+  }
+
+  /**
+   * @return The first entity of the range, as the position of the entity in the decoded values.
+   */
+  public int getStartEntity() {
+    return startEntity;
+  }
+
+  /**
+   * @return The entity after the last entity of the range.
+   */
+  public int getEndEntity() {
+    return endEntity;
+  }
+
+  /**
+   * @return The first row of the range.
+   */
+  public int getStartRow() {
+    return startRow;
+  }
+
+  /**
+   * @return The row after the last row of the range.
+   */
+  public int getEndRow() {
+    return endRow;
+  }
+
+  public int getNumRows() {
+    return endRow - startRow;
+  }
+
+  @Override
+  public String toString() {
+    return "FastArmorRowRange{entities=" + startEntity + "-" + endEntity + ", rows=" + startRow + "-" + endRow + "}";
+  }
+}
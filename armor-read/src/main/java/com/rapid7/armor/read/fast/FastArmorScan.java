@@ -0,0 +1,430 @@
+package com.rapid7.armor.read.fast;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.rapid7.armor.columnfile.ZoneMap;
+import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.ReadMemoryManager;
+import com.rapid7.armor.read.predicate.ColumnMetadataPredicateUtils;
+import com.rapid7.armor.read.predicate.Predicate;
+import com.rapid7.armor.schema.ColumnId;
+import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.store.ReadStore;
+
+import io.airlift.slice.Slices;
+
+/**
+ * A parallel scan over a set of shards. The shards are split into entity aligned row ranges, see {@link FastArmorRowRange},
+ * which are read on the given executor (preferably a work stealing pool) and returned as {@link FastArmorScanBlock}s, each one
+ * holding a block per projected column. A block holds about the block rows, more if an entity doesn't fit and so less or none
+ * for the next block of the shard.
+ * <p>
+ * Splits are only scheduled as blocks are consumed, so the estimated bytes in flight never exceed the in-flight limit. These
+ * are the blocks being read or waiting to be consumed plus the decoded columns of every shard that still has splits to
+ * return, estimated from the shard metadata. The columns of a shard are loaded once and shared by all of its splits. Shards
+ * whose column stats can't match the predicates are pruned before the scan starts. Splits that the zone maps or bloom filters
+ * of the projected columns rule out are returned as empty blocks without being decoded, rows themselves are not filtered.
+ * <p>
+ * With a {@link ReadMemoryManager} the columns of a shard are also held against its budget, from when they are loaded until
+ * the last split of the shard is returned or the scan is closed.
+ * <p>
+ * This class is not thread safe, it is meant to be consumed by a single thread.
+ */
+public class FastArmorScan implements Iterator<FastArmorScanBlock>, AutoCloseable {
+  public static final int DEFAULT_BLOCK_ROWS = 8192;
+  public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 64 * 1024 * 1024;
+  private final ReadStore store;
+  private final Executor executor;
+  private final List<ColumnId> columns;
+  private final List<String> columnNames;
+  private final List<Predicate<?>> predicates;
+  private final boolean ordered;
+  private final long maxInFlightBytes;
+  private final int bytesPerRow;
+  private final ReadMemoryManager memoryManager;
+  private final List<Split> splits = new ArrayList<>();
+  private final Deque<CompletableFuture<FastArmorScanBlock>> pending = new ArrayDeque<>();
+  private final BlockingQueue<CompletableFuture<FastArmorScanBlock>> completed = new LinkedBlockingQueue<>();
+  private final Set<CompletableFuture<?>> scheduled = new HashSet<>(); // Everything not yet returned, cancelled on close
+  private final List<ShardSplits> loadedShards = new ArrayList<>(); // Shards whose columns are held
+  private ShardId openShardId;
+  private CompletableFuture<ShardColumns> openShard;
+  private int nextSplit;
+  private int returned;
+  private int inFlight;
+  private long inFlightBytes;
+  private boolean closed;
+
+  /**
+   * Plans a scan, the metadata of the shards is read up front to prune and split them.
+   *
+   * @param store The store to read from.
+   * @param executor The executor to read on.
+   * @param shardIds The shards to scan, in the order an ordered scan should return them.
+   * @param columns The columns to read.
+   * @param predicates Predicates used to prune shards, can be {@code null}.
+   * @param ordered If {@code true} blocks are returned in shard and row order, otherwise in the order they finish.
+   * @param blockRows The number of rows to aim for in a block.
+   * @param maxInFlightBytes The limit of estimated bytes held by loaded shards and by blocks being read or waiting to be
+   * consumed, at least one block is always in flight.
+   */
+  public FastArmorScan(
+      ReadStore store,
+      Executor executor,
+      List<ShardId> shardIds,
+      List<ColumnId> columns,
+      List<Predicate<?>> predicates,
+      boolean ordered,
+      int blockRows,
+      long maxInFlightBytes) {
+    this(store, executor, shardIds, columns, predicates, ordered, blockRows, maxInFlightBytes, null);
+  }
+
+  /**
+   * Same as {@link #FastArmorScan(ReadStore, Executor, List, List, List, boolean, int, long)} holding the loaded columns
+   * against a memory manager.
+   *
+   * @param memoryManager The budget loaded columns are held against, can be {@code null}.
+   */
+  public FastArmorScan(
+      ReadStore store,
+      Executor executor,
+      List<ShardId> shardIds,
+      List<ColumnId> columns,
+      List<Predicate<?>> predicates,
+      boolean ordered,
+      int blockRows,
+      long maxInFlightBytes,
+      ReadMemoryManager memoryManager) {
+    if (blockRows <= 0)
+      throw new IllegalArgumentException("The block rows must be greater than zero");
+    this.store = store;
+    this.executor = executor;
+    this.columns = columns;
+    this.columnNames = columns.stream().map(ColumnId::getName).collect(Collectors.toList());
+    this.predicates = predicates;
+    this.ordered = ordered;
+    this.maxInFlightBytes = maxInFlightBytes;
+    this.memoryManager = memoryManager;
+    int rowBytes = 0;
+    for (ColumnId column : columns)
+      rowBytes += column.dataType().getByteLength();
+    this.bytesPerRow = rowBytes;
+
+    List<CompletableFuture<ShardMetadata>> metadataFutures = shardIds.stream()
+        .map(shardId -> CompletableFuture.supplyAsync(() -> store.getShardMetadata(shardId), executor))
+        .collect(Collectors.toList());
+    for (int i = 0; i < shardIds.size(); i++) {
+      ShardMetadata metadata = join(metadataFutures.get(i));
+      if (metadata == null || metadata.getColumnMetadata() == null || metadata.getColumnMetadata().isEmpty())
+        continue;
+      if (!mayMatch(metadata, predicates))
+        continue;
+      int numRows = metadata.getColumnMetadata().get(0).getNumRows();
+      int numSplits = (numRows + blockRows - 1) / blockRows;
+      ShardSplits shard = new ShardSplits(shardIds.get(i), numSplits, numRows, estimateColumnBytes(metadata));
+      for (int s = 0; s < numSplits; s++)
+        splits.add(new Split(shard, splits.size(), s, Math.min(blockRows, numRows - s * blockRows)));
+    }
+  }
+
+  private long[] estimateColumnBytes(ShardMetadata metadata) {
+    long[] bytes = new long[columnNames.size()];
+    for (int c = 0; c < bytes.length; c++)
+      bytes[c] = ReadMemoryManager.estimateBytes(metadata, columnNames.get(c));
+    return bytes;
+  }
+
+  private static boolean mayMatch(ShardMetadata metadata, List<Predicate<?>> predicates) {
+    if (predicates == null)
+      return true;
+    for (Predicate<?> predicate : predicates) {
+      for (ColumnMetadata cm : metadata.getColumnMetadata()) {
+        if (cm != null && cm.getColumnName().equals(predicate.getField()) && !ColumnMetadataPredicateUtils.columnMayMatch(predicate, cm))
+          return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The total number of blocks this scan returns.
+   */
+  public int numBlocks() {
+    return splits.size();
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return !closed && returned < splits.size();
+  }
+
+  @Override
+  public FastArmorScanBlock next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    schedule();
+    CompletableFuture<FastArmorScanBlock> future;
+    if (ordered) {
+      future = pending.poll();
+    } else {
+      try {
+        future = completed.take();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(ie);
+      }
+    }
+    scheduled.remove(future);
+    FastArmorScanBlock block = join(future);
+    Split split = splits.get(block.getSequence());
+    inFlight--;
+    inFlightBytes -= estimateBytes(split.estimatedRows);
+    if (++split.shard.returned == split.shard.numSplits) {
+      // The last split of the shard, nothing holds on to its columns anymore.
+      inFlightBytes -= split.shard.estimatedBytes;
+      scheduled.removeAll(split.shard.columns);
+      releaseColumns(split.shard);
+    }
+    returned++;
+    schedule();
+    return block;
+  }
+
+  /**
+   * @return The remaining blocks as a stream, closing the stream closes the scan.
+   */
+  public Stream<FastArmorScanBlock> stream() {
+    int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, characteristics), false).onClose(this::close);
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (ShardSplits shard : new ArrayList<>(loadedShards))
+      releaseColumns(shard);
+    // Cancelled tasks that haven't started yet are skipped by the executor, running ones finish and are dropped.
+    for (CompletableFuture<?> future : scheduled)
+      future.cancel(false);
+    scheduled.clear();
+    pending.clear();
+    completed.clear();
+    openShard = null;
+  }
+
+  private long estimateBytes(int numRows) {
+    return (long) numRows * bytesPerRow;
+  }
+
+  private void schedule() {
+    while (!closed && nextSplit < splits.size()) {
+      Split split = splits.get(nextSplit);
+      boolean newShard = !split.shard.shardId.equals(openShardId);
+      long splitBytes = estimateBytes(split.estimatedRows) + (newShard ? split.shard.estimatedBytes : 0);
+      if (inFlight > 0 && inFlightBytes + splitBytes > maxInFlightBytes)
+        return;
+      if (newShard) {
+        // Splits of a shard are contiguous, once we move on only the scheduled splits hold on to the previous shard.
+        openShardId = split.shard.shardId;
+        openShard = loadShard(split.shard);
+      }
+      CompletableFuture<FastArmorScanBlock> future = openShard.thenApplyAsync(shardColumns -> readSplit(split, shardColumns), executor);
+      scheduled.add(future);
+      if (ordered)
+        pending.add(future);
+      else
+        future.whenComplete((block, error) -> completed.add(future));
+      inFlight++;
+      inFlightBytes += splitBytes;
+      nextSplit++;
+    }
+  }
+
+  private CompletableFuture<ShardColumns> loadShard(ShardSplits shard) {
+    ShardId shardId = shard.shardId;
+    List<CompletableFuture<FastArmorShardColumn>> columnFutures = new ArrayList<>(columnNames.size());
+    for (int c = 0; c < columnNames.size(); c++)
+      columnFutures.add(loadColumn(shardId, columnNames.get(c), shard.columnBytes[c]));
+    shard.columns = columnFutures;
+    scheduled.addAll(columnFutures);
+    loadedShards.add(shard);
+    return CompletableFuture.allOf(columnFutures.toArray(new CompletableFuture[0]))
+        .thenApply(v -> new ShardColumns(
+            columnFutures.stream().map(CompletableFuture::join).toArray(FastArmorShardColumn[]::new), shard.numSplits, shard.numRows, predicates));
+  }
+
+  private CompletableFuture<FastArmorShardColumn> loadColumn(ShardId shardId, String columnName, long estimatedBytes) {
+    CompletableFuture<FastArmorShardColumn> future = new CompletableFuture<>();
+    executor.execute(() -> {
+      // Cancelled before it started.
+      if (future.isDone())
+        return;
+      try {
+        FastArmorShardColumn column = memoryManager == null ?
+            store.getFastArmorShard(shardId, columnName, false) : memoryManager.load(store, shardId, columnName, false, estimatedBytes);
+        // Cancelled while loading, so nothing else will release it.
+        if (!future.complete(column) && memoryManager != null)
+          memoryManager.release(column);
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+
+  private void releaseColumns(ShardSplits shard) {
+    loadedShards.remove(shard);
+    for (CompletableFuture<FastArmorShardColumn> future : shard.columns) {
+      // A load that is cancelled before it completes releases its own column.
+      if (!future.cancel(false) && !future.isCompletedExceptionally() && memoryManager != null)
+        memoryManager.release(future.join());
+    }
+  }
+
+  private FastArmorScanBlock readSplit(Split split, ShardColumns shard) {
+    FastArmorRowRange range = shard.ranges.get(split.splitIndex);
+    FastArmorBlock[] blocks = new FastArmorBlock[shard.columns.length];
+    if (!shard.mayMatch(range)) {
+      for (int c = 0; c < shard.columns.length; c++)
+        blocks[c] = nullBlock(columns.get(c).dataType(), 0, split.sequence);
+      return new FastArmorScanBlock(split.shard.shardId, split.sequence, range.getStartRow(), 0, columnNames, blocks);
+    }
+    for (int c = 0; c < shard.columns.length; c++) {
+      // Same as getColumn, a column missing from the shard is read as all null.
+      if (shard.columns[c] == null)
+        blocks[c] = nullBlock(columns.get(c).dataType(), range.getNumRows(), split.sequence);
+      else
+        blocks[c] = shard.columns[c].getBlock(range.getStartRow(), range.getNumRows(), split.sequence);
+    }
+    return new FastArmorScanBlock(split.shard.shardId, split.sequence, range.getStartRow(), range.getNumRows(), columnNames, blocks);
+  }
+
+  private static FastArmorBlock nullBlock(DataType dataType, int numRows, int batchNum) {
+    boolean[] valueIsNull = new boolean[numRows];
+    Arrays.fill(valueIsNull, true);
+    switch (dataType) {
+      case STRING:
+        return new FastArmorBlock(Slices.allocate(0), new int[numRows + 1], valueIsNull, numRows, batchNum);
+      case INTEGER:
+      case FLOAT:
+        return new FastArmorBlock(new int[numRows], valueIsNull, numRows, batchNum);
+      default:
+        return new FastArmorBlock(new long[numRows], valueIsNull, numRows, batchNum);
+    }
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ce) {
+      if (ce.getCause() instanceof RuntimeException)
+        throw (RuntimeException) ce.getCause();
+      throw new RuntimeException(ce.getCause());
+    }
+  }
+
+  private static final class ShardSplits {
+    private final ShardId shardId;
+    private final int numSplits;
+    private final int numRows;
+    private final long[] columnBytes; // Estimated from the shard metadata when planning, in the order of the column names
+    private final long estimatedBytes;
+    private List<CompletableFuture<FastArmorShardColumn>> columns; // Set once loaded
+    private int returned;
+
+    ShardSplits(ShardId shardId, int numSplits, int numRows, long[] columnBytes) {
+      this.shardId = shardId;
+      this.numSplits = numSplits;
+      this.numRows = numRows;
+      this.columnBytes = columnBytes;
+      this.estimatedBytes = Arrays.stream(columnBytes).sum();
+    }
+  }
+
+  private static final class Split {
+    private final ShardSplits shard;
+    private final int sequence;
+    private final int splitIndex;
+    private final int estimatedRows;
+
+    Split(ShardSplits shard, int sequence, int splitIndex, int estimatedRows) {
+      this.shard = shard;
+      this.sequence = sequence;
+      this.splitIndex = splitIndex;
+      this.estimatedRows = estimatedRows;
+    }
+  }
+
+  private static final class ShardColumns {
+    private final FastArmorShardColumn[] columns;
+    private final List<FastArmorRowRange> ranges;
+    private final List<List<ZoneMap>> matchingZones = new ArrayList<>(); // Per column with zone maps, the zones that may match
+
+    ShardColumns(FastArmorShardColumn[] columns, int numSplits, int numRows, List<Predicate<?>> predicates) {
+      this.columns = columns;
+      if (predicates != null) {
+        for (FastArmorShardColumn column : columns) {
+          List<ZoneMap> zones = column == null ? null : column.zonesMayMatch(predicates);
+          if (zones != null)
+            matchingZones.add(zones);
+          else if (column != null && !column.mayMatch(predicates))
+            matchingZones.add(Collections.emptyList()); // The bloom filter rules out every row
+        }
+      }
+      FastArmorShardColumn first = Arrays.stream(columns).filter(Objects::nonNull).findFirst().orElse(null);
+      if (first != null) {
+        // Ranges follow entity boundaries, which are the same for every column of the shard.
+        this.ranges = first.splitRows(numSplits);
+      } else {
+        // None of the columns are in the shard so every block is all null, only the row counts matter.
+        this.ranges = new ArrayList<>(numSplits);
+        for (int s = 0; s < numSplits; s++)
+          ranges.add(new FastArmorRowRange(0, 0, (int) ((long) numRows * s / numSplits), (int) ((long) numRows * (s + 1) / numSplits)));
+      }
+    }
+
+    boolean mayMatch(FastArmorRowRange range) {
+      if (range.getNumRows() == 0)
+        return true;
+      for (List<ZoneMap> zones : matchingZones) {
+        boolean overlaps = false;
+        for (ZoneMap zone : zones) {
+          if (zone.getStartRow() < range.getEndRow() && zone.getEndRow() > range.getStartRow()) {
+            overlaps = true;
+            break;
+          }
+        }
+        if (!overlaps)
+          return false;
+      }
+      return true;
+    }
+  }
+}
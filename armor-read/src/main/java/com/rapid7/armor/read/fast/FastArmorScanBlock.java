@@ -0,0 +1,68 @@
+package com.rapid7.armor.read.fast;
+
+import java.util.List;
+
+import com.rapid7.armor.shard.ShardId;
+
+/**
+ * A range of rows of a shard across every column of a scan, see {@link FastArmorScan}.
+ */
+public class FastArmorScanBlock {
+  private final ShardId shardId;
+  private final int sequence;
+  private final int startRow;
+  private final int numRows;
+  private final List<String> columnNames;
+  private final FastArmorBlock[] blocks;
+
+  public FastArmorScanBlock(ShardId shardId, int sequence, int startRow, int numRows, List<String> columnNames, FastArmorBlock[] blocks) {
+    this.shardId = shardId;
+    this.sequence = sequence;
+    this.startRow = startRow;
+    this.numRows = numRows;
+    this.columnNames = columnNames;
+    this.blocks = blocks;
+  }
+
+  public ShardId getShardId() {
+    return shardId;
+  }
+
+  /**
+   * @return The position of this block in the scan, blocks of an ordered scan are returned in sequence order.
+   */
+  public int getSequence() {
+    return sequence;
+  }
+
+  /**
+   * @return The zero-indexed row within the shard this block starts at.
+   */
+  public int getStartRow() {
+    return startRow;
+  }
+
+  public int getNumRows() {
+    return numRows;
+  }
+
+  public List<String> getColumnNames() {
+    return columnNames;
+  }
+
+  /**
+   * @param column The index of the column in the scan's projection.
+   *
+   * @return The block of the column.
+   */
+  public FastArmorBlock getBlock(int column) {
+    return blocks[column];
+  }
+
+  public FastArmorBlock getBlock(String columnName) {
+    int column = columnNames.indexOf(columnName);
+    if (column < 0)
+      throw new IllegalArgumentException("The column " + columnName + " isn't part of the scan");
+    return blocks[column];
+  }
+}
@@ -0,0 +1,64 @@
+package com.rapid7.armor.read.fast;
+
+import java.util.Map;
+
+import com.rapid7.armor.shard.ShardId;
+
+/**
+ * The loaded columns of a single shard, see {@link FastArmorShardCursor}.
+ */
+public class FastArmorShard {
+  private final ShardId shardId;
+  private final int numRows;
+  private final Map<String, FastArmorShardColumn> columns;
+
+  public FastArmorShard(ShardId shardId, int numRows, Map<String, FastArmorShardColumn> columns) {
+    this.shardId = shardId;
+    this.numRows = numRows;
+    this.columns = columns;
+  }
+
+  public ShardId getShardId() {
+    return shardId;
+  }
+
+  public int getNumRows() {
+    return numRows;
+  }
+
+  /**
+   * @param columnName The name of the column.
+   *
+   * @return The column or {@code null} if the shard doesn't have it.
+   */
+  public FastArmorShardColumn getColumn(String columnName) {
+    return columns.get(columnName);
+  }
+
+  /**
+   * Returns a new block reader of the column, same as {@link FastArmorReader#getColumn} a column the shard doesn't have
+   * is read as all null.
+   *
+   * @param columnName The name of the column.
+   *
+   * @return A block reader.
+   */
+  public FastArmorBlockReader getColumnReader(String columnName) {
+    FastArmorShardColumn column = columns.get(columnName);
+    if (column == null)
+      return new NullArmorBlockReader(numRows);
+    return column.getFastArmorColumnReader();
+  }
+
+  /**
+   * @return The approximate number of bytes held by the loaded columns.
+   */
+  public long memoryUsage() {
+    long bytes = 0;
+    for (FastArmorShardColumn column : columns.values()) {
+      if (column != null)
+        bytes += column.memoryUsage();
+    }
+    return bytes;
+  }
+}
@@ -4,21 +4,33 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Set;
 
 import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.luben.zstd.ZstdInputStream;
 import com.rapid7.armor.columnfile.ColumnFileSection;
 import com.rapid7.armor.columnfile.ColumnFileReader;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.io.IOTools;
 import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.read.BaseArmorShardColumn;
+import com.rapid7.armor.read.DictionaryReader;
+import com.rapid7.armor.read.RowGroupReader;
+import com.rapid7.armor.read.aggregate.Aggregate;
+import com.rapid7.armor.read.aggregate.AggregateFunction;
+import com.rapid7.armor.read.predicate.Predicate;
 import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.store.Operator;
 
+import io.airlift.slice.Slice;
+import io.airlift.slice.Slices;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 /**
@@ -27,6 +39,9 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
  * 1) Avoid returning objects.
  * 2) Avoid unnecssary alloc/dealloc
  * 3) Avoid unnessary looping
+ * <p>
+ * Once loaded the decoded column is never modified, every reader gets its own view of the values and decodes them by
+ * absolute index. So a single decoded column can be shared by any number of concurrent queries, see {@link com.rapid7.armor.store.CachingReadStore}.
  */
 public class FastArmorShardColumn extends BaseArmorShardColumn {
   private static final Logger LOGGER = LoggerFactory.getLogger(FastArmorShardColumn.class);
@@ -34,8 +49,24 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
   private int[] entityNumRows;
   private int[] entityDecodedLength;
   private IntArrayList rowsIsNull; // Row number that is null (NOTE: NOT zero-indexed)
+  private int[] entityRowOffsets; // Row the entity starts at, entity i spans entityRowOffsets[i] to entityRowOffsets[i + 1]
+  private Int2IntOpenHashMap entityIndex; // Entity surrogate to the position of the entity in the decoded values
+  private final boolean withEntityDictionary;
+  private byte[] entityDictionaryBytes; // Kept as is until a lookup by string id needs it
+  private int entityDictionaryUncompressed;
+  private long memoryUsage;
 
   public FastArmorShardColumn(InputStream inputStream) throws IOException {
+    this(inputStream, true);
+  }
+
+  /**
+   * @param inputStream The column file, it is closed once read.
+   * @param withEntityDictionary If {@code false} the entity dictionary section is skipped rather than held, scans and
+   * lookups by numeric id don't need it. Lookups by string id then fail.
+   */
+  public FastArmorShardColumn(InputStream inputStream, boolean withEntityDictionary) throws IOException {
+    this.withEntityDictionary = withEntityDictionary;
     try {
       load(new DataInputStream(inputStream));
     } finally {
@@ -43,6 +74,27 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
     }
   }
 
+  /**
+   * @return The approximate number of bytes held by the decoded column as loaded. It doesn't change afterwards so it can be
+   * released from a {@link com.rapid7.armor.read.ReadMemoryManager} exactly as it was reserved.
+   */
+  public long memoryUsage() {
+    return memoryUsage;
+  }
+
+  private long computeMemoryUsage() {
+    long bytes = columnValues == null ? 0 : columnValues.capacity();
+    if (rowsIsNull != null)
+      bytes += (long) rowsIsNull.elements().length * 4;
+    if (entityNumRows != null)
+      bytes += (long) entityNumRows.length * 12; // Row counts, decoded lengths and row offsets
+    if (entityIndex != null)
+      bytes += (long) entityIndex.size() * 8;
+    if (entityDictionaryBytes != null)
+      bytes += entityDictionaryBytes.length;
+    return bytes;
+  }
+
   public ColumnMetadata getMetadata() {
     return metadata;
   }
@@ -60,6 +112,29 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
   }
 
   public FastArmorBlockReader getFastArmorColumnReader() {
+    return getFastArmorColumnReader(null);
+  }
+
+  /**
+   * Splits the column into row ranges that line up with entity boundaries, see {@link FastArmorRowRange}. The ranges
+   * can be read concurrently with {@link #getFastArmorColumnReader(FastArmorRowRange)} on this or any other column of the shard.
+   *
+   * @param numSplits The number of ranges.
+   *
+   * @return Exactly {@code numSplits} contiguous ranges covering every row of the column.
+   */
+  public List<FastArmorRowRange> splitRows(int numSplits) {
+    return FastArmorRowRange.split(entityRowOffsets, numSplits);
+  }
+
+  /**
+   * Returns an independent block reader positioned at the start of the range.
+   *
+   * @param range A range from {@link #splitRows(int)} of any column of the shard or {@code null} for every row.
+   *
+   * @return The block reader.
+   */
+  public FastArmorBlockReader getFastArmorColumnReader(FastArmorRowRange range) {
     return new FastArmorBlockReader(
         metadata,
         columnValues,
@@ -69,40 +144,351 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
         metadata.getNumEntities(),
         entityDecodedLength,
         entityNumRows,
-        metadata.getColumnType());
+        entityRowOffsets,
+        metadata.getColumnType(),
+        range);
   }
   
+  /**
+   * Returns the values of an entity, null values are represented as {@code null}.
+   *
+   * @param entityId The entity surrogate.
+   *
+   * @return The values of the entity or {@code null} if the entity isn't in this shard.
+   */
   public List<Object> getValuesForRecord(int entityId) {
-    // First extract the values from the byte buffer.
-    // NOTE: The byte buffer is compacted meaning there is no deadspace.
-    // So we must simply traverse the records in order until we find our ID,
-    
-    int counter = 0;
-    int rowNum = 0;
-    for (EntityRecord er : entityRecords) {
-      if (er.getEntityId() == entityId) {
-        int valueLength = er.getValueLength();
-        int numRows = getDataType().determineNumValues(er.getValueLength());
-        byte[] buffer = columnValues.array();
-        byte[] output = new byte[valueLength];
-        System.arraycopy(buffer, counter, output, 0, valueLength);
-        // Convert the buffer array into the types we expect
-        ByteBuffer bb = ByteBuffer.wrap(buffer);
-        List<Object> values = getDataType().traverseByteBufferToList(bb, valueLength);
-        
-        // Now check the row number to see which one should be null.
-        for (int i = 0; i < numRows; i++) {
-          if (this.rowsIsNull.contains(rowNum + (i+1))) {
-            values.set(i, null);
-          }
+    return getValuesForOrdinal(entityIndex.get(entityId));
+  }
+
+  /**
+   * Returns the values of an entity, null values are represented as {@code null}.
+   *
+   * @param entityId The entity id, either the string id or the numeric id.
+   *
+   * @return The values of the entity or {@code null} if the entity isn't in this shard.
+   */
+  public List<Object> getValuesForEntity(Object entityId) {
+    return getValuesForOrdinal(entityOrdinal(entityId));
+  }
+
+  private List<Object> getValuesForOrdinal(int ordinal) {
+    if (ordinal < 0)
+      return null;
+    DataType dataType = getDataType();
+    int rowOffset = entityRowOffsets[ordinal];
+    int numRows = entityNumRows[ordinal];
+    ByteBuffer values = columnValues.duplicate();
+    values.position(dataType.determineByteLength(rowOffset));
+    values = values.slice();
+    // The value list traversal flips the buffer, so position it at the end of the entity's values.
+    values.position(dataType.determineByteLength(numRows));
+    List<Object> result = dataType.traverseByteBufferToList(values, dataType.determineByteLength(numRows));
+    for (int i = 0; i < numRows; i++) {
+      if (isNull(rowOffset + i))
+        result.set(i, null);
+      else if (dataType == DataType.STRING)
+        result.set(i, strValueDictionary.getValueAsString((Integer) result.get(i)));
+    }
+    return result;
+  }
+
+  /**
+   * Finds the position of an entity within the decoded values in constant time.
+   *
+   * @param entityId The entity id, either the string id or the numeric id.
+   *
+   * @return The ordinal of the entity or -1 if the entity isn't in this shard.
+   *
+   * @throws IllegalStateException If the entity id is a string and the column was loaded without its entity dictionary.
+   */
+  public int entityOrdinal(Object entityId) {
+    if (entityId instanceof String) {
+      if (!withEntityDictionary)
+        throw new IllegalStateException("The column " + columnName() + " was loaded without its entity dictionary, it can't look up " + entityId);
+      DictionaryReader dictionary = entityDictionary();
+      if (dictionary == null)
+        return -1;
+      Integer surrogate = dictionary.getSurrogate((String) entityId);
+      if (surrogate == null)
+        return -1;
+      return entityIndex.get(surrogate.intValue());
+    } else if (entityId instanceof Integer) {
+      return entityIndex.get(((Integer) entityId).intValue());
+    } else if (entityId instanceof Long) {
+      return entityIndex.get(((Long) entityId).intValue());
+    }
+    throw new IllegalArgumentException("Entity ids must be string, long or int not " + entityId.getClass().getCanonicalName());
+  }
+
+  /**
+   * @param entityId The entity id, either the string id or the numeric id.
+   *
+   * @return The zero-indexed row the entity starts at or -1 if the entity isn't in this shard.
+   */
+  public int entityRowOffset(Object entityId) {
+    int ordinal = entityOrdinal(entityId);
+    return ordinal < 0 ? -1 : entityRowOffsets[ordinal];
+  }
+
+  /**
+   * @param entityId The entity id, either the string id or the numeric id.
+   *
+   * @return The number of rows the entity has or 0 if the entity isn't in this shard.
+   */
+  public int entityNumRows(Object entityId) {
+    int ordinal = entityOrdinal(entityId);
+    return ordinal < 0 ? 0 : entityNumRows[ordinal];
+  }
+
+  /**
+   * @param entityId The entity id, either the string id or the numeric id.
+   *
+   * @return The index record of the entity, which carries its version and instance id, or {@code null} if the entity isn't in this shard.
+   */
+  public EntityRecord getEntityRecord(Object entityId) {
+    int ordinal = entityOrdinal(entityId);
+    return ordinal < 0 ? null : entityRecords.get(ordinal);
+  }
+
+  /**
+   * @param row The zero-indexed row number.
+   *
+   * @return {@code true} if the value at the row is null.
+   */
+  public boolean isNull(int row) {
+    if (getDataType() == DataType.STRING)
+      return columnValues.getInt(row * 4) == 0; // Strings use the zero surrogate for null.
+    if (rowsIsNull == null)
+      return false;
+    return Arrays.binarySearch(rowsIsNull.elements(), 0, rowsIsNull.size(), row + 1) >= 0;
+  }
+
+  public long getLong(int row) {
+    return columnValues.getLong(row * 8);
+  }
+
+  public int getInt(int row) {
+    return columnValues.getInt(row * 4);
+  }
+
+  public float getFloat(int row) {
+    return columnValues.getFloat(row * 4);
+  }
+
+  public double getDouble(int row) {
+    return columnValues.getDouble(row * 8);
+  }
+
+  /**
+   * @param row The zero-indexed row number.
+   *
+   * @return The bytes of the string value, null values return an empty array.
+   */
+  public byte[] getStringBytes(int row) {
+    if (strValueDictionary == null)
+      throw new IllegalStateException("No dictionary was setup for reading string values");
+    return strValueDictionary.getValue(columnValues.getInt(row * 4));
+  }
+
+  /**
+   * Reads a block of rows at any position of the column. Unlike {@link FastArmorBlockReader} nothing is tracked between
+   * calls, so blocks of the same column can be read concurrently. FLOAT and DOUBLE values are returned as their raw bits
+   * in an int and long block respectively.
+   *
+   * @param startRow The zero-indexed row to start at.
+   * @param numRows The number of rows to read.
+   * @param batchNum The batch number to give the block.
+   *
+   * @return The block.
+   */
+  public FastArmorBlock getBlock(int startRow, int numRows, int batchNum) {
+    DataType dataType = getDataType();
+    if (startRow < 0 || numRows < 0 || startRow + numRows > metadata.getNumRows())
+      throw new IllegalArgumentException("The rows " + startRow + " to " + (startRow + numRows) + " are out of range of column " + columnName());
+    if (dataType == DataType.STRING) {
+      if (strValueDictionary == null)
+        throw new IllegalStateException("No dictionary was setup for reading string blocks");
+      byte[][] values = new byte[numRows][];
+      int size = 0;
+      for (int i = 0; i < numRows; i++) {
+        values[i] = strValueDictionary.getValue(columnValues.getInt((startRow + i) * 4));
+        size += values[i].length;
+      }
+      Slice slice = Slices.allocate(size);
+      int[] offsets = new int[numRows + 1];
+      boolean[] valueIsNull = new boolean[numRows];
+      for (int i = 0; i < numRows; i++) {
+        slice.setBytes(offsets[i], values[i]);
+        offsets[i + 1] = offsets[i] + values[i].length;
+        valueIsNull[i] = values[i].length == 0;
+      }
+      return new FastArmorBlock(slice, offsets, valueIsNull, numRows, batchNum);
+    }
+    boolean[] valueIsNull = blockNulls(startRow, numRows);
+    switch (dataType) {
+      case INTEGER:
+      case FLOAT: {
+        int[] values = new int[numRows];
+        for (int i = 0; i < numRows; i++)
+          values[i] = columnValues.getInt((startRow + i) * 4);
+        return new FastArmorBlock(values, valueIsNull, numRows, batchNum);
+      }
+      case LONG:
+      case DATETIME:
+      case DOUBLE: {
+        long[] values = new long[numRows];
+        for (int i = 0; i < numRows; i++)
+          values[i] = columnValues.getLong((startRow + i) * 8);
+        return new FastArmorBlock(values, valueIsNull, numRows, batchNum);
+      }
+      default:
+        throw new IllegalStateException("Reading blocks of " + dataType + " columns isn't supported");
+    }
+  }
+
+  private boolean[] blockNulls(int startRow, int numRows) {
+    if (rowsIsNull == null || rowsIsNull.isEmpty())
+      return null;
+    int[] nullRows = rowsIsNull.elements();
+    int index = Arrays.binarySearch(nullRows, 0, rowsIsNull.size(), startRow + 1);
+    if (index < 0)
+      index = -index - 1;
+    boolean[] valueIsNull = null;
+    for (; index < rowsIsNull.size() && nullRows[index] <= startRow + numRows; index++) {
+      if (valueIsNull == null)
+        valueIsNull = new boolean[numRows];
+      valueIsNull[nullRows[index] - 1 - startRow] = true;
+    }
+    return valueIsNull;
+  }
+
+  private synchronized DictionaryReader entityDictionary() {
+    if (entityDictionaryReader == null && entityDictionaryBytes != null) {
+      try {
+        byte[] json = entityDictionaryUncompressed > 0 ? decompress(entityDictionaryBytes, entityDictionaryUncompressed) : entityDictionaryBytes;
+        entityDictionaryReader = new DictionaryReader(json, metadata.getNumEntities(), true);
+        entityDictionaryBytes = null;
+      } catch (IOException ioe) {
+        throw new RuntimeException("Unable to read the entity dictionary of column " + columnName(), ioe);
+      }
+    }
+    return entityDictionaryReader;
+  }
+
+  /**
+   * Aggregates the column directly over the decoded values without materializing any blocks. Deleted entities are never
+   * part of the decoded values so they are skipped by construction. Null rows only pass an {@link Operator#IS_NULL}
+   * predicate and every other row passes a {@link Operator#NOT_NULL} one, other predicates are tested against the non-null
+   * values only. Datetime values are tested as {@link Instant}s.
+   *
+   * @param functions The functions to compute.
+   * @param predicate An optional predicate rows must pass to be aggregated, can be {@code null}.
+   *
+   * @return The partial aggregate for this shard.
+   */
+  public Aggregate aggregate(Set<AggregateFunction> functions, Predicate<?> predicate) {
+    DataType dataType = getDataType();
+    Aggregate aggregate = new Aggregate(
+        dataType, functions.contains(AggregateFunction.APPROX_DISTINCT), functions.contains(AggregateFunction.APPROX_QUANTILE));
+    int numRows = metadata.getNumRows();
+    if (dataType == DataType.STRING) {
+      aggregateStrings(aggregate, predicate, numRows);
+      return aggregate;
+    }
+    int[] nullRows = rowsIsNull == null ? null : rowsIsNull.elements();
+    int numNullRows = rowsIsNull == null ? 0 : rowsIsNull.size();
+    int nullIndex = 0;
+    int byteLength = dataType.getByteLength();
+    for (int row = 0; row < numRows; row++) {
+      // Null rows are recorded in ascending order and are not zero-indexed.
+      if (nullIndex < numNullRows && nullRows[nullIndex] == row + 1) {
+        nullIndex++;
+        if (nullPasses(predicate))
+          aggregate.acceptNull();
+        continue;
+      }
+      int index = row * byteLength;
+      switch (dataType) {
+        case LONG: {
+          long value = columnValues.getLong(index);
+          if (predicate == null || test(predicate, value))
+            aggregate.acceptLong(value);
+          break;
+        }
+        case DATETIME: {
+          long value = columnValues.getLong(index);
+          if (predicate == null || test(predicate, Instant.ofEpochMilli(value)))
+            aggregate.acceptLong(value);
+          break;
+        }
+        case INTEGER: {
+          int value = columnValues.getInt(index);
+          if (predicate == null || test(predicate, value))
+            aggregate.acceptLong(value);
+          break;
         }
-        return values;
-      } else {
-        counter += er.getValueLength();
-        rowNum += getDataType().determineNumValues(er.getValueLength());        
+        case FLOAT: {
+          float value = columnValues.getFloat(index);
+          if (predicate == null || test(predicate, value))
+            aggregate.acceptDouble(value);
+          break;
+        }
+        case DOUBLE: {
+          double value = columnValues.getDouble(index);
+          if (predicate == null || test(predicate, value))
+            aggregate.acceptDouble(value);
+          break;
+        }
+        default:
+          if (predicate == null || predicate.getOperator() == Operator.NOT_NULL)
+            aggregate.acceptNonNull();
       }
     }
-    return null;
+    return aggregate;
+  }
+
+  private void aggregateStrings(Aggregate aggregate, Predicate<?> predicate, int numRows) {
+    // Evaluate the predicate and distinct values once per surrogate rather than once per row.
+    BitSet seen = new BitSet();
+    BitSet evaluated = predicate == null ? null : new BitSet();
+    BitSet passed = predicate == null ? null : new BitSet();
+    for (int row = 0; row < numRows; row++) {
+      int surrogate = columnValues.getInt(row * 4);
+      if (surrogate == 0) {
+        if (nullPasses(predicate))
+          aggregate.acceptNull();
+        continue;
+      }
+      if (predicate != null) {
+        if (!evaluated.get(surrogate)) {
+          evaluated.set(surrogate);
+          if (test(predicate, strValueDictionary.getValueAsString(surrogate)))
+            passed.set(surrogate);
+        }
+        if (!passed.get(surrogate))
+          continue;
+      }
+      aggregate.acceptNonNull();
+      seen.set(surrogate);
+    }
+    if (aggregate.distinct() != null) {
+      for (int surrogate = seen.nextSetBit(0); surrogate >= 0; surrogate = seen.nextSetBit(surrogate + 1))
+        aggregate.distinct().addBytes(strValueDictionary.getValue(surrogate));
+    }
+  }
+
+  private static boolean nullPasses(Predicate<?> predicate) {
+    return predicate == null || predicate.getOperator() == Operator.IS_NULL;
+  }
+
+  // Tests a non-null value, the null operators are decided here since the predicates test their own values for them.
+  @SuppressWarnings("unchecked")
+  private static boolean test(Predicate<?> predicate, Object value) {
+    if (predicate.getOperator() == Operator.IS_NULL)
+      return false;
+    if (predicate.getOperator() == Operator.NOT_NULL)
+      return true;
+    return ((Predicate<Object>) predicate).test(value);
   }
 
   public void load(DataInputStream inputStream) throws IOException {    
@@ -115,6 +501,14 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
           return readValueDictionary(is, compressed, uncompressed, metadata);
         } else if (section == ColumnFileSection.ENTITY_INDEX) {
           return readEntityIndex(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.NULL_BITMAP) {
+          return readNullBitmaps(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.CHUNK_INDEX) {
+          return readChunkIndex(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.ZONE_MAP) {
+          return readZoneMaps(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.BLOOM_FILTER) {
+          return readBloomFilter(is, compressed, uncompressed);
         } else if (section == ColumnFileSection.ROWGROUP) {
           return readRowGroup(is, compressed, uncompressed, metadata);
         } else
@@ -125,33 +519,39 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
       }
     });
     metadata = cfr.getColumnMetadata();
+    nullBitmaps = null;
+    memoryUsage = computeMemoryUsage();
   }
 
   
-  private int loadToByteBuffer(List<EntityRecord> indexRecords, InputStream inputStream, ColumnMetadata metadata) throws IOException {
-    columnValues = ByteBuffer.allocate(metadata.getColumnType().determineByteLength(metadata.getNumRows()));
+  /**
+   * Indexes the entities of the row group. A streamed row group is copied entity by entity into the column values, without
+   * one the column values already hold the row group.
+   */
+  private void loadToByteBuffer(List<EntityRecord> indexRecords, RowGroupReader rowGroup, ColumnMetadata metadata) throws IOException {
     entityNumRows = new int[metadata.getNumEntities()];
     entityDecodedLength = new int[metadata.getNumEntities()];
+    entityRowOffsets = new int[indexRecords.size() + 1];
+    entityIndex = new Int2IntOpenHashMap(indexRecords.size());
+    entityIndex.defaultReturnValue(-1);
     DataType dataType = metadata.getColumnType();
-    int bytesRead = 0;
     int entityCounter = 0;
 
-    byte[] nullBuffer = new byte[4096];
     int columnValuesArrayOffset = 0;
+    int nullBitmapOffset = 0;
     int rowCounter = 0;
     byte[] columnValuesArray = columnValues.array();
     for (EntityRecord eir : indexRecords) {
       entityDecodedLength[entityCounter] = eir.getDecodedLength();
-      int rowGroupOffset = eir.getRowGroupOffset();
-      if (bytesRead < rowGroupOffset) {
-        // Read up to the offset to skip.
-        int skipBytes = rowGroupOffset - bytesRead;
-        bytesRead += IOTools.skipFully(inputStream, skipBytes);
-      }
-
-      // Read into column values the encoded value portion 
+      entityRowOffsets[entityCounter] = rowCounter;
+      entityIndex.put(eir.getEntityId(), entityCounter);
+      // Copy into column values the encoded value portion
       int valueLength = eir.getValueLength();
-      bytesRead += IOTools.readFully(inputStream, columnValuesArray, columnValuesArrayOffset, valueLength);
+      if (rowGroup != null) {
+        // Entities are in offset order, anything between them belongs to deleted entities and is skipped.
+        rowGroup.skipTo(eir.getRowGroupOffset());
+        rowGroup.readFully(columnValuesArray, columnValuesArrayOffset, valueLength);
+      }
       // Find out how many this equates to and record
       int numRows = dataType.determineNumValues(valueLength);
       entityNumRows[entityCounter] = dataType.determineNumValues(valueLength);
@@ -162,14 +562,9 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
       // Read the next int to see if there is a nullbitmap
       int nullBitMapLength = eir.getNullLength();
       if (nullBitMapLength > 0) {
-        if (nullBuffer.length < nullBitMapLength) {
-          nullBuffer = new byte[nullBitMapLength * 2];
-        }
-
         try {
-          bytesRead += IOTools.readFully(inputStream, nullBuffer, 0, nullBitMapLength);
           RoaringBitmap roar = new RoaringBitmap();
-          roar.deserialize(ByteBuffer.wrap(nullBuffer));
+          roar.deserialize(readNullBitmap(eir, rowGroup, nullBitmapOffset));
           for (int relativeRowPosition : roar.toArray()) {
             rowsIsNull.add(rowCounter + relativeRowPosition);
           }
@@ -177,10 +572,11 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
           throw new RuntimeException("Unable to read column " + metadata.getColumnName(), e);
         }
       }
+      nullBitmapOffset += nullBitMapLength;
       rowCounter += numRows;
       entityCounter++;
     }
-    return bytesRead;
+    entityRowOffsets[entityCounter] = rowCounter;
   }
   
   @Override
@@ -194,27 +590,37 @@ public class FastArmorShardColumn extends BaseArmorShardColumn {
   @Override
   protected int readEntityDictionary(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata)
     throws IOException {
+    // Skipped by the column file reader.
+    if (!withEntityDictionary)
+      return 0;
+    // Lookups by string id are rare even when the dictionary is wanted, so defer parsing it until one happens.
     if (compressed > 0) {
-      return (int) IOTools.skipFully(inputStream, compressed);
+      entityDictionaryBytes = new byte[compressed];
+      entityDictionaryUncompressed = uncompressed;
+      return IOTools.readFully(inputStream, entityDictionaryBytes, 0, compressed);
     } else if (uncompressed > 0) {
-      return (int) IOTools.skipFully(inputStream, uncompressed);
+      entityDictionaryBytes = new byte[uncompressed];
+      entityDictionaryUncompressed = 0;
+      return IOTools.readFully(inputStream, entityDictionaryBytes, 0, uncompressed);
     }
     return 0;
   }
   
   @Override
   protected int readRowGroup(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException {
-    // Next row group
-    if (compressed > 0) {
-      ZstdInputStream zstdInputStream = new ZstdInputStream(inputStream);
-      int uncompressedRead = loadToByteBuffer(entityRecords, zstdInputStream, metadata);
-      if (uncompressed != uncompressedRead) {
-        LOGGER.warn("The expected number of bytes to be read for {} doesn't match {} read vs. {} expected, this can be an issue", 
-            metadata.getColumnName(), uncompressedRead, uncompressed);
-      }
-      return compressed;
+    int valuesLength = metadata.getColumnType().determineByteLength(metadata.getNumRows());
+    if (nullBitmaps != null && uncompressed == valuesLength) {
+      // A version 3 row group holding only the values is decompressed in one go straight into the column values.
+      columnValues = ByteBuffer.wrap(readSection(inputStream, compressed, uncompressed));
+      loadToByteBuffer(entityRecords, null, metadata);
     } else {
-      return loadToByteBuffer(entityRecords, inputStream, metadata);
+      // Older row groups interleave values and nulls and can have gaps, so they are streamed into the column values.
+      columnValues = ByteBuffer.allocate(valuesLength);
+      try (RowGroupReader rowGroup = new RowGroupReader(inputStream, compressed, uncompressed)) {
+        loadToByteBuffer(entityRecords, rowGroup, metadata);
+        rowGroup.finish();
+      }
     }
+    return sectionLength(compressed, uncompressed);
   }
 }
@@ -0,0 +1,217 @@
+package com.rapid7.armor.read.fast;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.ReadMemoryManager;
+import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.store.ReadStore;
+
+/**
+ * A sequential cursor over shards that loads the next shards in the background while the current one is consumed, so a
+ * single threaded consumer overlaps the download and decompression of upcoming shards with its own decoding.
+ * <p>
+ * At most {@code prefetchShards} shards are loading or loaded ahead of the current one. Prefetching also stops once the
+ * loaded shards ahead would exceed {@code maxBufferedBytes}, where a shard still loading is assumed to be as large as the
+ * largest shard seen so far. At least one shard is always prefetched.
+ * <p>
+ * With a {@link ReadMemoryManager} the columns of a shard are also held against its budget, from when they are loaded until
+ * the cursor moves past the shard or is closed.
+ * <p>
+ * This class is not thread safe, it is meant to be consumed by a single thread.
+ */
+public class FastArmorShardCursor implements Iterator<FastArmorShard>, AutoCloseable {
+  public static final int DEFAULT_PREFETCH_SHARDS = 2;
+  public static final long DEFAULT_MAX_BUFFERED_BYTES = 256 * 1024 * 1024;
+  private final ReadStore store;
+  private final Executor executor;
+  private final List<ShardId> shardIds;
+  private final List<String> columnNames;
+  private final int prefetchShards;
+  private final long maxBufferedBytes;
+  private final ReadMemoryManager memoryManager;
+  private final Deque<CompletableFuture<FastArmorShard>> prefetched = new ArrayDeque<>();
+  private FastArmorShard current;
+  private volatile long largestShardBytes;
+  private int nextShard;
+  private boolean closed;
+
+  /**
+   * Constructs a cursor, nothing is loaded until the first call to {@link #hasNext()} or {@link #next()}.
+   *
+   * @param store The store to read from.
+   * @param executor The executor shards are loaded on.
+   * @param shardIds The shards to read in order.
+   * @param columnNames The columns to load of each shard.
+   * @param prefetchShards The maximum number of shards to load ahead of the current one.
+   * @param maxBufferedBytes The limit of bytes loaded ahead of the current shard.
+   */
+  public FastArmorShardCursor(
+      ReadStore store, Executor executor, List<ShardId> shardIds, List<String> columnNames, int prefetchShards, long maxBufferedBytes) {
+    this(store, executor, shardIds, columnNames, prefetchShards, maxBufferedBytes, null);
+  }
+
+  /**
+   * Same as {@link #FastArmorShardCursor(ReadStore, Executor, List, List, int, long)} holding the loaded columns against a
+   * memory manager.
+   *
+   * @param memoryManager The budget loaded columns are held against, can be {@code null}.
+   */
+  public FastArmorShardCursor(
+      ReadStore store, Executor executor, List<ShardId> shardIds, List<String> columnNames, int prefetchShards, long maxBufferedBytes,
+      ReadMemoryManager memoryManager) {
+    if (prefetchShards <= 0)
+      throw new IllegalArgumentException("The number of shards to prefetch must be greater than zero");
+    this.store = store;
+    this.executor = executor;
+    this.shardIds = shardIds;
+    this.columnNames = columnNames;
+    this.prefetchShards = prefetchShards;
+    this.maxBufferedBytes = maxBufferedBytes;
+    this.memoryManager = memoryManager;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (closed)
+      return false;
+    prefetch();
+    return !prefetched.isEmpty();
+  }
+
+  /**
+   * Returns the next shard, waiting for it to load if the prefetch hasn't finished yet. Shards that no longer exist are
+   * returned without any rows. The previous shard is released from the memory manager.
+   *
+   * @return The next shard.
+   */
+  @Override
+  public FastArmorShard next() {
+    if (!hasNext())
+      throw new NoSuchElementException();
+    release(current);
+    current = null; // Not released again if the next shard fails to load
+    current = join(prefetched.poll());
+    prefetch();
+    return current;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    for (CompletableFuture<FastArmorShard> future : prefetched) {
+      // A load that is cancelled before it completes releases its own shard.
+      if (!future.cancel(false) && !future.isCompletedExceptionally())
+        release(future.join());
+    }
+    prefetched.clear();
+    release(current);
+    current = null;
+  }
+
+  private void prefetch() {
+    while (!closed && nextShard < shardIds.size() && prefetched.size() < prefetchShards) {
+      if (!prefetched.isEmpty() && bufferedBytes() + largestShardBytes > maxBufferedBytes)
+        return;
+      ShardId shardId = shardIds.get(nextShard++);
+      prefetched.add(submit(shardId));
+    }
+  }
+
+  private CompletableFuture<FastArmorShard> submit(ShardId shardId) {
+    CompletableFuture<FastArmorShard> future = new CompletableFuture<>();
+    executor.execute(() -> {
+      // Cancelled before it started.
+      if (future.isDone())
+        return;
+      try {
+        FastArmorShard shard = load(shardId);
+        // Cancelled while loading, so nothing else will release it.
+        if (!future.complete(shard))
+          release(shard);
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      }
+    });
+    return future;
+  }
+
+  private void release(FastArmorShard shard) {
+    if (memoryManager == null || shard == null)
+      return;
+    for (String columnName : new HashSet<>(columnNames))
+      memoryManager.release(shard.getColumn(columnName));
+  }
+
+  private long bufferedBytes() {
+    long bytes = 0;
+    for (CompletableFuture<FastArmorShard> future : prefetched) {
+      if (future.isDone() && !future.isCompletedExceptionally()) {
+        bytes += future.join().memoryUsage();
+      } else {
+        bytes += largestShardBytes;
+      }
+    }
+    return bytes;
+  }
+
+  private FastArmorShard load(ShardId shardId) {
+    if (!store.shardIdExists(shardId))
+      return new FastArmorShard(shardId, 0, Collections.emptyMap());
+    Map<String, FastArmorShardColumn> columns = new HashMap<>();
+    int numRows = -1;
+    // Fetched once for the estimates of every column rather than once per column.
+    ShardMetadata metadata = memoryManager == null ? null : store.getShardMetadata(shardId);
+    try {
+      for (String columnName : columnNames) {
+        if (columns.containsKey(columnName))
+          continue;
+        FastArmorShardColumn column = memoryManager == null ?
+            store.getFastArmorShard(shardId, columnName) :
+            memoryManager.load(store, shardId, columnName, true, ReadMemoryManager.estimateBytes(metadata, columnName));
+        columns.put(columnName, column);
+        if (column != null)
+          numRows = column.getMetadata().getNumRows();
+      }
+    } catch (Throwable t) {
+      if (memoryManager != null)
+        columns.values().forEach(memoryManager::release);
+      throw t;
+    }
+    if (numRows < 0) {
+      // None of the columns are in this shard, the rows are still returned as nulls.
+      if (metadata == null)
+        metadata = store.getShardMetadata(shardId);
+      boolean hasRows = metadata != null && metadata.getColumnMetadata() != null && !metadata.getColumnMetadata().isEmpty();
+      numRows = hasRows ? metadata.getColumnMetadata().get(0).getNumRows() : 0;
+    }
+    FastArmorShard shard = new FastArmorShard(shardId, numRows, columns);
+    long bytes = shard.memoryUsage();
+    synchronized (this) {
+      if (bytes > largestShardBytes)
+        largestShardBytes = bytes;
+    }
+    return shard;
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException ce) {
+      if (ce.getCause() instanceof RuntimeException)
+        throw (RuntimeException) ce.getCause();
+      throw new RuntimeException(ce.getCause());
+    }
+  }
+}
@@ -3,7 +3,6 @@ package com.rapid7.armor.read.fast;
 import com.rapid7.armor.meta.ColumnMetadata;
 
 import io.airlift.slice.Slice;
-import io.airlift.slice.Slices;
 
 /**
  * A null based armor block reader. This is used to return only null values for a column. This
@@ -20,14 +19,15 @@ public class FixedValueArmorBlockReader extends FastArmorBlockReader {
   }
 
   @Override
-  public FastArmorBlock getLongBlock(int batchRows) {
+  public FastArmorBlock getLongBlock(int batchRows, FastArmorBlock block) {
     if (!(fixedValue instanceof Long)) {
       throw new UnsupportedOperationException("The fixed value must be a Long not a " + fixedValue.getClass().getSimpleName());
     }
     
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(new long[0], null, 0, batchNum);
+      block.fill(block.longValues(0), null, 0, batchNum);
+      return block;
     }
     // Long blocks we dont need to do any slicing by entities, rather we can
     // pass a page of longs at at time.
@@ -35,7 +35,7 @@ public class FixedValueArmorBlockReader extends FastArmorBlockReader {
     int end = Math.min((rowCounterIndex + batchRows), this.numRows);
     int allocate = end - rowCounterIndex;
 
-    long[] values = new long[allocate];
+    long[] values = block.longValues(allocate);
     
     rowCounterIndex += allocate;
     if (rowCounterIndex >= this.numRows)
@@ -46,37 +46,39 @@ public class FixedValueArmorBlockReader extends FastArmorBlockReader {
     for (int i = 0; i < allocate; i++) {
       values[i] = longValue;
     }
-    return new FastArmorBlock(values, null, allocate, batchNum);
+    block.fill(values, null, allocate, batchNum);
+    return block;
   }
 
   @Override
-  public FastArmorBlock getIntegerBlock(int batchRows) {
+  public FastArmorBlock getIntegerBlock(int batchRows, FastArmorBlock block) {
     throw new UnsupportedOperationException("Integers are not supported yet.");
   }
 
   @Override
-  public FastArmorBlock getStringBlock(int batchRows) {
+  public FastArmorBlock getStringBlock(int batchRows, FastArmorBlock block) {
     if (!(fixedValue instanceof String)) {
         throw new UnsupportedOperationException("The fixed value must be a String not a " + fixedValue.getClass().getSimpleName());
     }
 
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(Slices.allocate(0), new int[0], null, 0, batchNum);
+      block.fill(block.slice(0), block.offsets(0), null, 0, batchNum);
+      return block;
     }
 
     int end = Math.min((rowCounterIndex + batchRows), this.numRows);
     int allocate = end - rowCounterIndex;
 
-    int[] sliceOffsets = new int[allocate + 1];
-    boolean[] valueIsNull = new boolean[allocate];
+    int[] sliceOffsets = block.offsets(allocate + 1);
+    boolean[] valueIsNull = block.nullValues(allocate);
     rowCounterIndex += allocate;
     if (rowCounterIndex >= this.numRows)
       hasNext = false;
 
     String fixedValueString = (String) fixedValue;
     int numBytes = fixedValueString.length() * allocate;
-    Slice slice = Slices.allocate(numBytes);
+    Slice slice = block.slice(numBytes);
 
     int fixedValuedLength = fixedValueString.length();
     byte[] fixedValueBytes = fixedValueString.getBytes();
@@ -86,7 +88,8 @@ public class FixedValueArmorBlockReader extends FastArmorBlockReader {
     }
     sliceOffsets[allocate] = allocate * fixedValuedLength;
 
-    return new FastArmorBlock(slice, sliceOffsets, valueIsNull, allocate, batchNum);
+    block.fill(slice, sliceOffsets, valueIsNull, allocate, batchNum);
+    return block;
   }
 
 }
@@ -1,7 +1,6 @@
 package com.rapid7.armor.read.fast;
 
 import io.airlift.slice.Slice;
-import io.airlift.slice.Slices;
 import java.util.Arrays;
 
 /**
@@ -14,67 +13,77 @@ public class NullArmorBlockReader extends FastArmorBlockReader {
     super(null, null, null, null, numRows, -1, null, null, null);
  }
 
-  public FastArmorBlock getLongBlock(int batchRows) {
+  @Override
+  public FastArmorBlock getLongBlock(int batchRows, FastArmorBlock block) {
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(new long[0], null, 0, batchNum);
+      block.fill(block.longValues(0), null, 0, batchNum);
+      return block;
     }
     
     int end = Math.min((rowCounterIndex + batchRows), this.numRows);
     int allocate = end - rowCounterIndex;
     
-    long[] values = new long[allocate];
-    boolean[] valueIsNull = new boolean[batchRows];
+    long[] values = block.longValues(allocate);
+    boolean[] valueIsNull = block.nullValues(allocate);
 
     rowCounterIndex += allocate;
     if (rowCounterIndex >= this.numRows)
       hasNext = false;
 
-    Arrays.fill(valueIsNull, true);
+    Arrays.fill(valueIsNull, 0, allocate, true);
 
-    return new FastArmorBlock(values, valueIsNull, allocate, batchNum);
+    block.fill(values, valueIsNull, allocate, batchNum);
+    return block;
   }
   
-  public FastArmorBlock getIntegerBlock(int batchRows) {
+  @Override
+  public FastArmorBlock getIntegerBlock(int batchRows, FastArmorBlock block) {
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(new long[0], null, 0, batchNum);
+      block.fill(block.intValues(0), null, 0, batchNum);
+      return block;
     }
     
     int end = Math.min((rowCounterIndex + batchRows), this.numRows);
     int allocate = end - rowCounterIndex;
     
-    int[] values = new int[allocate];
-    boolean[] valueIsNull = new boolean[allocate];
+    int[] values = block.intValues(allocate);
+    boolean[] valueIsNull = block.nullValues(allocate);
 
     rowCounterIndex += allocate;
     if (rowCounterIndex >= this.numRows)
       hasNext = false;
 
-    Arrays.fill(valueIsNull, true);
+    Arrays.fill(valueIsNull, 0, allocate, true);
 
-    return new FastArmorBlock(values, valueIsNull, allocate, batchNum);
+    block.fill(values, valueIsNull, allocate, batchNum);
+    return block;
   }
   
-  public FastArmorBlock getStringBlock(int batchRows) {
+  @Override
+  public FastArmorBlock getStringBlock(int batchRows, FastArmorBlock block) {
     batchNum++;
     if (numRows == 0) {
-      return new FastArmorBlock(Slices.allocate(0), new int[0], null, 0, batchNum);
+      block.fill(block.slice(0), block.offsets(0), null, 0, batchNum);
+      return block;
     }
-    Slice slice = Slices.allocate(0);
+    Slice slice = block.slice(0);
     
     int end = Math.min((rowCounterIndex + batchRows), this.numRows);
     int allocate = end - rowCounterIndex;
     
-    int[] sliceOffsets = new int[allocate + 1];
-    boolean[] valueIsNull = new boolean[allocate];
+    int[] sliceOffsets = block.offsets(allocate + 1);
+    Arrays.fill(sliceOffsets, 0, allocate + 1, 0);
+    boolean[] valueIsNull = block.nullValues(allocate);
     rowCounterIndex += allocate;
     if (rowCounterIndex >= this.numRows)
       hasNext = false;
 
-    Arrays.fill(valueIsNull, true);
+    Arrays.fill(valueIsNull, 0, allocate, true);
 
-    return new FastArmorBlock(slice, sliceOffsets, valueIsNull, allocate, batchNum);
+    block.fill(slice, sliceOffsets, valueIsNull, allocate, batchNum);
+    return block;
   }
 
 }
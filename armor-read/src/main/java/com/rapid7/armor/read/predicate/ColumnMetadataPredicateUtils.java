@@ -1,5 +1,15 @@
 package com.rapid7.armor.read.predicate;
 
+import com.rapid7.armor.columnfile.ZoneMap;
+import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.sketch.BloomFilter;
+import com.rapid7.armor.store.Operator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Utility class that provides functions to make it easy to figure out if a column may contains a certain value. 
  */
@@ -17,4 +27,121 @@ public final class ColumnMetadataPredicateUtils {
     public static boolean columnMayHaveValueLessThan(double testValue, double min) {
         return testValue >= min;
     }
+
+    /**
+     * Determines if a column could have a value matching the predicate based on its min and max stats. This is meant
+     * for pruning, so if it can't be determined then it is assumed the column may match.
+     *
+     * @param predicate The predicate to test.
+     * @param metadata The metadata of the column.
+     *
+     * @return {@code false} only if no value of the column can match the predicate.
+     */
+    public static boolean columnMayMatch(Predicate<?> predicate, ColumnMetadata metadata) {
+        if (metadata == null || metadata.getMinValue() == null || metadata.getMaxValue() == null)
+            return true;
+        // String stats are tracked on dictionary surrogates so they can't be compared against values.
+        if (metadata.getColumnType() == DataType.STRING || !(predicate instanceof NumericPredicate))
+            return true;
+        if (metadata.getNumRows() == 0)
+            return false;
+        return rangeMayMatch(predicate, metadata.getMinValue(), metadata.getMaxValue());
+    }
+
+    /**
+     * Determines if a zone of a column could have a value matching the predicate based on its min, max and null count.
+     *
+     * @param predicate The predicate to test.
+     * @param dataType The type of the column.
+     * @param zone The zone of the column.
+     *
+     * @return {@code false} only if no row of the zone can match the predicate.
+     */
+    public static boolean zoneMayMatch(Predicate<?> predicate, DataType dataType, ZoneMap zone) {
+        if (zone.getNumRows() == 0)
+            return false;
+        if (predicate.getOperator() == Operator.IS_NULL)
+            return zone.getNullCount() > 0;
+        if (predicate.getOperator() == Operator.NOT_NULL)
+            return zone.getNullCount() < zone.getNumRows();
+        // String stats are tracked on dictionary surrogates so they can't be compared against values.
+        if (dataType == DataType.STRING || !(predicate instanceof NumericPredicate))
+            return true;
+        if (!zone.hasMinMax())
+            return zone.getNullCount() < zone.getNumRows() || predicate.getValue() == null;
+        return rangeMayMatch(predicate, zone.getMinValue(), zone.getMaxValue());
+    }
+
+    /**
+     * Determines if a column could have a value matching an equals or in predicate based on the bloom filter of its values,
+     * other predicates are assumed to match.
+     *
+     * @param predicate The predicate to test.
+     * @param dataType The type of the column.
+     * @param bloomFilter The bloom filter of the column's values.
+     *
+     * @return {@code false} only if no value of the column can match the predicate.
+     */
+    public static boolean bloomMayMatch(Predicate<?> predicate, DataType dataType, BloomFilter bloomFilter) {
+        if (bloomFilter == null)
+            return true;
+        List<?> values;
+        if (predicate.getOperator() == Operator.EQUALS)
+            values = Collections.singletonList(predicate.getValue());
+        else if (predicate.getOperator() == Operator.IN)
+            values = predicate.getValues();
+        else
+            return true;
+        if (values == null || values.isEmpty())
+            return true;
+        for (Object value : values) {
+            if (value == null || bloomMayContain(value, predicate, dataType, bloomFilter))
+                return true;
+        }
+        return false;
+    }
+
+    private static boolean bloomMayContain(Object value, Predicate<?> predicate, DataType dataType, BloomFilter bloomFilter) {
+        if (dataType == DataType.STRING) {
+            // Case insensitive matches can't be hashed.
+            if (!(predicate instanceof StringPredicate) || !((StringPredicate) predicate).isCaseSensitive())
+                return true;
+            return bloomFilter.mightContainBytes(((String) value).getBytes(StandardCharsets.UTF_8));
+        }
+        if (!(predicate instanceof NumericPredicate) || !(value instanceof Number))
+            return true;
+        Number number = (Number) value;
+        // Float values are widened from floats when written, so narrow the value the same way.
+        if (dataType == DataType.FLOAT)
+            number = number.floatValue();
+        return bloomFilter.mightContainNumber(number);
+    }
+
+    private static boolean rangeMayMatch(Predicate<?> predicate, double min, double max) {
+        Number value = (Number) predicate.getValue();
+        switch (predicate.getOperator()) {
+            case EQUALS:
+                return value == null || columnMayContain(value.doubleValue(), min, max);
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL:
+                return value == null || columnMayHaveValueGreaterThan(value.doubleValue(), max);
+            case LESS_THAN:
+            case LESS_THAN_EQUAL:
+                return value == null || columnMayHaveValueLessThan(value.doubleValue(), min);
+            case BETWEEN:
+                if (predicate.getValues().size() != 2 || predicate.getValues().get(0) == null || predicate.getValues().get(1) == null)
+                    return true;
+                double a = ((Number) predicate.getValues().get(0)).doubleValue();
+                double b = ((Number) predicate.getValues().get(1)).doubleValue();
+                return a <= max && b >= min;
+            case IN:
+                for (Object in : predicate.getValues()) {
+                    if (in == null || columnMayContain(((Number) in).doubleValue(), min, max))
+                        return true;
+                }
+                return false;
+            default:
+                return true;
+        }
+    }
 }
@@ -34,6 +34,10 @@ public abstract class Predicate<T> {
      return executeTest(testValue);  
    }
    
+   public String getField() {
+     return field;
+   }
+
    public List<T> getValues() {
      return values;
    }
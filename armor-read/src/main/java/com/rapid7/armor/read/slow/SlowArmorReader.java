@@ -3,12 +3,16 @@ package com.rapid7.armor.read.slow;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -19,8 +23,10 @@ import com.rapid7.armor.read.BaseArmorReader;
 import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.schema.DataType;
 import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.shard.ShardStrategy;
 import com.rapid7.armor.store.ReadStore;
 
+import tech.tablesaw.api.DoubleColumn;
 import tech.tablesaw.api.FloatColumn;
 import tech.tablesaw.api.IntColumn;
 import tech.tablesaw.api.LongColumn;
@@ -39,6 +45,10 @@ public class SlowArmorReader extends BaseArmorReader {
     super(store);
   }
 
+  public SlowArmorReader(ReadStore store, ShardStrategy shardStrategy, ExecutorService threadPool) {
+    super(store, shardStrategy, threadPool);
+  }
+
   public Column<?> getColumn(ShardId shardId, String columnName) throws IOException {
     if (!store.shardIdExists(shardId))
       return null;
@@ -94,32 +104,7 @@ public class SlowArmorReader extends BaseArmorReader {
         }
       }
       for (ColumnId nullColumnId : nullColumns) {
-        Column<?> column = null;
-        if (nullColumnId.dataType() == DataType.STRING) {
-          StringColumn strColumn = StringColumn.create(nullColumnId.getName());
-          ArrayList<String> values = new ArrayList<>();
-          for (int i = 0; i < shardRows; i++)
-            values.add(null);
-          strColumn.addAll(values);
-          column = strColumn;
-        } else if (nullColumnId.dataType() == DataType.INTEGER) {
-          IntColumn intColumn = IntColumn.create(nullColumnId.getName());
-          for (int i = 0; i < shardRows; i++)
-            intColumn.add(Integer.MIN_VALUE);
-          column = intColumn;
-        } else if (nullColumnId.dataType() == DataType.LONG || nullColumnId.dataType() == DataType.DATETIME) {
-          LongColumn longColumn = LongColumn.create(nullColumnId.getName());
-          for (int i = 0; i < shardRows; i++)
-            longColumn.add(Long.MIN_VALUE);
-          column = longColumn;
-        } else if (nullColumnId.dataType() == DataType.FLOAT) {
-          FloatColumn floatColumn = FloatColumn.create(nullColumnId.getName());
-          for (int i = 0; i < shardRows; i++)
-            floatColumn.add(Float.NaN);
-          column = floatColumn;
-        } else {
-          throw new RuntimeException("The datatype " + nullColumnId.dataType() + " isn't supported yet");
-        }
+        Column<?> column = buildNullColumn(nullColumnId, shardRows);
         if (columns.containsKey(column.name())) {
           columns.get(column.name()).append((Column) column);
         } else {
@@ -146,4 +131,101 @@ public class SlowArmorReader extends BaseArmorReader {
     }
     return Table.create("", columns.values());
   }
+
+  /**
+   * Reads multiple entities. Entities are routed to their shard with the shard strategy so only the shards and columns
+   * involved are opened, each in parallel. Entities that can't be found are left out of the result.
+   *
+   * @param tenant The tenant.
+   * @param table The table.
+   * @param interval The interval.
+   * @param timestamp The timestamp within the interval.
+   * @param entityIds The ids of the entities to read.
+   * @param columnNames The columns to read, if {@code null} then all columns are read.
+   *
+   * @return A table for each entity that was found.
+   */
+  @SuppressWarnings("unchecked")
+  public Map<Object, Table> getEntities(
+      String tenant, String table, Interval interval, Instant timestamp, Collection<?> entityIds, Collection<String> columnNames) {
+    List<ColumnId> columnIds = store.getColumnIds(tenant, table, interval, timestamp);
+    if (columnNames != null)
+      columnIds.removeIf(c -> !columnNames.contains(c.getName()));
+    Map<ShardId, List<Object>> shardToEntities = groupByShard(tenant, table, interval, timestamp, entityIds);
+    List<ShardId> shardIds = new ArrayList<>(shardToEntities.keySet());
+    List<Callable<Map<Object, Column<?>>>> tasks = new ArrayList<>();
+    for (ShardId shardId : shardIds) {
+      List<Object> shardEntities = shardToEntities.get(shardId);
+      for (ColumnId columnId : columnIds) {
+        tasks.add(() -> {
+          SlowArmorShardColumn sas = store.getSlowArmorShard(shardId, columnId.getName());
+          if (sas == null)
+            return null;
+          Map<Object, Column<?>> entityColumns = new HashMap<>();
+          for (Object entityId : shardEntities)
+            entityColumns.put(entityId, sas.getColumnByEntityId(entityId));
+          return entityColumns;
+        });
+      }
+    }
+    List<Map<Object, Column<?>>> columnResults = runAll(tasks);
+
+    Map<Object, Table> results = new LinkedHashMap<>();
+    int numColumns = columnIds.size();
+    for (int s = 0; s < shardIds.size(); s++) {
+      List<Map<Object, Column<?>>> shardColumns = columnResults.subList(s * numColumns, (s + 1) * numColumns);
+      for (Object entityId : shardToEntities.get(shardIds.get(s))) {
+        int entityRows = 0;
+        for (Map<Object, Column<?>> shardColumn : shardColumns) {
+          Column<?> entityColumn = shardColumn == null ? null : shardColumn.get(entityId);
+          if (entityColumn != null)
+            entityRows = Math.max(entityRows, entityColumn.size());
+        }
+        if (entityRows == 0)
+          continue;
+        List<Column<?>> columns = new ArrayList<>();
+        for (int c = 0; c < numColumns; c++) {
+          Map<Object, Column<?>> shardColumn = shardColumns.get(c);
+          Column<?> entityColumn = shardColumn == null ? null : shardColumn.get(entityId);
+          // A column missing from the shard, or of a type that can't be read by entity, is read as all null same as getTable.
+          columns.add(entityColumn == null ? buildNullColumn(columnIds.get(c), entityRows) : entityColumn);
+        }
+        results.put(entityId, Table.create("", columns));
+      }
+    }
+    return results;
+  }
+
+  private Column<?> buildNullColumn(ColumnId nullColumnId, int numRows) {
+    if (nullColumnId.dataType() == DataType.STRING) {
+      StringColumn strColumn = StringColumn.create(nullColumnId.getName());
+      ArrayList<String> values = new ArrayList<>();
+      for (int i = 0; i < numRows; i++)
+        values.add(null);
+      strColumn.addAll(values);
+      return strColumn;
+    } else if (nullColumnId.dataType() == DataType.INTEGER) {
+      IntColumn intColumn = IntColumn.create(nullColumnId.getName());
+      for (int i = 0; i < numRows; i++)
+        intColumn.add(Integer.MIN_VALUE);
+      return intColumn;
+    } else if (nullColumnId.dataType() == DataType.LONG || nullColumnId.dataType() == DataType.DATETIME) {
+      LongColumn longColumn = LongColumn.create(nullColumnId.getName());
+      for (int i = 0; i < numRows; i++)
+        longColumn.add(Long.MIN_VALUE);
+      return longColumn;
+    } else if (nullColumnId.dataType() == DataType.FLOAT) {
+      FloatColumn floatColumn = FloatColumn.create(nullColumnId.getName());
+      for (int i = 0; i < numRows; i++)
+        floatColumn.add(Float.NaN);
+      return floatColumn;
+    } else if (nullColumnId.dataType() == DataType.DOUBLE) {
+      DoubleColumn doubleColumn = DoubleColumn.create(nullColumnId.getName());
+      for (int i = 0; i < numRows; i++)
+        doubleColumn.add(Double.NaN);
+      return doubleColumn;
+    } else {
+      throw new RuntimeException("The datatype " + nullColumnId.dataType() + " isn't supported yet");
+    }
+  }
 }
@@ -1,10 +1,8 @@
 package com.rapid7.armor.read.slow;
 
-import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -15,12 +13,12 @@ import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.luben.zstd.ZstdInputStream;
 import com.rapid7.armor.columnfile.ColumnFileSection;
 import com.rapid7.armor.columnfile.ColumnFileReader;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.read.BaseArmorShardColumn;
+import com.rapid7.armor.read.RowGroupReader;
 import com.rapid7.armor.schema.DataType;
 
 import tech.tablesaw.api.BooleanColumn;
@@ -76,15 +74,15 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
     switch (metadata.getColumnType()) {
       case STRING:
         return getStringsByEntity(entityId);
-      case BOOLEAN:
-        // return getBooleans(entity);
       case INTEGER:
         return getIntegersByEntity(entityId);
       case DATETIME:
       case LONG:
         return getLongsByEntity(entityId);
+      case FLOAT:
+        return getFloatsByEntity(entityId);
       case DOUBLE:
-        //return getDoubles(entity);
+        return getDoublesByEntity(entityId);
       default:
         break;
     }
@@ -177,6 +175,30 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
     return IntColumn.create(metadata.getColumnName(), results.toArray(new Integer[results.size()]));
   }
 
+  public FloatColumn getFloatsByEntity(Object entityid) {
+    validateValueCall(DataType.FLOAT);
+    FloatColumn results = FloatColumn.create(metadata.getColumnName());
+    List<Integer> rowNumbers = entityToRowNumbers.get(resolveEntity(entityid));
+    if (rowNumbers == null)
+      return results;
+
+    for (Integer rowNum : rowNumbers)
+      results.append(((FloatColumn) column).getFloat(rowNum));
+    return results;
+  }
+
+  public DoubleColumn getDoublesByEntity(Object entityid) {
+    validateValueCall(DataType.DOUBLE);
+    DoubleColumn results = DoubleColumn.create(metadata.getColumnName());
+    List<Integer> rowNumbers = entityToRowNumbers.get(resolveEntity(entityid));
+    if (rowNumbers == null)
+      return results;
+
+    for (Integer rowNum : rowNumbers)
+      results.append(((DoubleColumn) column).getDouble(rowNum));
+    return results;
+  }
+
   public IntColumn getIntegers() {
     validateValueCall(DataType.INTEGER);
     return (IntColumn) column;
@@ -201,10 +223,14 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
       case DATETIME:
       case LONG:
         return LongColumn.create(columnId);
+      case FLOAT:
+        return FloatColumn.create(columnId);
+      case DOUBLE:
+        return DoubleColumn.create(columnId);
       default:
         break;
     }
-    throw new IllegalArgumentException();
+    throw new IllegalArgumentException("The data type " + dataType + " isn't supported by the slow reader");
   }
 
   public void load(DataInputStream inputStream) throws IOException {
@@ -217,6 +243,14 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
           return readValueDictionary(is, compressed, uncompressed, metadata);
         } else if (section == ColumnFileSection.ENTITY_INDEX) {
           return readEntityIndex(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.NULL_BITMAP) {
+          return readNullBitmaps(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.CHUNK_INDEX) {
+          return readChunkIndex(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.ZONE_MAP) {
+          return readZoneMaps(is, compressed, uncompressed);
+        } else if (section == ColumnFileSection.BLOOM_FILTER) {
+          return readBloomFilter(is, compressed, uncompressed);
         } else if (section == ColumnFileSection.ROWGROUP) {
           return readRowGroup(is, compressed, uncompressed, metadata);
         } else
@@ -227,10 +261,11 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
       }
     });
     metadata = cfr.getColumnMetadata();
+    nullBitmaps = null;
   }
 
-  private int readToTable(List<EntityRecord> indexRecords, InputStream inputStream, ColumnMetadata metadata) throws IOException {
-    int readBytes = 0;
+  private void readToTable(List<EntityRecord> indexRecords, RowGroupReader rowGroup, ColumnMetadata metadata) throws IOException {
+    int nullBitmapOffset = 0;
     final AtomicInteger rowCounter = new AtomicInteger(1);
     DataType dt = metadata.getColumnType();
 
@@ -247,15 +282,9 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
       }
 
       int previousRowSize = column.size();
-      int rowGroupOffset = eir.getRowGroupOffset();
-      if (readBytes < rowGroupOffset) {
-        // Read up to the offset to skip.
-        readBytes += inputStream.skip(rowGroupOffset - readBytes);
-      }
-      byte[] payload = new byte[eir.getValueLength()];
-      readBytes += inputStream.read(payload);
-      DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
-      dt.traverseDataInputStream(dis, eir.getValueLength(), r -> {
+      // Entities are in offset order, anything between them belongs to deleted entities and is skipped.
+      rowGroup.skipTo(eir.getRowGroupOffset());
+      dt.traverseDataInputStream(rowGroup.dataInputStream(), eir.getValueLength(), r -> {
         entityIndexColumn.append(entity);
         rowNumbers.add(rowCounter.get() - 1);
         // Strings are surrogate ids, so get the string value for the surrogate.
@@ -269,11 +298,9 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
       // Read the next int to see if there is a nullbitmap
       int nullBitMapLength = eir.getNullLength();
       if (nullBitMapLength > 0) {
-        byte[] buffer = new byte[nullBitMapLength];
         try {
-          readBytes += inputStream.read(buffer);
           RoaringBitmap roar = new RoaringBitmap();
-          roar.deserialize(ByteBuffer.wrap(buffer));
+          roar.deserialize(readNullBitmap(eir, rowGroup, nullBitmapOffset));
 
           for (int position : roar.toArray()) {
             int rowAdjusted = position + (previousRowSize - 1);
@@ -283,8 +310,8 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
           throw new RuntimeException("Unable to read column " + metadata.getColumnName(), e);
         }
       }
+      nullBitmapOffset += nullBitMapLength;
     }
-    return readBytes;
   }
 
   private Integer resolveEntity(Object entityid) {
@@ -301,15 +328,11 @@ public class SlowArmorShardColumn extends BaseArmorShardColumn {
 
   @Override
   protected int readRowGroup(DataInputStream inputStream, int compressed, int uncompressed, ColumnMetadata metadata) throws IOException {
-    if (compressed > 0) {
-      ZstdInputStream zstdInputStream = new ZstdInputStream(inputStream);
-      int uncompressedRead = readToTable(entityRecords, zstdInputStream, metadata);
-      if (uncompressed != uncompressedRead) {
-        LOGGER.warn("The expected number of bytes to be read for {} doesn't match {} read vs. {} expected, this can be an issue", this.columnName(), uncompressedRead, uncompressed);
-      }
-      return compressed;
-    } else {
-      return readToTable(entityRecords, inputStream, metadata);
+    // Streamed so the table is the only decoded copy of the values.
+    try (RowGroupReader rowGroup = new RowGroupReader(inputStream, compressed, uncompressed)) {
+      readToTable(entityRecords, rowGroup, metadata);
+      rowGroup.finish();
     }
+    return sectionLength(compressed, uncompressed);
   }
 }
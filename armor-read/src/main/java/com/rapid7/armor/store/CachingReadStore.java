@@ -0,0 +1,324 @@
+package com.rapid7.armor.store;
+
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.rapid7.armor.interval.Interval;
+import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.ReadMemoryManager;
+import com.rapid7.armor.read.fast.FastArmorEntityColumn;
+import com.rapid7.armor.read.fast.FastArmorShardColumn;
+import com.rapid7.armor.read.predicate.InstantPredicate;
+import com.rapid7.armor.read.predicate.StringPredicate;
+import com.rapid7.armor.read.slow.SlowArmorShardColumn;
+import com.rapid7.armor.schema.ColumnId;
+import com.rapid7.armor.shard.ShardId;
+
+/**
+ * A read store that keeps decoded {@link FastArmorShardColumn}s in memory so concurrent queries on the same shard column
+ * share one decoded copy. A column requested by several threads at once is only loaded once, the least recently used
+ * columns are evicted once the cached columns exceed the byte limit.
+ * <p>
+ * Shards rewritten by a writer are not detected, call {@link #invalidate(ShardId)} after a shard is committed to.
+ * <p>
+ * With a {@link ReadMemoryManager} the cached columns are also held against its budget. A load reserves the size estimated
+ * from the shard metadata up front, waiting or evicting this and other caches of the manager until it fits, and then
+ * settles the reservation to the decoded size. Columns are released from the budget once evicted, even if a query still
+ * holds on to them.
+ */
+public class CachingReadStore implements ReadStore, AutoCloseable {
+  private final ReadStore delegate;
+  private final long maxBytes;
+  private final ReadMemoryManager memoryManager;
+  private final ReadMemoryManager.Evictor evictor = this::evict;
+  private final LinkedHashMap<ColumnKey, CompletableFuture<FastArmorShardColumn>> columns = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+
+  /**
+   * @param delegate The store to load from.
+   * @param maxBytes The limit of bytes held by cached columns.
+   */
+  public CachingReadStore(ReadStore delegate, long maxBytes) {
+    this(delegate, maxBytes, null);
+  }
+
+  /**
+   * @param delegate The store to load from.
+   * @param maxBytes The limit of bytes held by cached columns.
+   * @param memoryManager The budget shared with other readers, can be {@code null}.
+   */
+  public CachingReadStore(ReadStore delegate, long maxBytes, ReadMemoryManager memoryManager) {
+    this.delegate = delegate;
+    this.maxBytes = maxBytes;
+    this.memoryManager = memoryManager;
+    if (memoryManager != null)
+      memoryManager.addEvictor(evictor);
+  }
+
+  public ReadMemoryManager getMemoryManager() {
+    return memoryManager;
+  }
+
+  /**
+   * Cached columns are shared by every query, so they are always loaded with their entity dictionary.
+   */
+  @Override
+  public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName, boolean withEntityDictionary) {
+    return getFastArmorShard(shardId, columnName);
+  }
+
+  @Override
+  public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName) {
+    ColumnKey key = new ColumnKey(shardId, columnName);
+    CompletableFuture<FastArmorShardColumn> future;
+    boolean load = false;
+    synchronized (this) {
+      future = columns.get(key);
+      if (future == null) {
+        future = new CompletableFuture<>();
+        columns.put(key, future);
+        load = true;
+      }
+    }
+    if (load) {
+      FastArmorShardColumn column;
+      try {
+        column = memoryManager == null ? delegate.getFastArmorShard(shardId, columnName) : memoryManager.load(delegate, shardId, columnName);
+      } catch (Throwable t) {
+        // Errors such as running out of memory must fail the waiting queries too, or they would wait forever.
+        synchronized (this) {
+          columns.remove(key, future);
+        }
+        future.completeExceptionally(t);
+        throw t;
+      }
+      cached(key, future, column);
+    }
+    try {
+      return future.join();
+    } catch (CompletionException ce) {
+      if (ce.getCause() instanceof RuntimeException)
+        throw (RuntimeException) ce.getCause();
+      if (ce.getCause() instanceof Error)
+        throw (Error) ce.getCause();
+      throw new RuntimeException(ce.getCause());
+    }
+  }
+
+  /**
+   * Entity reads only decode the one entity, so they aren't cached and go straight to the delegate.
+   */
+  @Override
+  public FastArmorEntityColumn getFastArmorEntity(ShardId shardId, String columnName, Object entityId) {
+    return delegate.getFastArmorEntity(shardId, columnName, entityId);
+  }
+
+  // Completed under the lock so an eviction can't remove the entry before its bytes are added.
+  private synchronized void cached(ColumnKey key, CompletableFuture<FastArmorShardColumn> future, FastArmorShardColumn column) {
+    future.complete(column);
+    if (column == null)
+      return;
+    if (columns.get(key) != future) {
+      // Invalidated while loading, the column was never cached.
+      if (memoryManager != null)
+        memoryManager.release(column.memoryUsage());
+      return;
+    }
+    cachedBytes += column.memoryUsage();
+    Iterator<Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>>> entries = columns.entrySet().iterator();
+    while (cachedBytes > maxBytes && entries.hasNext()) {
+      Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>> entry = entries.next();
+      // Columns that are still loading aren't accounted for yet, and the column just loaded is always kept.
+      if (entry.getValue() == future || !entry.getValue().isDone())
+        continue;
+      remove(entries, entry);
+    }
+  }
+
+  /**
+   * Evicts the least recently used columns on behalf of the memory manager.
+   */
+  private synchronized long evict(long bytes) {
+    long freed = 0;
+    Iterator<Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>>> entries = columns.entrySet().iterator();
+    while (freed < bytes && entries.hasNext()) {
+      Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>> entry = entries.next();
+      if (!entry.getValue().isDone())
+        continue;
+      freed += remove(entries, entry);
+    }
+    return freed;
+  }
+
+  private long remove(
+      Iterator<Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>>> entries,
+      Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>> entry) {
+    long bytes = bytesOf(entry.getValue());
+    cachedBytes -= bytes;
+    entries.remove();
+    if (memoryManager != null)
+      memoryManager.release(bytes);
+    return bytes;
+  }
+
+  private static long bytesOf(CompletableFuture<FastArmorShardColumn> future) {
+    if (!future.isDone() || future.isCompletedExceptionally())
+      return 0;
+    FastArmorShardColumn column = future.join();
+    return column == null ? 0 : column.memoryUsage();
+  }
+
+  /**
+   * Drops every cached column of the shard.
+   *
+   * @param shardId The shard to drop.
+   */
+  public synchronized void invalidate(ShardId shardId) {
+    Iterator<Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>>> entries = columns.entrySet().iterator();
+    while (entries.hasNext()) {
+      Map.Entry<ColumnKey, CompletableFuture<FastArmorShardColumn>> entry = entries.next();
+      if (entry.getKey().shardId.equals(shardId))
+        remove(entries, entry);
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    if (memoryManager != null)
+      memoryManager.release(cachedBytes);
+    columns.clear();
+    cachedBytes = 0;
+  }
+
+  /**
+   * Drops every cached column and stops evicting on behalf of the memory manager.
+   */
+  @Override
+  public void close() {
+    if (memoryManager != null)
+      memoryManager.removeEvictor(evictor);
+    invalidateAll();
+  }
+
+  /**
+   * @return The bytes held by the cached columns.
+   */
+  public synchronized long cachedBytes() {
+    return cachedBytes;
+  }
+
+  @Override
+  public List<String> getTenants(boolean useCache) {
+    return delegate.getTenants(useCache);
+  }
+
+  @Override
+  public List<Interval> getIntervals(String tenant, String table) {
+    return delegate.getIntervals(tenant, table);
+  }
+
+  @Override
+  public List<String> getTables(String tenant) {
+    return delegate.getTables(tenant);
+  }
+
+  @Override
+  public List<String> getIntervalStarts(String tenant, String table, Interval interval, InstantPredicate predicate) {
+    return delegate.getIntervalStarts(tenant, table, interval, predicate);
+  }
+
+  @Override
+  public List<String> getIntervalStarts(String tenant, String table, Interval interval) {
+    return delegate.getIntervalStarts(tenant, table, interval);
+  }
+
+  @Override
+  public ShardMetadata getShardMetadata(ShardId shardId) {
+    return delegate.getShardMetadata(shardId);
+  }
+
+  @Override
+  public SlowArmorShardColumn getSlowArmorShard(ShardId shardId, String columnName) {
+    return delegate.getSlowArmorShard(shardId, columnName);
+  }
+
+  @Override
+  public ColumnId getColumnId(String tenant, String table, Interval interval, Instant timestamp, String columnName) {
+    return delegate.getColumnId(tenant, table, interval, timestamp, columnName);
+  }
+
+  @Override
+  public List<ColumnId> getColumnIds(String tenant, String table) {
+    return delegate.getColumnIds(tenant, table);
+  }
+
+  @Override
+  public List<ColumnId> getColumnIds(String tenant, String table, Interval interval, Instant timestamp) {
+    return delegate.getColumnIds(tenant, table, interval, timestamp);
+  }
+
+  @Override
+  public List<ColumnId> getColumnIds(ShardId shardId) {
+    return delegate.getColumnIds(shardId);
+  }
+
+  @Override
+  public boolean shardIdExists(ShardId shardId) {
+    return delegate.shardIdExists(shardId);
+  }
+
+  @Override
+  public List<ShardId> findShardIds(String tenant, String table, Interval interval, Instant timestamp) {
+    return delegate.findShardIds(tenant, table, interval, timestamp);
+  }
+
+  @Override
+  public List<ShardId> findShardIds(String tenant, String table, Interval interval, Instant timestamp, String columnName) {
+    return delegate.findShardIds(tenant, table, interval, timestamp, columnName);
+  }
+
+  @Override
+  public List<ShardId> findShardIds(String tenant, String table, Interval interval, InstantPredicate intervalStartPredicate) {
+    return delegate.findShardIds(tenant, table, interval, intervalStartPredicate);
+  }
+
+  @Override
+  public List<ShardId> findShardIds(String tenant, String table, StringPredicate intervalPredicate, InstantPredicate intervalStartPredicate) {
+    return delegate.findShardIds(tenant, table, intervalPredicate, intervalStartPredicate);
+  }
+
+  @Override
+  public List<ShardId> findShardIds(String tenant, String table, Interval interval) {
+    return delegate.findShardIds(tenant, table, interval);
+  }
+
+  private static final class ColumnKey {
+    private final ShardId shardId;
+    private final String columnName;
+
+    ColumnKey(ShardId shardId, String columnName) {
+      this.shardId = shardId;
+      this.columnName = columnName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof ColumnKey))
+        return false;
+      ColumnKey other = (ColumnKey) o;
+      return shardId.equals(other.shardId) && columnName.equals(other.columnName);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(shardId, columnName);
+    }
+  }
+}
@@ -2,6 +2,8 @@ package com.rapid7.armor.store;
 
 import com.rapid7.armor.Constants;
 import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.fast.ColumnFileChunkReader;
+import com.rapid7.armor.read.fast.FastArmorEntityColumn;
 import com.rapid7.armor.read.fast.FastArmorShardColumn;
 import com.rapid7.armor.read.predicate.InstantPredicate;
 import com.rapid7.armor.read.predicate.StringPredicate;
@@ -17,6 +19,8 @@ import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.FileVisitor;
@@ -132,6 +136,30 @@ public class FileReadStore implements ReadStore {
 
   @Override
   public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName) {
+    return getFastArmorShard(shardId, columnName, true);
+  }
+
+  @Override
+  public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName, boolean withEntityDictionary) {
+    List<ColumnId> columnIds = getColumnIds(shardId);
+    Optional<ColumnId> option = columnIds.stream().filter(c -> c.getName().equals(columnName)).findFirst();
+    if (!option.isPresent())
+      return null;
+    ColumnId cn = option.get();
+    Path shardIdPath = Paths.get(resolveCurrentPath(shardId), cn.fullName());
+    if (!Files.exists(shardIdPath)) {
+      return null;
+    } else {
+      try {
+        return new FastArmorShardColumn(new DataInputStream(Files.newInputStream(shardIdPath, StandardOpenOption.READ)), withEntityDictionary);
+      } catch (IOException ioe) {
+        throw new RuntimeException(ioe);
+      }
+    }
+  }
+
+  @Override
+  public FastArmorEntityColumn getFastArmorEntity(ShardId shardId, String columnName, Object entityId) {
     List<ColumnId> columnIds = getColumnIds(shardId);
     Optional<ColumnId> option = columnIds.stream().filter(c -> c.getName().equals(columnName)).findFirst();
     if (!option.isPresent())
@@ -142,13 +170,42 @@ public class FileReadStore implements ReadStore {
       return null;
     } else {
       try {
-        return new FastArmorShardColumn(new DataInputStream(Files.newInputStream(shardIdPath, StandardOpenOption.READ)));
+        return new FastArmorEntityColumn(Files.newInputStream(shardIdPath, StandardOpenOption.READ), entityId);
       } catch (IOException ioe) {
         throw new RuntimeException(ioe);
       }
     }
   }
 
+  /**
+   * Opens a column of a shard for reading row ranges, only the parts of the file that are needed are read.
+   *
+   * @return The reader or {@code null} if the column isn't in the shard.
+   */
+  public ColumnFileChunkReader getColumnFileChunkReader(ShardId shardId, String columnName) {
+    List<ColumnId> columnIds = getColumnIds(shardId);
+    Optional<ColumnId> option = columnIds.stream().filter(c -> c.getName().equals(columnName)).findFirst();
+    if (!option.isPresent())
+      return null;
+    Path shardIdPath = Paths.get(resolveCurrentPath(shardId), option.get().fullName());
+    if (!Files.exists(shardIdPath))
+      return null;
+    try {
+      return new ColumnFileChunkReader((offset, length) -> {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try (FileChannel channel = FileChannel.open(shardIdPath, StandardOpenOption.READ)) {
+          while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+              throw new IOException("Unexpected end of " + shardIdPath + " reading " + length + " bytes at " + offset);
+          }
+        }
+        return buffer.array();
+      });
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
+  }
+
   @Override
   public List<String> getTables(String tenant) {
     Path tenantPath = basePath.resolve(Paths.get(tenant));
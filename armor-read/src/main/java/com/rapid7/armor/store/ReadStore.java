@@ -1,6 +1,7 @@
 package com.rapid7.armor.store;
 
 import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.fast.FastArmorEntityColumn;
 import com.rapid7.armor.read.fast.FastArmorShardColumn;
 import com.rapid7.armor.read.predicate.InstantPredicate;
 import com.rapid7.armor.read.predicate.StringPredicate;
@@ -79,6 +80,29 @@ public interface ReadStore {
   SlowArmorShardColumn getSlowArmorShard(ShardId shardId, String columnName);
   FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName);
 
+  /**
+   * Loads a column of a shard, optionally without its entity dictionary.
+   *
+   * @param shardId The shard to read.
+   * @param columnName The column to read.
+   * @param withEntityDictionary If {@code false} the entity dictionary may be skipped, which is enough for scans and
+   * lookups by numeric entity id.
+   *
+   * @return The column or {@code null} if the column isn't in the shard.
+   */
+  FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName, boolean withEntityDictionary);
+
+  /**
+   * Reads the values of a single entity from a column of a shard, the rest of the shard's entities aren't decoded.
+   *
+   * @param shardId The shard to read.
+   * @param columnName The column to read.
+   * @param entityId The entity id, either the string id or the numeric id.
+   *
+   * @return The entity's column or {@code null} if the column isn't in the shard.
+   */
+  FastArmorEntityColumn getFastArmorEntity(ShardId shardId, String columnName, Object entityId);
+
   // Column id apis
   ColumnId getColumnId(String tenant, String table, Interval interval, Instant timestamp, String columnName);
   List<ColumnId> getColumnIds(String tenant, String table);
@@ -2,18 +2,22 @@ package com.rapid7.armor.store;
 
 import com.rapid7.armor.Constants;
 import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.fast.ColumnFileChunkReader;
+import com.rapid7.armor.read.fast.FastArmorEntityColumn;
 import com.rapid7.armor.read.fast.FastArmorShardColumn;
 import com.rapid7.armor.read.predicate.InstantPredicate;
 import com.rapid7.armor.read.predicate.StringPredicate;
 import com.rapid7.armor.read.slow.SlowArmorShardColumn;
 import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.interval.Interval;
+import com.rapid7.armor.io.IOTools;
 import com.rapid7.armor.io.PathBuilder;
 import com.rapid7.armor.shard.ShardId;
 import com.rapid7.armor.xact.DistXactRecord;
 import com.rapid7.armor.xact.DistXactRecordUtil;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.ObjectMetadata;
@@ -125,6 +129,11 @@ public class S3ReadStore implements ReadStore {
 
   @Override
   public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName) {
+    return getFastArmorShard(shardId, columnName, true);
+  }
+
+  @Override
+  public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName, boolean withEntityDictionary) {
     List<ColumnId> columnIds = getColumnIds(shardId);
     Optional<ColumnId> option = columnIds.stream().filter(c -> c.getName().equals(columnName)).findFirst();
     if (!option.isPresent())
@@ -136,14 +145,65 @@ public class S3ReadStore implements ReadStore {
     } else {
       S3Object s3Object = s3Client.getObject(bucket, shardIdPath);
       try {
-        return new FastArmorShardColumn(new DataInputStream(s3Object.getObjectContent()));
+        return new FastArmorShardColumn(new DataInputStream(s3Object.getObjectContent()), withEntityDictionary);
       } catch (IOException ioe) {
         LOGGER.error("Unable load the shard at {}", shardIdPath, ioe);
         throw new RuntimeException(ioe);
       }
     }
   }
+
+  @Override
+  public FastArmorEntityColumn getFastArmorEntity(ShardId shardId, String columnName, Object entityId) {
+    List<ColumnId> columnIds = getColumnIds(shardId);
+    Optional<ColumnId> option = columnIds.stream().filter(c -> c.getName().equals(columnName)).findFirst();
+    if (!option.isPresent())
+      return null;
+    ColumnId cn = option.get();
+    String shardIdPath = PathBuilder.buildPath(resolveCurrentPath(shardId), cn.fullName());
+    if (!doesObjectExist(bucket, shardIdPath)) {
+      return null;
+    } else {
+      S3Object s3Object = s3Client.getObject(bucket, shardIdPath);
+      try {
+        return new FastArmorEntityColumn(s3Object.getObjectContent(), entityId);
+      } catch (IOException ioe) {
+        LOGGER.error("Unable load the entity {} from the shard at {}", entityId, shardIdPath, ioe);
+        throw new RuntimeException(ioe);
+      }
+    }
+  }
   
+  /**
+   * Opens a column of a shard for reading row ranges, each read is a ranged get of only the bytes that are needed.
+   *
+   * @return The reader or {@code null} if the column isn't in the shard.
+   */
+  public ColumnFileChunkReader getColumnFileChunkReader(ShardId shardId, String columnName) {
+    List<ColumnId> columnIds = getColumnIds(shardId);
+    Optional<ColumnId> option = columnIds.stream().filter(c -> c.getName().equals(columnName)).findFirst();
+    if (!option.isPresent())
+      return null;
+    String shardIdPath = PathBuilder.buildPath(resolveCurrentPath(shardId), option.get().fullName());
+    if (!doesObjectExist(bucket, shardIdPath))
+      return null;
+    try {
+      return new ColumnFileChunkReader((offset, length) -> {
+        byte[] bytes = new byte[length];
+        if (length == 0)
+          return bytes;
+        GetObjectRequest request = new GetObjectRequest(bucket, shardIdPath).withRange(offset, offset + length - 1);
+        try (S3Object s3Object = s3Client.getObject(request)) {
+          IOTools.readFully(s3Object.getObjectContent(), bytes, 0, length);
+        }
+        return bytes;
+      });
+    } catch (IOException ioe) {
+      LOGGER.error("Unable open the shard at {}", shardIdPath, ioe);
+      throw new RuntimeException(ioe);
+    }
+  }
+
   @Override
   public List<ColumnId> getColumnIds(String tenant, String table) {
     String columnMetadataPath = PathBuilder.buildPath(tenant, table, COLUMN_METADATA_DIR);
@@ -0,0 +1,89 @@
+package com.rapid7.armor.read;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadMemoryManagerTest {
+
+  @Test
+  public void reserveAndRelease() throws Exception {
+    ReadMemoryManager manager = new ReadMemoryManager(100);
+    manager.reserve(60);
+    manager.reserve(40);
+    assertEquals(100, manager.getReservedBytes());
+    assertEquals(0, manager.getAvailableBytes());
+    assertEquals(1.0, manager.getUtilization());
+    assertFalse(manager.tryReserve(1, 10, TimeUnit.MILLISECONDS));
+    assertEquals(1, manager.getWaits());
+
+    manager.release(60);
+    assertTrue(manager.tryReserve(50, 10, TimeUnit.MILLISECONDS));
+    assertEquals(90, manager.getReservedBytes());
+    assertEquals(100, manager.getPeakReservedBytes());
+    assertThrows(IllegalStateException.class, () -> manager.release(91));
+
+    // Larger than the whole budget only once nothing else is reserved.
+    manager.release(90);
+    manager.reserve(150);
+    assertEquals(150, manager.getReservedBytes());
+    manager.release(150);
+
+    manager.reserve(80);
+    manager.grow(40);
+    assertEquals(120, manager.getReservedBytes());
+  }
+
+  @Test
+  public void waitsForRelease() throws Exception {
+    ReadMemoryManager manager = new ReadMemoryManager(100);
+    ExecutorService threadPool = Executors.newSingleThreadExecutor();
+    try {
+      manager.reserve(80);
+      CountDownLatch started = new CountDownLatch(1);
+      Future<?> waiting = threadPool.submit(() -> {
+        started.countDown();
+        manager.reserve(50);
+      });
+      started.await();
+      while (manager.getWaiting() == 0)
+        Thread.sleep(1);
+      assertFalse(waiting.isDone());
+      manager.release(80);
+      waiting.get(10, TimeUnit.SECONDS);
+      assertEquals(50, manager.getReservedBytes());
+      assertEquals(0, manager.getWaiting());
+    } finally {
+      threadPool.shutdown();
+    }
+  }
+
+  @Test
+  public void evictsBeforeWaiting() {
+    ReadMemoryManager manager = new ReadMemoryManager(100);
+    AtomicLong cached = new AtomicLong();
+    manager.addEvictor(bytes -> {
+      long freed = Math.min(bytes, cached.get());
+      cached.addAndGet(-freed);
+      manager.release(freed);
+      return freed;
+    });
+    manager.reserve(90);
+    cached.set(90);
+    manager.reserve(30);
+    assertEquals(100, manager.getReservedBytes());
+    assertEquals(20, manager.getEvictedBytes());
+    assertEquals(70, cached.get());
+    assertEquals(0, manager.getWaits());
+  }
+}
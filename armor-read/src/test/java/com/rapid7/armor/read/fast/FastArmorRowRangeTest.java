@@ -0,0 +1,38 @@
+package com.rapid7.armor.read.fast;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class FastArmorRowRangeTest {
+
+  @Test
+  public void splitOnEntityBoundaries() {
+    // Entities with 5, 0, 20, 1, 1, 3 rows.
+    int[] offsets = {0, 5, 5, 25, 26, 27, 30};
+    for (int numSplits = 1; numSplits < 10; numSplits++) {
+      List<FastArmorRowRange> ranges = FastArmorRowRange.split(offsets, numSplits);
+      assertEquals(numSplits, ranges.size());
+      int entity = 0;
+      for (FastArmorRowRange range : ranges) {
+        assertEquals(entity, range.getStartEntity());
+        assertTrue(range.getEndEntity() >= range.getStartEntity());
+        assertEquals(offsets[range.getStartEntity()], range.getStartRow());
+        assertEquals(offsets[range.getEndEntity()], range.getEndRow());
+        entity = range.getEndEntity();
+      }
+      assertEquals(6, entity);
+    }
+    List<FastArmorRowRange> halves = FastArmorRowRange.split(offsets, 2);
+    // The big entity straddles the middle so it stays in the first half.
+    assertEquals(25, halves.get(0).getNumRows());
+    assertEquals(5, halves.get(1).getNumRows());
+
+    List<FastArmorRowRange> empty = FastArmorRowRange.split(new int[] {0}, 3);
+    for (FastArmorRowRange range : empty)
+      assertEquals(0, range.getNumRows());
+  }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 
 import io.airlift.slice.Slice;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class NullArmorBlockReaderTest {
@@ -39,6 +40,32 @@ public class NullArmorBlockReaderTest {
     }
   }
   
+  @Test
+  public void reuseBlock() {
+    NullArmorBlockReader nabr = new NullArmorBlockReader(25);
+    FastArmorBlock block = new FastArmorBlock();
+    FastArmorBlock fab = nabr.getLongBlock(10, block);
+    long[] values = fab.getLongValueArray();
+    boolean[] nulls = fab.getValuesIsNull();
+    int rows = fab.getNumRows();
+    while (nabr.hasNext()) {
+      fab = nabr.getLongBlock(10, block);
+      assertSame(block, fab);
+      assertSame(values, fab.getLongValueArray());
+      assertSame(nulls, fab.getValuesIsNull());
+      for (int i = 0; i < fab.getNumRows(); i++)
+        assertTrue(fab.getValuesIsNull()[i]);
+      rows += fab.getNumRows();
+    }
+    assertEquals(25, rows);
+    assertEquals(5, block.getNumRows());
+    assertEquals(3, block.getBatchNum());
+
+    block.reset();
+    assertEquals(0, block.getNumRows());
+    assertEquals(null, block.getValuesIsNull());
+  }
+
   private void verifyAllZero(int[] intArray) {
     for (int i = 0; i < intArray.length; i++)
       assertEquals(0, intArray[i]);
@@ -0,0 +1,54 @@
+package com.rapid7.armor.write;
+
+import java.util.Objects;
+
+public class DeleteRequest {
+  private Object entityId;
+  private long version;
+  private String instanceid;
+
+  public DeleteRequest() {}
+
+  public DeleteRequest(Object entityId, long version, String instanceid) {
+    this.entityId = entityId;
+    this.version = version;
+    this.instanceid = instanceid;
+  }
+
+  public Object getEntityId() {
+    return entityId;
+  }
+
+  public void setEntityId(Object entityId) {
+    this.entityId = entityId;
+  }
+
+  public String getInstanceId() {
+    return instanceid;
+  }
+
+  public void setInstanceId(String instanceId) {
+    this.instanceid = instanceId;
+  }
+
+  public long getVersion() {
+    return version;
+  }
+
+  public void setVersion(long version) {
+    this.version = version;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    DeleteRequest that = (DeleteRequest) o;
+    return getVersion() == that.getVersion() && Objects.equals(getEntityId(), that.getEntityId()) && Objects.equals(instanceid, that.instanceid);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getEntityId(), getVersion(), instanceid);
+  }
+}
@@ -18,6 +18,10 @@ public class DictionaryWriter implements Component, Dictionary {
   private final Map<Integer, String> intToStr = new HashMap<>();
   private final static ObjectMapper OBJECT_MAPPER = new ObjectMapper();
   private boolean bidirectional = false;
+  private long valueChars; // The chars of every value, for the memory estimate
+  // Rough heap cost of a map entry with its boxed surrogate and of a string besides its chars.
+  private final static int ENTRY_BYTES = 64;
+  private final static int STRING_BYTES = 40;
   
   public DictionaryWriter(boolean bidirectional) {
     nextInteger = new AtomicInteger(1);
@@ -34,7 +38,8 @@ public class DictionaryWriter implements Component, Dictionary {
       Integer surrogate = Integer.parseInt(e.getKey().toString());
       if (highestSurrogate < surrogate)
         highestSurrogate = surrogate;
-      strToInt.put(e.getValue(), surrogate);
+      if (strToInt.put(e.getValue(), surrogate) == null)
+        valueChars += e.getValue().length();
       if (bidirectional)
         intToStr.put(surrogate, e.getValue());
     }
@@ -76,14 +81,16 @@ public class DictionaryWriter implements Component, Dictionary {
   
   public synchronized void removeValue(Integer surrogate) {
     String removedValue = intToStr.remove(surrogate);
-    if (removedValue != null)
-      strToInt.remove(removedValue);
+    if (removedValue != null && strToInt.remove(removedValue) != null)
+      valueChars -= removedValue.length();
   }
 
   public synchronized void removeSurrogate(String value) {
     Integer removedSurrogate = strToInt.remove(value);
-    if (removedSurrogate != null)
+    if (removedSurrogate != null) {
+      valueChars -= value.length();
       intToStr.remove(removedSurrogate);
+    }
   }
 
   public Set<Object> isCorrupted() {
@@ -111,6 +118,14 @@ public class DictionaryWriter implements Component, Dictionary {
     return intToStr.get(surrogate);
   }
 
+  /**
+   * @return A rough estimate of the heap held by the dictionary.
+   */
+  public synchronized long estimateMemory() {
+    int entries = strToInt.size() + intToStr.size();
+    return (long) entries * ENTRY_BYTES + (long) strToInt.size() * STRING_BYTES + valueChars * 2;
+  }
+
   public int cardinality() {
     return strToInt.size();
   }
@@ -125,11 +140,27 @@ public class DictionaryWriter implements Component, Dictionary {
     return strToInt.containsKey(key);
   }
 
+  /**
+   * Looks up or assigns the surrogates of a run of values under one lock, nulls are the zero surrogate.
+   *
+   * @param values The string values.
+   * @param offset The first value to look up.
+   * @param length The number of values to look up.
+   * @param surrogates Receives the surrogate of each value starting at zero.
+   */
+  public synchronized void getSurrogates(Object[] values, int offset, int length, int[] surrogates) {
+    for (int i = 0; i < length; i++) {
+      Object value = values[offset + i];
+      surrogates[i] = value == null ? 0 : getSurrogate((String) value);
+    }
+  }
+
   public synchronized Integer getSurrogate(String value) {
     Integer toReturn = null;
     if (!strToInt.containsKey(value)) {
       int nextVal = nextInteger.incrementAndGet();
       strToInt.put(value, nextVal);
+      valueChars += value.length();
       toReturn = nextVal;
       if (bidirectional)
         intToStr.put(toReturn, value);
@@ -2,9 +2,10 @@ package com.rapid7.armor.write.component;
 
 import com.rapid7.armor.Constants;
 import com.rapid7.armor.entity.EntityRecord;
-import com.rapid7.armor.io.FixedCapacityByteBufferPool;
+import com.rapid7.armor.io.ByteBufferPool;
 import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.shard.ColumnShardId;
+import com.rapid7.armor.write.DeleteRequest;
 import com.rapid7.armor.write.EntityOffsetException;
 import com.rapid7.armor.write.writers.TempFileUtil;
 
@@ -21,6 +22,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -39,11 +41,18 @@ public class EntityIndexWriter extends FileComponent {
   private final ColumnShardId columnShardId;
   private int nextOffset = 0;
   private int preloadOffset = 0;
-  private final static FixedCapacityByteBufferPool BYTE_BUFFER_POOL = new FixedCapacityByteBufferPool(RECORD_SIZE_BYTES);
+  private final static ByteBufferPool BYTE_BUFFER_POOL = ByteBufferPool.shared();
+  private final static int MAX_BATCH_RECORDS = 1024; // Records written per write when deleting in batches
   private final static String ENTITY_INDEX_COMPACTION_SUFFIX = "_entityindex-compaction-";
+  // Rough heap cost of an entity's record with its map entry and of an index offset entry.
+  private final static int ENTITY_RECORD_BYTES = 120;
+  private final static int INDEX_OFFSET_BYTES = 64;
 
+  /**
+   * @return The number of idle buffers in the pool shared with the other components, see {@link ByteBufferPool#getPooledBuffers()}.
+   */
   public static int bufferPoolSize() {
-    return BYTE_BUFFER_POOL.currentSize();
+    return BYTE_BUFFER_POOL.getPooledBuffers();
   }
 
   public EntityIndexWriter(Path path, ColumnShardId columnShardId) throws IOException {
@@ -78,6 +87,13 @@ public class EntityIndexWriter extends FileComponent {
     return entities.get(entityId);
   }
 
+  /**
+   * @return The byte offset of the entity's record in the entity index, {@code null} if the entity has no record.
+   */
+  public Integer getIndexOffset(Integer entityId) {
+    return indexOffsets.get(entityId);
+  }
+
   public List<EntityRecord> getActiveEntities() {
       return entities.values().stream().filter(e -> e.getDeleted() == 0).collect(Collectors.toList());
   }
@@ -86,6 +102,13 @@ public class EntityIndexWriter extends FileComponent {
     return entities;
   }
 
+  /**
+   * @return A rough estimate of the heap held by the entity records and their offsets, the index itself is on disk.
+   */
+  public long estimateMemory() {
+    return (long) entities.size() * ENTITY_RECORD_BYTES + (long) indexOffsets.size() * INDEX_OFFSET_BYTES;
+  }
+
   public List<EntityRecord> getEntityRecords(DictionaryWriter dict) {
     if (dict == null || dict.isEmpty())
       return EntityRecord.sortRecordsByOffset(entities.values().stream().filter(e -> e.getDeleted() == 0).collect(Collectors.toList()));
@@ -196,6 +219,59 @@ public class EntityIndexWriter extends FileComponent {
     return null;
   }
 
+  /**
+   * Deletes a batch of entities. The changed records are written in index order, records next to each other in the index
+   * are written together instead of with a seek and write per record.
+   *
+   * @param deletes The deletes keyed by entity surrogate.
+   *
+   * @return The number of entities deleted.
+   */
+  public int delete(Map<Integer, DeleteRequest> deletes) throws IOException {
+    TreeMap<Integer, EntityRecord> deletedByOffset = new TreeMap<>();
+    for (Map.Entry<Integer, DeleteRequest> entry : deletes.entrySet()) {
+      EntityRecord eir = entities.get(entry.getKey());
+      DeleteRequest delete = entry.getValue();
+      if (eir != null && delete.getVersion() >= eir.getVersion()) {
+        eir.setDeleted((byte) 1);
+        eir.instanceId(delete.getInstanceId());
+        eir.setVersion(delete.getVersion());
+        deletedByOffset.put(indexOffsets.get(entry.getKey()), eir);
+      }
+    }
+    if (deletedByOffset.isEmpty())
+      return 0;
+
+    long prevPosition = position();
+    try {
+      ByteBuffer batch = ByteBuffer.allocate(Math.min(deletedByOffset.size(), MAX_BATCH_RECORDS) * RECORD_SIZE_BYTES);
+      int batchOffset = -1;
+      for (Map.Entry<Integer, EntityRecord> entry : deletedByOffset.entrySet()) {
+        int indexOffset = entry.getKey();
+        if (batchOffset >= 0 && (batchOffset + batch.position() != indexOffset || !batch.hasRemaining())) {
+          writeBatch(batch, batchOffset);
+          batchOffset = -1;
+        }
+        if (batchOffset < 0) {
+          batch.clear();
+          batchOffset = indexOffset;
+        }
+        putEntityRecord(entry.getValue(), batch);
+      }
+      writeBatch(batch, batchOffset);
+    } finally {
+      position(prevPosition);
+    }
+    return deletedByOffset.size();
+  }
+
+  private void writeBatch(ByteBuffer batch, int indexOffset) throws IOException {
+    batch.flip();
+    position(indexOffset);
+    while (batch.hasRemaining())
+      write(batch);
+  }
+
   public boolean putEntity(EntityRecord eir) throws IOException {
     if (entities.containsKey(eir.getEntityId())) {
       int indexOffset = indexOffsets.get(eir.getEntityId());
@@ -246,7 +322,7 @@ public class EntityIndexWriter extends FileComponent {
   }
 
   protected EntityRecord readEntityIndexRecord() throws IOException {
-    ByteBuffer readByteBuffer = BYTE_BUFFER_POOL.get();
+    ByteBuffer readByteBuffer = BYTE_BUFFER_POOL.acquire(RECORD_SIZE_BYTES);
     try {
       readByteBuffer.rewind();
       int byteRead = read(readByteBuffer);
@@ -268,6 +344,11 @@ public class EntityIndexWriter extends FileComponent {
 
   private void writeEntityRecordToBuffer(EntityRecord eir, ByteBuffer byteBuffer) throws IOException {
     byteBuffer.clear();
+    putEntityRecord(eir, byteBuffer);
+    byteBuffer.flip();
+  }
+
+  private void putEntityRecord(EntityRecord eir, ByteBuffer byteBuffer) {
     byteBuffer.putInt(eir.getEntityId());
     byteBuffer.putInt(eir.getRowGroupOffset());
     byteBuffer.putInt(eir.getValueLength());
@@ -276,7 +357,6 @@ public class EntityIndexWriter extends FileComponent {
     byteBuffer.putInt(eir.getNullLength());
     byteBuffer.putInt(eir.getDecodedLength());
     byteBuffer.put(eir.getInstanceId());
-    byteBuffer.flip();
   }
 
   public void removeEntityReferences(Set<Integer> toRemove) {
@@ -287,7 +367,7 @@ public class EntityIndexWriter extends FileComponent {
   }
 
   public void writeEntityIndexRecord(EntityRecord eir) throws IOException {
-    ByteBuffer writeByteBuffer = BYTE_BUFFER_POOL.get();
+    ByteBuffer writeByteBuffer = BYTE_BUFFER_POOL.acquire(RECORD_SIZE_BYTES);
     try {
       writeEntityRecordToBuffer(eir, writeByteBuffer);
       write(writeByteBuffer);
@@ -319,7 +399,7 @@ public class EntityIndexWriter extends FileComponent {
     Map<Integer, Integer> tempIndexOffsets = new HashMap<>();
     Path path = TempFileUtil.createTempFile(columnShardId.alternateString() + ENTITY_INDEX_COMPACTION_SUFFIX, ".armor");
     boolean copied = false;
-    ByteBuffer buffer = BYTE_BUFFER_POOL.get();
+    ByteBuffer buffer = BYTE_BUFFER_POOL.acquire(RECORD_SIZE_BYTES);
     try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
       int recordOffset = 0;
       for (EntityRecord er : entitiesToKeep) {
@@ -7,6 +7,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
@@ -98,6 +99,26 @@ public class FileComponent implements ChannelComponent {
     return fileChannel.read(byteBuffer);
   }
 
+  /**
+   * Transfers a range of this component to a channel, the bytes go from one channel to the other without being copied
+   * through the heap. The position of the component is left as is.
+   *
+   * @param position The position of the range.
+   * @param count The length of the range.
+   * @param target The channel to transfer to.
+   *
+   * @throws IOException If an io error occurs or the range is past the end of the component.
+   */
+  public void transferTo(long position, long count, WritableByteChannel target) throws IOException {
+    long transferred = 0;
+    while (transferred < count) {
+      long n = fileChannel.transferTo(position + transferred, count - transferred, target);
+      if (n <= 0)
+        throw new IOException("Unable to transfer " + count + " bytes at " + position + " of " + path + ", only " + transferred + " were transferred");
+      transferred += n;
+    }
+  }
+
   @Override
   public int write(byte[] buffer) throws IOException {
     ReadableByteChannel rbc = Channels.newChannel(new ByteArrayInputStream(buffer));
@@ -1,17 +1,18 @@
 package com.rapid7.armor.write.component;
 
 import com.rapid7.armor.Constants;
+import com.rapid7.armor.entity.ColumnarBatch.BatchColumn;
 import com.rapid7.armor.entity.EntityRecord;
-import com.rapid7.armor.io.FixedCapacityByteBufferPool;
+import com.rapid7.armor.io.ByteBufferPool;
 import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.schema.DataType;
 import com.rapid7.armor.shard.ColumnShardId;
+import com.rapid7.armor.sketch.BloomFilter;
+import com.rapid7.armor.sketch.HyperLogLog;
+import com.rapid7.armor.sketch.QuantileSketch;
 import com.rapid7.armor.write.writers.TempFileUtil;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-
 import java.io.IOException;
-import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
@@ -21,8 +22,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.function.Consumer;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
 import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
@@ -38,15 +41,28 @@ public class RowGroupWriter extends FileComponent {
   private final DataType dataType;
   private final static String ROWGROUP_COMPACTION_SUFFIX = "_rowgroup_compaction-";
   private final static int DEFAULT_BYTEBUFFER_SIZE = 128000;
-  private static FixedCapacityByteBufferPool BYTE_BUFFER_POOL = new FixedCapacityByteBufferPool(DEFAULT_BYTEBUFFER_SIZE);
+  private static final ByteBufferPool BYTE_BUFFER_POOL = ByteBufferPool.shared();
+  private static int bufferSize = DEFAULT_BYTEBUFFER_SIZE; // The size of the buffers values are read into
+  private static final byte[] ZEROS = new byte[4096];
+  private static final ThreadLocal<int[]> SURROGATE_SCRATCH = ThreadLocal.withInitial(() -> new int[1024]);
+  private double bloomFilterFpp = 0;
+  private BloomFilter bloomFilter;
+  private int bloomFilterCapacity; // The distinct values the bloom filter was sized for
+  private int bloomFilterValues; // The distinct values in the bloom filter, counting the appended ones
+  // The stats of the values appended since the last pass over the values, see applyAppendedStats().
+  private double appendedMin = Double.POSITIVE_INFINITY;
+  private double appendedMax = Double.NEGATIVE_INFINITY;
+  private int appendedNulls;
+  private HyperLogLog appendedDistinct;
+  private QuantileSketch appendedQuantiles;
 
   /**
-   * Readjusts the fixed capacity size, this is to be primarily used for testing.
+   * Readjusts the size of the buffers taken from the pool to read values into, this is to be primarily used for testing.
    *
-   * @param fixedSize The size in bytes to setup the bytebuffer pool.
+   * @param fixedSize The size in bytes of the buffers.
    */
   public static void setupFixedCapacityBufferPoolSize(int fixedSize) {
-    BYTE_BUFFER_POOL = new FixedCapacityByteBufferPool(fixedSize);
+    bufferSize = fixedSize;
   }
 
   public RowGroupWriter(Path path, ColumnShardId columnShardId, DictionaryWriter dictionary) {
@@ -59,6 +75,140 @@ public class RowGroupWriter extends FileComponent {
   public DictionaryWriter getDictionaryWriter() {
     return dictionaryWriter;
   }
+
+  /**
+   * Builds a bloom filter of the distinct values whenever the metadata is updated, see {@link #getBloomFilter()}.
+   *
+   * @param bloomFilterFpp The false positive rate of the filter, zero to not build one.
+   */
+  public void setBloomFilterFpp(double bloomFilterFpp) {
+    if (bloomFilterFpp < 0 || bloomFilterFpp >= 1)
+      throw new IllegalArgumentException("The bloom filter false positive rate must be zero or between zero and one but was " + bloomFilterFpp);
+    this.bloomFilterFpp = bloomFilterFpp;
+  }
+
+  /**
+   * @return The bloom filter of the values from the last metadata update and of the values appended since, {@code null} if
+   * none was built or it filled up past its size.
+   */
+  public BloomFilter getBloomFilter() {
+    return bloomFilter;
+  }
+
+  /**
+   * @return A rough estimate of the heap held by the bloom filter and the sketches of the appended values, the values
+   * themselves are on disk.
+   */
+  public long estimateMemory() {
+    long bytes = bloomFilter == null ? 0 : bloomFilter.getNumBits() / 8;
+    if (appendedDistinct != null)
+      bytes += 1 << appendedDistinct.getPrecision();
+    if (appendedQuantiles != null)
+      bytes += 2 * QuantileSketch.MAX_BUCKETS * 8; // At most a long per bucket of each sign
+    return bytes;
+  }
+
+  /**
+   * Adds the values appended since the last pass over the values to the stats of the metadata, so the range, the null count
+   * and the sketches cover every value without reading the row group. Values that were overwritten or deleted since stay in
+   * the stats until the next pass.
+   *
+   * @param metadata The metadata to update.
+   */
+  public void applyAppendedStats(ColumnMetadata metadata) {
+    if (appendedMin <= appendedMax) {
+      metadata.handleMinMax(appendedMin);
+      metadata.handleMinMax(appendedMax);
+    }
+    metadata.setNullCount(metadata.getNullCount() + appendedNulls);
+    if (appendedDistinct != null && metadata.getDistinctSketch() != null) {
+      HyperLogLog distinct = new HyperLogLog(metadata.getDistinctSketch());
+      distinct.merge(appendedDistinct);
+      metadata.setDistinctSketch(distinct.getRegisters());
+      if (dataType != DataType.STRING)
+        metadata.setCardinality((int) distinct.cardinality());
+    }
+    if (appendedQuantiles != null && metadata.getQuantileSketch() != null) {
+      QuantileSketch quantiles = QuantileSketch.fromBytes(metadata.getQuantileSketch());
+      quantiles.merge(appendedQuantiles);
+      metadata.setQuantileSketch(quantiles.toBytes());
+    }
+    resetAppendedStats();
+  }
+
+  private void resetAppendedStats() {
+    appendedMin = Double.POSITIVE_INFINITY;
+    appendedMax = Double.NEGATIVE_INFINITY;
+    appendedNulls = 0;
+    appendedDistinct = null;
+    appendedQuantiles = null;
+  }
+
+  private void appendedRange(double value) {
+    if (value < appendedMin)
+      appendedMin = value;
+    if (value > appendedMax)
+      appendedMax = value;
+  }
+
+  private HyperLogLog appendedDistinct() {
+    if (appendedDistinct == null)
+      appendedDistinct = new HyperLogLog();
+    return appendedDistinct;
+  }
+
+  private void appendedQuantile(double value) {
+    if (!dataType.isNumeric())
+      return;
+    if (appendedQuantiles == null)
+      appendedQuantiles = new QuantileSketch();
+    appendedQuantiles.add(value);
+  }
+
+  // Integers, longs and datetimes, hashed like the readers and the bloom filter hash them.
+  private void appendedLong(long value) {
+    appendedRange((double) value);
+    appendedDistinct().addLong(value);
+    appendedQuantile((double) value);
+    if (bloomFilter != null)
+      appendedToBloomFilter(BloomFilter.hashLong(value));
+  }
+
+  // Floats are widened to doubles first, like the readers do.
+  private void appendedDouble(double value) {
+    appendedRange(value);
+    appendedDistinct().addDouble(value);
+    appendedQuantile(value);
+    if (bloomFilter != null)
+      appendedToBloomFilter(BloomFilter.hashDouble(value));
+  }
+
+  // The range of strings is over surrogates like a pass over the values does, the sketch and bloom filter over the values.
+  private void appendedString(int surrogate, String value) {
+    appendedRange((double) surrogate);
+    if (value == null) {
+      appendedNulls++;
+      return;
+    }
+    long hash = HyperLogLog.hashUtf8(value);
+    appendedDistinct().addHash(hash);
+    if (bloomFilter != null)
+      appendedToBloomFilter(hash);
+  }
+
+  private void appendedToBloomFilter(long hash) {
+    if (!bloomFilter.mightContainHash(hash)) {
+      bloomFilter.addHash(hash);
+      countBloomFilterValue();
+    }
+  }
+
+  // Past twice the values the filter was sized for its false positive rate is well over the one asked for, the filter is
+  // dropped so the next pass over the values builds a new one.
+  private void countBloomFilterValue() {
+    if (++bloomFilterValues > 2 * bloomFilterCapacity)
+      bloomFilter = null;
+  }
   
   /**
    * Given a record, go and extract the values for the given record.
@@ -71,8 +221,8 @@ public class RowGroupWriter extends FileComponent {
    */
   public List<Object> getEntityValues(EntityRecord er) throws IOException {
     long previousPosition = position();
-    ByteBuffer valBorrow = BYTE_BUFFER_POOL.get();
-    ByteBuffer nilBorrow = BYTE_BUFFER_POOL.get();
+    ByteBuffer valBorrow = BYTE_BUFFER_POOL.acquire(bufferSize);
+    ByteBuffer nilBorrow = BYTE_BUFFER_POOL.acquire(bufferSize);
     try {
       ByteBuffer valBuf = valBorrow;
       ByteBuffer nilBuf = nilBorrow;
@@ -127,8 +277,8 @@ public class RowGroupWriter extends FileComponent {
   public void customTraverseThoughValues(List<EntityRecord> records, Consumer<List<Object>> consumer) throws IOException {
     long previousPosition = position();
     int current = 0;
-    ByteBuffer valBorrow = BYTE_BUFFER_POOL.get();
-    ByteBuffer nilBorrow = BYTE_BUFFER_POOL.get();
+    ByteBuffer valBorrow = BYTE_BUFFER_POOL.acquire(bufferSize);
+    ByteBuffer nilBorrow = BYTE_BUFFER_POOL.acquire(bufferSize);
     try {
       ByteBuffer valBuf = valBorrow;
       ByteBuffer nilBuf = nilBorrow;
@@ -179,9 +329,16 @@ public class RowGroupWriter extends FileComponent {
     private final ColumnMetadata metadata;
     Double prevMax;
     Double prevMin;
-    Set<Object> cardinality = new HashSet<>();
-    ByteBuffer valBorrow = BYTE_BUFFER_POOL.get();
-    ByteBuffer nilBorrow = BYTE_BUFFER_POOL.get();
+    // The stats are collected in primitive loops, only the bloom filter needs the distinct values and it gets their hashes.
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    int nullCount = 0;
+    final HyperLogLog distinct = new HyperLogLog();
+    final QuantileSketch quantiles = dataType.isNumeric() ? new QuantileSketch() : null;
+    final RoaringBitmap surrogates = dataType == DataType.STRING ? new RoaringBitmap() : null;
+    final LongOpenHashSet bloomHashes = bloomFilterFpp > 0 && dataType != DataType.STRING ? new LongOpenHashSet() : null;
+    ByteBuffer valBorrow = BYTE_BUFFER_POOL.acquire(bufferSize);
+    ByteBuffer nilBorrow = BYTE_BUFFER_POOL.acquire(bufferSize);
     ByteBuffer valBuf = valBorrow;
     ByteBuffer nilBuf = nilBorrow;
     private boolean success;
@@ -190,9 +347,10 @@ public class RowGroupWriter extends FileComponent {
     MetadataUpdater(ColumnMetadata metadata) {
       this.metadata = metadata;
       prevMax = metadata.getMaxValue();
-      prevMax = metadata.getMinValue();
+      prevMin = metadata.getMinValue();
 
       metadata.resetMinMax();
+      bloomFilter = null;
       success = false;
     }
 
@@ -228,22 +386,86 @@ public class RowGroupWriter extends FileComponent {
         nilBuf.flip();
       }
 
-      dataType.traverseByteBuffer(valBuf, nilRb, eir.getValueLength(), (rowCount, value) -> {
-        if (nilRb == null || !nilRb.contains(rowCount)) {
-          metadata.handleMinMax(value);
-          cardinality.add(value);
+      if (dataType == DataType.BOOLEAN) {
+        dataType.traverseByteBuffer(valBuf, nilRb, valueLength, (rowCount, value) -> acceptLong(value.longValue()));
+        if (nilRb != null)
+          nullCount += nilRb.getCardinality();
+        return;
+      }
+      valBuf.flip();
+      int numRows = dataType.determineNumValues(valueLength);
+      // Rows of the null bitmap start at one.
+      for (int row = 0; row < numRows; row++) {
+        if (nilRb != null && nilRb.contains(row + 1)) {
+          nullCount++;
+          continue;
+        }
+        switch (dataType) {
+          case STRING:
+            acceptSurrogate(valBuf.getInt(row * 4));
+            break;
+          case INTEGER:
+            acceptLong(valBuf.getInt(row * 4));
+            break;
+          case LONG:
+          case DATETIME:
+            acceptLong(valBuf.getLong(row * 8));
+            break;
+          case FLOAT:
+            acceptDouble(valBuf.getFloat(row * 4));
+            break;
+          case DOUBLE:
+            acceptDouble(valBuf.getDouble(row * 8));
+            break;
+          default:
+            throw new IllegalStateException("Unsupported data type " + dataType);
         }
-      });
+      }
     }
 
-    public void writeBuffersToOutput(ByteBuffer bb, int totalLength) {
+    private void acceptMinMax(double value) {
+      if (value < min)
+        min = value;
+      if (value > max)
+        max = value;
+    }
 
+    private void acceptLong(long value) {
+      acceptMinMax(value);
+      distinct.addLong(value);
+      if (quantiles != null)
+        quantiles.add(value);
+      if (bloomHashes != null)
+        bloomHashes.add(BloomFilter.hashLong(value));
+    }
+
+    private void acceptDouble(double value) {
+      acceptMinMax(value);
+      distinct.addDouble(value);
+      quantiles.add(value);
+      if (bloomHashes != null)
+        bloomHashes.add(BloomFilter.hashDouble(value));
+    }
+
+    // The null surrogate is part of the range like it always was, the sketches are built from the values in finishUpdate.
+    private void acceptSurrogate(int surrogate) {
+      acceptMinMax(surrogate);
+      if (surrogate == 0)
+        nullCount++;
+      else
+        surrogates.add(surrogate);
+    }
+
+    public void writeBuffersToOutput(CompactionOutput output) throws IOException {
       valBuf.rewind();
       nilBuf.rewind();
-      //valBuf.limit();
+      output.write(valBuf);
+      output.write(nilBuf);
+    }
 
-      bb.put(valBuf);
-      bb.put(nilBuf);
+    // Null filler rows, they have no values to add to the stats.
+    void acceptNulls(int numNulls) {
+      nullCount += numNulls;
     }
 
     private ByteBuffer insureByteBufferIsBigEnough(int len, ByteBuffer buf) {
@@ -257,7 +479,47 @@ public class RowGroupWriter extends FileComponent {
     }
 
     public void finishUpdate() {
-      metadata.setCardinality(cardinality.size());
+      if (min <= max) {
+        metadata.handleMinMax(min);
+        metadata.handleMinMax(max);
+      }
+      // Strings are counted by surrogate, the value dictionary only maps values to surrogates so it is walked for the values
+      // of the surrogates in use.
+      long[] stringHashes = null;
+      int numStringHashes = 0;
+      if (surrogates != null) {
+        stringHashes = new long[surrogates.getCardinality()];
+        if (dictionaryWriter != null) {
+          for (Map.Entry<String, Integer> entry : dictionaryWriter.getStrToInt().entrySet()) {
+            if (surrogates.contains(entry.getValue())) {
+              stringHashes[numStringHashes] = HyperLogLog.hashUtf8(entry.getKey());
+              distinct.addHash(stringHashes[numStringHashes++]);
+            }
+          }
+        }
+        metadata.setCardinality(surrogates.getCardinality());
+      } else {
+        metadata.setCardinality((int) distinct.cardinality());
+      }
+      metadata.setNullCount(nullCount);
+      metadata.setDistinctSketch(distinct.getRegisters());
+      metadata.setQuantileSketch(quantiles == null ? null : quantiles.toBytes());
+      if (bloomFilterFpp > 0) {
+        int numValues = stringHashes != null ? numStringHashes : bloomHashes.size();
+        bloomFilter = new BloomFilter(numValues, bloomFilterFpp);
+        if (stringHashes != null) {
+          for (int i = 0; i < numStringHashes; i++)
+            bloomFilter.addHash(stringHashes[i]);
+        } else {
+          LongIterator hashes = bloomHashes.iterator();
+          while (hashes.hasNext())
+            bloomFilter.addHash(hashes.nextLong());
+        }
+        bloomFilterCapacity = Math.max(1, numValues);
+        bloomFilterValues = numValues;
+      }
+      metadata.setStatsExact(true);
+      resetAppendedStats();
       success = true;
     }
   }
@@ -293,7 +555,8 @@ public class RowGroupWriter extends FileComponent {
   }
 
   /**
-   * Appends the values for multiple entities.
+   * Appends the values for multiple entities. The null bitmaps are built before encoding so the output buffer is sized
+   * exactly once, values are encoded without allocating per value.
    *
    * @param valueArray A list of object array representing the values.
    * 
@@ -302,142 +565,306 @@ public class RowGroupWriter extends FileComponent {
    * @throws IOException If an io error occurs.
    */
   public List<RgOffsetWriteResult> appendEntityValues(List<Object[]> valueArray) throws IOException {
-    int totalNumRows = valueArray.stream().mapToInt(l -> l.length).sum();
-    int totalRequiredBytes = dataType.determineByteLength(totalNumRows) * 2; // Start off by doubling the bytebuffer alloc.
+    RoaringBitmap[] nullBitmaps = new RoaringBitmap[valueArray.size()];
+    long totalRequiredBytes = 0;
+    for (int i = 0; i < nullBitmaps.length; i++) {
+      Object[] values = valueArray.get(i);
+      totalRequiredBytes += dataType.determineByteLength(values.length);
+      // Null strings are the zero surrogate, they never have a null bitmap.
+      if (dataType != DataType.STRING) {
+        for (int row = 0; row < values.length; row++) {
+          if (values[row] == null) {
+            nullBitmaps[i] = addNull(nullBitmaps[i], row + 1);
+            appendedNulls++;
+          }
+        }
+        totalRequiredBytes += optimizedSize(nullBitmaps[i]);
+      }
+    }
+
     long beforeAppendPosition = position();
-    boolean reallocaed = false;
-    ByteBuffer outBorrow = BYTE_BUFFER_POOL.get();
+    ByteBuffer output = acquireOutput(totalRequiredBytes);
     try {
-      ByteBuffer output = null;
-      if (outBorrow.capacity() < totalRequiredBytes)
-        output = ByteBuffer.allocate(totalRequiredBytes);
-      else {
-        output = outBorrow;
-      }
-      List<RgOffsetWriteResult> positions = new ArrayList<>();
-      RgOffsetWriteResult previous = null;
-      for (Object[] values : valueArray) {
+      List<RgOffsetWriteResult> positions = new ArrayList<>(nullBitmaps.length);
+      for (int i = 0; i < nullBitmaps.length; i++) {
+        Object[] values = valueArray.get(i);
         RgOffsetWriteResult offsetResult = new RgOffsetWriteResult();
-        if (previous != null) {
-          if (previous.valueLength > 0) {
-            long testPosition = beforeAppendPosition + output.position();
-            if (testPosition <= previous.rowGroupOffset) {
-              // If it falls into this error here, then we have an offset error. Print out the information for debugging.
-              LOGGER.error("Preiouvs offset is {}", offsetResult);
-              LOGGER.error("Before possition {}", beforeAppendPosition);
-              LOGGER.error("Output position {}", output.position());
-              LOGGER.error("Reallocated {}", reallocaed);
-              throw new RuntimeException("ERROR!!!!!!");
-            }
-          }
-        }
         offsetResult.rowGroupOffset = beforeAppendPosition + output.position();
-        Object[] valueRequest = values;
-        int strLength = 0;
-        if (dataType == DataType.STRING) {
-          IntArrayList surrogates = new IntArrayList();
-          for (Object v : values) {
-            if (v == null) {
-              surrogates.add(0);
-            } else {
-              String strValue = (String) v;
-              strLength += strValue.getBytes().length; // Special characters mask the String.length method where its not included in size.
-              Integer surrogate = dictionaryWriter.getSurrogate(strValue);
-              surrogates.add(surrogate.intValue());
+        offsetResult.valueLength = dataType.determineByteLength(values.length);
+        offsetResult.decodedLength = offsetResult.valueLength;
+        switch (dataType) {
+          case STRING: {
+            int[] surrogates = surrogateScratch(values.length);
+            dictionaryWriter.getSurrogates(values, 0, values.length, surrogates);
+            int strLength = 0;
+            for (int row = 0; row < values.length; row++) {
+              output.putInt(surrogates[row]);
+              appendedString(surrogates[row], (String) values[row]);
+              if (values[row] != null)
+                strLength += utf8Length((String) values[row]);
             }
+            offsetResult.decodedLength = strLength;
+            break;
           }
-          valueRequest = surrogates.toArray();
-        }
-        HashSet<Integer> nullPositions = new HashSet<>();
-
-        long requiredCapacity2 = output.position() + dataType.determineByteLength(valueRequest.length);
-        if (requiredCapacity2 > output.capacity()) {
-          reallocaed = true;
-          ByteBuffer temp = ByteBuffer.allocate((int) requiredCapacity2 * 2);
-          output.flip();
-          temp.put(output);
-          output.clear();
-          output = temp;
+          case INTEGER:
+            for (Object value : values) {
+              if (value == null) {
+                output.putInt(0);
+              } else {
+                int intValue = (Integer) value;
+                output.putInt(intValue);
+                appendedLong(intValue);
+              }
+            }
+            break;
+          case LONG:
+          case DATETIME:
+            for (Object value : values) {
+              if (value == null) {
+                output.putLong(0L);
+              } else {
+                long longValue = (Long) value;
+                output.putLong(longValue);
+                appendedLong(longValue);
+              }
+            }
+            break;
+          case FLOAT:
+            for (Object value : values) {
+              if (value == null) {
+                output.putFloat(0f);
+              } else {
+                float floatValue = (Float) value;
+                output.putFloat(floatValue);
+                appendedDouble(floatValue);
+              }
+            }
+            break;
+          case DOUBLE:
+            for (Object value : values) {
+              if (value == null) {
+                output.putDouble(0d);
+              } else {
+                double doubleValue = (Double) value;
+                output.putDouble(doubleValue);
+                appendedDouble(doubleValue);
+              }
+            }
+            break;
+          default:
+            // Encode the rest as they always were.
+            dataType.writeValuesToByteBuffer(output, new HashSet<>(), values);
+            for (Object value : values) {
+              if (value != null) {
+                appendedLong(((Number) value).longValue());
+              }
+            }
         }
+        offsetResult.nullLength = serializeNulls(nullBitmaps[i], output);
+        positions.add(offsetResult);
+      }
+      output.flip();
+      int written = write(output); // NOTE: This approach has a max of Integer.MAX bytes due to bytebuffer limitation.
+      return positions;
+    } finally {
+      BYTE_BUFFER_POOL.release(output);
+    }
+  }
 
-        offsetResult.valueLength = dataType.writeValuesToByteBuffer(output, nullPositions, valueRequest);
-        if (dataType == DataType.STRING)
-          offsetResult.decodedLength = strLength;
-        else
-          offsetResult.decodedLength = offsetResult.valueLength;
-
-        RoaringBitmap rb = writeNullPositions(nullPositions, output);
-        if (rb == null)
-          offsetResult.nullLength = 0;
-        else {
-          offsetResult.nullLength = rb.serializedSizeInBytes();
-          long requiredCapacity = output.position() + offsetResult.valueLength + offsetResult.nullLength;
-          if (output.capacity() < requiredCapacity) {
-            reallocaed = true;
-            ByteBuffer temp = ByteBuffer.allocate((int) requiredCapacity * 2);
-            output.flip();
-            temp.put(output);
-            output.clear();
-            output = temp;
-          }
-          try {
-            rb.serialize(output);
-          } catch (BufferOverflowException boe) {
-            LOGGER.error("Detected a buffer overflow, here are the stats..buffer capacity {}, required capacity {}", output.capacity(), requiredCapacity);
-            LOGGER.error("null length {}, valueLength {} buffer current position {}", offsetResult.nullLength, offsetResult.valueLength, output.position());
-            throw boe;
+  /**
+   * Appends the values for multiple entities from a column of a columnar batch, the values are written without boxing.
+   *
+   * @param column The column of the batch.
+   * @param startRows The first row in the batch of each entity.
+   * @param rowCounts The number of rows of each entity.
+   *
+   * @return A list of offset write results, one per entity.
+   *
+   * @throws IOException If an io error occurs.
+   */
+  public List<RgOffsetWriteResult> appendEntityValues(BatchColumn column, int[] startRows, int[] rowCounts) throws IOException {
+    if (dataType == DataType.BOOLEAN)
+      throw new IllegalArgumentException("The data type " + dataType + " is not supported in columnar batches");
+    RoaringBitmap[] nullBitmaps = new RoaringBitmap[startRows.length];
+    long totalRequiredBytes = 0;
+    for (int i = 0; i < startRows.length; i++) {
+      totalRequiredBytes += dataType.determineByteLength(rowCounts[i]);
+      if (dataType != DataType.STRING) {
+        for (int row = 0; row < rowCounts[i]; row++) {
+          if (column.isNull(startRows[i] + row)) {
+            nullBitmaps[i] = addNull(nullBitmaps[i], row + 1);
+            appendedNulls++;
           }
         }
+        totalRequiredBytes += optimizedSize(nullBitmaps[i]);
+      }
+    }
 
-        previous = offsetResult;
+    long beforeAppendPosition = position();
+    ByteBuffer output = acquireOutput(totalRequiredBytes);
+    try {
+      List<RgOffsetWriteResult> positions = new ArrayList<>(startRows.length);
+      for (int i = 0; i < startRows.length; i++) {
+        RgOffsetWriteResult offsetResult = new RgOffsetWriteResult();
+        offsetResult.rowGroupOffset = beforeAppendPosition + output.position();
+        int strLength = putValues(output, column, startRows[i], rowCounts[i]);
+        offsetResult.valueLength = dataType.determineByteLength(rowCounts[i]);
+        offsetResult.decodedLength = dataType == DataType.STRING ? strLength : offsetResult.valueLength;
+        offsetResult.nullLength = serializeNulls(nullBitmaps[i], output);
         positions.add(offsetResult);
       }
       output.flip();
-      int written = write(output); // NOTE: This approach has a max of Integer.MAX bytes due to bytebuffer limitation.
+      write(output);
       return positions;
+    } finally {
+      BYTE_BUFFER_POOL.release(output);
+    }
+  }
+
+  /**
+   * Puts the values of a run of rows, nulls are written as zero. Null strings are written as the zero surrogate.
+   *
+   * @return The encoded length of the strings, zero for other types.
+   */
+  private int putValues(ByteBuffer output, BatchColumn column, int startRow, int numRows) {
+    int endRow = startRow + numRows;
+    int strLength = 0;
+    switch (dataType) {
+      case INTEGER: {
+        int[] values = (int[]) column.getValues();
+        for (int row = startRow; row < endRow; row++) {
+          if (column.isNull(row)) {
+            output.putInt(0);
+          } else {
+            output.putInt(values[row]);
+            appendedLong(values[row]);
+          }
+        }
+        break;
+      }
+      case LONG:
+      case DATETIME: {
+        long[] values = (long[]) column.getValues();
+        for (int row = startRow; row < endRow; row++) {
+          if (column.isNull(row)) {
+            output.putLong(0L);
+          } else {
+            output.putLong(values[row]);
+            appendedLong(values[row]);
+          }
+        }
+        break;
+      }
+      case FLOAT: {
+        float[] values = (float[]) column.getValues();
+        for (int row = startRow; row < endRow; row++) {
+          if (column.isNull(row)) {
+            output.putFloat(0f);
+          } else {
+            output.putFloat(values[row]);
+            appendedDouble(values[row]);
+          }
+        }
+        break;
+      }
+      case DOUBLE: {
+        double[] values = (double[]) column.getValues();
+        for (int row = startRow; row < endRow; row++) {
+          if (column.isNull(row)) {
+            output.putDouble(0d);
+          } else {
+            output.putDouble(values[row]);
+            appendedDouble(values[row]);
+          }
+        }
+        break;
+      }
+      case STRING: {
+        String[] values = (String[]) column.getValues();
+        int[] surrogates = surrogateScratch(numRows);
+        dictionaryWriter.getSurrogates(values, startRow, numRows, surrogates);
+        for (int row = startRow; row < endRow; row++) {
+          if (column.isNull(row)) {
+            output.putInt(0);
+            appendedString(0, null);
+          } else {
+            strLength += utf8Length(values[row]);
+            output.putInt(surrogates[row - startRow]);
+            appendedString(surrogates[row - startRow], values[row]);
+          }
+        }
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("The data type " + dataType + " is not supported in columnar batches");
+    }
+    return strLength;
+  }
+
+  private static RoaringBitmap addNull(RoaringBitmap nulls, int position) {
+    if (nulls == null)
+      nulls = new RoaringBitmap();
+    nulls.add(position);
+    return nulls;
+  }
+
+  private static int optimizedSize(RoaringBitmap nulls) {
+    if (nulls == null)
+      return 0;
+    nulls.runOptimize();
+    return nulls.serializedSizeInBytes();
+  }
+
+  /**
+   * @return The serialized length of the null bitmap, zero if there are no nulls.
+   */
+  private static int serializeNulls(RoaringBitmap nulls, ByteBuffer output) {
+    if (nulls == null)
+      return 0;
+    int nullLength = nulls.serializedSizeInBytes();
+    nulls.serialize(output);
+    return nullLength;
+  }
+
+  private static ByteBuffer acquireOutput(long requiredBytes) {
+    if (requiredBytes > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Unable to append " + requiredBytes + " bytes in one call, the limit is " + Integer.MAX_VALUE);
+    try {
+      return BYTE_BUFFER_POOL.acquire((int) requiredBytes);
     } catch (OutOfMemoryError e) {
-      LOGGER.error("Unable to allocate {} bytes", totalRequiredBytes);
+      LOGGER.error("Unable to allocate {} bytes", requiredBytes);
       throw e;
-    } finally {
-      BYTE_BUFFER_POOL.release(outBorrow);
-    }
-  }
-
-  private RoaringBitmap writeNullPositions(Set<Integer> nullPositions, ByteBuffer buffer) {
-    if (!nullPositions.isEmpty()) {
-      RoaringBitmap bitmap = RoaringBitmap.bitmapOf(nullPositions.stream().mapToInt(i -> i).toArray());
-      bitmap.runOptimize();
-      return bitmap;
-    }
-    return null;
-  }
-
-  private RgOffsetWriteResult fillNullValues(ByteBuffer bytesBuffer, int numNull) {
-    RgOffsetWriteResult offsetResult = new RgOffsetWriteResult();
-    offsetResult.rowGroupOffset = bytesBuffer.position();
-    HashSet<Integer> nullPositions = new HashSet<>();
-    offsetResult.valueLength = dataType.writeValuesToByteBuffer(bytesBuffer, nullPositions, new Object[numNull]);
-    if (dataType == DataType.STRING)
-      offsetResult.decodedLength = 0;
-    else
-      offsetResult.decodedLength = offsetResult.valueLength;
-
-    RoaringBitmap rb = writeNullPositions(nullPositions, bytesBuffer);
-    if (rb == null)
-      offsetResult.nullLength = 0;
-    else {
-      offsetResult.nullLength = rb.serializedSizeInBytes();
-      long requiredCapacity = offsetResult.valueLength + offsetResult.nullLength;
-      if (bytesBuffer.capacity() < requiredCapacity) {
-        ByteBuffer temp = ByteBuffer.allocate((int) requiredCapacity);
-        bytesBuffer.flip();
-        temp.put(bytesBuffer);
-        bytesBuffer.clear();
-        bytesBuffer = temp;
+    }
+  }
+
+  private static int[] surrogateScratch(int length) {
+    int[] scratch = SURROGATE_SCRATCH.get();
+    if (scratch.length < length) {
+      scratch = new int[Math.max(length, scratch.length * 2)];
+      SURROGATE_SCRATCH.set(scratch);
+    }
+    return scratch;
+  }
+
+  /**
+   * @return The number of bytes of the string encoded in UTF-8, without encoding it.
+   */
+  static int utf8Length(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        length += 3;
       }
-      rb.serialize(bytesBuffer);
     }
-    return offsetResult;
+    return length;
   }
 
   /**
@@ -455,16 +882,29 @@ public class RowGroupWriter extends FileComponent {
     return compactAndUpdateMetadata(entitiesToKeep, null);
   }
 
+  /**
+   * Rewrites the row group with only the records to keep, in their order, and updates their offsets. The rewrite streams
+   * through a bounded buffer: without metadata to update the kept ranges are transferred from the old row group, adjoining
+   * ranges in one go, otherwise each record is read to update the stats and staged for writing. Records of null fillers are
+   * written out as null rows.
+   *
+   * @param entitiesToKeep The records to keep, deleted ones are skipped.
+   * @param metadata The metadata to update with a pass over the kept values, {@code null} to leave it as is.
+   *
+   * @return The records with their offsets in the rewritten row group.
+   *
+   * @throws IOException If an io error occurs.
+   */
   public List<EntityRecord> compactAndUpdateMetadata(List<EntityRecord> entitiesToKeep, ColumnMetadata metadata) throws IOException {
     MetadataUpdater metadataUpdater = null;
     if (metadata != null) {
       metadataUpdater = new MetadataUpdater(metadata);
     }
-    int totalRequiredBytes = entitiesToKeep.stream().mapToInt(EntityRecord::totalLength).sum();
-    ByteBuffer output = ByteBuffer.allocate(totalRequiredBytes * 2);
     Path path = TempFileUtil.createTempFile(columnShardId.alternateString() + ROWGROUP_COMPACTION_SUFFIX, ".armor");
     boolean copied = false;
+    ByteBuffer staging = BYTE_BUFFER_POOL.acquire(bufferSize);
     try (FileChannel fileChannel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+      CompactionOutput output = new CompactionOutput(fileChannel, staging);
       for (EntityRecord er : entitiesToKeep) {
         if (er.getDeleted() == 1)
           continue;
@@ -473,36 +913,26 @@ public class RowGroupWriter extends FileComponent {
         if (er.getRowGroupOffset() == Constants.NULL_FILLER_INDICATOR) {
           // The value length should tell us how many null values to put in.
           int numNullValues = dataType.determineNumValues(er.getValueLength());
-          RgOffsetWriteResult result = fillNullValues(output, numNullValues);
-          er.setNullLength((int) result.nullLength);
-          er.setValueLength((int) result.valueLength);
-          er.setDecodedLength((int) result.decodedLength);
+          writeNullFiller(er, numNullValues, output);
+          if (metadataUpdater != null)
+            metadataUpdater.acceptNulls(numNullValues);
+        } else if (metadataUpdater != null) {
+          // The values are read to update the metadata anyways, so they are written from the buffers they were read into.
+          metadataUpdater.updateRow(er);
+          metadataUpdater.writeBuffersToOutput(output);
         } else {
-          // Move the position into place and read contents from file
-          position(er.getRowGroupOffset());
-
-          // metadataUpdater.updateRow / writeBuffersToOutput reads values and nulls separately,
-          // so that the work in runThroughValues can be done here as well.
-          if (metadataUpdater != null) {
-            output.limit(output.position() + er.totalLength());
-            metadataUpdater.updateRow(er);
-            metadataUpdater.writeBuffersToOutput(output, er.totalLength()); // will write values and nulls to output buffer
-          } else {
-            // Restrict the read to expected length
-            output.limit(output.position() + er.totalLength());
-            int read = read(output);
-          }
-          // Expand to full capacity
-          output.limit(output.capacity());
+          output.transfer(er.getRowGroupOffset(), er.totalLength());
         }
         er.setRowGroupOffset((int) position);
       }
-
-      // Now write to the file
-      output.flip();
-      fileChannel.write(output);
+      output.flush();
+      if (metadataUpdater != null)
+        metadataUpdater.finishUpdate();
       copied = true;
     } finally {
+      BYTE_BUFFER_POOL.release(staging);
+      if (metadataUpdater != null)
+        metadataUpdater.cleanup();
       if (!copied)
         Files.deleteIfExists(path);
     }
@@ -518,6 +948,108 @@ public class RowGroupWriter extends FileComponent {
     return entitiesToKeep;
   }
 
+  // Null rows are zero values, flagged in a null bitmap unless they are strings where the zero surrogate is the null.
+  private void writeNullFiller(EntityRecord er, int numNullValues, CompactionOutput output) throws IOException {
+    int valueLength = dataType.determineByteLength(numNullValues);
+    output.writeZeros(valueLength);
+    int nullLength = 0;
+    if (dataType != DataType.STRING && numNullValues > 0) {
+      RoaringBitmap nulls = new RoaringBitmap();
+      nulls.add(1L, numNullValues + 1L);
+      nullLength = optimizedSize(nulls);
+      ByteBuffer nullBuffer = ByteBuffer.allocate(nullLength);
+      nulls.serialize(nullBuffer);
+      nullBuffer.flip();
+      output.write(nullBuffer);
+    }
+    er.setNullLength(nullLength);
+    er.setValueLength(valueLength);
+    er.setDecodedLength(dataType == DataType.STRING ? 0 : valueLength);
+  }
+
+  /**
+   * The output of a compaction. Writes are staged in a bounded buffer, transfers of ranges of the old row group go from one
+   * channel to the other and are merged while the ranges adjoin. Either is flushed before the other so the order is kept.
+   */
+  private class CompactionOutput {
+    private final FileChannel channel;
+    private final ByteBuffer staging;
+    private long position;
+    private long transferFrom;
+    private long transferLength;
+
+    CompactionOutput(FileChannel channel, ByteBuffer staging) {
+      this.channel = channel;
+      this.staging = staging;
+      staging.clear();
+    }
+
+    long position() {
+      return position;
+    }
+
+    void write(ByteBuffer buffer) throws IOException {
+      flushTransfer();
+      int length = buffer.remaining();
+      if (length > staging.remaining()) {
+        flushStaging();
+        if (length > staging.capacity()) {
+          writeFully(buffer);
+          position += length;
+          return;
+        }
+      }
+      staging.put(buffer);
+      position += length;
+    }
+
+    void writeZeros(int length) throws IOException {
+      flushTransfer();
+      position += length;
+      while (length > 0) {
+        if (!staging.hasRemaining())
+          flushStaging();
+        int zeros = Math.min(length, Math.min(staging.remaining(), ZEROS.length));
+        staging.put(ZEROS, 0, zeros);
+        length -= zeros;
+      }
+    }
+
+    void transfer(long from, int length) throws IOException {
+      flushStaging();
+      if (transferLength > 0 && transferFrom + transferLength == from) {
+        transferLength += length;
+      } else {
+        flushTransfer();
+        transferFrom = from;
+        transferLength = length;
+      }
+      position += length;
+    }
+
+    void flush() throws IOException {
+      flushStaging();
+      flushTransfer();
+    }
+
+    private void flushStaging() throws IOException {
+      staging.flip();
+      writeFully(staging);
+      staging.clear();
+    }
+
+    private void flushTransfer() throws IOException {
+      if (transferLength > 0)
+        transferTo(transferFrom, transferLength, channel);
+      transferLength = 0;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining())
+        channel.write(buffer);
+    }
+  }
+
   public static class RgOffsetWriteResult {
     public long rowGroupOffset;
     public long valueLength;
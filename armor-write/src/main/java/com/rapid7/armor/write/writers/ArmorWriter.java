@@ -1,10 +1,13 @@
 package com.rapid7.armor.write.writers;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.nio.channels.ClosedChannelException;
 import java.nio.file.NoSuchFileException;
 import java.time.Instant;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -21,12 +24,17 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.function.BiPredicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
+import com.rapid7.armor.Constants;
 import com.rapid7.armor.entity.Column;
+import com.rapid7.armor.entity.ColumnarBatch;
 import com.rapid7.armor.entity.Entity;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.interval.Interval;
@@ -37,6 +45,7 @@ import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.schema.DataType;
 import com.rapid7.armor.shard.ShardId;
 import com.rapid7.armor.store.WriteStore;
+import com.rapid7.armor.write.DeleteRequest;
 import com.rapid7.armor.write.EntityOffsetException;
 import com.rapid7.armor.write.TableId;
 import com.rapid7.armor.write.WriteRequest;
@@ -55,6 +64,11 @@ public class ArmorWriter implements Closeable {
   private Compression compress = Compression.ZSTD;
   private String name;
   private String transaction;
+  private MemoryAccountant memoryAccountant;
+  private Constants.ColumnFileFormatVersion formatVersion = Constants.DEFAULT_VERSION;
+  // Rough heap cost of a value and of an entity's column while it is on its way to the column writers.
+  private static final int VALUE_BYTES = 24;
+  private static final int ENTITY_COLUMN_BYTES = 128;
  
   public ArmorWriter(String name, WriteStore store, Compression compress, int numThreads) {
     this.store = store;
@@ -106,6 +120,43 @@ public class ArmorWriter implements Closeable {
     return name;
   }
 
+  /**
+   * Bounds the heap held by the writer with a memory accountant that every column writer reports into. A write reserves
+   * an estimate of its own memory before it runs, if it doesn't fit the shard writers without uncommitted changes are
+   * evicted, largest first, and then the write waits for memory or is rejected as the accountant is set up to do. Evicted
+   * shard writers are loaded back from the store when they are written to again. After a commit every shard writer is
+   * evicted that is needed to get back under the budget.
+   *
+   * @param memoryAccountant The accountant, may be shared with other writers, {@code null} for no budget.
+   */
+  public void setMemoryAccountant(MemoryAccountant memoryAccountant) {
+    this.memoryAccountant = memoryAccountant;
+    for (TableWriter tw : tableWriters.values()) {
+      for (IShardWriter sw : tw.getShardWriters())
+        ((ShardWriter) sw).setMemoryAccountant(memoryAccountant);
+    }
+  }
+
+  public MemoryAccountant getMemoryAccountant() {
+    return memoryAccountant;
+  }
+
+  /**
+   * Sets the column file format version shards are committed in. Version 3 files can't be read by readers older than the
+   * version 3 format, so only switch to it once every reader of the store has been upgraded.
+   *
+   * @param formatVersion The version to write, defaults to {@link Constants#DEFAULT_VERSION}.
+   */
+  public void setFormatVersion(Constants.ColumnFileFormatVersion formatVersion) {
+    if (formatVersion == Constants.ColumnFileFormatVersion.VERSION_1)
+      throw new IllegalArgumentException("Column file format version " + formatVersion + " is no longer supported for writing");
+    this.formatVersion = formatVersion;
+    for (TableWriter tw : tableWriters.values()) {
+      for (IShardWriter sw : tw.getShardWriters())
+        ((ShardWriter) sw).setFormatVersion(formatVersion);
+    }
+  }
+
   public String begin() {
     transaction = UUID.randomUUID().toString();
     for (TableWriter tw : tableWriters.values()) {
@@ -185,9 +236,13 @@ public class ArmorWriter implements Closeable {
     TableWriter tableWriter = tableWriters.get(tableId);
     if (tableWriter != null) {
       // This occurs if a write happened first then delete.
-      IShardWriter sw = tableWriter.getShard(shardId);
+      IShardWriter sw = tableWriter.pinShard(shardId);
       if (sw != null) {
-        sw.delete(delete.getEntityId(), delete.getVersion(), delete.getInstanceId());
+        try {
+          sw.delete(delete.getEntityId(), delete.getVersion(), delete.getInstanceId());
+        } finally {
+          tableWriter.unpinShard(shardId);
+        }
         return;
       } else {
         // NOTE: Let it fall through, since its a new shard we haven't loaded yet.
@@ -202,24 +257,97 @@ public class ArmorWriter implements Closeable {
     if (tableWriter == null) {
       tableWriter = getTableWriter(tableId);
     }
-    ColumnId entityIdColumn = store.getEntityIdColumn(tenant, table);
+    checkDeleteEntityIdColumn(tableId, delete.entityColumnId());
+
+    if (tableWriter.getShard(shardId) == null) {
+      // Only load the shard if it may hold the entity, its metadata is far cheaper to read than its columns.
+      ShardMetadata shardMetadata = store.getShardMetadata(shardId);
+      if (shardMetadata == null || !shardMetadata.mayContainEntity(delete.getEntityId()))
+        return;
+    }
+    IShardWriter shardWriter = loadShardWriter(tableWriter, shardId);
+    try {
+      shardWriter.delete(delete.getEntityId(), delete.getVersion(), delete.getInstanceId());
+    } finally {
+      tableWriter.unpinShard(shardId);
+    }
+  }
+  
+  private void checkDeleteEntityIdColumn(TableId tableId, ColumnId deleteEntityIdColumn) {
+    ColumnId entityIdColumn = store.getEntityIdColumn(tableId.getTenant(), tableId.getTableName());
     if (entityIdColumn != null) {
-        if (!entityIdColumn.equals(delete.entityColumnId()))
-            throw new RuntimeException("The entity id column " + entityIdColumn + " is not equal to " + delete.entityColumnId());
+        if (!entityIdColumn.equals(deleteEntityIdColumn))
+            throw new RuntimeException("The entity id column " + entityIdColumn + " is not equal to " + deleteEntityIdColumn);
         tableEntityColumnIds.put(tableId, entityIdColumn);
     } else {
-        tableEntityColumnIds.put(tableId, delete.entityColumnId());        
+        tableEntityColumnIds.put(tableId, deleteEntityIdColumn);
     }
+  }
 
-    IShardWriter sw = tableWriter.getShard(shardId);
-    if (sw == null) {
-      IShardWriter sw1 = new ShardWriter(shardId, store, compress, compactionTrigger, captureWrites);
-      sw1.begin(transaction);
-      sw = tableWriter.addShard(sw1);
+  /**
+   * Deletes a batch of entities. The deletes are grouped by shard and each shard applies its deletes in one pass over each
+   * column's entity index, shards are run in parallel like writes. A shard that isn't loaded yet is only loaded if its entity
+   * filter says it may hold one of its deletes.
+   *
+   * @param tenant The tenant.
+   * @param table The table in question.
+   * @param interval A span of time in minutes by which to group data
+   * @param timestamp The point in time in which to bucket the data as per the interval
+   * @param deletes The entities to delete, only the entity id, version and instance id are used.
+   */
+  public void delete(String tenant, String table, Interval interval, Instant timestamp, List<Entity> deletes) {
+    if (transaction == null)
+      throw new XactError("No transaction was given, forget to call begin?");
+    if (deletes == null || deletes.isEmpty())
+      return;
+    TableId tableId = new TableId(tenant, table);
+    TableWriter existingTableWriter = tableWriters.get(tableId);
+    Map<ShardId, List<DeleteRequest>> shardToDeletes = new HashMap<>();
+    for (Entity delete : deletes) {
+      ShardId shardId = store.findShardId(tenant, table, interval, timestamp, delete.getEntityId());
+      List<DeleteRequest> shardDeletes = shardToDeletes.computeIfAbsent(shardId, k -> new ArrayList<>());
+      shardDeletes.add(new DeleteRequest(delete.getEntityId(), delete.getVersion(), delete.getInstanceId()));
+    }
+
+    // Validated once for the whole batch, whether or not its shards are loaded already.
+    Set<ColumnId> entityIdColumns = deletes.stream().map(Entity::entityColumnId).collect(Collectors.toSet());
+    if (entityIdColumns.size() > 1)
+      throw new RuntimeException("The deletes have more than one entity id column " + entityIdColumns);
+    if (existingTableWriter != null || store.tableExists(tenant, table))
+      checkDeleteEntityIdColumn(tableId, entityIdColumns.iterator().next());
+
+    // Shards that aren't loaded yet need the table to exist, otherwise there is nothing to delete from them.
+    boolean allLoaded = existingTableWriter != null && shardToDeletes.keySet().stream().allMatch(s -> existingTableWriter.getShard(s) != null);
+    final TableWriter tableWriter;
+    if (allLoaded) {
+      tableWriter = existingTableWriter;
+    } else {
+      if (!store.tableExists(tenant, table)) {
+        if (existingTableWriter == null)
+          return;
+        shardToDeletes.keySet().removeIf(s -> existingTableWriter.getShard(s) == null);
+      }
+      tableWriter = getTableWriter(tableId);
     }
-    sw.delete(delete.getEntityId(), delete.getVersion(), delete.getInstanceId());
+
+    runShardTasks(tenant, shardToDeletes, (shardId, shardDeletes) -> {
+      if (tableWriter.getShard(shardId) == null) {
+        ShardMetadata shardMetadata = store.getShardMetadata(shardId);
+        if (shardMetadata == null)
+          return;
+        shardDeletes = shardDeletes.stream().filter(d -> shardMetadata.mayContainEntity(d.getEntityId())).collect(Collectors.toList());
+        if (shardDeletes.isEmpty())
+          return;
+      }
+      IShardWriter shardWriter = loadShardWriter(tableWriter, shardId);
+      try {
+        shardWriter.delete(shardDeletes);
+      } finally {
+        tableWriter.unpinShard(shardId);
+      }
+    });
   }
-  
+
   public synchronized TableWriter getTableWriter(TableId tableId) {
     TableWriter existing = tableWriters.get(tableId);
     if (existing == null) {
@@ -326,14 +454,193 @@ public class ArmorWriter implements Closeable {
     } else {
       tableWriter = tableWriters.get(tableId);
     }
+    long estimate = 0;
     for (Entity entity : entities) {
       ShardId shardId = store.findShardId(tenant, table, interval, timestamp, entity.getEntityId());
       List<Entity> entityUpdates = shardToUpdates.computeIfAbsent(shardId, k -> new ArrayList<>());
       entityUpdates.add(entity);
+      int numColumns = entity.getColumnIds() == null ? 0 : entity.getColumnIds().size();
+      estimate += (long) numColumns * (ENTITY_COLUMN_BYTES + (long) entity.numRows() * VALUE_BYTES);
+    }
+    long reserved = reserveMemory(estimate);
+    try {
+      writeEntities(tenant, tableWriter, shardToUpdates);
+    } finally {
+      releaseMemory(reserved);
     }
-    int numShards = shardToUpdates.size();
+  }
+
+  private void writeEntities(String tenant, TableWriter tableWriter, Map<ShardId, List<Entity>> shardToUpdates) {
+    runShardTasks(tenant, shardToUpdates, (shardId, entityUpdates) -> {
+      IShardWriter shardWriter = loadShardWriter(tableWriter, shardId);
+      try {
+        writeShard(shardWriter, entityUpdates);
+      } finally {
+        tableWriter.unpinShard(shardId);
+      }
+    });
+  }
+
+  private static void writeShard(IShardWriter shardWriter, List<Entity> entityUpdates) throws IOException {
+    Map<ColumnId, List<WriteRequest>> columnIdEntityColumns = new HashMap<>();
+    for (Entity eu : entityUpdates) {
+      Object entityId = eu.getEntityId();
+      long version = eu.getVersion();
+      String instanceId = eu.getInstanceId();
+      for (Column ec : eu.columns()) {
+        WriteRequest internalRequest = new WriteRequest(entityId, version, instanceId, ec);
+        List<WriteRequest> payloads = columnIdEntityColumns.computeIfAbsent(
+            ec.getColumnId(),
+            k -> new ArrayList<>()
+        );
+        payloads.add(internalRequest);
+      }
+    }
+    for (Map.Entry<ColumnId, List<WriteRequest>> e : columnIdEntityColumns.entrySet()) {
+      ColumnId columnId = e.getKey();
+      List<WriteRequest> columns = e.getValue();
+      shardWriter.write(columnId, columns);
+    }
+  }
+
+  /**
+   * Writes a columnar batch of entities, the primitive values of the batch are written to the column files without
+   * building an {@link Entity} per entity. Entities are grouped by shard and shards are written in parallel.
+   *
+   * @param tenant The tenant.
+   * @param table The table in question.
+   * @param interval A span of time in minutes by which to group data
+   * @param timestamp The point in time in which to bucket the data as per the interval
+   * @param batch The batch of entities to write.
+   */
+  public void write(String tenant, String table, Interval interval, Instant timestamp, ColumnarBatch batch) {
+    if (transaction == null)
+      throw new XactError("No transaction was given, forget to call begin?");
+    if (batch == null || batch.getNumEntities() == 0)
+      return;
+
+    TableId tableId = new TableId(tenant, table);
+    final TableWriter tableWriter;
+    if (!tableWriters.containsKey(tableId)) {
+      ColumnId entityIdColumn = store.tableExists(tenant, table) ? store.getEntityIdColumn(tenant, table) : null;
+      if (entityIdColumn == null) {
+        tableEntityColumnIds.put(tableId, batch.entityColumnId());
+      } else {
+        if (!entityIdColumn.getName().equals(batch.getEntityIdColumn()))
+          throw new RuntimeException("Inconsistent entity id column names expected " + entityIdColumn +
+              " but the batch has a different name " + batch.getEntityIdColumn() + " for table " + tableId);
+        tableEntityColumnIds.put(tableId, entityIdColumn);
+      }
+      tableWriter = getTableWriter(tableId);
+    } else {
+      tableWriter = tableWriters.get(tableId);
+    }
+
+    Map<ShardId, IntArrayList> shardToEntities = new HashMap<>();
+    for (int entity = 0; entity < batch.getNumEntities(); entity++) {
+      ShardId shardId = store.findShardId(tenant, table, interval, timestamp, batch.getEntityId(entity));
+      shardToEntities.computeIfAbsent(shardId, k -> new IntArrayList()).add(entity);
+    }
+    // The batch itself is already on the heap, what the write adds is the grouping and encoding of each entity's column.
+    int numColumns = batch.getColumns().size();
+    long estimate = (long) numColumns * ((long) batch.getNumEntities() * ENTITY_COLUMN_BYTES + (long) batch.getNumRows() * Long.BYTES);
+    long reserved = reserveMemory(estimate);
+    try {
+      runShardTasks(tenant, shardToEntities, (shardId, entities) -> {
+        IShardWriter shardWriter = loadShardWriter(tableWriter, shardId);
+        try {
+          shardWriter.write(batch, entities.toIntArray());
+        } finally {
+          tableWriter.unpinShard(shardId);
+        }
+      });
+    } finally {
+      releaseMemory(reserved);
+    }
+  }
+
+  /**
+   * Reserves the estimated memory of a write, evicting idle shard writers first if it doesn't fit.
+   *
+   * @return The bytes reserved, to be released once the write is done.
+   */
+  private long reserveMemory(long bytes) {
+    if (memoryAccountant == null)
+      return 0;
+    if (!memoryAccountant.fits(bytes))
+      evictIdleShardWriters(bytes);
+    memoryAccountant.reserve(bytes);
+    return bytes;
+  }
+
+  private void releaseMemory(long bytes) {
+    if (memoryAccountant != null && bytes > 0)
+      memoryAccountant.release(bytes);
+  }
+
+  /**
+   * Closes the shard writers that no task is using and that have no uncommitted changes, largest first, until the given
+   * bytes fit in the budget. Their state is all in the store so nothing is lost, they are loaded back from it on the next
+   * write. Shard writers are pinned while a task uses them, so one handed to a concurrent write is never closed under it.
+   *
+   * @return The number of shard writers evicted.
+   */
+  private int evictIdleShardWriters(long bytes) {
+    List<Map.Entry<TableWriter, IShardWriter>> idle = new ArrayList<>();
+    for (TableWriter tw : tableWriters.values()) {
+      for (IShardWriter sw : new ArrayList<>(tw.getShardWriters())) {
+        if (!sw.hasUncommittedChanges())
+          idle.add(new AbstractMap.SimpleEntry<>(tw, sw));
+      }
+    }
+    idle.sort(Comparator.comparingLong((Map.Entry<TableWriter, IShardWriter> e) -> e.getValue().getMemoryUsage()).reversed());
+    int evicted = 0;
+    for (Map.Entry<TableWriter, IShardWriter> e : idle) {
+      if (memoryAccountant.fits(bytes))
+        break;
+      IShardWriter sw = e.getKey().removeIdleShard(e.getValue().getShardId());
+      if (sw == null)
+        continue;
+      try {
+        sw.close();
+      } catch (Exception ex) {
+        LOGGER.warn("Unable to close the evicted shard {}", sw.getShardId(), ex);
+      }
+      evicted++;
+    }
+    if (evicted > 0)
+      LOGGER.info("Evicted {} idle shard writers of {} to get under the memory budget: {}", evicted, name, memoryAccountant);
+    return evicted;
+  }
+
+  /**
+   * Gets or loads a shard writer, pinned so it isn't evicted while it is used. The caller must unpin it when it is done.
+   */
+  private IShardWriter loadShardWriter(TableWriter tableWriter, ShardId shardId) {
+    IShardWriter shardWriter = tableWriter.pinShard(shardId);
+    if (shardWriter == null) {
+      ShardWriter sw1 = new ShardWriter(shardId, store, compress, compactionTrigger, captureWrites);
+      if (memoryAccountant != null)
+        sw1.setMemoryAccountant(memoryAccountant);
+      sw1.setFormatVersion(formatVersion);
+      sw1.begin(transaction);
+      shardWriter = tableWriter.addAndPinShard(sw1);
+    }
+    return shardWriter;
+  }
+
+  @FunctionalInterface
+  private interface ShardTask<T> {
+    void run(ShardId shardId, T work) throws Exception;
+  }
+
+  /**
+   * Runs a task per shard on the pool and waits for all of them to finish.
+   */
+  private <T> void runShardTasks(String tenant, Map<ShardId, T> shardWork, ShardTask<T> task) {
+    int numShards = shardWork.size();
     ExecutorCompletionService<Void> ecs = new ExecutorCompletionService<>(threadPool);
-    for (Map.Entry<ShardId, List<Entity>> entry : shardToUpdates.entrySet()) {
+    for (Map.Entry<ShardId, T> entry : shardWork.entrySet()) {
       ecs.submit(
           () -> {
             String originalThreadName = Thread.currentThread().getName();
@@ -342,34 +649,8 @@ public class ArmorWriter implements Closeable {
               MDC.put("tenant_id", tenant);
               MDC.put("armor_shard", Integer.toString(shardId.getShardNum()));
               MDC.put("xact", transaction);
-              IShardWriter shardWriter = tableWriter.getShard(shardId);
               Thread.currentThread().setName(originalThreadName + "(" + shardId.toString() + ")");
-              if (shardWriter == null) {
-                IShardWriter sw1 = new ShardWriter(shardId, store, compress, compactionTrigger, captureWrites);
-                sw1.begin(transaction);
-                shardWriter = tableWriter.addShard(sw1);
-              }
-
-              List<Entity> entityUpdates = entry.getValue();
-              Map<ColumnId, List<WriteRequest>> columnIdEntityColumns = new HashMap<>();
-              for (Entity eu : entityUpdates) {
-                Object entityId = eu.getEntityId();
-                long version = eu.getVersion();
-                String instanceId = eu.getInstanceId();
-                for (Column ec : eu.columns()) {
-                  WriteRequest internalRequest = new WriteRequest(entityId, version, instanceId, ec);
-                  List<WriteRequest> payloads = columnIdEntityColumns.computeIfAbsent(
-                      ec.getColumnId(),
-                      k -> new ArrayList<>()
-                  );
-                  payloads.add(internalRequest);
-                }
-              }
-              for (Map.Entry<ColumnId, List<WriteRequest>> e : columnIdEntityColumns.entrySet()) {
-                ColumnId columnId = e.getKey();
-                List<WriteRequest> columns = e.getValue();
-                shardWriter.write(columnId, columns);
-              }
+              task.run(shardId, entry.getValue());
               return null;
             } finally {
               MDC.remove("tenant_id");
@@ -397,6 +678,8 @@ public class ArmorWriter implements Closeable {
       for (Map.Entry<TableId, TableWriter> e : tableWriters.entrySet()) {
         persistTable(e.getKey(), e.getValue());
       }
+      if (memoryAccountant != null && !memoryAccountant.fits(0))
+        evictIdleShardWriters(0);
     } finally {
       transaction = null;
     } 
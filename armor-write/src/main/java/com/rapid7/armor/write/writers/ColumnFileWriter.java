@@ -3,6 +3,12 @@ package com.rapid7.armor.write.writers;
 import com.rapid7.armor.Constants;
 import com.rapid7.armor.columnfile.ColumnFileSection;
 import com.rapid7.armor.columnfile.ColumnFileReader;
+import com.rapid7.armor.columnfile.RowGroupChunk;
+import com.rapid7.armor.columnfile.RowGroupChunkIndex;
+import com.rapid7.armor.columnfile.ZoneMap;
+import com.rapid7.armor.columnfile.ZoneMapIndex;
+import com.rapid7.armor.entity.ColumnarBatch;
+import com.rapid7.armor.entity.ColumnarBatch.BatchColumn;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.entity.EntityRecordSummary;
 import com.rapid7.armor.io.AutoDeleteFileInputStream;
@@ -12,6 +18,10 @@ import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.schema.DataType;
 import com.rapid7.armor.shard.ColumnShardId;
+import com.rapid7.armor.sketch.BloomFilter;
+import com.rapid7.armor.sketch.HyperLogLog;
+import com.rapid7.armor.sketch.QuantileSketch;
+import com.rapid7.armor.write.DeleteRequest;
 import com.rapid7.armor.write.StreamProduct;
 import com.rapid7.armor.write.WriteRequest;
 import com.rapid7.armor.write.component.Component;
@@ -23,22 +33,27 @@ import com.rapid7.armor.write.component.RowGroupWriter.RgOffsetWriteResult;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.luben.zstd.RecyclingBufferPool;
 import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdInputStream;
 import com.github.luben.zstd.ZstdOutputStream;
 
 import static com.rapid7.armor.Constants.DEFAULT_VERSION;
 import static com.rapid7.armor.Constants.MAGIC_HEADER;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -54,34 +69,155 @@ import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+import org.roaringbitmap.RoaringBitmap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class ColumnFileWriter implements AutoCloseable {
   private static final Logger LOGGER = LoggerFactory.getLogger(ColumnFileWriter.class);
   private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+  public static final int DEFAULT_ZONE_MAP_ROWS = 8192;
   private EntityIndexWriter entityIndexWriter;
   private RowGroupWriter rowGroupWriter;
   private ColumnMetadata metadata;
   private DictionaryWriter valueDictionary;
   private DictionaryWriter entityDictionary;
   private final ColumnShardId columnShardId;
+  private static final int LOAD_BUFFER_SIZE = 64 * 1024;
   private final String ROWGROUP_STORE_SUFFIX = "_rowgroup-";
   private final String ENTITYINDEX_STORE_SUFFIX = "_entityindex-";
   private boolean skipMetaData = false;
-  private boolean alwaysCompact = true;
+  private boolean alwaysCompact = false;
+  private int rowGroupChunkBytes = 0;
+  private int zoneMapRows = DEFAULT_ZONE_MAP_ROWS;
+  private double bloomFilterFpp = 0;
+  private boolean warnedVersion3Only = false;
+  private Constants.ColumnFileFormatVersion formatVersion = DEFAULT_VERSION;
+  private MemoryAccountant memoryAccountant;
+  private long reportedMemory; // What was last reported to the memory accountant
+  // Rough heap cost of the metadata besides its sketches.
+  private static final int METADATA_BYTES = 1024;
 
   public void setSkipMetaData(boolean skipMetaData) {
     this.skipMetaData = skipMetaData;
   }
+
+  /**
+   * Sets the format version {@link #buildInputStream(Compression)} writes. Version 3 files can't be read by readers older
+   * than the version 3 format, so only write them once every reader of the store has been upgraded.
+   *
+   * @param formatVersion The version to write, defaults to {@link Constants#DEFAULT_VERSION}.
+   */
+  public void setFormatVersion(Constants.ColumnFileFormatVersion formatVersion) {
+    if (formatVersion == Constants.ColumnFileFormatVersion.VERSION_1)
+      throw new IllegalArgumentException("Column file format version " + formatVersion + " is no longer supported for writing");
+    this.formatVersion = formatVersion;
+  }
+
+  public Constants.ColumnFileFormatVersion getFormatVersion() {
+    return formatVersion;
+  }
+
+  /**
+   * Compacts the column on every build instead of only when the shard writer finds it fragmented. Version 3 files are
+   * written dense either way, compacting only recomputes the min, max and cardinality exactly. Version 2 files otherwise
+   * keep the values of overwritten and deleted entities in their row group until the fragmentation trigger compacts it.
+   *
+   * @param alwaysCompact Set to {@code true} to compact on every build.
+   */
   public void setAlwaysCompact(boolean alwaysCompact) { this.alwaysCompact = alwaysCompact; }
 
+  /**
+   * Compresses the row group of version 3 zstd files in independent chunks of about the given uncompressed bytes, a chunk
+   * index is written so readers can fetch and decompress only the chunks holding the rows they need. Chunks never split an
+   * entity, so an entity larger than the chunk size gets a chunk of its own. Needs {@link #setFormatVersion} set to version
+   * 3, version 2 files are written with the row group whole and a warning is logged.
+   *
+   * @param rowGroupChunkBytes The uncompressed bytes to aim for in a chunk, zero to compress the row group as a whole.
+   */
+  public void setRowGroupChunkBytes(int rowGroupChunkBytes) {
+    if (rowGroupChunkBytes < 0)
+      throw new IllegalArgumentException("The row group chunk bytes can't be negative");
+    this.rowGroupChunkBytes = rowGroupChunkBytes;
+  }
+
+  /**
+   * Sets the rows to aim for in a zone of the version 3 zone maps, which record the min, max and null count of ranges of
+   * whole entities so readers can skip the ranges a predicate can't match. If the row group is written in chunks the zones
+   * are the chunks instead. Only version 3 files hold zone maps, see {@link #setFormatVersion}, version 2 files are written
+   * without them.
+   *
+   * @param zoneMapRows The rows to aim for in a zone, zero to not write zone maps.
+   */
+  public void setZoneMapRows(int zoneMapRows) {
+    if (zoneMapRows < 0)
+      throw new IllegalArgumentException("The zone map rows can't be negative");
+    this.zoneMapRows = zoneMapRows;
+  }
+
+  /**
+   * Writes a bloom filter of the column's distinct values into version 3 files, built while the values are compacted.
+   * Readers use it to rule out equality and in predicates on high cardinality columns that min and max can't. Needs
+   * {@link #setFormatVersion} set to version 3, version 2 files are written without the filter and a warning is logged.
+   *
+   * @param bloomFilterFpp The false positive rate of the filter, zero to not write one.
+   */
+  public void setBloomFilterFpp(double bloomFilterFpp) {
+    rowGroupWriter.setBloomFilterFpp(bloomFilterFpp);
+    this.bloomFilterFpp = bloomFilterFpp;
+  }
+
+  /**
+   * Reports the estimated heap of the writer to an accountant after every write, delete and compaction, and gives it all
+   * back on close.
+   *
+   * @param memoryAccountant The accountant, {@code null} to stop reporting.
+   */
+  public synchronized void setMemoryAccountant(MemoryAccountant memoryAccountant) {
+    if (this.memoryAccountant != null)
+      this.memoryAccountant.adjust(-reportedMemory);
+    reportedMemory = 0;
+    this.memoryAccountant = memoryAccountant;
+    reportMemory();
+  }
+
+  /**
+   * @return A rough estimate of the heap held by the writer: the entity records, the dictionaries and the statistics. The
+   * values and the entity index are kept in temp files so they aren't counted.
+   */
+  public synchronized long estimateMemory() {
+    long bytes = METADATA_BYTES + entityIndexWriter.estimateMemory() + rowGroupWriter.estimateMemory() + entityDictionary.estimateMemory();
+    if (valueDictionary != null)
+      bytes += valueDictionary.estimateMemory();
+    if (metadata.getDistinctSketch() != null)
+      bytes += metadata.getDistinctSketch().length;
+    if (metadata.getQuantileSketch() != null)
+      bytes += metadata.getQuantileSketch().length;
+    return bytes;
+  }
+
+  /**
+   * @return What was last reported to the memory accountant, zero without one.
+   */
+  public synchronized long getReportedMemory() {
+    return reportedMemory;
+  }
+
+  private synchronized void reportMemory() {
+    if (memoryAccountant == null)
+      return;
+    long estimate = estimateMemory();
+    memoryAccountant.adjust(estimate - reportedMemory);
+    reportedMemory = estimate;
+  }
+
   public ColumnFileWriter(ColumnShardId columnShardId) throws IOException {
     metadata = new ColumnMetadata();
     DataType dataType = columnShardId.getColumnId().dataType();
     this.columnShardId = columnShardId;
     metadata.setColumnType(columnShardId.getColumnId().dataType());
     metadata.setColumnName(columnShardId.getColumnId().getName());
+    emptySketches(metadata, dataType);
     if (dataType == DataType.STRING)
       valueDictionary = new DictionaryWriter(false);
 
@@ -109,6 +245,7 @@ public class ColumnFileWriter implements AutoCloseable {
         metadata.setColumnType(dt);
         metadata.setColumnName(columnShardId.getColumnId().getName());
         metadata.setLastUpdate(new Date().toString());
+        emptySketches(metadata, dt);
         if (dt == DataType.STRING)
           valueDictionary = new DictionaryWriter(false);
         entityDictionary = new DictionaryWriter(true);
@@ -120,6 +257,13 @@ public class ColumnFileWriter implements AutoCloseable {
     }
   }
   
+  // A new column starts with empty sketches so the appended values can be added to them without a pass over the values.
+  private static void emptySketches(ColumnMetadata metadata, DataType dataType) {
+    metadata.setDistinctSketch(new HyperLogLog().getRegisters());
+    if (dataType.isNumeric())
+      metadata.setQuantileSketch(new QuantileSketch().toBytes());
+  }
+
   public List<EntityRecord> allEntityRecords() {
     try {
       return entityIndexWriter.allRecords();
@@ -146,6 +290,12 @@ public class ColumnFileWriter implements AutoCloseable {
 
   @Override
   public void close() {
+    synchronized (this) {
+      if (memoryAccountant != null)
+        memoryAccountant.adjust(-reportedMemory);
+      reportedMemory = 0;
+      memoryAccountant = null;
+    }
     try {
       rowGroupWriter.close();
     } catch (IOException ioe) {
@@ -170,103 +320,183 @@ public class ColumnFileWriter implements AutoCloseable {
     return columnShardId.getColumnId();
   }
   
-  private int loadEntityDictionary(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
-    // Load entity dictionary
-    int read = 0;
+  /**
+   * Reads a whole section into an array of exactly its uncompressed length, a compressed section is decompressed with a
+   * single call using the lengths from the section header.
+   */
+  private static byte[] readSection(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
     if (compressed > 0) {
-      byte[] compressedDict = new byte[compressed];
-      read = IOTools.readFully(inputStream, compressedDict, 0, compressed);
-      byte[] decompressed = Zstd.decompress(compressedDict, uncompressed);
-      entityDictionary = new DictionaryWriter(decompressed, true);
-    } else if (uncompressed > 0) {
-      byte[] uncompressedDict = new byte[uncompressed];
-      read = IOTools.readFully(inputStream, uncompressedDict, 0, uncompressed);
-      entityDictionary = new DictionaryWriter(uncompressedDict, true);
+      byte[] compressedBytes = new byte[compressed];
+      IOTools.readFully(inputStream, compressedBytes, 0, compressed);
+      byte[] decompressed = new byte[uncompressed];
+      long size = Zstd.decompressByteArray(decompressed, 0, uncompressed, compressedBytes, 0, compressed);
+      if (Zstd.isError(size))
+        throw new RuntimeException("Unable to decompress section: " + Zstd.getErrorName(size));
+      if (size != uncompressed)
+        throw new IllegalStateException("Decompressed " + size + " bytes but the section header expects " + uncompressed);
+      return decompressed;
     }
-    return read;
+    byte[] uncompressedBytes = new byte[uncompressed];
+    IOTools.readFully(inputStream, uncompressedBytes, 0, uncompressed);
+    return uncompressedBytes;
+  }
+
+  private int loadEntityDictionary(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
+    // Load entity dictionary
+    if (compressed <= 0 && uncompressed <= 0)
+      return 0;
+    entityDictionary = new DictionaryWriter(readSection(inputStream, compressed, uncompressed), true);
+    return compressed > 0 ? compressed : uncompressed;
   }
   
   private int loadValueDictionary(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
     // Load str value dictionary
-    int read = 0;
-    if (compressed > 0) {
-      byte[] compressedDict = new byte[compressed];
-      read = IOTools.readFully(inputStream, compressedDict, 0, compressed);
-      byte[] decompressed = Zstd.decompress(compressedDict, uncompressed);
-      valueDictionary = new DictionaryWriter(decompressed, false);
-    } else if (uncompressed > 0) {
-      byte[] uncompressedDict = new byte[uncompressed];
-      read = IOTools.readFully(inputStream, uncompressedDict, 0, uncompressed);
-      valueDictionary = new DictionaryWriter(uncompressedDict, false);
-    }
-    return read;
+    if (compressed <= 0 && uncompressed <= 0)
+      return 0;
+    valueDictionary = new DictionaryWriter(readSection(inputStream, compressed, uncompressed), false);
+    return compressed > 0 ? compressed : uncompressed;
   }
   
-  private int loadEntityIndex(DataInputStream inputStream, int compressed, int uncompressed, List<Path> temps) throws IOException {
-    Path entityIndexTemp = TempFileUtil.createTempFile(columnShardId.alternateString() + ENTITYINDEX_STORE_SUFFIX, ".armor");
-    temps.add(entityIndexTemp);
-    int read = 0;
-    if (compressed > 0) {
-      byte[] compressedIndex = new byte[compressed];
-      read = IOTools.readFully(inputStream, compressedIndex, 0, compressed);
-      byte[] decompressed = Zstd.decompress(compressedIndex, uncompressed);
-      try (ByteArrayInputStream bais = new ByteArrayInputStream(decompressed)) {
-        Files.copy(bais, entityIndexTemp, StandardCopyOption.REPLACE_EXISTING);
-      }
-      entityIndexWriter = new EntityIndexWriter(entityIndexTemp, columnShardId);
-    } else {
-      byte[] uncompressedIndex = new byte[uncompressed];
-      read = IOTools.readFully(inputStream, uncompressedIndex, 0, uncompressed);
-      try (ByteArrayInputStream bais = new ByteArrayInputStream(uncompressedIndex)) {
-        Files.copy(bais, entityIndexTemp, StandardCopyOption.REPLACE_EXISTING);
-      }
-      entityIndexWriter = new EntityIndexWriter(entityIndexTemp, columnShardId);
+  /**
+   * Opens a section for streaming its uncompressed bytes, a compressed section is decompressed as it is read. Closing the
+   * stream skips what is left of the section, the stream it was read from is left open.
+   */
+  private static InputStream openSection(DataInputStream inputStream, int compressed, int uncompressed) throws IOException {
+    if (compressed > 0)
+      return new ZstdInputStream(new SectionInputStream(inputStream, compressed), RecyclingBufferPool.INSTANCE);
+    return new SectionInputStream(inputStream, uncompressed);
+  }
+
+  /**
+   * Copies the next bytes of a section to a channel through a bounded buffer.
+   */
+  private static void copySection(InputStream section, long length, FileChannel target, byte[] buffer) throws IOException {
+    long copied = 0;
+    while (copied < length) {
+      int read = section.read(buffer, 0, (int) Math.min(buffer.length, length - copied));
+      if (read < 0)
+        throw new EOFException("The section ended after " + copied + " of " + length + " bytes");
+      ByteBuffer bytes = ByteBuffer.wrap(buffer, 0, read);
+      while (bytes.hasRemaining())
+        target.write(bytes);
+      copied += read;
     }
-    return read;
+  }
+
+  /**
+   * Streams a whole section into a new temp file, checking it is exactly the uncompressed length from its header.
+   */
+  private Path loadSectionToFile(DataInputStream inputStream, int compressed, int uncompressed, String suffix, List<Path> temps, byte[] buffer)
+      throws IOException {
+    Path temp = TempFileUtil.createTempFile(columnShardId.alternateString() + suffix, ".armor");
+    temps.add(temp);
+    try (InputStream section = openSection(inputStream, compressed, uncompressed);
+         FileChannel target = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+      copySection(section, uncompressed, target, buffer);
+      if (section.read() >= 0)
+        throw new IllegalStateException("The section of " + columnShardId.alternateString() + " is longer than the " + uncompressed + " bytes in its header");
+    }
+    return temp;
+  }
+
+  private void loadEntityIndex(Path entityIndexTemp) throws IOException {
+    entityIndexWriter = new EntityIndexWriter(entityIndexTemp, columnShardId);
   }
   
-  private int loadRowGroup(DataInputStream inputStream, int compressed, int uncompressed, List<Path> temps) throws IOException {
+  private void loadRowGroup(Path rgGroupTemp) throws IOException {
+    rowGroupWriter = new RowGroupWriter(rgGroupTemp, columnShardId, valueDictionary);
+    rowGroupWriter.position(rowGroupWriter.getCurrentSize());
+  }
+
+  /**
+   * The writer appends and updates entities in place, so a version 3 row group is interleaved back into values followed
+   * by nulls per entity and the entity index offsets are pointed at the interleaved row group. The dense values are in the
+   * order of the entity index, so they are streamed from the section with the nulls of each entity transferred in between.
+   */
+  private void loadDenseRowGroup(
+      byte[] entityIndex, Path nullBitmaps, DataInputStream inputStream, int compressed, int uncompressed, List<Path> temps, byte[] buffer)
+      throws IOException {
     Path rgGroupTemp = TempFileUtil.createTempFile(columnShardId.alternateString() + ROWGROUP_STORE_SUFFIX, ".armor");
     temps.add(rgGroupTemp);
-    int read = 0;
-    if (compressed > 0) {
-      byte[] compressedRg = new byte[compressed];
-      read = IOTools.readFully(inputStream, compressedRg, 0, compressed);
-      byte[] decompressed = Zstd.decompress(compressedRg, uncompressed);
-      try (ByteArrayInputStream bais = new ByteArrayInputStream(decompressed)) {
-        Files.copy(bais, rgGroupTemp, StandardCopyOption.REPLACE_EXISTING);
-      }
-      decompressed = null;
-      rowGroupWriter = new RowGroupWriter(rgGroupTemp, columnShardId, valueDictionary);
-      rowGroupWriter.position(rowGroupWriter.getCurrentSize());
-    } else {
-      byte[] uncompressedRg = new byte[uncompressed];
-      read = IOTools.readFully(inputStream, uncompressedRg, 0, uncompressed);
-      try (ByteArrayInputStream bais = new ByteArrayInputStream(uncompressedRg)) {
-        Files.copy(bais, rgGroupTemp, StandardCopyOption.REPLACE_EXISTING);
+    ByteBuffer records = ByteBuffer.wrap(entityIndex);
+    try (InputStream rowGroup = openSection(inputStream, compressed, uncompressed);
+         FileChannel nulls = nullBitmaps == null ? null : FileChannel.open(nullBitmaps, StandardOpenOption.READ);
+         FileChannel target = FileChannel.open(rgGroupTemp, StandardOpenOption.WRITE)) {
+      long valuesRead = 0;
+      long nullsRead = 0;
+      long interleaved = 0;
+      for (int record = 0; record + Constants.RECORD_SIZE_BYTES <= entityIndex.length; record += Constants.RECORD_SIZE_BYTES) {
+        int valueOffset = records.getInt(record + Constants.BEGIN_OFFSET_OFFSET);
+        int valueLength = records.getInt(record + Constants.BEGIN_VALUE_LENGTH_OFFSET);
+        int nullLength = records.getInt(record + Constants.BEGIN_NULL_BYTE_LENGTH_OFFSET);
+        if (valueLength > 0) {
+          if (valueOffset < valuesRead)
+            throw new IllegalStateException("The entity index of " + columnShardId.alternateString() + " is not in row group order, the values at " +
+                valueOffset + " come after the ones up to " + valuesRead);
+          IOTools.skipFully(rowGroup, valueOffset - valuesRead);
+          copySection(rowGroup, valueLength, target, buffer);
+          valuesRead = valueOffset + valueLength;
+        }
+        if (nullLength > 0) {
+          if (nulls == null)
+            throw new IllegalStateException("The entity index of " + columnShardId.alternateString() + " has null bitmaps but the column file has none");
+          for (long transferred = 0; transferred < nullLength; ) {
+            long n = nulls.transferTo(nullsRead + transferred, nullLength - transferred, target);
+            if (n <= 0)
+              throw new EOFException("The null bitmaps of " + columnShardId.alternateString() + " ended before " + (nullsRead + nullLength) + " bytes");
+            transferred += n;
+          }
+          nullsRead += nullLength;
+        }
+        records.putInt(record + Constants.BEGIN_OFFSET_OFFSET, (int) interleaved);
+        interleaved += valueLength + nullLength;
       }
-      rowGroupWriter = new RowGroupWriter(rgGroupTemp, columnShardId, valueDictionary);
-      rowGroupWriter.position(rowGroupWriter.getCurrentSize());
     }
-    return read;
+    Path entityIndexTemp = TempFileUtil.createTempFile(columnShardId.alternateString() + ENTITYINDEX_STORE_SUFFIX, ".armor");
+    temps.add(entityIndexTemp);
+    Files.write(entityIndexTemp, entityIndex);
+    loadEntityIndex(entityIndexTemp);
+    loadRowGroup(rgGroupTemp);
   }
 
-  // Read from the input streams to setup the writer.
+  // Read from the input streams to setup the writer. Only the dictionaries and the entity index of a version 3 file are
+  // read into memory, the other sections are streamed into the files of the writer through a bounded buffer.
   private void load(DataInputStream inputStream) throws IOException {
     ColumnFileReader cfr = new ColumnFileReader();
     List<Path> tempPaths = new ArrayList<>();
+    byte[] buffer = new byte[LOAD_BUFFER_SIZE];
+    byte[][] denseEntityIndex = new byte[1][]; // The entity index of a version 3 file until its row group is read
+    Path[] denseNullBitmaps = new Path[1];
     boolean success = false;
     try {
       cfr.read(inputStream, (section, metadata, is, compressed, uncompressed) -> {
         try {
+          boolean dense = cfr.getFormatVersion() == Constants.ColumnFileFormatVersion.VERSION_3;
           if (section == ColumnFileSection.ENTITY_DICTIONARY) {
             return loadEntityDictionary(is, compressed, uncompressed);
           } else if (section == ColumnFileSection.VALUE_DICTIONARY) {
             return loadValueDictionary(is, compressed, uncompressed);
           } else if (section == ColumnFileSection.ENTITY_INDEX) {
-            return loadEntityIndex(is, compressed, uncompressed, tempPaths);
+            if (dense)
+              denseEntityIndex[0] = readSection(is, compressed, uncompressed);
+            else
+              loadEntityIndex(loadSectionToFile(is, compressed, uncompressed, ENTITYINDEX_STORE_SUFFIX, tempPaths, buffer));
+            return compressed > 0 ? compressed : uncompressed;
+          } else if (section == ColumnFileSection.NULL_BITMAP) {
+            if (uncompressed > 0)
+              denseNullBitmaps[0] = loadSectionToFile(is, compressed, uncompressed, ROWGROUP_STORE_SUFFIX + "nulls-", tempPaths, buffer);
+            return compressed > 0 ? compressed : uncompressed;
           } else if (section == ColumnFileSection.ROWGROUP) {
-            return loadRowGroup(inputStream, compressed, uncompressed, tempPaths);
+            if (dense) {
+              loadDenseRowGroup(denseEntityIndex[0], denseNullBitmaps[0], is, compressed, uncompressed, tempPaths, buffer);
+              if (denseNullBitmaps[0] != null) {
+                tempPaths.remove(denseNullBitmaps[0]);
+                Files.deleteIfExists(denseNullBitmaps[0]);
+              }
+            } else {
+              loadRowGroup(loadSectionToFile(is, compressed, uncompressed, ROWGROUP_STORE_SUFFIX, tempPaths, buffer));
+            }
+            return compressed > 0 ? compressed : uncompressed;
           } else
             return 0;
         } catch (IOException ioe) {
@@ -325,7 +555,7 @@ public class ColumnFileWriter implements AutoCloseable {
   }
 
   public StreamProduct buildInputStream(Compression compress) throws IOException {
-    return buildInputStream(compress, DEFAULT_VERSION);
+    return buildInputStream(compress, formatVersion);
   }
 
   public StreamProduct buildInputStream(Compression compress, Constants.ColumnFileFormatVersion version) throws IOException {
@@ -334,6 +564,8 @@ public class ColumnFileWriter implements AutoCloseable {
         throw new IllegalArgumentException("Column file format version " + version + " is no longer supported for writing");
       case VERSION_2:
         return buildInputStreamV2(compress);
+      case VERSION_3:
+        return buildInputStreamV3(compress);
       default:
         throw new IllegalArgumentException("Unknown column file format version " + version);
     }
@@ -387,6 +619,51 @@ public class ColumnFileWriter implements AutoCloseable {
     }
   }
 
+  /**
+   * The bytes of a section, reads stop at its end. Closing skips the rest of the section and leaves the underlying stream
+   * open for the next section.
+   */
+  private static class SectionInputStream extends InputStream {
+    private final InputStream inputStream;
+    private long remaining;
+
+    SectionInputStream(InputStream inputStream, long length) {
+      this.inputStream = inputStream;
+      this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0)
+        return -1;
+      int b = inputStream.read();
+      if (b >= 0)
+        remaining--;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (remaining <= 0)
+        return -1;
+      int read = inputStream.read(b, off, (int) Math.min(len, remaining));
+      if (read > 0)
+        remaining -= read;
+      return read;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(inputStream.available(), remaining);
+    }
+
+    @Override
+    public void close() throws IOException {
+      IOTools.skipFully(inputStream, remaining);
+      remaining = 0;
+    }
+  }
+
   static class InputStreamSubSection implements SubSection {
     private final int length;
     private final InputStream inputStream;
@@ -493,14 +770,34 @@ public class ColumnFileWriter implements AutoCloseable {
   }
 
   public StreamProduct buildInputStreamV2(Compression compress) throws IOException {
+    return buildInputStream(compress, Constants.ColumnFileFormatVersion.VERSION_2, false);
+  }
+
+  /**
+   * Builds a version 3 column file, which keeps the values of all entities in one contiguous row group so readers can
+   * use it as is. The null bitmaps go to their own section and the entity index points into the dense row group.
+   *
+   * @param compress The compression to use on the sections.
+   *
+   * @return The column file.
+   *
+   * @throws IOException If an io error occurs.
+   */
+  public StreamProduct buildInputStreamV3(Compression compress) throws IOException {
+    return buildInputStream(compress, Constants.ColumnFileFormatVersion.VERSION_3, true);
+  }
+
+  private StreamProduct buildInputStream(Compression compress, Constants.ColumnFileFormatVersion version, boolean dense) throws IOException {
     int totalBytes = 0;
 
     SectionMapper sections = new SectionMapper();
 
-    Section headerPortion = getHeaderSection(Constants.ColumnFileFormatVersion.VERSION_2);
+    Section headerPortion = getHeaderSection(version);
     sections.add(headerPortion);
 
-    Section metadataSection = writeMetadata(compress);
+    if (!dense)
+      warnVersion3Only(version);
+    Section metadataSection = writeMetadata(compress, dense);
     sections.add(metadataSection);
 
     // Send entity dictionary
@@ -510,8 +807,12 @@ public class ColumnFileWriter implements AutoCloseable {
     try {
       sections.add(computeEntityDictionarySection(compress, tempPaths));
       sections.add(computeValueDictionarySection(compress, tempPaths));
-      sections.add(computeEntityIndexSection(compress, tempPaths));
-      sections.add(computeRowGroupSection(compress, tempPaths));
+      if (dense) {
+        computeDenseSections(compress, tempPaths).forEach(sections::add);
+      } else {
+        sections.add(computeEntityIndexSection(compress, tempPaths));
+        sections.add(computeRowGroupSection(compress, tempPaths));
+      }
 
       ArrayList<InputStream> sequenceInputStreams = new ArrayList<>();
 
@@ -534,12 +835,252 @@ public class ColumnFileWriter implements AutoCloseable {
     }
   }
 
+  /**
+   * Bloom filters and row group chunks are only written to version 3 files, older readers expect the version 2 sections in
+   * a fixed order. Warns once per writer instead of on every commit.
+   */
+  private void warnVersion3Only(Constants.ColumnFileFormatVersion version) {
+    if (warnedVersion3Only || (bloomFilterFpp <= 0 && rowGroupChunkBytes <= 0))
+      return;
+    warnedVersion3Only = true;
+    LOGGER.warn("The bloom filter and row group chunks of {} are only written to version 3 files, writing {} without them",
+        columnShardId.alternateString(), version);
+  }
+
   private Section computeRowGroupSection(Compression compress, List<Path> tempPaths)
      throws IOException {
     return computeSectionCompressible(compress, tempPaths, "rowgroup-temp_",
        ColumnFileSection.ROWGROUP, rowGroupWriter, null, columnShardId.alternateString());
   }
 
+  /**
+   * Splits the row group into the entity index, null bitmap and row group sections of a version 3 file. Entities are written
+   * in row group order skipping deleted and empty ones, the same order compaction leaves them in, so the row group doesn't
+   * need compacting first. The values are transferred file to file into the dense row group.
+   */
+  private List<Section> computeDenseSections(Compression compress, List<Path> tempPaths) throws IOException {
+    validateEntityIndex();
+    byte[] entityIndex = Files.readAllBytes(entityIndexWriter.getPath());
+    ByteBuffer records = ByteBuffer.wrap(entityIndex);
+    List<EntityRecord> entityRecords = activeEntityRecords();
+    ByteArrayOutputStream activeRecords = new ByteArrayOutputStream(entityRecords.size() * Constants.RECORD_SIZE_BYTES);
+    ByteArrayOutputStream nullBitmaps = new ByteArrayOutputStream();
+    Path valuesTemp = TempFileUtil.createTempFile(columnShardId.alternateString() + ROWGROUP_STORE_SUFFIX + "dense-", ".armor");
+    tempPaths.add(valuesTemp);
+    long valuesLength = 0;
+    List<Integer> valueLengths = new ArrayList<>();
+    List<Integer> nullLengths = new ArrayList<>();
+    try (FileChannel rowGroup = FileChannel.open(rowGroupWriter.getPath(), StandardOpenOption.READ);
+         FileChannel values = FileChannel.open(valuesTemp, StandardOpenOption.WRITE)) {
+      ByteBuffer nullBuffer = ByteBuffer.allocate(0);
+      for (EntityRecord entityRecord : entityRecords) {
+        int record = entityIndexWriter.getIndexOffset(entityRecord.getEntityId());
+        int rowGroupOffset = records.getInt(record + Constants.BEGIN_OFFSET_OFFSET);
+        int valueLength = records.getInt(record + Constants.BEGIN_VALUE_LENGTH_OFFSET);
+        int nullLength = records.getInt(record + Constants.BEGIN_NULL_BYTE_LENGTH_OFFSET);
+        records.putInt(record + Constants.BEGIN_OFFSET_OFFSET, (int) valuesLength);
+        activeRecords.write(entityIndex, record, Constants.RECORD_SIZE_BYTES);
+        for (long copied = 0; copied < valueLength; ) {
+          long n = rowGroup.transferTo(rowGroupOffset + copied, valueLength - copied, values);
+          if (n <= 0)
+            throw new IOException("Unexpected end of the row group for " + columnShardId.alternateString());
+          copied += n;
+        }
+        valuesLength += valueLength;
+        valueLengths.add(valueLength);
+        nullLengths.add(nullLength);
+        if (nullLength > 0) {
+          if (nullBuffer.capacity() < nullLength)
+            nullBuffer = ByteBuffer.allocate(nullLength);
+          nullBuffer.clear().limit(nullLength);
+          while (nullBuffer.hasRemaining()) {
+            if (rowGroup.read(nullBuffer, rowGroupOffset + valueLength + nullBuffer.position()) < 0)
+              throw new IOException("Unexpected end of the row group for " + columnShardId.alternateString());
+          }
+          nullBitmaps.write(nullBuffer.array(), 0, nullLength);
+        }
+      }
+    }
+    List<Section> sections = new ArrayList<>();
+    sections.add(computeSectionCompressible(compress, tempPaths, "entity-temp_", ColumnFileSection.ENTITY_INDEX,
+        bytesComponent(activeRecords.toByteArray()), null, columnShardId.alternateString()));
+    byte[] nullBitmapBytes = nullBitmaps.toByteArray();
+    sections.add(computeSectionCompressible(compress, tempPaths, "null-bitmap-temp_", ColumnFileSection.NULL_BITMAP,
+        bytesComponent(nullBitmapBytes), null, columnShardId.alternateString()));
+    BloomFilter bloomFilter = rowGroupWriter.getBloomFilter();
+    if (bloomFilterFpp > 0 && bloomFilter != null) {
+      byte[] bloomFilterBytes = bloomFilter.toBytes();
+      sections.add(new Section(ColumnFileSection.BLOOM_FILTER,
+          new ByteArraySubSection(writeLength(0, bloomFilterBytes.length)),
+          new ByteArraySubSection(bloomFilterBytes)));
+    }
+    boolean chunked = compress == Compression.ZSTD && rowGroupChunkBytes > 0;
+    int byteLength = columnShardId.getColumnId().dataType().getByteLength();
+    if (chunked || zoneMapRows > 0) {
+      int[] zones = entityBoundaries(valueLengths, chunked ? rowGroupChunkBytes : (long) zoneMapRows * byteLength);
+      sections.add(computeZoneMapSection(valuesTemp, valueLengths, nullLengths, nullBitmapBytes, zones));
+    }
+    if (chunked) {
+      sections.addAll(computeChunkedRowGroupSections(valuesTemp, valuesLength, valueLengths, tempPaths));
+    } else {
+      sections.add(computeSectionCompressible(compress, tempPaths, "rowgroup-temp_", ColumnFileSection.ROWGROUP,
+          tempFileComponent(valuesTemp, valuesLength), null, columnShardId.alternateString()));
+    }
+    return sections;
+  }
+
+  /**
+   * Splits entities into ranges of about the target bytes of values without splitting any entity.
+   *
+   * @return The entity each range starts at followed by the number of entities.
+   */
+  private static int[] entityBoundaries(List<Integer> valueLengths, long targetBytes) {
+    List<Integer> boundaries = new ArrayList<>();
+    int entity = 0;
+    boundaries.add(entity);
+    while (entity < valueLengths.size()) {
+      long length = 0;
+      while (entity < valueLengths.size() && (length == 0 || length + valueLengths.get(entity) <= targetBytes))
+        length += valueLengths.get(entity++);
+      boundaries.add(entity);
+    }
+    return boundaries.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Computes the min, max and null count of each range of entities from the dense row group and its null bitmaps. String
+   * values are dictionary surrogates so only their nulls are counted.
+   */
+  private Section computeZoneMapSection(Path valuesTemp, List<Integer> valueLengths, List<Integer> nullLengths, byte[] nullBitmaps, int[] zones)
+      throws IOException {
+    DataType dataType = columnShardId.getColumnId().dataType();
+    List<ZoneMap> zoneMaps = new ArrayList<>(zones.length - 1);
+    try (DataInputStream values = new DataInputStream(new BufferedInputStream(Files.newInputStream(valuesTemp)))) {
+      ByteBuffer entityValues = ByteBuffer.allocate(0);
+      int entity = 0;
+      int nullBitmapOffset = 0;
+      int startRow = 0;
+      for (int zone = 0; zone + 1 < zones.length; zone++) {
+        double[] minMax = {Double.NaN, Double.NaN};
+        int[] nullCount = {0};
+        int rows = 0;
+        for (; entity < zones[zone + 1]; entity++) {
+          int valueLength = valueLengths.get(entity);
+          int nullLength = nullLengths.get(entity);
+          if (entityValues.capacity() < valueLength)
+            entityValues = ByteBuffer.allocate(valueLength);
+          entityValues.clear();
+          values.readFully(entityValues.array(), 0, valueLength);
+          entityValues.position(valueLength);
+          RoaringBitmap entityNulls = null;
+          if (nullLength > 0 && dataType != DataType.STRING) {
+            entityNulls = new RoaringBitmap();
+            entityNulls.deserialize(ByteBuffer.wrap(nullBitmaps, nullBitmapOffset, nullLength).slice());
+            nullCount[0] += entityNulls.getCardinality();
+          }
+          nullBitmapOffset += nullLength;
+          rows += dataType.determineNumValues(valueLength);
+          dataType.traverseByteBuffer(entityValues, entityNulls, valueLength, (row, value) -> {
+            if (dataType == DataType.STRING) {
+              // Strings use the zero surrogate for null.
+              if (value.intValue() == 0)
+                nullCount[0]++;
+              return;
+            }
+            double v = value.doubleValue();
+            if (Double.isNaN(minMax[0]) || v < minMax[0])
+              minMax[0] = v;
+            if (Double.isNaN(minMax[1]) || v > minMax[1])
+              minMax[1] = v;
+          });
+        }
+        zoneMaps.add(new ZoneMap(zones[zone], zones[zone + 1], startRow, startRow + rows, nullCount[0], minMax[0], minMax[1]));
+        startRow += rows;
+      }
+    }
+    byte[] zoneMapBytes = new ZoneMapIndex(zoneMaps).toBytes();
+    return new Section(ColumnFileSection.ZONE_MAP,
+        new ByteArraySubSection(writeLength(0, zoneMapBytes.length)),
+        new ByteArraySubSection(zoneMapBytes));
+  }
+
+  /**
+   * Compresses the dense row group in chunks of whole entities, each chunk is a complete zstd frame so the concatenated
+   * chunks still decompress as one row group. Returns the uncompressed chunk index section followed by the row group.
+   */
+  private List<Section> computeChunkedRowGroupSections(Path valuesTemp, long valuesLength, List<Integer> valueLengths, List<Path> tempPaths)
+      throws IOException {
+    int byteLength = columnShardId.getColumnId().dataType().getByteLength();
+    int[] boundaries = entityBoundaries(valueLengths, rowGroupChunkBytes);
+    Path chunksTemp = TempFileUtil.createTempFile("rowgroup-chunks-temp_" + columnShardId.alternateString() + "-", ".armor");
+    tempPaths.add(chunksTemp);
+    List<RowGroupChunk> chunks = new ArrayList<>();
+    int compressedOffset = 0;
+    try (FileChannel values = FileChannel.open(valuesTemp, StandardOpenOption.READ);
+         FileChannel compressed = FileChannel.open(chunksTemp, StandardOpenOption.WRITE)) {
+      int startRow = 0;
+      int uncompressedOffset = 0;
+      for (int c = 0; c + 1 < boundaries.length; c++) {
+        int startEntity = boundaries[c];
+        int endEntity = boundaries[c + 1];
+        int chunkLength = 0;
+        for (int entity = startEntity; entity < endEntity; entity++)
+          chunkLength += valueLengths.get(entity);
+        ByteBuffer chunk = ByteBuffer.allocate(chunkLength);
+        while (chunk.hasRemaining()) {
+          if (values.read(chunk, uncompressedOffset + chunk.position()) < 0)
+            throw new IOException("Unexpected end of the dense row group for " + columnShardId.alternateString());
+        }
+        byte[] compressedChunk = Zstd.compress(chunk.array());
+        compressed.write(ByteBuffer.wrap(compressedChunk));
+        int endRow = startRow + chunkLength / byteLength;
+        chunks.add(new RowGroupChunk(
+            compressedOffset, compressedChunk.length, uncompressedOffset, chunkLength, startEntity, endEntity, startRow, endRow));
+        compressedOffset += compressedChunk.length;
+        uncompressedOffset += chunkLength;
+        startRow = endRow;
+      }
+    }
+    Files.deleteIfExists(valuesTemp);
+    byte[] chunkIndex = new RowGroupChunkIndex(chunks).toBytes();
+    return Arrays.asList(
+        new Section(ColumnFileSection.CHUNK_INDEX,
+            new ByteArraySubSection(writeLength(0, chunkIndex.length)),
+            new ByteArraySubSection(chunkIndex)),
+        new Section(ColumnFileSection.ROWGROUP,
+            new ByteArraySubSection(writeLength(compressedOffset, (int) valuesLength)),
+            new InputStreamSubSection(new AutoDeleteFileInputStream(chunksTemp), compressedOffset)));
+  }
+
+  private static Component bytesComponent(byte[] bytes) {
+    return new Component() {
+      @Override
+      public InputStream getInputStream() {
+        return new ByteArrayInputStream(bytes);
+      }
+
+      @Override
+      public long getCurrentSize() {
+        return bytes.length;
+      }
+    };
+  }
+
+  // The temp file is deleted once its stream has been read.
+  private static Component tempFileComponent(Path path, long size) {
+    return new Component() {
+      @Override
+      public InputStream getInputStream() throws IOException {
+        return new AutoDeleteFileInputStream(path);
+      }
+
+      @Override
+      public long getCurrentSize() {
+        return size;
+      }
+    };
+  }
+
   private Section compressToTempFile(ColumnFileSection sectionType, List<Path> tempPaths, String tempFileName, Component component, String tempName)
      throws IOException {
     Path tempPath = TempFileUtil.createTempFile(tempFileName + tempName + "-", ".armor");
@@ -555,6 +1096,12 @@ public class ColumnFileWriter implements AutoCloseable {
   }
 
   private Section computeEntityIndexSection(Compression compress, List<Path> tempPaths) throws IOException {
+    validateEntityIndex();
+    return computeSectionCompressible(compress, tempPaths, "entity-temp_",
+       ColumnFileSection.ENTITY_INDEX, entityIndexWriter, null, columnShardId.alternateString());
+  }
+
+  private void validateEntityIndex() throws IOException {
     int uncompressed = (int)entityIndexWriter.getCurrentSize();
     if (uncompressed % Constants.RECORD_SIZE_BYTES != 0) {
       int bytesOff = uncompressed % Constants.RECORD_SIZE_BYTES;
@@ -567,8 +1114,6 @@ public class ColumnFileWriter implements AutoCloseable {
          columnShardId.toSimpleString());
       throw new EntityIndexVariableWidthException(Constants.RECORD_SIZE_BYTES, uncompressed, bytesOff, entityIndexWriter.getPreLoadOffset(), columnShardId.toSimpleString());
     }
-    return computeSectionCompressible(compress, tempPaths, "entity-temp_",
-       ColumnFileSection.ENTITY_INDEX, entityIndexWriter, null, columnShardId.alternateString());
   }
 
   private <T extends Component> Section computeSectionCompressible(
@@ -611,7 +1156,7 @@ public class ColumnFileWriter implements AutoCloseable {
     return headerPortion.build();
   }
 
-  private Section writeMetadata(Compression compress)
+  private Section writeMetadata(Compression compress, boolean dense)
      throws IOException {
     SectionBuilder metadataPortion = new SectionBuilder(ColumnFileSection.METADATA);
     // Prepare metadata for writing
@@ -621,7 +1166,16 @@ public class ColumnFileWriter implements AutoCloseable {
     else
       metadata.setCompressionAlgorithm(Compression.NONE.name());
 
-    compactAndUpdateRecords(metadata, true);
+    // Files are written without compacting first, compaction is left to the shard writer's fragmentation trigger. A version 2
+    // row group is written as is with the values of overwritten and deleted entities left in between, readers skip them by
+    // the entity index. A bloom filter that was never built or filled up, or sketches missing from files written before
+    // them, need a pass over the values though. Only version 3 files hold a bloom filter. Entities without rows are left out
+    // of the entity index by compaction, a version 2 index still holding them would disagree with the number of entities.
+    boolean compact = alwaysCompact || (dense && bloomFilterFpp > 0 && rowGroupWriter.getBloomFilter() == null)
+        || (!dense && hasEntitiesWithoutRows()) || (!skipMetaData && metadata.getDistinctSketch() == null);
+    compactAndUpdateRecords(metadata, compact);
+    if (dense)
+      metadata.setFragmentationLevel(0); // Deleted and overwritten values are never written to dense files
     // Store metadata
     String metadataStr = OBJECT_MAPPER.writeValueAsString(metadata);
     byte[] metadataPayload = metadataStr.getBytes();
@@ -630,25 +1184,46 @@ public class ColumnFileWriter implements AutoCloseable {
     return metadataPortion.buildWithLength();
   }
 
-  private void compactAndUpdateRecords(ColumnMetadata m, boolean alwaysCompact) throws IOException {
-    List<EntityRecordSummary> entityRecordSummaries = getEntityRecordSummaries();
-
-    if (alwaysCompact) {
-      compact(entityRecordSummaries, true);
+  private void compactAndUpdateRecords(ColumnMetadata m, boolean compact) throws IOException {
+    if (compact) {
+      compact(getEntityRecordSummaries(), true);
     } else {
-      // can we do this work while we are compacting?
-      List<EntityRecord> records = entityIndexWriter.getEntityRecords(entityDictionary);
-      entityIndexWriter.runThroughRecords(m, records);
-      // Run through the values to update metadata
+      // Only the records are walked, the stats, sketches and bloom filter were kept up to date as values were appended.
+      // Strings use the size of the value dictionary for the cardinality, the others the estimate of their sketch.
+      updateRecordStats();
       if (!skipMetaData) {
-        rowGroupWriter.runThoughValues(m, records);
+        rowGroupWriter.applyAppendedStats(m);
       } else {
         m.setMaxValue(null);
         m.setMinValue(null);
       }
+      if (valueDictionary != null)
+        m.setCardinality(valueDictionary.cardinality());
     }
   }
 
+  /**
+   * Brings the number of rows, number of entities and fragmentation level of the metadata up to date with the writes and
+   * deletes so far, only the entity records are walked.
+   */
+  public void updateRecordStats() {
+    entityIndexWriter.runThroughRecords(metadata, activeEntityRecords());
+  }
+
+  private boolean hasEntitiesWithoutRows() {
+    return entityIndexWriter.getEntities().values().stream().anyMatch(e -> e.getDeleted() == 0 && e.getValueLength() == 0);
+  }
+
+  /**
+   * @return The records of the entities with rows ordered by their offset in the row group, which is the order compaction
+   * writes them in.
+   */
+  private List<EntityRecord> activeEntityRecords() {
+    return entityIndexWriter.getEntityRecords(entityDictionary).stream()
+        .filter(e -> e.getValueLength() > 0)
+        .collect(Collectors.toList());
+  }
+
   private static byte[] writeLength(int compressed, int uncompressed) throws IOException {
     byte[] lengths = new byte[8];
     System.arraycopy(IOTools.toByteArray(compressed), 0, lengths, 0, 4);
@@ -676,12 +1251,53 @@ public class ColumnFileWriter implements AutoCloseable {
       entityId = ((Integer) entity);
     } else
       throw new EntityIdTypeException("The entity type of " + entity.getClass().toString() + " is not supported for identity on entites");
-    return delete(entityId, version, instanceId);
+    boolean deleted = delete(entityId, version, instanceId);
+    reportMemory();
+    return deleted;
+  }
+
+  /**
+   * Deletes a batch of entities in one pass over the entity index, entities the column doesn't hold are ignored.
+   *
+   * @return The number of entities deleted.
+   */
+  public synchronized int delete(List<DeleteRequest> deletes) {
+    boolean hasStringIds = !entityDictionary.isEmpty();
+    Map<Integer, DeleteRequest> surrogateDeletes = new HashMap<>();
+    for (DeleteRequest delete : deletes) {
+      Object entity = delete.getEntityId();
+      Integer entityId;
+      if (entity instanceof String) {
+        entityId = entityDictionary.getStrToInt().get(entity);
+      } else if (entity instanceof Long || entity instanceof Integer) {
+        if (hasStringIds)
+          throw new EntityIdTypeException("Exepected a string type for the entity id but got a numeric type");
+        entityId = ((Number) entity).intValue();
+      } else
+        throw new EntityIdTypeException("The entity type of " + entity.getClass().toString() + " is not supported for identity on entites");
+      if (entityId == null)
+        continue;
+      DeleteRequest previous = surrogateDeletes.get(entityId);
+      if (previous == null || delete.getVersion() >= previous.getVersion())
+        surrogateDeletes.put(entityId, delete);
+    }
+    try {
+      int deleted = entityIndexWriter.delete(surrogateDeletes);
+      if (deleted > 0)
+        metadata.setStatsExact(false);
+      reportMemory();
+      return deleted;
+    } catch (IOException ioe) {
+      throw new RuntimeException(ioe);
+    }
   }
 
   private synchronized boolean delete(int entity, long version, String instanceId) {
     try {
-      return entityIndexWriter.delete(entity, version, instanceId) != null;
+      if (entityIndexWriter.delete(entity, version, instanceId) == null)
+        return false;
+      metadata.setStatsExact(false);
+      return true;
     } catch (IOException ioe) {
       throw new RuntimeException(ioe);
     }
@@ -714,8 +1330,10 @@ public class ColumnFileWriter implements AutoCloseable {
       WriteRequest maxVersionWriteRequest = groupByMax.get(wr.getEntityId());
       if (maxVersionWriteRequest == null) {
         EntityRecord er = entityIndexWriter.getEntityRecord(getEntityId(wr.getEntityId()));
-        if (er == null || er.getVersion() <= wr.getVersion())
+        if (er == null || er.getVersion() <= wr.getVersion()) {
           groupByMax.put(wr.getEntityId(), wr);
+          overwriting(er);
+        }
       } else {
         if (maxVersionWriteRequest.getVersion() <= wr.getVersion())
           groupByMax.put(wr.getEntityId(), wr);
@@ -742,6 +1360,64 @@ public class ColumnFileWriter implements AutoCloseable {
           writeRequest.getInstanceId() == null ? null : writeRequest.getInstanceId().getBytes());
       entityIndexWriter.putEntity(er);
     }
+    reportMemory();
+  }
+
+  /**
+   * Writes a column of a columnar batch, see {@link #write(List)}.
+   *
+   * @param batch The batch.
+   * @param column The column of the batch to write.
+   * @param entities The positions in the batch of the entities to write.
+   */
+  public synchronized void write(ColumnarBatch batch, BatchColumn column, int[] entities) throws IOException {
+    // Same as the other write, only the latest version of an entity is written and write order is maintained.
+    LinkedHashMap<Object, Integer> groupByMax = new LinkedHashMap<>();
+    for (int entity : entities) {
+      Object entityId = batch.getEntityId(entity);
+      Integer maxVersionEntity = groupByMax.get(entityId);
+      if (maxVersionEntity == null) {
+        EntityRecord er = entityIndexWriter.getEntityRecord(getEntityId(entityId));
+        if (er == null || er.getVersion() <= batch.getVersion(entity)) {
+          groupByMax.put(entityId, entity);
+          overwriting(er);
+        }
+      } else {
+        if (batch.getVersion(maxVersionEntity) <= batch.getVersion(entity))
+          groupByMax.put(entityId, entity);
+      }
+    }
+
+    int[] toWrite = groupByMax.values().stream().mapToInt(Integer::intValue).toArray();
+    int[] startRows = new int[toWrite.length];
+    int[] rowCounts = new int[toWrite.length];
+    for (int i = 0; i < toWrite.length; i++) {
+      startRows[i] = batch.getStartRow(toWrite[i]);
+      rowCounts[i] = batch.getRowCount(toWrite[i]);
+    }
+    List<RgOffsetWriteResult> positions = rowGroupWriter.appendEntityValues(column, startRows, rowCounts);
+    for (int i = 0; i < toWrite.length; i++) {
+      int entity = toWrite[i];
+      RgOffsetWriteResult offsetResults = positions.get(i);
+      String instanceId = batch.getInstanceId(entity);
+      EntityRecord er = new EntityRecord(
+          getEntityId(batch.getEntityId(entity)),
+          (int) offsetResults.rowGroupOffset,
+          (int) offsetResults.valueLength,
+          batch.getVersion(entity),
+          (byte) 0,
+          (int) offsetResults.nullLength,
+          (int) offsetResults.decodedLength,
+          instanceId == null ? null : instanceId.getBytes());
+      entityIndexWriter.putEntity(er);
+    }
+    reportMemory();
+  }
+
+  // The values of an overwritten entity stay in the min and max until the next compaction.
+  private void overwriting(EntityRecord er) {
+    if (er != null && er.getDeleted() == 0 && er.getValueLength() > 0)
+      metadata.setStatsExact(false);
   }
 
   private void writeForMagicHeader(OutputStream outputStream) throws IOException {
@@ -805,5 +1481,6 @@ public class ColumnFileWriter implements AutoCloseable {
 
     metadata.setLastCompactionDuration(Duration.between(mark, Instant.now()).toString());
     metadata.setLastCompaction(new Date().toString());
+    reportMemory();
   }
 }
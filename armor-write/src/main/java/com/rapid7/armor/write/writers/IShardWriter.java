@@ -4,11 +4,13 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 
+import com.rapid7.armor.entity.ColumnarBatch;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.meta.ColumnMetadata;
 import com.rapid7.armor.meta.ShardMetadata;
 import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.write.DeleteRequest;
 import com.rapid7.armor.write.WriteRequest;
 
 public interface IShardWriter extends AutoCloseable {
@@ -16,8 +18,18 @@ public interface IShardWriter extends AutoCloseable {
   public ShardMetadata commit(ColumnId columnEntityId) throws IOException;
   public ShardId getShardId();
   public void delete(Object entityId, long version, String instanceId);
+  public void delete(List<DeleteRequest> deletes);
   public ColumnMetadata getMetadata(String columnId);
   public void write(ColumnId columnId, List<WriteRequest> columns) throws IOException;
+  public void write(ColumnarBatch batch, int[] entities) throws IOException;
   public Map<Integer, EntityRecord> getEntities(String columnId);
+  /**
+   * @return Whether anything was written or deleted since the last commit.
+   */
+  public boolean hasUncommittedChanges();
+  /**
+   * @return The memory the shard's column writers reported to the memory accountant, zero without one.
+   */
+  public long getMemoryUsage();
 
 }
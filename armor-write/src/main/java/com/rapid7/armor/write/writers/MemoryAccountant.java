@@ -0,0 +1,142 @@
+package com.rapid7.armor.write.writers;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accounts for the heap held by writers against a budget. Column writers report an estimate of what their entity maps,
+ * dictionaries and statistics hold, see {@link ColumnFileWriter#estimateMemory()}, and writes reserve an estimate of what
+ * they bring in for as long as they run.
+ * <p>
+ * A reservation that doesn't fit waits for writers to give memory back, up to the max wait, and is then rejected with a
+ * {@link MemoryBudgetExceededException}. A max wait of zero rejects right away. A reservation is always let through when
+ * nothing else is held, so a single write larger than the budget can still go. An accountant can be shared by several
+ * {@link ArmorWriter}s to bound them together.
+ */
+public class MemoryAccountant {
+  private final long budgetBytes;
+  private final long maxWaitMillis;
+  private long used; // Reported by writers
+  private long reserved; // Reserved by writes in flight
+  private long peak;
+  private long waits;
+  private long rejected;
+
+  /**
+   * @param budgetBytes The bytes writers and writes in flight may hold together.
+   * @param maxWaitMillis How long a reservation waits for memory before it is rejected, zero to reject right away.
+   */
+  public MemoryAccountant(long budgetBytes, long maxWaitMillis) {
+    if (budgetBytes <= 0)
+      throw new IllegalArgumentException("The memory budget must be positive but was " + budgetBytes);
+    if (maxWaitMillis < 0)
+      throw new IllegalArgumentException("The max wait cannot be negative but was " + maxWaitMillis);
+    this.budgetBytes = budgetBytes;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+  public long getBudgetBytes() {
+    return budgetBytes;
+  }
+
+  public long getMaxWaitMillis() {
+    return maxWaitMillis;
+  }
+
+  /**
+   * Changes the bytes reported by writers, writers report the difference from what they reported before.
+   *
+   * @param delta The bytes held since the last report, negative when bytes were given back.
+   */
+  public synchronized void adjust(long delta) {
+    used += delta;
+    peak = Math.max(peak, used + reserved);
+    if (delta < 0)
+      notifyAll();
+  }
+
+  /**
+   * @return Whether the given bytes can be reserved without waiting.
+   */
+  public synchronized boolean fits(long bytes) {
+    return used + reserved + bytes <= budgetBytes;
+  }
+
+  /**
+   * Reserves bytes for a write, waiting up to the max wait for them to fit. They must be given back with
+   * {@link #release(long)} once the write is done.
+   *
+   * @param bytes The estimated bytes of the write.
+   *
+   * @throws MemoryBudgetExceededException If the bytes didn't fit within the max wait.
+   */
+  public synchronized void reserve(long bytes) {
+    if (bytes < 0)
+      throw new IllegalArgumentException("The reserved bytes cannot be negative but was " + bytes);
+    if (used + reserved + bytes > budgetBytes && used + reserved > 0) {
+      waits++;
+      long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+      while (used + reserved + bytes > budgetBytes && used + reserved > 0) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          rejected++;
+          throw new MemoryBudgetExceededException("Unable to reserve " + bytes + " bytes, " + (used + reserved) +
+              " of the " + budgetBytes + " byte budget are held after waiting " + maxWaitMillis + " ms");
+        }
+        try {
+          wait(remaining);
+        } catch (InterruptedException ie) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException("Interrupted while waiting to reserve " + bytes + " bytes", ie);
+        }
+      }
+    }
+    reserved += bytes;
+    peak = Math.max(peak, used + reserved);
+  }
+
+  /**
+   * Gives back bytes taken by {@link #reserve(long)}.
+   */
+  public synchronized void release(long bytes) {
+    reserved -= bytes;
+    notifyAll();
+  }
+
+  /**
+   * @return The bytes reported by writers.
+   */
+  public synchronized long getUsed() {
+    return used;
+  }
+
+  /**
+   * @return The bytes reserved by writes in flight.
+   */
+  public synchronized long getReserved() {
+    return reserved;
+  }
+
+  /**
+   * @return The most bytes held by writers and writes in flight together.
+   */
+  public synchronized long getPeak() {
+    return peak;
+  }
+
+  /**
+   * @return The number of reservations that had to wait, the rejected ones among them.
+   */
+  public synchronized long getWaits() {
+    return waits;
+  }
+
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "MemoryAccountant{budgetBytes=" + budgetBytes + ", used=" + used + ", reserved=" + reserved + ", peak=" + peak +
+        ", waits=" + waits + ", rejected=" + rejected + "}";
+  }
+}
@@ -0,0 +1,9 @@
+package com.rapid7.armor.write.writers;
+
+public class MemoryBudgetExceededException extends RuntimeException {
+  private static final long serialVersionUID = -3177604985620744731L;
+
+  public MemoryBudgetExceededException(String msg) {
+    super(msg);
+  }
+}
@@ -1,6 +1,10 @@
 package com.rapid7.armor.write.writers;
 
+import com.rapid7.armor.Constants;
 import com.rapid7.armor.entity.Column;
+import com.rapid7.armor.entity.ColumnarBatch;
+import com.rapid7.armor.entity.ColumnarBatch.BatchColumn;
+import com.rapid7.armor.entity.Entity;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.entity.EntityRecordSummary;
 import com.rapid7.armor.io.Compression;
@@ -10,13 +14,16 @@ import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.schema.DataType;
 import com.rapid7.armor.shard.ColumnShardId;
 import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.sketch.BloomFilter;
 import com.rapid7.armor.store.WriteStore;
+import com.rapid7.armor.write.DeleteRequest;
 import com.rapid7.armor.write.StreamProduct;
 import com.rapid7.armor.write.WriteRequest;
 import com.rapid7.armor.xact.ArmorXact;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -40,6 +47,8 @@ import org.slf4j.LoggerFactory;
  */
 public class ShardWriter implements IShardWriter {
   private static final Logger LOGGER = LoggerFactory.getLogger(ShardWriter.class);
+  // About 1.2 bytes per entity in the shard metadata, which readers fetch whole.
+  private static final double ENTITY_FILTER_FPP = 0.01;
 
   private Map<ColumnShardId, ColumnFileWriter> columnFileWriters = new ConcurrentHashMap<>();
   private final WriteStore store;
@@ -48,6 +57,9 @@ public class ShardWriter implements IShardWriter {
   private final Supplier<Integer> compactionTrigger;
   private Compression compress = Compression.ZSTD;
   private ArmorXact armorTransaction;
+  private MemoryAccountant memoryAccountant;
+  private Constants.ColumnFileFormatVersion formatVersion = Constants.DEFAULT_VERSION;
+  private volatile boolean uncommittedChanges = false;
   
   private void ensureInTransaction() {
     if (armorTransaction == null) {
@@ -61,10 +73,44 @@ public class ShardWriter implements IShardWriter {
       cfw.close();
       return previous;
     }
+    if (memoryAccountant != null)
+      cfw.setMemoryAccountant(memoryAccountant);
+    cfw.setFormatVersion(formatVersion);
     columnFileWriters.put(cfw.getColumnShardId(), cfw);
     return cfw;
   }
 
+  /**
+   * Has every column writer of the shard report its memory to an accountant, the columns loaded later included.
+   */
+  public synchronized void setMemoryAccountant(MemoryAccountant memoryAccountant) {
+    this.memoryAccountant = memoryAccountant;
+    for (ColumnFileWriter cfw : columnFileWriters.values())
+      cfw.setMemoryAccountant(memoryAccountant);
+  }
+
+  /**
+   * Sets the format version the shard's columns are committed in, see {@link ColumnFileWriter#setFormatVersion}.
+   */
+  public synchronized void setFormatVersion(Constants.ColumnFileFormatVersion formatVersion) {
+    this.formatVersion = formatVersion;
+    for (ColumnFileWriter cfw : columnFileWriters.values())
+      cfw.setFormatVersion(formatVersion);
+  }
+
+  @Override
+  public long getMemoryUsage() {
+    long bytes = 0;
+    for (ColumnFileWriter cfw : columnFileWriters.values())
+      bytes += cfw.getReportedMemory();
+    return bytes;
+  }
+
+  @Override
+  public boolean hasUncommittedChanges() {
+    return uncommittedChanges;
+  }
+
   public ShardWriter(
     ShardId shardId,
     WriteStore store,
@@ -148,9 +194,11 @@ public class ShardWriter implements IShardWriter {
       List<ColumnMetadata> columnMetadata = columnFileWriters.values().stream().map(ColumnFileWriter::getMetadata).collect(Collectors.toList());
       columnMetadata.add(entityColumnMetadata);
       ShardMetadata smd = new ShardMetadata(shardId, columnMetadata);
+      smd.setEntityFilter(buildEntityFilter());
       store.saveShardMetadata(armorTransaction, smd);
       store.commit(armorTransaction, shardId);
       committed = true;
+      uncommittedChanges = false;
       return smd;
     } catch (Exception e) {
       LOGGER.error("Unable to commit transaction: {}", armorTransaction, e);
@@ -162,10 +210,31 @@ public class ShardWriter implements IShardWriter {
     }
   }
 
+  /**
+   * Builds a bloom filter of the entity ids in the shard. Every column holds the same entities after the consistency check,
+   * so the entities of any column will do.
+   */
+  private byte[] buildEntityFilter() {
+    Optional<ColumnFileWriter> writer = columnFileWriters.values().stream().findFirst();
+    if (!writer.isPresent())
+      return null;
+    List<EntityRecordSummary> summaries = writer.get().getEntityRecordSummaries();
+    BloomFilter filter = new BloomFilter(summaries.size(), ENTITY_FILTER_FPP);
+    for (EntityRecordSummary summary : summaries) {
+      Object id = summary.getId();
+      if (id instanceof Number)
+        filter.addNumber((Number) id);
+      else
+        filter.addBytes(id.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    return filter.toBytes();
+  }
+
   @Override
   public void delete(Object entity, long version, String instanceId) {
     // Remove from list
     ensureInTransaction();
+    uncommittedChanges = true;
     if (captureWrite != null && captureWrite.test(shardId, ShardWriter.class.getSimpleName()))
       store.captureWrites(armorTransaction, shardId, null, null, entity);
     else {
@@ -175,25 +244,48 @@ public class ShardWriter implements IShardWriter {
       writer.delete(entity, version, instanceId);
   }
 
+  @Override
+  public void delete(List<DeleteRequest> deletes) {
+    ensureInTransaction();
+    uncommittedChanges = true;
+    if (captureWrite != null && captureWrite.test(shardId, ShardWriter.class.getSimpleName())) {
+      for (DeleteRequest delete : deletes)
+        store.captureWrites(armorTransaction, shardId, null, null, delete.getEntityId());
+    }
+    for (ColumnFileWriter writer : columnFileWriters.values())
+      writer.delete(deletes);
+  }
+
   @Override
   public void write(ColumnId columnId, List<WriteRequest> writeRequests) throws IOException {
     if (captureWrite != null && captureWrite.test(shardId, ShardWriter.class.getSimpleName()))
       store.captureWrites(armorTransaction, shardId, null, writeRequests, null);
     ensureInTransaction();
+    uncommittedChanges = true;
+    columnFileWriter(columnId).write(writeRequests);
+  }
 
-    Optional<ColumnFileWriter> opt = columnFileWriters.values().stream().filter(w -> w.getColumnId().equals(columnId)).findFirst();
-    ColumnFileWriter columnFileWriter;
-    ColumnShardId columnShardId = null;
-    if (!opt.isPresent()) {
-      // The column name is not present for this shard, so lets create a new column shard by create a writer.
-      columnShardId = new ColumnShardId(shardId, columnId);
-      columnFileWriter = store.loadColumnWriter(columnShardId);
-      columnFileWriter = addColumnFileWriter(columnFileWriter);
-    } else {
-      columnFileWriter = opt.get();
-      columnShardId = columnFileWriter.getColumnShardId();
+  @Override
+  public void write(ColumnarBatch batch, int[] entities) throws IOException {
+    if (captureWrite != null && captureWrite.test(shardId, ShardWriter.class.getSimpleName())) {
+      List<Entity> captured = new ArrayList<>();
+      for (int entity : entities)
+        captured.add(batch.toEntity(entity));
+      store.captureWrites(armorTransaction, shardId, captured, null, null);
     }
-    columnFileWriter.write(writeRequests);
+    ensureInTransaction();
+    uncommittedChanges = true;
+    for (BatchColumn column : batch.getColumns())
+      columnFileWriter(column.getColumnId()).write(batch, column, entities);
+  }
+
+  private ColumnFileWriter columnFileWriter(ColumnId columnId) {
+    Optional<ColumnFileWriter> opt = columnFileWriters.values().stream().filter(w -> w.getColumnId().equals(columnId)).findFirst();
+    if (opt.isPresent())
+      return opt.get();
+    // The column name is not present for this shard, so lets create a new column shard by create a writer.
+    ColumnShardId columnShardId = new ColumnShardId(shardId, columnId);
+    return addColumnFileWriter(store.loadColumnWriter(columnShardId));
   }
 
   /**
@@ -204,10 +296,12 @@ public class ShardWriter implements IShardWriter {
     // First for all columns check for compaction before continuing.
     for (Map.Entry<ColumnShardId, ColumnFileWriter> entry : columnFileWriters.entrySet()) {
       ColumnFileWriter cw = columnFileWriters.get(entry.getKey());
+      cw.updateRecordStats();
       ColumnMetadata md = cw.getMetadata();
       if (md.getFragmentationLevel() > compactionTrigger.get()) {
         Instant mark = Instant.now();
-        cw.compact(cw.getEntityRecordSummaries(), false);
+        // Compaction reads every value anyway, so it brings the statistics widened since the last one back to exact.
+        cw.compact(cw.getEntityRecordSummaries(), true);
         LOGGER.info("The column fragment level for {} is at {} which is over {}, took {}",
             cw.getColumnShardId().alternateString(),
             md.getFragmentationLevel(),
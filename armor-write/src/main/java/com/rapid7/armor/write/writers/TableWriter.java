@@ -17,6 +17,8 @@ public class TableWriter implements Closeable {
   private final String tenant;
   // Must be have some synchronization to prevent lost shards.
   private final Map<ShardId, IShardWriter> shards = new HashMap<>();
+  // The number of tasks using each shard writer, a pinned shard writer is never evicted.
+  private final Map<ShardId, Integer> pins = new HashMap<>();
 
   public TableWriter(String tenant, String table) {
     this.tenant = tenant;
@@ -61,6 +63,44 @@ public class TableWriter implements Closeable {
     return shards.get(shardId);
   }
 
+  /**
+   * Gets a shard writer and pins it so it isn't evicted while it is used, it must be unpinned with
+   * {@link #unpinShard(ShardId)} once the task using it is done.
+   *
+   * @return The pinned shard writer, {@code null} if there is none in which case nothing is pinned.
+   */
+  public synchronized IShardWriter pinShard(ShardId shardId) {
+    IShardWriter sw = shards.get(shardId);
+    if (sw != null)
+      pins.merge(shardId, 1, Integer::sum);
+    return sw;
+  }
+
+  /**
+   * Same as {@link #addShard(IShardWriter)} but pins the shard writer that is returned.
+   */
+  public synchronized IShardWriter addAndPinShard(IShardWriter shardWriter) {
+    IShardWriter sw = addShard(shardWriter);
+    pins.merge(sw.getShardId(), 1, Integer::sum);
+    return sw;
+  }
+
+  public synchronized void unpinShard(ShardId shardId) {
+    pins.computeIfPresent(shardId, (k, count) -> count == 1 ? null : count - 1);
+  }
+
+  /**
+   * Removes a shard writer without closing it, as long as it isn't pinned and has no uncommitted changes.
+   *
+   * @return The removed shard writer, {@code null} if there was none or it isn't idle.
+   */
+  public synchronized IShardWriter removeIdleShard(ShardId shardId) {
+    IShardWriter sw = shards.get(shardId);
+    if (sw == null || pins.containsKey(shardId) || sw.hasUncommittedChanges())
+      return null;
+    return shards.remove(shardId);
+  }
+
   public synchronized IShardWriter addShard(IShardWriter shardWriter) {
     IShardWriter sw = shards.get(shardWriter.getShardId());
     if (sw != null) {
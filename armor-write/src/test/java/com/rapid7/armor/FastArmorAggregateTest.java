@@ -0,0 +1,199 @@
+package com.rapid7.armor;
+
+import static com.rapid7.armor.interval.Interval.SINGLE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.rapid7.armor.entity.Entity;
+import com.rapid7.armor.entity.Row;
+import com.rapid7.armor.io.Compression;
+import com.rapid7.armor.read.aggregate.Aggregate;
+import com.rapid7.armor.read.aggregate.AggregateFunction;
+import com.rapid7.armor.read.fast.FastArmorReader;
+import com.rapid7.armor.read.predicate.InstantPredicate;
+import com.rapid7.armor.read.predicate.NumericPredicate;
+import com.rapid7.armor.read.predicate.StringPredicate;
+import com.rapid7.armor.schema.ColumnId;
+import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.shard.ModShardStrategy;
+import com.rapid7.armor.sketch.QuantileSketch;
+import com.rapid7.armor.store.FileReadStore;
+import com.rapid7.armor.store.FileWriteStore;
+import com.rapid7.armor.store.Operator;
+import com.rapid7.armor.write.writers.ArmorWriter;
+
+public class FastArmorAggregateTest {
+  private static final List<ColumnId> COLUMNS = Arrays.asList(
+      new ColumnId("status", DataType.INTEGER.getCode()),
+      new ColumnId("time", DataType.LONG.getCode()),
+      new ColumnId("vuln", DataType.STRING.getCode()));
+  private static final String TENANT = "united_states";
+  private static final String TABLE = "state_vulns";
+  private static final Instant TIMESTAMP = Instant.now();
+  private static final String ASSET_ID = "assetId";
+
+  private void removeDirectory(Path removeDirectory) throws IOException {
+    Files.walk(removeDirectory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+  }
+
+  @Test
+  public void aggregateTable() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(3));
+    try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 3)) {
+      // Version 3 files are built without compacting, so the statistics are kept incrementally.
+      writer.setFormatVersion(Constants.ColumnFileFormatVersion.VERSION_3);
+      writer.begin();
+      List<Entity> entities = new ArrayList<>();
+      // 20 entities each with the rows (i, 100 + i, "state" + i % 4) and a null row.
+      for (int i = 1; i <= 20; i++) {
+        entities.add(Entity.buildEntity(ASSET_ID, "entity" + i, 1, UUID.randomUUID().toString(), COLUMNS,
+            new Row(i, 100L + i, "state" + (i % 4)), new Row(null, null, null)));
+      }
+      writer.write(TENANT, TABLE, SINGLE, TIMESTAMP, entities);
+      writer.commit();
+
+      // Delete one entity, it should no longer be part of any aggregate.
+      writer.begin();
+      writer.delete(TENANT, TABLE, SINGLE, TIMESTAMP, Entity.buildEntity(ASSET_ID, "entity20", 2, null, COLUMNS));
+      writer.commit();
+
+      FastArmorReader reader = new FastArmorReader(new FileReadStore(testDirectory));
+      Aggregate status = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "status", EnumSet.allOf(AggregateFunction.class), null);
+      assertEquals(38, status.getCount());
+      assertEquals(19, status.getCountNonNull());
+      assertEquals(190L, status.getSum());
+      assertEquals(1d, status.getMin());
+      assertEquals(19d, status.getMax());
+      assertEquals(19L, status.getApproxDistinct());
+      assertEquals(10d, status.getApproxQuantile(0.5), 10 * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+      assertFalse(status.isFromMetadata());
+
+      Aggregate time = reader.aggregate(
+          TENANT, TABLE, SINGLE, TIMESTAMP, "time", EnumSet.allOf(AggregateFunction.class), new NumericPredicate<>("time", Operator.GREATER_THAN, 110L));
+      assertEquals(9, time.getCount());
+      assertEquals(9, time.getCountNonNull());
+      assertEquals(1035L, time.getSum());
+      assertEquals(111d, time.getMin());
+      assertEquals(119d, time.getMax());
+
+      Aggregate vuln = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "vuln", EnumSet.allOf(AggregateFunction.class), null);
+      assertEquals(38, vuln.getCount());
+      assertEquals(19, vuln.getCountNonNull());
+      assertEquals(4L, vuln.getApproxDistinct());
+      assertNull(vuln.getSum());
+      assertNull(vuln.getApproxQuantile(0.5));
+      Aggregate filteredVuln = reader.aggregate(
+          TENANT, TABLE, SINGLE, TIMESTAMP, "vuln", EnumSet.of(AggregateFunction.COUNT), new StringPredicate("vuln", Operator.EQUALS, "state1"));
+      assertEquals(5, filteredVuln.getCount());
+
+      // Pure metadata aggregates never need to read the row group.
+      Aggregate metadataOnly = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "status", EnumSet.of(AggregateFunction.COUNT), null);
+      assertTrue(metadataOnly.isFromMetadata());
+      assertEquals(38, metadataOnly.getCount());
+
+      // The delete wasn't compacted so the metadata min and max may still hold the deleted values, they are read instead.
+      Aggregate minMax = reader.aggregate(
+          TENANT, TABLE, SINGLE, TIMESTAMP, "status", EnumSet.of(AggregateFunction.COUNT, AggregateFunction.MIN, AggregateFunction.MAX), null);
+      assertFalse(minMax.isFromMetadata());
+      assertEquals(38, minMax.getCount());
+      assertEquals(1d, minMax.getMin());
+      assertEquals(19d, minMax.getMax());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void aggregateFromMetadataSketches() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(3));
+    try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 3)) {
+      // Two commits so the second one adds its values to the sketches of the first without a pass over the values.
+      for (int commit = 0; commit < 2; commit++) {
+        writer.begin();
+        List<Entity> entities = new ArrayList<>();
+        for (int i = commit * 10 + 1; i <= commit * 10 + 10; i++) {
+          entities.add(Entity.buildEntity(ASSET_ID, "entity" + i, 1, UUID.randomUUID().toString(), COLUMNS,
+              new Row(i, 100L + i, "state" + (i % 4)), new Row(null, null, null)));
+        }
+        writer.write(TENANT, TABLE, SINGLE, TIMESTAMP, entities);
+        writer.commit();
+      }
+
+      FastArmorReader reader = new FastArmorReader(new FileReadStore(testDirectory));
+      EnumSet<AggregateFunction> functions = EnumSet.complementOf(EnumSet.of(AggregateFunction.SUM));
+      Aggregate status = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "status", functions, null);
+      assertTrue(status.isFromMetadata());
+      assertEquals(40, status.getCount());
+      assertEquals(20, status.getCountNonNull());
+      assertEquals(1d, status.getMin());
+      assertEquals(20d, status.getMax());
+      assertEquals(20L, status.getApproxDistinct());
+      assertEquals(10d, status.getApproxQuantile(0.5), 10 * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+      assertEquals(20d, status.getApproxQuantile(1), 20 * QuantileSketch.DEFAULT_RELATIVE_ACCURACY);
+
+      Aggregate vuln = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "vuln", EnumSet.of(AggregateFunction.APPROX_DISTINCT), null);
+      assertTrue(vuln.isFromMetadata());
+      assertEquals(4L, vuln.getApproxDistinct());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void aggregateDatetimesAndNulls() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(3));
+    List<ColumnId> columns = Arrays.asList(new ColumnId("seen", DataType.DATETIME.getCode()), new ColumnId("vuln", DataType.STRING.getCode()));
+    try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 3)) {
+      writer.begin();
+      List<Entity> entities = new ArrayList<>();
+      // 10 entities each with the rows (1000 * i, "state" + i) and a null row.
+      for (int i = 1; i <= 10; i++) {
+        entities.add(Entity.buildEntity(ASSET_ID, "entity" + i, 1, null, columns,
+            new Row(1000L * i, "state" + i), new Row(null, null)));
+      }
+      writer.write(TENANT, TABLE, SINGLE, TIMESTAMP, entities);
+      writer.commit();
+
+      FastArmorReader reader = new FastArmorReader(new FileReadStore(testDirectory));
+      Aggregate seen = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "seen", EnumSet.of(AggregateFunction.COUNT, AggregateFunction.MIN),
+          new InstantPredicate("seen", Operator.GREATER_THAN, Instant.ofEpochMilli(7000)));
+      assertEquals(3, seen.getCount());
+      assertEquals(8000d, seen.getMin());
+
+      Aggregate nulls = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "seen", EnumSet.of(AggregateFunction.COUNT),
+          new InstantPredicate("seen", Operator.IS_NULL, (Instant) null));
+      assertEquals(10, nulls.getCount());
+      assertEquals(0, nulls.getCountNonNull());
+      Aggregate notNulls = reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "seen", EnumSet.of(AggregateFunction.COUNT),
+          new InstantPredicate("seen", Operator.NOT_NULL, (Instant) null));
+      assertEquals(10, notNulls.getCount());
+      assertEquals(10, notNulls.getCountNonNull());
+
+      assertEquals(10, reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "vuln", EnumSet.of(AggregateFunction.COUNT),
+          new StringPredicate("vuln", Operator.IS_NULL, (String) null)).getCount());
+      assertEquals(10, reader.aggregate(TENANT, TABLE, SINGLE, TIMESTAMP, "vuln", EnumSet.of(AggregateFunction.COUNT),
+          new StringPredicate("vuln", Operator.NOT_NULL, (String) null)).getCount());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+}
@@ -0,0 +1,462 @@
+package com.rapid7.armor;
+
+import static com.rapid7.armor.interval.Interval.DAILY;
+import static com.rapid7.armor.interval.Interval.SINGLE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.rapid7.armor.entity.Entity;
+import com.rapid7.armor.entity.Row;
+import com.rapid7.armor.io.Compression;
+import com.rapid7.armor.read.fast.EntityHistoryRecord;
+import com.rapid7.armor.read.fast.FastArmorBlock;
+import com.rapid7.armor.read.fast.FastArmorBlockReader;
+import com.rapid7.armor.read.fast.FastArmorEntityColumn;
+import com.rapid7.armor.read.fast.FastArmorReader;
+import com.rapid7.armor.read.fast.FastArmorRowRange;
+import com.rapid7.armor.read.fast.FastArmorShardColumn;
+import com.rapid7.armor.read.predicate.InstantPredicate;
+import com.rapid7.armor.read.slow.SlowArmorReader;
+import com.rapid7.armor.schema.ColumnId;
+import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.shard.ModShardStrategy;
+import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.store.FileReadStore;
+import com.rapid7.armor.store.FileWriteStore;
+import com.rapid7.armor.store.Operator;
+import com.rapid7.armor.write.writers.ArmorWriter;
+
+import tech.tablesaw.api.Table;
+
+public class FastArmorEntityLookupTest {
+  private static final List<ColumnId> COLUMNS = Arrays.asList(
+      new ColumnId("status", DataType.INTEGER.getCode()),
+      new ColumnId("time", DataType.LONG.getCode()),
+      new ColumnId("vuln", DataType.STRING.getCode()));
+  private static final String TENANT = "united_states";
+  private static final String TABLE = "state_vulns";
+  private static final Instant TIMESTAMP = Instant.now();
+  private static final String ASSET_ID = "assetId";
+
+  private void removeDirectory(Path removeDirectory) throws IOException {
+    Files.walk(removeDirectory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+  }
+
+  private static String strings(FastArmorBlock block) {
+    // String slices can be allocated larger than the values, the last offset is where they end.
+    return block.getSlice().slice(0, block.getOffsets()[block.getNumRows()]).toStringUtf8();
+  }
+
+  private List<Entity> writeEntities(Path testDirectory, int numEntities, int numShards) {
+    return writeEntities(testDirectory, numEntities, numShards, Compression.ZSTD, Constants.DEFAULT_VERSION);
+  }
+
+  private List<Entity> writeEntities(
+      Path testDirectory, int numEntities, int numShards, Compression compression, Constants.ColumnFileFormatVersion version) {
+    FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(numShards));
+    List<Entity> entities = new ArrayList<>();
+    // Entity i has i rows, every other row is null.
+    for (int i = 1; i <= numEntities; i++) {
+      List<Row> rows = new ArrayList<>();
+      for (int r = 0; r < i; r++) {
+        if (r % 2 == 1)
+          rows.add(new Row(null, null, null));
+        else
+          rows.add(new Row(i * 100 + r, (long) i * 1000 + r, "vuln" + i + "-" + r));
+      }
+      entities.add(Entity.buildEntity(ASSET_ID, "entity" + i, 1, UUID.randomUUID().toString(), COLUMNS, rows));
+    }
+    try (ArmorWriter writer = new ArmorWriter("aw1", store, compression, 1)) {
+      writer.setFormatVersion(version);
+      writer.begin();
+      writer.write(TENANT, TABLE, SINGLE, TIMESTAMP, entities);
+      writer.commit();
+    }
+    return entities;
+  }
+
+  @Test
+  public void entityColumns() throws IOException {
+    for (Constants.ColumnFileFormatVersion version : Arrays.asList(
+        Constants.ColumnFileFormatVersion.VERSION_2, Constants.ColumnFileFormatVersion.VERSION_3)) {
+      for (Compression compression : Arrays.asList(Compression.NONE, Compression.ZSTD)) {
+        Path testDirectory = Files.createTempDirectory("filestore");
+        try {
+          writeEntities(testDirectory, 25, 1, compression, version);
+          FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(1));
+          // Deleted entities are left in a version 2 row group and have to be skipped over.
+          try (ArmorWriter writer = new ArmorWriter("aw1", store, compression, 1)) {
+            writer.setFormatVersion(version);
+            writer.begin();
+            writer.delete(TENANT, TABLE, SINGLE, TIMESTAMP, Entity.buildEntity(ASSET_ID, "entity3", 2, null, COLUMNS));
+            writer.delete(TENANT, TABLE, SINGLE, TIMESTAMP, Entity.buildEntity(ASSET_ID, "entity10", 2, null, COLUMNS));
+            writer.commit();
+          }
+          FileReadStore readStore = new FileReadStore(testDirectory);
+          ShardId shardId = readStore.findShardIds(TENANT, TABLE, SINGLE, TIMESTAMP).get(0);
+          for (ColumnId column : COLUMNS) {
+            FastArmorShardColumn shardColumn = readStore.getFastArmorShard(shardId, column.getName());
+            for (int i = 1; i <= 26; i++) {
+              String entityId = "entity" + i;
+              FastArmorEntityColumn entityColumn = readStore.getFastArmorEntity(shardId, column.getName(), entityId);
+              String message = version + " " + compression + " " + column.getName() + " " + entityId;
+              assertEquals(shardColumn.getValuesForEntity(entityId), entityColumn.getValues(), message);
+              if (i == 3 || i == 10 || i == 26) {
+                assertNull(entityColumn.getValues(), message);
+                assertNull(entityColumn.getEntityRecord(), message);
+              } else {
+                assertEquals(i, entityColumn.getValues().size(), message);
+                assertEquals(shardColumn.getEntityRecord(entityId).getVersion(), entityColumn.getEntityRecord().getVersion(), message);
+                // The same entity by its numeric id, which doesn't need the entity dictionary.
+                int surrogate = entityColumn.getEntityRecord().getEntityId();
+                assertEquals(entityColumn.getValues(), readStore.getFastArmorEntity(shardId, column.getName(), surrogate).getValues(), message);
+              }
+            }
+          }
+          assertNull(readStore.getFastArmorEntity(shardId, "missing", "entity1"));
+        } finally {
+          removeDirectory(testDirectory);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void pointLookups() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    try {
+      List<Entity> entities = writeEntities(testDirectory, 25, 1);
+      FileReadStore readStore = new FileReadStore(testDirectory);
+      ShardId shardId = readStore.findShardIds(TENANT, TABLE, SINGLE, TIMESTAMP).get(0);
+      for (int c = 0; c < COLUMNS.size(); c++) {
+        FastArmorShardColumn column = readStore.getFastArmorShard(shardId, COLUMNS.get(c).getName());
+        for (Entity entity : entities) {
+          int numRows = entity.numRows();
+          assertEquals(numRows, column.entityNumRows(entity.getEntityId()));
+          int rowOffset = column.entityRowOffset(entity.getEntityId());
+          List<Object> values = column.getValuesForEntity(entity.getEntityId());
+          assertEquals(numRows, values.size());
+          for (int r = 0; r < numRows; r++) {
+            Object expected = entity.getRows().get(r).getValue(c);
+            assertEquals(expected, values.get(r));
+            assertEquals(expected == null, column.isNull(rowOffset + r));
+          }
+        }
+        assertEquals(-1, column.entityRowOffset("missing"));
+        assertEquals(0, column.entityNumRows("missing"));
+        assertNull(column.getValuesForEntity("missing"));
+
+        // Without the entity dictionary only numeric ids can be looked up and the dictionary isn't held.
+        FastArmorShardColumn withoutDictionary = readStore.getFastArmorShard(shardId, COLUMNS.get(c).getName(), false);
+        assertTrue(withoutDictionary.memoryUsage() < column.memoryUsage());
+        for (Entity entity : entities) {
+          int surrogate = column.getEntityRecord(entity.getEntityId()).getEntityId();
+          assertEquals(column.getValuesForEntity(entity.getEntityId()), withoutDictionary.getValuesForEntity(surrogate));
+        }
+        assertThrows(IllegalStateException.class, () -> withoutDictionary.getValuesForEntity("entity1"));
+      }
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void multiGet() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(4);
+    try {
+      List<Entity> entities = writeEntities(testDirectory, 12, 3);
+      FileReadStore readStore = new FileReadStore(testDirectory);
+      FastArmorReader fastReader = new FastArmorReader(readStore, new ModShardStrategy(3), threadPool);
+      SlowArmorReader slowReader = new SlowArmorReader(readStore, new ModShardStrategy(3), threadPool);
+      List<Object> entityIds = Arrays.asList("entity3", "entity8", "missing", "entity12");
+
+      Map<Object, List<Row>> fastResults = fastReader.getEntities(TENANT, TABLE, SINGLE, TIMESTAMP, entityIds, Arrays.asList("vuln", "status"));
+      assertEquals(3, fastResults.size());
+      assertNull(fastResults.get("missing"));
+      for (Entity entity : entities) {
+        List<Row> rows = fastResults.get(entity.getEntityId());
+        if (!entityIds.contains(entity.getEntityId())) {
+          assertNull(rows);
+          continue;
+        }
+        assertEquals(entity.numRows(), rows.size());
+        for (int r = 0; r < rows.size(); r++) {
+          assertEquals(entity.getRows().get(r).getValue(2), rows.get(r).getValue(0));
+          assertEquals(entity.getRows().get(r).getValue(0), rows.get(r).getValue(1));
+        }
+      }
+
+      Map<Object, Table> slowResults = slowReader.getEntities(TENANT, TABLE, SINGLE, TIMESTAMP, entityIds, Arrays.asList("time"));
+      assertEquals(3, slowResults.size());
+      assertTrue(!slowResults.containsKey("missing"));
+      assertEquals(8, slowResults.get("entity8").rowCount());
+      assertEquals(1, slowResults.get("entity8").columnCount());
+      assertEquals(8000L, slowResults.get("entity8").column("time").get(0));
+    } finally {
+      threadPool.shutdown();
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void slowMultiGetFloatingPoint() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(2);
+    try {
+      List<ColumnId> columns = Arrays.asList(new ColumnId("score", DataType.DOUBLE.getCode()), new ColumnId("weight", DataType.FLOAT.getCode()));
+      FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(2));
+      List<Entity> entities = new ArrayList<>();
+      for (int i = 1; i <= 4; i++)
+        entities.add(Entity.buildEntity(ASSET_ID, "entity" + i, 1, null, columns, new Row(i + 0.5d, i + 0.25f), new Row(null, null)));
+      try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 1)) {
+        writer.begin();
+        writer.write(TENANT, TABLE, SINGLE, TIMESTAMP, entities);
+        writer.commit();
+      }
+      SlowArmorReader slowReader = new SlowArmorReader(new FileReadStore(testDirectory), new ModShardStrategy(2), threadPool);
+      Map<Object, Table> results = slowReader.getEntities(TENANT, TABLE, SINGLE, TIMESTAMP, Arrays.asList("entity2", "entity3"), null);
+      assertEquals(2, results.size());
+      Table entity2 = results.get("entity2");
+      assertEquals(2, entity2.rowCount());
+      assertEquals(2.5d, entity2.column("score").get(0));
+      assertTrue(entity2.column("score").isMissing(1));
+      assertEquals(2.25f, entity2.column("weight").get(0));
+      assertTrue(entity2.column("weight").isMissing(1));
+    } finally {
+      threadPool.shutdown();
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void entityHistory() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(4);
+    Instant firstDay = Instant.parse("2021-01-01T00:00:00Z");
+    try {
+      FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(2));
+      try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 1)) {
+        writer.begin();
+        for (int d = 0; d < 5; d++) {
+          Instant day = firstDay.plus(d, ChronoUnit.DAYS);
+          // The entity is missing on the third day.
+          String entityId = d == 2 ? "entity2" : "entity1";
+          List<Row> rows = Arrays.asList(new Row(d, d * 10L, "vuln" + d), new Row(null, null, null));
+          writer.write(TENANT, TABLE, DAILY, day, Arrays.asList(Entity.buildEntity(ASSET_ID, entityId, d + 1, UUID.randomUUID().toString(), COLUMNS, rows)));
+        }
+        writer.commit();
+      }
+      FileReadStore readStore = new FileReadStore(testDirectory);
+      FastArmorReader reader = new FastArmorReader(readStore, new ModShardStrategy(2), threadPool);
+      InstantPredicate afterFirstDay = new InstantPredicate("intervalStart", Operator.GREATER_THAN, firstDay);
+      List<EntityHistoryRecord> history = reader.getEntityHistory(TENANT, TABLE, DAILY, afterFirstDay, "entity1", Arrays.asList("time", "vuln"))
+          .collect(Collectors.toList());
+      assertEquals(3, history.size());
+      int[] expectedDays = {1, 3, 4};
+      for (int i = 0; i < expectedDays.length; i++) {
+        int d = expectedDays[i];
+        EntityHistoryRecord record = history.get(i);
+        assertEquals(firstDay.plus(d, ChronoUnit.DAYS), record.getIntervalStart());
+        assertEquals(d + 1, record.getVersion());
+        assertEquals(2, record.getRows().size());
+        assertEquals(d * 10L, record.getRows().get(0).getValue(0));
+        assertEquals("vuln" + d, record.getRows().get(0).getValue(1));
+        assertNull(record.getRows().get(1).getValue(1));
+      }
+      assertEquals(5, reader.getEntityHistory(TENANT, TABLE, DAILY, null, "entity1", Arrays.asList("status")).count() +
+          reader.getEntityHistory(TENANT, TABLE, DAILY, null, "entity2", Arrays.asList("status")).count());
+
+      // Only a window of interval starts is read at once and the records stay in interval start order.
+      for (int maxConcurrency : new int[] {1, 2}) {
+        AtomicInteger reading = new AtomicInteger();
+        AtomicInteger maxReading = new AtomicInteger();
+        FastArmorReader windowed = new FastArmorReader(readStore, new ModShardStrategy(2), threadPool) {
+          @Override
+          protected EntityHistoryRecord readEntityHistory(ShardId shardId, Object entityId, List<String> columnNames) {
+            maxReading.accumulateAndGet(reading.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(20);
+              return super.readEntityHistory(shardId, entityId, columnNames);
+            } catch (InterruptedException ie) {
+              Thread.currentThread().interrupt();
+              throw new RuntimeException(ie);
+            } finally {
+              reading.decrementAndGet();
+            }
+          }
+        };
+        List<Instant> days = windowed.getEntityHistory(TENANT, TABLE, DAILY, null, "entity1", Arrays.asList("vuln"), maxConcurrency)
+            .map(EntityHistoryRecord::getIntervalStart)
+            .collect(Collectors.toList());
+        assertEquals(Arrays.asList(firstDay, firstDay.plus(1, ChronoUnit.DAYS), firstDay.plus(3, ChronoUnit.DAYS), firstDay.plus(4, ChronoUnit.DAYS)), days);
+        assertTrue(maxReading.get() <= maxConcurrency, "read " + maxReading.get() + " interval starts at once");
+      }
+      assertThrows(IllegalArgumentException.class,
+          () -> reader.getEntityHistory(TENANT, TABLE, DAILY, null, "entity1", Arrays.asList("vuln"), 0));
+    } finally {
+      threadPool.shutdown();
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void alignedRowRanges() throws Exception {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(4);
+    try {
+      writeEntities(testDirectory, 25, 1);
+      FileReadStore readStore = new FileReadStore(testDirectory);
+      ShardId shardId = readStore.findShardIds(TENANT, TABLE, SINGLE, TIMESTAMP).get(0);
+      FastArmorShardColumn status = readStore.getFastArmorShard(shardId, "status");
+      FastArmorShardColumn vuln = readStore.getFastArmorShard(shardId, "vuln");
+      int numRows = status.getMetadata().getNumRows();
+      List<Integer> allStatus = new ArrayList<>();
+      FastArmorBlock allStatusBlock = status.getFastArmorColumnReader().getIntegerBlock(numRows);
+      for (int r = 0; r < numRows; r++)
+        allStatus.add(allStatusBlock.getIntValueArray()[r]);
+      String allVuln = strings(vuln.getFastArmorColumnReader().getStringBlock(numRows));
+
+      for (int numSplits : new int[] {1, 3, 7, 40}) {
+        List<FastArmorRowRange> ranges = status.splitRows(numSplits);
+        assertEquals(ranges.toString(), vuln.splitRows(numSplits).toString());
+        List<Future<List<Integer>>> statusParts = new ArrayList<>();
+        List<Future<String>> vulnParts = new ArrayList<>();
+        for (FastArmorRowRange range : ranges) {
+          statusParts.add(threadPool.submit(() -> {
+            FastArmorBlockReader reader = status.getFastArmorColumnReader(range);
+            assertEquals(range.getNumRows(), reader.numRows());
+            List<Integer> values = new ArrayList<>();
+            while (reader.hasNext()) {
+              FastArmorBlock block = reader.getIntegerBlock(4);
+              for (int r = 0; r < block.getNumRows(); r++)
+                values.add(block.getIntValueArray()[r]);
+            }
+            return values;
+          }));
+          vulnParts.add(threadPool.submit(() -> {
+            FastArmorBlockReader reader = vuln.getFastArmorColumnReader(range);
+            StringBuilder values = new StringBuilder();
+            while (reader.hasNext())
+              values.append(strings(reader.getStringBlock(4)));
+            return values.toString();
+          }));
+        }
+        List<Integer> statusValues = new ArrayList<>();
+        StringBuilder vulnValues = new StringBuilder();
+        for (int i = 0; i < ranges.size(); i++) {
+          statusValues.addAll(statusParts.get(i).get());
+          vulnValues.append(vulnParts.get(i).get());
+        }
+        assertEquals(allStatus, statusValues);
+        assertEquals(allVuln, vulnValues.toString());
+      }
+      assertThrows(IllegalArgumentException.class, () -> status.getFastArmorColumnReader(new FastArmorRowRange(1, 2, 0, 2)));
+    } finally {
+      threadPool.shutdown();
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void emptyRowRanges() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    try {
+      FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(1));
+      // One entity holds every row, so splitting leaves the ranges after it empty.
+      List<Row> rows = new ArrayList<>();
+      for (int r = 0; r < 100; r++)
+        rows.add(new Row(r, (long) r, "vuln" + r));
+      try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 1)) {
+        writer.begin();
+        writer.write(TENANT, TABLE, SINGLE, TIMESTAMP,
+            Collections.singletonList(Entity.buildEntity(ASSET_ID, "entity1", 1, UUID.randomUUID().toString(), COLUMNS, rows)));
+        writer.commit();
+      }
+      FileReadStore readStore = new FileReadStore(testDirectory);
+      ShardId shardId = readStore.findShardIds(TENANT, TABLE, SINGLE, TIMESTAMP).get(0);
+      FastArmorShardColumn vuln = readStore.getFastArmorShard(shardId, "vuln");
+      List<FastArmorRowRange> ranges = vuln.splitRows(3);
+      assertEquals(100, ranges.get(0).getNumRows());
+      for (FastArmorRowRange range : ranges.subList(1, 3)) {
+        assertEquals(0, range.getNumRows());
+        FastArmorBlockReader reader = vuln.getFastArmorColumnReader(range);
+        assertFalse(reader.hasNext(), range.toString());
+        FastArmorBlock block = reader.getStringBlock(10);
+        assertEquals(0, block.getNumRows());
+        assertEquals("", strings(block));
+        assertFalse(reader.hasNext());
+      }
+      FastArmorBlockReader reader = vuln.getFastArmorColumnReader(ranges.get(0));
+      StringBuilder values = new StringBuilder();
+      while (reader.hasNext())
+        values.append(strings(reader.getStringBlock(30)));
+      assertEquals(strings(vuln.getFastArmorColumnReader().getStringBlock(100)), values.toString());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void reusedBlocks() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    try {
+      writeEntities(testDirectory, 25, 1);
+      FileReadStore readStore = new FileReadStore(testDirectory);
+      ShardId shardId = readStore.findShardIds(TENANT, TABLE, SINGLE, TIMESTAMP).get(0);
+      FastArmorShardColumn status = readStore.getFastArmorShard(shardId, "status");
+      FastArmorShardColumn vuln = readStore.getFastArmorShard(shardId, "vuln");
+      int numRows = status.getMetadata().getNumRows();
+      FastArmorBlock allStatusBlock = status.getFastArmorColumnReader().getIntegerBlock(numRows);
+      String allVuln = strings(vuln.getFastArmorColumnReader().getStringBlock(numRows));
+
+      FastArmorBlockReader statusReader = status.getFastArmorColumnReader();
+      FastArmorBlock statusBlock = new FastArmorBlock();
+      int[] statusArray = null;
+      int row = 0;
+      while (statusReader.hasNext()) {
+        assertSame(statusBlock, statusReader.getIntegerBlock(4, statusBlock));
+        if (statusArray == null)
+          statusArray = statusBlock.getIntValueArray();
+        assertSame(statusArray, statusBlock.getIntValueArray());
+        for (int r = 0; r < statusBlock.getNumRows(); r++, row++)
+          assertEquals(allStatusBlock.getIntValueArray()[row], statusBlock.getIntValueArray()[r]);
+      }
+      assertEquals(numRows, row);
+
+      FastArmorBlockReader vulnReader = vuln.getFastArmorColumnReader();
+      FastArmorBlock vulnBlock = new FastArmorBlock();
+      StringBuilder vulnValues = new StringBuilder();
+      while (vulnReader.hasNext())
+        vulnValues.append(strings(vulnReader.getStringBlock(4, vulnBlock)));
+      assertEquals(allVuln, vulnValues.toString());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+}
@@ -0,0 +1,445 @@
+package com.rapid7.armor;
+
+import static com.rapid7.armor.interval.Interval.DAILY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.rapid7.armor.entity.Entity;
+import com.rapid7.armor.entity.Row;
+import com.rapid7.armor.io.Compression;
+import com.rapid7.armor.meta.ShardMetadata;
+import com.rapid7.armor.read.ReadMemoryManager;
+import com.rapid7.armor.read.aggregate.AggregateFunction;
+import com.rapid7.armor.read.fast.FastArmorBlock;
+import com.rapid7.armor.read.fast.FastArmorBlockReader;
+import com.rapid7.armor.read.fast.FastArmorReader;
+import com.rapid7.armor.read.fast.FastArmorScan;
+import com.rapid7.armor.read.fast.FastArmorScanBlock;
+import com.rapid7.armor.read.fast.FastArmorShard;
+import com.rapid7.armor.read.fast.FastArmorShardColumn;
+import com.rapid7.armor.read.fast.FastArmorShardCursor;
+import com.rapid7.armor.read.predicate.InstantPredicate;
+import com.rapid7.armor.read.predicate.NumericPredicate;
+import com.rapid7.armor.read.predicate.Predicate;
+import com.rapid7.armor.schema.ColumnId;
+import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.shard.ModShardStrategy;
+import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.store.CachingReadStore;
+import com.rapid7.armor.store.FileReadStore;
+import com.rapid7.armor.store.FileWriteStore;
+import com.rapid7.armor.store.Operator;
+import com.rapid7.armor.write.writers.ArmorWriter;
+
+public class FastArmorScanTest {
+  private static final List<ColumnId> COLUMNS = Arrays.asList(
+      new ColumnId("status", DataType.INTEGER.getCode()),
+      new ColumnId("time", DataType.LONG.getCode()),
+      new ColumnId("vuln", DataType.STRING.getCode()));
+  private static final String TENANT = "united_states";
+  private static final String TABLE = "state_vulns";
+  private static final Instant FIRST_DAY = Instant.parse("2021-01-01T00:00:00Z");
+  private static final String ASSET_ID = "assetId";
+
+  private void removeDirectory(Path removeDirectory) throws IOException {
+    Files.walk(removeDirectory).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+  }
+
+  private void writeDays(Path testDirectory, int numDays, int numEntities) {
+    FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(3));
+    try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 1)) {
+      writer.begin();
+      for (int d = 0; d < numDays; d++) {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 1; i <= numEntities; i++) {
+          // Each day has its own range of status values, every entity has a null row.
+          int status = d * 1000 + i;
+          List<Row> rows = Arrays.asList(new Row(status, (long) status, "vuln" + i), new Row(null, null, null));
+          entities.add(Entity.buildEntity(ASSET_ID, "entity" + i, 1, UUID.randomUUID().toString(), COLUMNS, rows));
+        }
+        writer.write(TENANT, TABLE, DAILY, FIRST_DAY.plus(d, ChronoUnit.DAYS), entities);
+      }
+      writer.commit();
+    }
+  }
+
+  private long sumStatus(FastArmorScan scan, List<Integer> sequences) {
+    long sum = 0;
+    try {
+      while (scan.hasNext()) {
+        FastArmorScanBlock block = scan.next();
+        sequences.add(block.getSequence());
+        FastArmorBlock status = block.getBlock("status");
+        FastArmorBlock time = block.getBlock(1);
+        FastArmorBlock vuln = block.getBlock("vuln");
+        for (int r = 0; r < block.getNumRows(); r++) {
+          boolean isNull = status.getValuesIsNull() != null && status.getValuesIsNull()[r];
+          assertEquals(isNull, vuln.getValuesIsNull()[r]);
+          if (!isNull) {
+            assertEquals(status.getIntValueArray()[r], time.getLongValueArray()[r]);
+            sum += status.getIntValueArray()[r];
+          }
+        }
+      }
+    } finally {
+      scan.close();
+    }
+    return sum;
+  }
+
+  @Test
+  public void scanInterval() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    try {
+      writeDays(testDirectory, 3, 40);
+      // The reader fans out on a pool of its own.
+      FastArmorReader reader = new FastArmorReader(new FileReadStore(testDirectory));
+      List<String> projection = Arrays.asList("status", "time", "vuln");
+      long expected = 0;
+      for (int d = 0; d < 3; d++)
+        for (int i = 1; i <= 40; i++)
+          expected += d * 1000 + i;
+
+      // Small blocks and a tiny in-flight limit so shards are split and only one block is read at a time.
+      List<Integer> sequences = new ArrayList<>();
+      FastArmorScan ordered = reader.scan(TENANT, TABLE, DAILY, null, projection, null, true, 7, 1);
+      assertTrue(ordered.numBlocks() > 9);
+      assertEquals(expected, sumStatus(ordered, sequences));
+      for (int i = 0; i < sequences.size(); i++)
+        assertEquals(i, sequences.get(i).intValue());
+
+      sequences.clear();
+      FastArmorScan unordered = reader.scan(TENANT, TABLE, DAILY, null, projection, null, false, 7, 1024);
+      assertEquals(expected, sumStatus(unordered, sequences));
+      Collections.sort(sequences);
+      for (int i = 0; i < sequences.size(); i++)
+        assertEquals(i, sequences.get(i).intValue());
+
+      // Only the last day can have a status above 2000, the other days are pruned by their stats.
+      List<Predicate<?>> predicates = Arrays.asList(new NumericPredicate<>("status", Operator.GREATER_THAN, 2000));
+      long lastDay = reader.scan(TENANT, TABLE, DAILY, null, projection, predicates, true).stream()
+          .mapToLong(FastArmorScanBlock::getNumRows).sum();
+      assertEquals(80, lastDay);
+
+      InstantPredicate firstDay = new InstantPredicate("intervalStart", Operator.EQUALS, FIRST_DAY);
+      FastArmorScan firstDayScan = reader.scan(TENANT, TABLE, DAILY, firstDay, projection, null, true);
+      assertEquals(820, sumStatus(firstDayScan, new ArrayList<>()));
+      assertFalse(firstDayScan.hasNext());
+
+      // Closing the reader shuts its own pool down.
+      reader.close();
+      assertThrows(RejectedExecutionException.class, () -> reader.scan(TENANT, TABLE, DAILY, null, projection, null, true));
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void readAheadCursor() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(2);
+    try {
+      writeDays(testDirectory, 3, 40);
+      FastArmorReader reader = new FastArmorReader(new FileReadStore(testDirectory), threadPool);
+      long expected = 0;
+      for (int d = 0; d < 3; d++)
+        for (int i = 1; i <= 40; i++)
+          expected += d * 1000 + i;
+      // A one byte limit still prefetches a single shard ahead.
+      for (long maxBufferedBytes : new long[] {1, FastArmorShardCursor.DEFAULT_MAX_BUFFERED_BYTES}) {
+        long sum = 0;
+        int numShards = 0;
+        try (FastArmorShardCursor cursor = reader.openCursor(TENANT, TABLE, DAILY, null, Arrays.asList("status", "missing"), 2, maxBufferedBytes)) {
+          while (cursor.hasNext()) {
+            FastArmorShard shard = cursor.next();
+            numShards++;
+            assertNull(shard.getColumn("missing"));
+            FastArmorBlockReader missing = shard.getColumnReader("missing");
+            assertEquals(shard.getNumRows(), missing.getIntegerBlock(shard.getNumRows()).getNumRows());
+            FastArmorBlockReader status = shard.getColumnReader("status");
+            while (status.hasNext()) {
+              FastArmorBlock block = status.getIntegerBlock(10);
+              for (int r = 0; r < block.getNumRows(); r++) {
+                if (block.getValuesIsNull() == null || !block.getValuesIsNull()[r])
+                  sum += block.getIntValueArray()[r];
+              }
+            }
+          }
+        }
+        assertEquals(9, numShards);
+        assertEquals(expected, sum);
+      }
+      // A pool given to the reader is left to the caller.
+      reader.close();
+      assertFalse(threadPool.isShutdown());
+    } finally {
+      threadPool.shutdown();
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void sharedColumn() throws Exception {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(8);
+    try {
+      writeDays(testDirectory, 1, 500);
+      CachingReadStore store = new CachingReadStore(new FileReadStore(testDirectory), Long.MAX_VALUE);
+      ShardId shardId = store.findShardIds(TENANT, TABLE, DAILY, FIRST_DAY).get(0);
+      FastArmorShardColumn column = store.getFastArmorShard(shardId, "vuln");
+      assertSame(column, store.getFastArmorShard(shardId, "vuln"));
+      assertEquals(column.memoryUsage(), store.cachedBytes());
+
+      // Every reader is its own cursor over the one decoded copy.
+      List<Future<String>> results = new ArrayList<>();
+      for (int t = 0; t < 16; t++) {
+        results.add(threadPool.submit(() -> {
+          StringBuilder values = new StringBuilder();
+          FastArmorBlockReader reader = store.getFastArmorShard(shardId, "vuln").getFastArmorColumnReader();
+          while (reader.hasNext()) {
+            FastArmorBlock block = reader.getStringBlock(13);
+            values.append(block.getSlice().toStringUtf8());
+          }
+          return values.toString();
+        }));
+      }
+      String expected = results.get(0).get();
+      assertTrue(expected.contains("vuln1"));
+      for (Future<String> result : results)
+        assertEquals(expected, result.get());
+
+      store.invalidate(shardId);
+      assertEquals(0, store.cachedBytes());
+      assertNotSame(column, store.getFastArmorShard(shardId, "vuln"));
+    } finally {
+      threadPool.shutdown();
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void memoryBudget() throws Exception {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    try {
+      writeDays(testDirectory, 1, 500);
+      ShardId shardId = new FileReadStore(testDirectory).findShardIds(TENANT, TABLE, DAILY, FIRST_DAY).get(0);
+      long statusBytes = new FileReadStore(testDirectory).getFastArmorShard(shardId, "status").memoryUsage();
+      long timeBytes = new FileReadStore(testDirectory).getFastArmorShard(shardId, "time").memoryUsage();
+
+      // Room for one of the columns, loading the other evicts it instead of going over budget.
+      ReadMemoryManager manager = new ReadMemoryManager(Math.max(statusBytes, timeBytes) + 1);
+      CachingReadStore store = new CachingReadStore(new FileReadStore(testDirectory), Long.MAX_VALUE, manager);
+      FastArmorShardColumn status = store.getFastArmorShard(shardId, "status");
+      assertEquals(statusBytes, manager.getReservedBytes());
+      assertEquals(store.cachedBytes(), manager.getReservedBytes());
+
+      store.getFastArmorShard(shardId, "time");
+      assertEquals(timeBytes, manager.getReservedBytes());
+      assertEquals(store.cachedBytes(), manager.getReservedBytes());
+      assertTrue(manager.getEvictedBytes() >= statusBytes);
+      assertEquals(0, manager.getWaits());
+      assertNotSame(status, store.getFastArmorShard(shardId, "status"));
+      assertTrue(manager.getPeakReservedBytes() <= manager.getMaxBytes());
+
+      store.invalidateAll();
+      assertEquals(0, manager.getReservedBytes());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void failedLoadIsNotCached() throws Exception {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    try {
+      writeDays(testDirectory, 1, 500);
+      AtomicBoolean fail = new AtomicBoolean(true);
+      FileReadStore delegate = new FileReadStore(testDirectory) {
+        @Override
+        public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName, boolean withEntityDictionary) {
+          if (fail.get())
+            throw new OutOfMemoryError("Test failure");
+          return super.getFastArmorShard(shardId, columnName, withEntityDictionary);
+        }
+      };
+      ReadMemoryManager manager = new ReadMemoryManager(Long.MAX_VALUE);
+      CachingReadStore store = new CachingReadStore(delegate, Long.MAX_VALUE, manager);
+      ShardId shardId = store.findShardIds(TENANT, TABLE, DAILY, FIRST_DAY).get(0);
+
+      // Errors aren't exceptions but still release the reservation and leave the column to be loaded again.
+      assertThrows(OutOfMemoryError.class, () -> store.getFastArmorShard(shardId, "status"));
+      assertEquals(0, manager.getReservedBytes());
+      assertEquals(0, store.cachedBytes());
+      fail.set(false);
+      FastArmorShardColumn status = store.getFastArmorShard(shardId, "status");
+      assertEquals(status.memoryUsage(), manager.getReservedBytes());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void closeCancelsScheduledReads() throws Exception {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    try {
+      writeDays(testDirectory, 3, 40);
+      AtomicInteger loads = new AtomicInteger();
+      FileReadStore store = new FileReadStore(testDirectory) {
+        @Override
+        public FastArmorShardColumn getFastArmorShard(ShardId shardId, String columnName, boolean withEntityDictionary) {
+          loads.incrementAndGet();
+          return super.getFastArmorShard(shardId, columnName, withEntityDictionary);
+        }
+      };
+      // Runs the first tasks right away and queues the rest, so the scan is closed with reads that haven't started.
+      AtomicInteger runNow = new AtomicInteger(Integer.MAX_VALUE);
+      List<Runnable> queued = new ArrayList<>();
+      Executor executor = task -> {
+        if (runNow.getAndDecrement() > 0)
+          task.run();
+        else
+          queued.add(task);
+      };
+      List<ShardId> shardIds = store.findShardIds(TENANT, TABLE, DAILY);
+      FastArmorScan scan = new FastArmorScan(store, executor, shardIds, COLUMNS, null, false, 7, Long.MAX_VALUE);
+      // The column loads and first read of the first shard.
+      runNow.set(COLUMNS.size() + 1);
+      scan.next();
+      assertEquals(COLUMNS.size(), loads.get());
+      assertFalse(queued.isEmpty());
+      scan.close();
+      while (!queued.isEmpty())
+        queued.remove(0).run();
+      assertEquals(COLUMNS.size(), loads.get());
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void budgetEstimatesReuseShardMetadata() throws Exception {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(4);
+    try {
+      writeDays(testDirectory, 3, 40);
+      AtomicInteger metadataReads = new AtomicInteger();
+      FileReadStore store = new FileReadStore(testDirectory) {
+        @Override
+        public ShardMetadata getShardMetadata(ShardId shardId) {
+          metadataReads.incrementAndGet();
+          return super.getShardMetadata(shardId);
+        }
+      };
+      int numShards = store.findShardIds(TENANT, TABLE, DAILY).size();
+      ReadMemoryManager manager = new ReadMemoryManager(Long.MAX_VALUE);
+      FastArmorReader reader = new FastArmorReader(store, new ModShardStrategy(3), threadPool, manager);
+      List<String> projection = Arrays.asList("status", "time", "vuln");
+
+      // The columns are estimated from the metadata fetched to plan the scan, not fetched again per column.
+      sumStatus(reader.scan(TENANT, TABLE, DAILY, null, projection, null, false, 7, Long.MAX_VALUE), new ArrayList<>());
+      assertEquals(numShards, metadataReads.getAndSet(0));
+      try (FastArmorShardCursor cursor = reader.openCursor(TENANT, TABLE, DAILY, null, projection)) {
+        while (cursor.hasNext())
+          cursor.next();
+      }
+      assertEquals(numShards, metadataReads.getAndSet(0));
+      for (ShardId shardId : store.findShardIds(TENANT, TABLE, DAILY))
+        reader.aggregate(shardId, "status", EnumSet.of(AggregateFunction.SUM), null);
+      assertEquals(numShards, metadataReads.getAndSet(0));
+      assertEquals(0, manager.getReservedBytes());
+    } finally {
+      threadPool.shutdownNow();
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void readerMemoryBudget() throws Exception {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    ExecutorService threadPool = Executors.newFixedThreadPool(4);
+    try {
+      writeDays(testDirectory, 3, 40);
+      ReadMemoryManager manager = new ReadMemoryManager(Long.MAX_VALUE);
+      FileReadStore store = new FileReadStore(testDirectory);
+      FastArmorReader reader = new FastArmorReader(store, new ModShardStrategy(3), threadPool, manager);
+      List<String> projection = Arrays.asList("status", "time", "vuln");
+
+      // Columns are held while they are read and given back once the reader is done with them.
+      reader.aggregate(TENANT, TABLE, DAILY, FIRST_DAY, "status", EnumSet.of(AggregateFunction.SUM), null);
+      assertTrue(manager.getPeakReservedBytes() > 0);
+      assertEquals(0, manager.getReservedBytes());
+      assertEquals(2, reader.getEntities(TENANT, TABLE, DAILY, FIRST_DAY, Arrays.asList("entity1", "entity2"), projection).size());
+      assertEquals(0, manager.getReservedBytes());
+      assertEquals(3, reader.getEntityHistory(TENANT, TABLE, DAILY, null, "entity1", projection).count());
+      assertEquals(0, manager.getReservedBytes());
+      reader.getColumn(store.findShardIds(TENANT, TABLE, DAILY, FIRST_DAY).get(0), "status");
+      assertEquals(0, manager.getReservedBytes());
+
+      sumStatus(reader.scan(TENANT, TABLE, DAILY, null, projection, null, false, 7, 1024), new ArrayList<>());
+      assertEquals(0, manager.getReservedBytes());
+      try (FastArmorShardCursor cursor = reader.openCursor(TENANT, TABLE, DAILY, null, projection)) {
+        while (cursor.hasNext())
+          cursor.next();
+      }
+      assertEquals(0, manager.getReservedBytes());
+
+      // Closed part way, loads still running give their columns back once they finish.
+      FastArmorScan scan = reader.scan(TENANT, TABLE, DAILY, null, projection, null, false, 7, Long.MAX_VALUE);
+      scan.next();
+      scan.close();
+      FastArmorShardCursor cursor = reader.openCursor(TENANT, TABLE, DAILY, null, projection);
+      cursor.next();
+      cursor.close();
+      threadPool.shutdown();
+      assertTrue(threadPool.awaitTermination(30, TimeUnit.SECONDS));
+      assertEquals(0, manager.getReservedBytes());
+
+      // A caching store already holds its columns against the budget.
+      ShardId shardId = store.findShardIds(TENANT, TABLE, DAILY, FIRST_DAY).get(0);
+      ReadMemoryManager cacheManager = new ReadMemoryManager(store.getFastArmorShard(shardId, "status").memoryUsage());
+      CachingReadStore cachingStore = new CachingReadStore(store, Long.MAX_VALUE, cacheManager);
+      assertThrows(IllegalArgumentException.class, () -> new FastArmorReader(cachingStore, null, threadPool, cacheManager));
+      cachingStore.getFastArmorShard(shardId, "status");
+      assertTrue(cacheManager.getReservedBytes() > 0);
+      cachingStore.close();
+      assertEquals(0, cacheManager.getReservedBytes());
+      // Closed caches are no longer asked to evict.
+      cachingStore.getFastArmorShard(shardId, "status");
+      long cached = cachingStore.cachedBytes();
+      assertFalse(cacheManager.tryReserve(1, 10, TimeUnit.MILLISECONDS));
+      assertEquals(cached, cachingStore.cachedBytes());
+    } finally {
+      threadPool.shutdownNow();
+      removeDirectory(testDirectory);
+    }
+  }
+}
@@ -11,6 +11,7 @@ import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -23,12 +24,14 @@ import java.util.stream.IntStream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import com.rapid7.armor.entity.ColumnarBatch;
 import com.rapid7.armor.entity.Entity;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.entity.Row;
 import com.rapid7.armor.interval.Interval;
 import com.rapid7.armor.io.Compression;
 import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.meta.ShardMetadata;
 import com.rapid7.armor.read.fast.FastArmorBlock;
 import com.rapid7.armor.read.fast.FastArmorBlockReader;
 import com.rapid7.armor.read.fast.FastArmorReader;
@@ -44,6 +47,8 @@ import com.rapid7.armor.store.FileWriteStore;
 import com.rapid7.armor.write.component.RowGroupWriter;
 import com.rapid7.armor.write.writers.ArmorWriter;
 import com.rapid7.armor.write.writers.EntityIdTypeException;
+import com.rapid7.armor.write.writers.MemoryAccountant;
+import com.rapid7.armor.write.writers.MemoryBudgetExceededException;
 import com.rapid7.armor.xact.XactError;
 
 import tech.tablesaw.api.IntColumn;
@@ -594,6 +599,179 @@ public class FileStoreV2Test {
   }
 
 
+  @Test
+  public void deleteSkipsShardWithoutEntity() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(1));
+    Entity texas = generateEntity("texas", 1, texasVuln);
+    Entity cali = generateEntity("cali", 1, caliVuln);
+    try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 1, null, null)) {
+      writer.begin();
+      writer.write(TENANT, TABLE, INTERVAL, TIMESTAMP, Arrays.asList(texas, cali));
+      writer.commit();
+    }
+    try (ArmorWriter writer = new ArmorWriter("aw2", store, Compression.ZSTD, 1, null, null)) {
+      ShardId shardId = store.findShardId(TENANT, TABLE, INTERVAL, TIMESTAMP, "texas");
+      ShardMetadata shardMetadata = store.getShardMetadata(shardId);
+      Assertions.assertNotNull(shardMetadata.getEntityFilter());
+      Assertions.assertTrue(shardMetadata.mayContainEntity("texas"));
+      Assertions.assertTrue(shardMetadata.mayContainEntity("cali"));
+      Assertions.assertFalse(shardMetadata.mayContainEntity("ohio"));
+      // The deserialized filter is kept, replacing the filter bytes drops it.
+      ShardMetadata copy = new ShardMetadata(shardId, shardMetadata.getColumnMetadata());
+      copy.setEntityFilter(shardMetadata.getEntityFilter());
+      Assertions.assertFalse(copy.mayContainEntity("ohio"));
+      copy.setEntityFilter(null);
+      Assertions.assertTrue(copy.mayContainEntity("ohio"));
+
+      // Deleting an entity the shard doesn't hold never loads the shard.
+      writer.begin();
+      writer.delete(TENANT, TABLE, INTERVAL, TIMESTAMP, new Entity(ASSET_ID, "ohio", 2, null));
+      Assertions.assertNull(writer.columnEntityRecords(TENANT, TABLE, INTERVAL, TIMESTAMP, "status", shardId.getShardNum()));
+      writer.delete(TENANT, TABLE, INTERVAL, TIMESTAMP, new Entity(ASSET_ID, "texas", 2, null));
+      Assertions.assertNotNull(writer.columnEntityRecords(TENANT, TABLE, INTERVAL, TIMESTAMP, "status", shardId.getShardNum()));
+      writer.commit();
+      verifyEntityDeletedReaderPOV(texas, testDirectory);
+      verifyEntityReaderPOV(cali, testDirectory);
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
+  @Test
+  public void bulkDelete() throws IOException {
+    for (Compression compression : Compression.values()) {
+      Path testDirectory = Files.createTempDirectory("filestore");
+      FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(10));
+      try {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+          entities.add(generateEntity("entity" + i, 1, texasVuln, caliVuln));
+        try (ArmorWriter writer = new ArmorWriter("aw1", store, compression, 10, null, null)) {
+          writer.begin();
+          writer.write(TENANT, TABLE, INTERVAL, TIMESTAMP, entities);
+          writer.commit();
+        }
+
+        List<Entity> deletes = new ArrayList<>();
+        for (int i = 0; i < 100; i += 2)
+          deletes.add(new Entity(ASSET_ID, "entity" + i, 2, null));
+        deletes.add(new Entity(ASSET_ID, "missing", 2, null));
+        // A stale version never deletes.
+        deletes.add(new Entity(ASSET_ID, "entity1", 0, null));
+        try (ArmorWriter writer = new ArmorWriter("aw2", store, compression, 10, null, null)) {
+          writer.begin();
+          writer.delete(TENANT, TABLE, INTERVAL, TIMESTAMP, deletes);
+          writer.commit();
+        }
+        verifyTableReaderPOV(100, testDirectory, 10);
+        verifyEntityDeletedReaderPOV(entities.get(0), testDirectory);
+        verifyEntityReaderPOV(entities.get(1), testDirectory);
+
+        // The entity id column is checked even when every shard of the deletes is already loaded.
+        try (ArmorWriter writer = new ArmorWriter("aw3", store, compression, 10, null, null)) {
+          writer.begin();
+          writer.write(TENANT, TABLE, INTERVAL, TIMESTAMP, Arrays.asList(generateEntity("entity1", 3, texasVuln)));
+          List<Entity> wrongColumn = Arrays.asList(new Entity("otherId", "entity1", 4, null));
+          Assertions.assertThrows(RuntimeException.class, () -> writer.delete(TENANT, TABLE, INTERVAL, TIMESTAMP, wrongColumn));
+          List<Entity> mixedColumns = Arrays.asList(new Entity(ASSET_ID, "entity1", 4, null), new Entity("otherId", "entity3", 4, null));
+          Assertions.assertThrows(RuntimeException.class, () -> writer.delete(TENANT, TABLE, INTERVAL, TIMESTAMP, mixedColumns));
+          writer.commit();
+        }
+        verifyEntityReaderPOV(generateEntity("entity1", 3, texasVuln), testDirectory);
+      } finally {
+        removeDirectory(testDirectory);
+      }
+    }
+  }
+
+  @Test
+  public void columnarBatchWrite() throws IOException {
+    for (Compression compression : Compression.values()) {
+      Path testDirectory = Files.createTempDirectory("filestore");
+      FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(10));
+      try (ArmorWriter writer = new ArmorWriter("aw1", store, compression, 10, null, null)) {
+        int numEntities = 50;
+        Object[] entityIds = new Object[numEntities];
+        long[] versions = new long[numEntities];
+        int[] rowCounts = new int[numEntities];
+        for (int i = 0; i < numEntities; i++) {
+          entityIds[i] = "entity" + i;
+          versions[i] = 1;
+          rowCounts[i] = i % 4;
+        }
+        ColumnarBatch batch = new ColumnarBatch(ASSET_ID, entityIds, versions, null, rowCounts);
+        int numRows = batch.getNumRows();
+        int[] status = new int[numRows];
+        long[] time = new long[numRows];
+        String[] vuln = new String[numRows];
+        BitSet nulls = new BitSet();
+        for (int row = 0; row < numRows; row++) {
+          status[row] = row;
+          time[row] = 1000L + row;
+          vuln[row] = row % 5 == 0 ? null : STATE_ROWS[row % STATE_ROWS.length].getColumns().get(2).toString();
+          if (row % 3 == 0)
+            nulls.set(row);
+        }
+        batch.addColumn(COLUMNS.get(0), status, nulls);
+        batch.addColumn(COLUMNS.get(1), time, nulls);
+        batch.addColumn(COLUMNS.get(2), vuln, null);
+
+        writer.begin();
+        writer.write(TENANT, TABLE, INTERVAL, TIMESTAMP, batch);
+        writer.commit();
+        verifyTableReaderPOV(numRows, testDirectory, 10);
+        for (int i = 0; i < numEntities; i++) {
+          if (batch.getRowCount(i) > 0)
+            verifyEntityReaderPOV(batch.toEntity(i), testDirectory);
+        }
+      } finally {
+        removeDirectory(testDirectory);
+      }
+    }
+  }
+
+  @Test
+  public void memoryBudget() throws IOException {
+    Path testDirectory = Files.createTempDirectory("filestore");
+    FileWriteStore store = new FileWriteStore(testDirectory, new ModShardStrategy(10));
+    List<Entity> first = new ArrayList<>();
+    List<Entity> second = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      first.add(generateEntity("entity" + i, 1, texasVuln, caliVuln));
+      second.add(generateEntity("entity" + (i + 50), 1, zonaVuln));
+    }
+    // A budget this small is exceeded by any shard, so a write only goes through when nothing else is held.
+    MemoryAccountant accountant = new MemoryAccountant(1, 0);
+    try (ArmorWriter writer = new ArmorWriter("aw1", store, Compression.ZSTD, 10, null, null)) {
+      writer.setMemoryAccountant(accountant);
+      writer.begin();
+      writer.write(TENANT, TABLE, INTERVAL, TIMESTAMP, first);
+      Assertions.assertTrue(accountant.getUsed() > 0);
+      Assertions.assertEquals(0, accountant.getReserved());
+      // The shards written to can't be evicted before they are committed.
+      Assertions.assertThrows(MemoryBudgetExceededException.class, () -> writer.write(TENANT, TABLE, INTERVAL, TIMESTAMP, second));
+      Assertions.assertEquals(1, accountant.getRejected());
+      Assertions.assertEquals(0, accountant.getReserved());
+      writer.commit();
+      // Once committed every shard writer is evicted to get back under the budget.
+      Assertions.assertEquals(0, accountant.getUsed());
+      ShardId shardId = store.findShardId(TENANT, TABLE, INTERVAL, TIMESTAMP, "entity0");
+      Assertions.assertNull(writer.columnEntityRecords(TENANT, TABLE, INTERVAL, TIMESTAMP, "status", shardId.getShardNum()));
+
+      // Evicted shards are loaded back from the store.
+      writer.begin();
+      writer.write(TENANT, TABLE, INTERVAL, TIMESTAMP, second);
+      writer.commit();
+      Assertions.assertEquals(0, accountant.getUsed());
+      verifyTableReaderPOV(150, testDirectory, 10);
+      verifyEntityReaderPOV(first.get(0), testDirectory);
+      verifyEntityReaderPOV(second.get(0), testDirectory);
+    } finally {
+      removeDirectory(testDirectory);
+    }
+  }
+
   @Test
   public void verifySameXactError() throws IOException {
     Path testDirectory = Files.createTempDirectory("filestore");
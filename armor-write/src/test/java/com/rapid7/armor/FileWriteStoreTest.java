@@ -272,13 +272,14 @@ public class FileWriteStoreTest {
           Map<Integer, EntityRecord> records5 = amrorWriter2.columnEntityRecords(myorg, table, SINGLE, Instant.now(), "vuln", 0);
           ColumnMetadata md5 = amrorWriter2.columnMetadata(myorg, table, SINGLE, Instant.now(), "vuln", 0);
           assertEquals(2, records5.size());
-          assertEquals(Integer.valueOf(0), Integer.valueOf(md5.getFragmentationLevel()));
+          // The fragmentation is at the trigger so the writer appended the rows without compacting.
+          assertEquals(Integer.valueOf(20), Integer.valueOf(md5.getFragmentationLevel()));
           assertEquals(Double.valueOf(6.0), md5.getMaxValue());
           assertEquals(Double.valueOf(-1.0), md5.getMinValue());
           assertEquals(8, md5.getNumRows());
           assertEquals(2, md5.getNumEntities());
           checkEntityIndexRecord(records5.get(2), 0, 20, 15, (byte) 0);
-          checkEntityIndexRecord(records5.get(3), 35, 12, 18, (byte) 0);
+          checkEntityIndexRecord(records5.get(3), 43, 12, 18, (byte) 0);
 
           amrorWriter2.close(); // Close this FS and open a new one to test the load.
 
@@ -286,7 +287,7 @@ public class FileWriteStoreTest {
           ShardId zeroShardId = ShardId.buildShardId(myorg, table, SINGLE, Instant.now(), 0);
           ColumnMetadata aShard = armorReader.getColumnMetadata(zeroShardId, "vuln");
           assertEquals(DataType.INTEGER, aShard.getColumnType());
-          assertEquals(Integer.valueOf(0), Integer.valueOf(aShard.getFragmentationLevel()));
+          assertEquals(Integer.valueOf(20), Integer.valueOf(aShard.getFragmentationLevel()));
           assertEquals(Double.valueOf(6.0), aShard.getMaxValue());
           assertEquals(Double.valueOf(-1.0), aShard.getMinValue());
           assertEquals(8, aShard.getNumRows());
@@ -302,7 +303,7 @@ public class FileWriteStoreTest {
           FastArmorReader fastArmorReader = new FastArmorReader(fileReadStore);
           ColumnMetadata rShard = armorReader.getColumnMetadata(zeroShardId, "vuln");
           assertEquals(DataType.INTEGER, rShard.getColumnType());
-          assertEquals(Integer.valueOf(0), Integer.valueOf(rShard.getFragmentationLevel()));
+          assertEquals(Integer.valueOf(20), Integer.valueOf(rShard.getFragmentationLevel()));
           assertEquals(Double.valueOf(6.0), rShard.getMaxValue());
           assertEquals(Double.valueOf(-1.0), rShard.getMinValue());
           assertEquals(8, rShard.getNumRows());
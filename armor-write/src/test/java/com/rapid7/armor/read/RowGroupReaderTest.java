@@ -0,0 +1,86 @@
+package com.rapid7.armor.read;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.luben.zstd.Zstd;
+
+public class RowGroupReaderTest {
+  private static byte[] rowGroup(int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++)
+      bytes[i] = (byte) i;
+    return bytes;
+  }
+
+  private static void readEntities(RowGroupReader reader) throws IOException {
+    // Ten bytes of a deleted entity, then five bytes of values and a three byte null bitmap.
+    reader.skipTo(10);
+    byte[] values = new byte[5];
+    reader.readFully(values, 0, 5);
+    assertArrayEquals(new byte[] {10, 11, 12, 13, 14}, values);
+    ByteBuffer nullBitmap = reader.readNullBitmap(3);
+    assertEquals(3, nullBitmap.remaining());
+    assertEquals(15, nullBitmap.get());
+    assertEquals(0x12131415, reader.dataInputStream().readInt());
+    assertEquals(22, reader.position());
+    assertThrows(IllegalStateException.class, () -> reader.skipTo(21));
+  }
+
+  @Test
+  public void compressedRowGroup() throws IOException {
+    byte[] compressed = Zstd.compress(rowGroup(100));
+    try (RowGroupReader reader = new RowGroupReader(new ByteArrayInputStream(compressed), compressed.length, 100)) {
+      readEntities(reader);
+      reader.finish();
+      assertEquals(100, reader.position());
+    }
+  }
+
+  @Test
+  public void uncompressedRowGroup() throws IOException {
+    // The row group is followed by the next section which must be left in the stream.
+    byte[] section = Arrays.copyOf(rowGroup(100), 101);
+    section[100] = 42;
+    InputStream inputStream = new ByteArrayInputStream(section);
+    try (RowGroupReader reader = new RowGroupReader(inputStream, 0, 100)) {
+      readEntities(reader);
+      reader.finish();
+    }
+    assertEquals(42, inputStream.read());
+  }
+
+  @Test
+  public void sizeMismatch() throws IOException {
+    byte[] compressed = Zstd.compress(rowGroup(100));
+    try (RowGroupReader shorter = new RowGroupReader(new ByteArrayInputStream(compressed), compressed.length, 120)) {
+      readEntities(shorter);
+      assertThrows(EOFException.class, shorter::finish);
+    }
+    try (RowGroupReader longer = new RowGroupReader(new ByteArrayInputStream(compressed), compressed.length, 80)) {
+      readEntities(longer);
+      assertThrows(IllegalStateException.class, longer::finish);
+    }
+  }
+
+  @Test
+  public void readSection() throws IOException {
+    byte[] rowGroup = rowGroup(100);
+    byte[] compressed = Zstd.compress(rowGroup);
+    assertArrayEquals(rowGroup, BaseArmorShardColumn.readSection(new ByteArrayInputStream(compressed), compressed.length, 100));
+    assertArrayEquals(rowGroup, BaseArmorShardColumn.readSection(new ByteArrayInputStream(rowGroup), 0, 100));
+    assertThrows(IllegalStateException.class, () -> BaseArmorShardColumn.decompress(compressed, 120));
+    assertThrows(RuntimeException.class, () -> BaseArmorShardColumn.decompress(compressed, 80));
+    assertThrows(EOFException.class, () -> BaseArmorShardColumn.readSection(new ByteArrayInputStream(compressed), compressed.length + 1, 100));
+  }
+}
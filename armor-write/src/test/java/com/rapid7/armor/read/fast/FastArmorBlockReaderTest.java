@@ -0,0 +1,52 @@
+package com.rapid7.armor.read.fast;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import com.rapid7.armor.schema.DataType;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+public class FastArmorBlockReaderTest {
+  private static final int NUM_ROWS = 25;
+
+  private static FastArmorBlockReader reader(DataType dataType) {
+    // A single entity holding the values 0 to 24, followed by bytes that don't belong to the column.
+    ByteBuffer columnValues = ByteBuffer.allocate(dataType.determineByteLength(NUM_ROWS + 20));
+    for (int i = 0; i < NUM_ROWS + 20; i++) {
+      long value = i < NUM_ROWS ? i : -1;
+      if (dataType == DataType.LONG)
+        columnValues.putLong(value);
+      else
+        columnValues.putInt((int) value);
+    }
+    columnValues.flip();
+    return new FastArmorBlockReader(null, columnValues, new IntArrayList(), null, NUM_ROWS, 1,
+        new int[] {dataType.determineByteLength(NUM_ROWS)}, new int[] {NUM_ROWS}, dataType);
+  }
+
+  @Test
+  public void batchesStopAtTheLastRow() {
+    // Once the column is partly read the unrolled loop has to stop at the rows left in the column, not the rows of the batch.
+    for (DataType dataType : new DataType[] {DataType.INTEGER, DataType.LONG}) {
+      FastArmorBlockReader reader = reader(dataType);
+      int expected = 0;
+      int batches = 0;
+      while (reader.hasNext()) {
+        FastArmorBlock block = dataType == DataType.LONG ? reader.getLongBlock(12) : reader.getIntegerBlock(12);
+        for (int r = 0; r < block.getNumRows(); r++) {
+          long value = dataType == DataType.LONG ? block.getLongValueArray()[r] : block.getIntValueArray()[r];
+          assertEquals(expected++, value, dataType + " row " + r + " of batch " + batches);
+        }
+        batches++;
+      }
+      assertEquals(NUM_ROWS, expected, dataType.name());
+      assertEquals(3, batches, dataType.name());
+      assertFalse(reader.hasNext());
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package com.rapid7.armor.write.component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.rapid7.armor.Constants;
+import com.rapid7.armor.entity.EntityRecord;
+import com.rapid7.armor.interval.Interval;
+import com.rapid7.armor.io.ByteBufferPool;
+import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.schema.ColumnId;
+import com.rapid7.armor.schema.DataType;
+import com.rapid7.armor.shard.ColumnShardId;
+import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.write.component.RowGroupWriter.RgOffsetWriteResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RowGroupWriterTest {
+
+  @Test
+  public void appendEntityValues() throws IOException {
+    Path path = Files.createTempFile("rowgroup", "test");
+    ShardId shardId = new ShardId("tenant", "table", Interval.SINGLE.getInterval(), Interval.SINGLE.getIntervalStart(Instant.now()), 0);
+    ColumnShardId columnShardId = new ColumnShardId(shardId, new ColumnId("status", DataType.INTEGER.getCode()));
+    try (RowGroupWriter writer = new RowGroupWriter(path, columnShardId, null)) {
+      List<Object[]> values = Arrays.asList(new Object[] {1, null, 3}, new Object[] {}, new Object[] {4});
+      List<RgOffsetWriteResult> results = writer.appendEntityValues(values);
+      assertEquals(3, results.size());
+      assertEquals(0, results.get(0).rowGroupOffset);
+      assertEquals(12, results.get(0).valueLength);
+      int nullLength = (int) results.get(0).nullLength;
+      assertEquals(true, nullLength > 0);
+      assertEquals(12 + nullLength, results.get(1).rowGroupOffset);
+      assertEquals(0, results.get(1).valueLength);
+      assertEquals(12 + nullLength, results.get(2).rowGroupOffset);
+      assertEquals(0, results.get(2).nullLength);
+      assertEquals(Long.valueOf(12 + nullLength + 4), writer.getCurrentSize());
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void compactStreamsKeptRecords() throws IOException {
+    Path path = Files.createTempFile("rowgroup", "test");
+    ShardId shardId = new ShardId("tenant", "table", Interval.SINGLE.getInterval(), Interval.SINGLE.getIntervalStart(Instant.now()), 0);
+    ColumnShardId columnShardId = new ColumnShardId(shardId, new ColumnId("status", DataType.INTEGER.getCode()));
+    ByteBufferPool.shared().setLeakDetection(true);
+    try (RowGroupWriter writer = new RowGroupWriter(path, columnShardId, null)) {
+      List<Object[]> values = Arrays.asList(new Object[] {1, 2}, new Object[] {3}, new Object[] {4, null, 6});
+      List<RgOffsetWriteResult> results = writer.appendEntityValues(values);
+      List<EntityRecord> records = new ArrayList<>();
+      for (int i = 0; i < results.size(); i++) {
+        RgOffsetWriteResult result = results.get(i);
+        records.add(new EntityRecord(
+            i + 1, (int) result.rowGroupOffset, (int) result.valueLength, 1, (byte) 0, (int) result.nullLength, (int) result.decodedLength, null));
+      }
+      records.get(1).setDeleted((byte) 1);
+      EntityRecord filler = new EntityRecord(4, Constants.NULL_FILLER_INDICATOR, 8, 1, (byte) 0, 0, 0, null);
+      List<EntityRecord> kept = Arrays.asList(records.get(0), records.get(1), records.get(2), filler);
+
+      ColumnMetadata metadata = new ColumnMetadata();
+      metadata.setColumnType(DataType.INTEGER);
+      writer.compactAndUpdateMetadata(kept, metadata);
+      assertEquals(0, records.get(0).getRowGroupOffset());
+      assertEquals(8, records.get(2).getRowGroupOffset());
+      assertEquals(8 + records.get(2).totalLength(), filler.getRowGroupOffset());
+      assertEquals(Arrays.asList(1, 2), writer.getEntityValues(records.get(0)));
+      assertEquals(Arrays.asList(4, null, 6), writer.getEntityValues(records.get(2)));
+      assertEquals(Arrays.asList(null, null), writer.getEntityValues(filler));
+      assertEquals(Long.valueOf(filler.getRowGroupOffset() + filler.totalLength()), writer.getCurrentSize());
+      assertEquals(1d, metadata.getMinValue());
+      assertEquals(6d, metadata.getMaxValue());
+      assertEquals(3, metadata.getNullCount());
+
+      // Without metadata the kept records are transferred as they are.
+      writer.compact(Arrays.asList(filler, records.get(2)));
+      assertEquals(0, filler.getRowGroupOffset());
+      assertEquals(Arrays.asList(null, null), writer.getEntityValues(filler));
+      assertEquals(Arrays.asList(4, null, 6), writer.getEntityValues(records.get(2)));
+      // Every buffer taken from the pool along the way was given back.
+      assertEquals(Collections.emptyList(), ByteBufferPool.shared().getLeaks());
+    } finally {
+      ByteBufferPool.shared().setLeakDetection(false);
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void compactionFinishesMetadataUpdate() throws IOException {
+    Path path = Files.createTempFile("rowgroup", "test");
+    ShardId shardId = new ShardId("tenant", "table", Interval.SINGLE.getInterval(), Interval.SINGLE.getIntervalStart(Instant.now()), 0);
+    ColumnShardId columnShardId = new ColumnShardId(shardId, new ColumnId("status", DataType.INTEGER.getCode()));
+    ByteBufferPool.shared().setLeakDetection(true);
+    try (RowGroupWriter writer = new RowGroupWriter(path, columnShardId, null)) {
+      List<Object[]> values = Arrays.asList(new Object[] {1, 2, 2}, new Object[] {7, null, 1});
+      List<RgOffsetWriteResult> results = writer.appendEntityValues(values);
+      List<EntityRecord> records = new ArrayList<>();
+      for (int i = 0; i < results.size(); i++) {
+        RgOffsetWriteResult result = results.get(i);
+        records.add(new EntityRecord(
+            i + 1, (int) result.rowGroupOffset, (int) result.valueLength, 1, (byte) 0, (int) result.nullLength, (int) result.decodedLength, null));
+      }
+      ColumnMetadata metadata = new ColumnMetadata();
+      metadata.setColumnType(DataType.INTEGER);
+      writer.compactAndUpdateMetadata(records, metadata);
+      // The update is finished at compaction, which is where the cardinality is computed.
+      assertEquals(3, metadata.getCardinality());
+      assertEquals(1d, metadata.getMinValue());
+      assertEquals(7d, metadata.getMaxValue());
+
+      // A compaction that fails part way leaves the previous min and max as they were, each in its own place.
+      EntityRecord corrupt = new EntityRecord(3, records.get(0).getRowGroupOffset(), 4, 1, (byte) 0, 8, 4, null);
+      assertThrows(Exception.class, () -> writer.compactAndUpdateMetadata(Arrays.asList(records.get(1), corrupt), metadata));
+      assertEquals(1d, metadata.getMinValue());
+      assertEquals(7d, metadata.getMaxValue());
+      // The buffers of the updater are given back on success and failure.
+      assertEquals(Collections.emptyList(), ByteBufferPool.shared().getLeaks());
+    } finally {
+      ByteBufferPool.shared().setLeakDetection(false);
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public void utf8Length() {
+    for (String value : new String[] {"", "texas", "caf\u00e9", "\u20ac100", "\ud83d\ude00 smile"})
+      assertEquals(value.getBytes(StandardCharsets.UTF_8).length, RowGroupWriter.utf8Length(value));
+  }
+}
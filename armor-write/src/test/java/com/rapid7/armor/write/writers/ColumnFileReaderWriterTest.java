@@ -1,32 +1,46 @@
 package com.rapid7.armor.write.writers;
 
+import com.rapid7.armor.Constants;
 import com.rapid7.armor.columnfile.ColumnFileListener;
 import com.rapid7.armor.columnfile.ColumnFileReader;
 import com.rapid7.armor.columnfile.ColumnFileSection;
+import com.rapid7.armor.columnfile.ZoneMap;
 import com.rapid7.armor.entity.Column;
 import com.rapid7.armor.entity.EntityRecord;
 import com.rapid7.armor.entity.EntityRecordSummary;
 import com.rapid7.armor.interval.Interval;
 import com.rapid7.armor.io.Compression;
 import com.rapid7.armor.meta.ColumnMetadata;
+import com.rapid7.armor.read.fast.ColumnFileChunkReader;
+import com.rapid7.armor.read.fast.FastArmorBlock;
+import com.rapid7.armor.read.fast.FastArmorRowRange;
+import com.rapid7.armor.read.fast.FastArmorShardColumn;
+import com.rapid7.armor.read.predicate.NumericPredicate;
+import com.rapid7.armor.read.predicate.Predicate;
+import com.rapid7.armor.read.predicate.StringPredicate;
 import com.rapid7.armor.schema.ColumnId;
 import com.rapid7.armor.schema.DataType;
 import com.rapid7.armor.shard.ColumnShardId;
 import com.rapid7.armor.shard.ModShardStrategy;
 import com.rapid7.armor.shard.ShardId;
+import com.rapid7.armor.store.Operator;
 import com.rapid7.armor.write.StreamProduct;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Instant;
 import java.util.*;
 
 import com.rapid7.armor.write.WriteRequest;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class ColumnFileReaderWriterTest {
@@ -86,6 +100,353 @@ public class ColumnFileReaderWriterTest {
       return;
    }
 
+   @Test
+   public void testDenseRowGroupV3()
+      throws IOException {
+      ColumnId testColumn = new ColumnId("status", DataType.INTEGER.getCode());
+      ColumnShardId columnShardId = new ColumnShardId(new ShardId(TENANT, TABLE, INTERVAL.getInterval(), INTERVAL.getIntervalStart(TIMESTAMP), 1), testColumn);
+      ColumnFileWriter cfw = new ColumnFileWriter(columnShardId);
+      List<WriteRequest> requests = new ArrayList<>();
+      for (int i = 1; i <= 20; i++) {
+         Column column = new Column(testColumn);
+         // Entity i has i rows, every third row is null.
+         for (int r = 0; r < i; r++)
+            column.addValue(r % 3 == 1 ? null : i * 100 + r);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, column));
+      }
+      cfw.write(requests);
+      cfw.delete(5, 2, TEST_UUID);
+
+      byte[] v2 = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_2));
+      byte[] v3 = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_3));
+      byte[] v3Uncompressed = bytesFromStreamProduct(cfw.buildInputStream(Compression.NONE, Constants.ColumnFileFormatVersion.VERSION_3));
+      List<ColumnFileSection> sections = new ArrayList<>();
+      runColumnFileListener(v3, (section, metadata, is, compressed, uncompressed) -> {
+         sections.add(section);
+         if (section == ColumnFileSection.ROWGROUP)
+            assertEquals(metadata.getNumRows() * 4, uncompressed); // Only the values
+         return 0;
+      });
+      assertTrue(sections.contains(ColumnFileSection.NULL_BITMAP));
+
+      List<Integer> expected = readValues(v2);
+      assertEquals(20 * 21 / 2 - 5, expected.size());
+      assertEquals(expected, readValues(v3));
+      assertEquals(expected, readValues(v3Uncompressed));
+
+      // A version 3 file loads back into a writer that can keep appending.
+      ColumnFileWriter reloaded = new ColumnFileWriter(new DataInputStream(new ByteArrayInputStream(v3)), columnShardId);
+      Column column = new Column(testColumn);
+      column.addValue(null);
+      column.addValue(2100);
+      reloaded.write(Collections.singletonList(new WriteRequest(21, 1, TEST_UUID, column)));
+      List<Integer> appended = new ArrayList<>(expected);
+      appended.add(null);
+      appended.add(2100);
+      assertEquals(appended, readValues(bytesFromStreamProduct(reloaded.buildInputStream(Compression.ZSTD))));
+      assertEquals(appended, readValues(bytesFromStreamProduct(reloaded.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_2))));
+      cfw.close();
+      reloaded.close();
+   }
+
+   @Test
+   public void testStreamedLoad()
+      throws IOException {
+      ColumnId testColumn = new ColumnId("status", DataType.INTEGER.getCode());
+      ColumnShardId columnShardId = new ColumnShardId(new ShardId(TENANT, TABLE, INTERVAL.getInterval(), INTERVAL.getIntervalStart(TIMESTAMP), 1), testColumn);
+      ColumnFileWriter cfw = new ColumnFileWriter(columnShardId);
+      List<WriteRequest> requests = new ArrayList<>();
+      // Sections well over the buffer the load streams them through.
+      for (int i = 1; i <= 30; i++) {
+         Column column = new Column(testColumn);
+         for (int r = 0; r < 1000; r++)
+            column.addValue(r % 7 == 3 ? null : i * 10000 + r);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, column));
+      }
+      cfw.write(requests);
+      cfw.delete(12, 2, TEST_UUID);
+      List<Integer> expected = readValues(bytesFromStreamProduct(cfw.buildInputStream(Compression.NONE, Constants.ColumnFileFormatVersion.VERSION_2)), 30000);
+      assertEquals(29 * 1000, expected.size());
+
+      for (Compression compression : Compression.values()) {
+         for (Constants.ColumnFileFormatVersion version : Arrays.asList(Constants.ColumnFileFormatVersion.VERSION_2, Constants.ColumnFileFormatVersion.VERSION_3)) {
+            byte[] bytes = bytesFromStreamProduct(cfw.buildInputStream(compression, version));
+            ColumnFileWriter reloaded = new ColumnFileWriter(new DataInputStream(new ByteArrayInputStream(bytes)), columnShardId);
+            assertEquals(expected, readValues(bytesFromStreamProduct(reloaded.buildInputStream(Compression.NONE)), 30000), compression + " " + version);
+            assertEquals(cfw.getMetadata().getNumRows(), reloaded.getMetadata().getNumRows());
+            reloaded.close();
+         }
+      }
+      cfw.close();
+   }
+
+   @Test
+   public void testIncrementalStats()
+      throws IOException {
+      ColumnId testColumn = new ColumnId("status", DataType.INTEGER.getCode());
+      ColumnShardId columnShardId = new ColumnShardId(new ShardId(TENANT, TABLE, INTERVAL.getInterval(), INTERVAL.getIntervalStart(TIMESTAMP), 1), testColumn);
+      ColumnFileWriter cfw = new ColumnFileWriter(columnShardId);
+      // Version 3 is opt in so files stay readable by readers that don't know it yet.
+      assertEquals(Constants.ColumnFileFormatVersion.VERSION_2, cfw.getFormatVersion());
+      cfw.setFormatVersion(Constants.ColumnFileFormatVersion.VERSION_3);
+      List<WriteRequest> requests = new ArrayList<>();
+      for (int i = 1; i <= 3; i++) {
+         Column column = new Column(testColumn);
+         column.addValue(i * 10);
+         column.addValue(null);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, column));
+      }
+      cfw.write(requests);
+      assertEquals(Arrays.asList(10, null, 20, null, 30, null), readValues(bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD))));
+      ColumnMetadata metadata = cfw.getMetadata();
+      assertTrue(metadata.getStatsExact());
+      assertEquals(10d, metadata.getMinValue(), 0);
+      assertEquals(30d, metadata.getMaxValue(), 0);
+
+      // Overwriting entity 1 appends its values, the file is still written dense in the order compaction would leave.
+      Column column = new Column(testColumn);
+      column.addValue(40);
+      cfw.write(Collections.singletonList(new WriteRequest(1, 2, TEST_UUID, column)));
+      cfw.delete(3, 2, TEST_UUID);
+      byte[] v3 = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD));
+      assertEquals(Arrays.asList(20, null, 40), readValues(v3));
+      assertFalse(metadata.getStatsExact());
+      assertEquals(10d, metadata.getMinValue(), 0); // Widened, the overwritten and deleted values are still in the range
+      assertEquals(40d, metadata.getMaxValue(), 0);
+      assertEquals(3, metadata.getNumRows());
+      assertEquals(2, metadata.getNumEntities());
+      assertEquals(0, metadata.getFragmentationLevel());
+      assertEquals(readValues(v3), readValues(bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_2))));
+
+      // Compaction brings the range back to exact.
+      cfw.setAlwaysCompact(true);
+      assertEquals(readValues(v3), readValues(bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD))));
+      assertTrue(metadata.getStatsExact());
+      assertEquals(20d, metadata.getMinValue(), 0);
+      assertEquals(40d, metadata.getMaxValue(), 0);
+      cfw.close();
+   }
+
+   @Test
+   public void testIncrementalStatsV2()
+      throws IOException {
+      ColumnId testColumn = new ColumnId("status", DataType.INTEGER.getCode());
+      ColumnShardId columnShardId = new ColumnShardId(new ShardId(TENANT, TABLE, INTERVAL.getInterval(), INTERVAL.getIntervalStart(TIMESTAMP), 1), testColumn);
+      ColumnFileWriter cfw = new ColumnFileWriter(columnShardId);
+      List<WriteRequest> requests = new ArrayList<>();
+      for (int i = 1; i <= 3; i++) {
+         Column column = new Column(testColumn);
+         column.addValue(i * 10);
+         column.addValue(null);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, column));
+      }
+      cfw.write(requests);
+      assertEquals(Arrays.asList(10, null, 20, null, 30, null), readValues(bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD))));
+      ColumnMetadata metadata = cfw.getMetadata();
+      assertNull(metadata.getLastCompaction());
+
+      // Under the fragmentation trigger the default format leaves the overwritten and deleted values in the row group.
+      Column column = new Column(testColumn);
+      column.addValue(40);
+      cfw.write(Collections.singletonList(new WriteRequest(1, 2, TEST_UUID, column)));
+      cfw.delete(3, 2, TEST_UUID);
+      byte[] v2 = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD));
+      assertEquals(Arrays.asList(20, null, 40), readValues(v2));
+      assertNull(metadata.getLastCompaction());
+      assertFalse(metadata.getStatsExact());
+      assertEquals(10d, metadata.getMinValue(), 0);
+      assertEquals(40d, metadata.getMaxValue(), 0);
+      assertEquals(3, metadata.getNumRows());
+      assertEquals(2, metadata.getNumEntities());
+      assertTrue(metadata.getFragmentationLevel() > 0);
+      List<EntityRecordSummary> summaries = cfw.getEntityRecordSummaries();
+      assertEquals(2, summaries.size());
+      assertTrue(summaries.get(0).getOffset() > 0);
+      assertTrue(summaries.get(1).getOffset() > summaries.get(0).getOffset());
+
+      // The uncompacted file loads back as is.
+      ColumnFileWriter reloaded = new ColumnFileWriter(new DataInputStream(new ByteArrayInputStream(v2)), columnShardId);
+      assertEquals(readValues(v2), readValues(bytesFromStreamProduct(reloaded.buildInputStream(Compression.NONE))));
+      assertEquals(metadata.getFragmentationLevel(), reloaded.getMetadata().getFragmentationLevel());
+      reloaded.close();
+
+      cfw.setAlwaysCompact(true);
+      assertEquals(readValues(v2), readValues(bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD))));
+      assertNotNull(metadata.getLastCompaction());
+      assertEquals(0, metadata.getFragmentationLevel());
+      assertEquals(0, cfw.getEntityRecordSummaries().get(0).getOffset());
+      cfw.close();
+   }
+
+   @Test
+   public void testChunkedRowGroup()
+      throws IOException {
+      ColumnId testColumn = new ColumnId("status", DataType.INTEGER.getCode());
+      ColumnShardId columnShardId = new ColumnShardId(new ShardId(TENANT, TABLE, INTERVAL.getInterval(), INTERVAL.getIntervalStart(TIMESTAMP), 1), testColumn);
+      ColumnFileWriter cfw = new ColumnFileWriter(columnShardId);
+      List<WriteRequest> requests = new ArrayList<>();
+      for (int i = 1; i <= 200; i++) {
+         Column column = new Column(testColumn);
+         for (int r = 0; r < 10; r++)
+            column.addValue(r == 3 ? null : i * 1000 + r);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, column));
+      }
+      cfw.write(requests);
+      byte[] whole = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_3));
+      cfw.setRowGroupChunkBytes(400);
+      byte[] chunked = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_3));
+
+      // The chunks are complete frames so the row group still decompresses as a whole.
+      List<Integer> expected = readValues(whole);
+      assertEquals(expected, readValues(chunked));
+      FastArmorShardColumn column = new FastArmorShardColumn(new ByteArrayInputStream(chunked));
+      assertEquals(20, column.getRowGroupChunks().getChunks().size());
+
+      ColumnFileChunkReader reader = new ColumnFileChunkReader((offset, length) -> Arrays.copyOfRange(chunked, (int) offset, (int) offset + length));
+      long openBytes = reader.getBytesRead();
+      ByteBuffer rows = reader.readRows(395, 405);
+      for (int row = 395; row < 405; row++) {
+         int value = rows.getInt();
+         assertEquals(expected.get(row) == null, reader.isNull(row));
+         if (expected.get(row) != null)
+            assertEquals(expected.get(row).intValue(), value);
+      }
+      assertTrue(reader.getBytesRead() - openBytes < (chunked.length - openBytes) / 5); // Only the two chunks holding the rows
+
+      FastArmorRowRange entityRows = reader.getEntityRows(57);
+      assertEquals(560, entityRows.getStartRow());
+      assertEquals(570, entityRows.getEndRow());
+      ByteBuffer entityValues = reader.readEntity(57);
+      for (int r = 0; r < 10; r++) {
+         int value = entityValues.getInt();
+         if (r != 3)
+            assertEquals(57000 + r, value);
+      }
+      assertTrue(reader.isNull(563));
+      assertNull(reader.getEntityRows(201));
+
+      // Files that aren't chunked are read whole.
+      ColumnFileChunkReader wholeReader = new ColumnFileChunkReader((offset, length) -> Arrays.copyOfRange(whole, (int) offset, (int) offset + length));
+      assertNull(wholeReader.getRowGroupChunks());
+      assertEquals(expected.get(1999).intValue(), wholeReader.readRows(1999, 2000).getInt());
+      cfw.close();
+   }
+
+   @Test
+   public void testZoneMaps()
+      throws IOException {
+      ColumnId testColumn = new ColumnId("status", DataType.INTEGER.getCode());
+      ColumnShardId columnShardId = new ColumnShardId(new ShardId(TENANT, TABLE, INTERVAL.getInterval(), INTERVAL.getIntervalStart(TIMESTAMP), 1), testColumn);
+      ColumnFileWriter cfw = new ColumnFileWriter(columnShardId);
+      List<WriteRequest> requests = new ArrayList<>();
+      for (int i = 1; i <= 100; i++) {
+         Column column = new Column(testColumn);
+         // Values grow with the entity like time correlated data, only the last entities have nulls.
+         for (int r = 0; r < 10; r++)
+            column.addValue(i > 90 && r == 0 ? null : i * 10 + r);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, column));
+      }
+      cfw.write(requests);
+      cfw.setZoneMapRows(100);
+      FastArmorShardColumn column = new FastArmorShardColumn(new ByteArrayInputStream(
+          bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_3))));
+      List<ZoneMap> zones = column.getZoneMaps().getZones();
+      assertEquals(10, zones.size());
+      assertEquals(10, zones.get(0).getMinValue(), 0);
+      assertEquals(109, zones.get(0).getMaxValue(), 0);
+      assertEquals(0, zones.get(0).getNullCount());
+      assertEquals(900, zones.get(9).getStartRow());
+      assertEquals(911, zones.get(9).getMinValue(), 0); // The null rows aren't part of the stats
+      assertEquals(10, zones.get(9).getNullCount());
+
+      List<Predicate<?>> greaterThan = Collections.singletonList(new NumericPredicate<>("status", Operator.GREATER_THAN, 905));
+      List<ZoneMap> matching = column.zonesMayMatch(greaterThan);
+      assertEquals(2, matching.size());
+      assertEquals(800, matching.get(0).getStartRow());
+      List<Predicate<?>> isNull = Collections.singletonList(new NumericPredicate<>("status", Operator.IS_NULL, (Integer) null));
+      assertEquals(Collections.singletonList(zones.get(9)), column.zonesMayMatch(isNull));
+      List<Predicate<?>> otherColumn = Collections.singletonList(new NumericPredicate<>("other", Operator.LESS_THAN, 0));
+      assertEquals(zones, column.zonesMayMatch(otherColumn));
+
+      // Chunked row groups get a zone per chunk.
+      cfw.setRowGroupChunkBytes(800);
+      column = new FastArmorShardColumn(new ByteArrayInputStream(
+          bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_3))));
+      assertEquals(column.getRowGroupChunks().getChunks().size(), column.getZoneMaps().getZones().size());
+      assertEquals(5, column.getZoneMaps().getZones().size());
+      cfw.close();
+   }
+
+   @Test
+   public void testBloomFilter()
+      throws IOException {
+      ColumnId hostColumn = new ColumnId("host", DataType.STRING.getCode());
+      ColumnShardId columnShardId = new ColumnShardId(new ShardId(TENANT, TABLE, INTERVAL.getInterval(), INTERVAL.getIntervalStart(TIMESTAMP), 1), hostColumn);
+      ColumnFileWriter cfw = new ColumnFileWriter(columnShardId);
+      cfw.setFormatVersion(Constants.ColumnFileFormatVersion.VERSION_3);
+      List<WriteRequest> requests = new ArrayList<>();
+      for (int i = 1; i <= 500; i++) {
+         Column column = new Column(hostColumn);
+         column.addValue("host-" + i);
+         column.addValue("10.0.0." + i);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, column));
+      }
+      cfw.write(requests);
+      byte[] withoutFilter = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD));
+      assertNull(new FastArmorShardColumn(new ByteArrayInputStream(withoutFilter)).getBloomFilter());
+
+      cfw.setBloomFilterFpp(0.001);
+      byte[] bytes = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD));
+      FastArmorShardColumn column = new FastArmorShardColumn(new ByteArrayInputStream(bytes));
+      assertNotNull(column.getBloomFilter());
+      assertTrue(column.mayMatch(Collections.singletonList(new StringPredicate("host", Operator.EQUALS, "host-42"))));
+      assertTrue(column.mayMatch(Collections.singletonList(new StringPredicate("host", Operator.EQUALS, "10.0.0.7"))));
+      assertFalse(column.mayMatch(Collections.singletonList(new StringPredicate("host", Operator.EQUALS, "host-501"))));
+      assertTrue(column.mayMatch(Collections.singletonList(new StringPredicate("host", Operator.IN, Arrays.asList("nope", "host-1")))));
+      assertFalse(column.mayMatch(Collections.singletonList(new StringPredicate("host", Operator.IN, Arrays.asList("nope", "host-0")))));
+      StringPredicate caseInsensitive = new StringPredicate("host", Operator.EQUALS, "HOST-501");
+      caseInsensitive.setCaseSensitive(false);
+      assertTrue(column.mayMatch(Collections.singletonList(caseInsensitive)));
+      assertTrue(column.zonesMayMatch(Collections.singletonList(new StringPredicate("host", Operator.EQUALS, "host-501"))).isEmpty());
+
+      // The filter is in front of the row group, so a range reader can rule out the column before fetching any values.
+      ColumnFileChunkReader reader = new ColumnFileChunkReader((offset, length) -> Arrays.copyOfRange(bytes, (int) offset, (int) offset + length));
+      assertFalse(reader.mayMatch(Collections.singletonList(new StringPredicate("host", Operator.EQUALS, "host-501"))));
+
+      // Only version 3 files hold the filter.
+      byte[] v2 = bytesFromStreamProduct(cfw.buildInputStream(Compression.ZSTD, Constants.ColumnFileFormatVersion.VERSION_2));
+      assertNull(new FastArmorShardColumn(new ByteArrayInputStream(v2)).getBloomFilter());
+
+      ColumnId statusColumn = new ColumnId("status", DataType.LONG.getCode());
+      ColumnFileWriter statusWriter = new ColumnFileWriter(new ColumnShardId(columnShardId.getShardId(), statusColumn));
+      requests.clear();
+      for (int i = 1; i <= 500; i++) {
+         Column status = new Column(statusColumn);
+         status.addValue((long) i * 1000);
+         requests.add(new WriteRequest(i, 1, TEST_UUID, status));
+      }
+      statusWriter.write(requests);
+      statusWriter.setFormatVersion(Constants.ColumnFileFormatVersion.VERSION_3);
+      statusWriter.setBloomFilterFpp(0.001);
+      FastArmorShardColumn statusShard = new FastArmorShardColumn(new ByteArrayInputStream(bytesFromStreamProduct(statusWriter.buildInputStream(Compression.ZSTD))));
+      assertTrue(statusShard.mayMatch(Collections.singletonList(new NumericPredicate<>("status", Operator.EQUALS, 42000))));
+      assertFalse(statusShard.mayMatch(Collections.singletonList(new NumericPredicate<>("status", Operator.EQUALS, 42001))));
+      cfw.close();
+      statusWriter.close();
+   }
+
+   private List<Integer> readValues(byte[] bytes) throws IOException {
+      return readValues(bytes, 10000);
+   }
+
+   private List<Integer> readValues(byte[] bytes, int maxRows) throws IOException {
+      FastArmorBlock block = new FastArmorShardColumn(new ByteArrayInputStream(bytes)).getFastArmorColumnReader().getIntegerBlock(maxRows);
+      List<Integer> values = new ArrayList<>();
+      for (int i = 0; i < block.getNumRows(); i++)
+         values.add(block.getValuesIsNull() != null && block.getValuesIsNull()[i] ? null : block.getIntValueArray()[i]);
+      return values;
+   }
+
    private ColumnFileListener printListener() {
       return new ColumnFileListener() {
          @Override
@@ -0,0 +1,64 @@
+package com.rapid7.armor.write.writers;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MemoryAccountantTest {
+
+  @Test
+  public void reserveAndReject() {
+    MemoryAccountant accountant = new MemoryAccountant(100, 0);
+    // A reservation larger than the budget goes through when nothing else is held.
+    accountant.reserve(150);
+    accountant.release(150);
+    accountant.adjust(60);
+    assertTrue(accountant.fits(40));
+    assertFalse(accountant.fits(41));
+    accountant.reserve(40);
+    assertThrows(MemoryBudgetExceededException.class, () -> accountant.reserve(1));
+    assertEquals(1, accountant.getRejected());
+    assertEquals(60, accountant.getUsed());
+    assertEquals(40, accountant.getReserved());
+    assertEquals(150, accountant.getPeak());
+    accountant.release(40);
+    accountant.adjust(-60);
+    assertEquals(0, accountant.getUsed());
+    assertEquals(0, accountant.getReserved());
+  }
+
+  @Test
+  public void reserveWaitsForMemory() throws InterruptedException {
+    MemoryAccountant accountant = new MemoryAccountant(100, 10000);
+    accountant.adjust(100);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread writer = new Thread(() -> {
+      try {
+        accountant.reserve(50);
+      } catch (Throwable t) {
+        failure.set(t);
+      }
+    });
+    writer.start();
+    while (accountant.getWaits() == 0)
+      Thread.sleep(5);
+    accountant.adjust(-50);
+    writer.join(10000);
+    assertFalse(writer.isAlive());
+    assertNull(failure.get());
+    assertEquals(50, accountant.getReserved());
+    assertEquals(1, accountant.getWaits());
+  }
+
+  @Test
+  public void invalidBudget() {
+    assertThrows(IllegalArgumentException.class, () -> new MemoryAccountant(0, 0));
+    assertThrows(IllegalArgumentException.class, () -> new MemoryAccountant(1, -1));
+  }
+}
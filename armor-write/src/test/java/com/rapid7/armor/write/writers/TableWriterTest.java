@@ -0,0 +1,73 @@
+package com.rapid7.armor.write.writers;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.rapid7.armor.shard.ShardId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TableWriterTest {
+
+  private static IShardWriter shardWriter(ShardId shardId, AtomicBoolean uncommitted) {
+    return (IShardWriter) Proxy.newProxyInstance(IShardWriter.class.getClassLoader(), new Class<?>[] {IShardWriter.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getShardId":
+              return shardId;
+            case "hasUncommittedChanges":
+              return uncommitted.get();
+            case "getMemoryUsage":
+              return 0L;
+            default:
+              return null;
+          }
+        });
+  }
+
+  @Test
+  public void pinnedShardsAreNotRemoved() {
+    TableWriter tableWriter = new TableWriter("tenant", "table");
+    ShardId shardId = new ShardId("tenant", "table", "single", "1970-01-01T00:00:00Z", 1);
+    AtomicBoolean uncommitted = new AtomicBoolean();
+    IShardWriter sw = tableWriter.addAndPinShard(shardWriter(shardId, uncommitted));
+    assertSame(sw, tableWriter.pinShard(shardId));
+
+    // Pinned twice, so it stays until both are unpinned.
+    assertNull(tableWriter.removeIdleShard(shardId));
+    tableWriter.unpinShard(shardId);
+    assertNull(tableWriter.removeIdleShard(shardId));
+    tableWriter.unpinShard(shardId);
+
+    // Unpinned but with uncommitted changes.
+    uncommitted.set(true);
+    assertNull(tableWriter.removeIdleShard(shardId));
+    uncommitted.set(false);
+
+    assertSame(sw, tableWriter.removeIdleShard(shardId));
+    assertNull(tableWriter.getShard(shardId));
+    assertNull(tableWriter.pinShard(shardId));
+    // Unpinning a shard that isn't pinned is a no-op.
+    tableWriter.unpinShard(shardId);
+    assertNull(tableWriter.removeIdleShard(shardId));
+  }
+
+  @Test
+  public void addAndPinKeepsTheExistingShard() {
+    TableWriter tableWriter = new TableWriter("tenant", "table");
+    ShardId shardId = new ShardId("tenant", "table", "single", "1970-01-01T00:00:00Z", 1);
+    AtomicBoolean uncommitted = new AtomicBoolean();
+    IShardWriter first = tableWriter.addShard(shardWriter(shardId, uncommitted));
+    IShardWriter second = tableWriter.addAndPinShard(shardWriter(shardId, uncommitted));
+    assertSame(first, second);
+    assertNull(tableWriter.removeIdleShard(shardId));
+    tableWriter.unpinShard(shardId);
+    assertFalse(tableWriter.getShardWriters().isEmpty());
+    assertSame(first, tableWriter.removeIdleShard(shardId));
+    assertTrue(tableWriter.getShardWriters().isEmpty());
+  }
+}